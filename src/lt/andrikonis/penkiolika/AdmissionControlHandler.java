@@ -0,0 +1,231 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Request handler, which protects another handler from overload. Each request
+ * must acquire a permit from the {@link ConcurrencyLimiter} before it is passed
+ * to the protected handler. If no permit is available, the request is shed
+ * immediately with HTTP status 503 and {@code Retry-After} header, using a
+ * pre-serialized response body.
+ * <p>
+ * Requests, which have a path element starting with {@value #EXPENSIVE_PATH_PREFIX}
+ * (for example, solver requests), are treated as low priority and are shed
+ * first, so that the gameplay requests keep their latency.
+ * <p>
+ * The readiness and liveness requests ({@link ServerHandler#READY_PATH} and
+ * {@link ServerHandler#LIVE_PATH}) bypass the limiter and are never shed: a
+ * busy server must not be taken out of the load balancer or restarted only
+ * because it is busy.
+ * <p>
+ * The latency of the request is measured from the moment the server dispatches
+ * it to its executor, if the executor is wrapped by {@link #timed(Executor)}.
+ * Then the time the request waits in the queue counts as well, and the limit
+ * is decreased as soon as the requests start queueing.
+ *
+ * @author julius
+ */
+public class AdmissionControlHandler implements HttpHandler {
+
+    /**
+     * The prefix of the path element, which marks the request as expensive: {@value #EXPENSIVE_PATH_PREFIX}.
+     */
+    public static final String EXPENSIVE_PATH_PREFIX = "solve";
+
+    /**
+     * The value of {@code Retry-After} header of the shed request in seconds: {@value #RETRY_AFTER_SECONDS}.
+     */
+    public static final String RETRY_AFTER_SECONDS = "1";
+
+    /**
+     * Default latency of gameplay requests, above which the limit is decreased:
+     * {@value #DEFAULT_LATENCY_THRESHOLD_MILLIS} ms.
+     */
+    public static final long DEFAULT_LATENCY_THRESHOLD_MILLIS = 50;
+
+    /**
+     * Default largest number of requests processed concurrently: {@value #DEFAULT_MAX_CONCURRENCY}.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    // The value of DISPATCHED_NANOS, when the request was not dispatched by
+    // the executor wrapped by timed method.
+    private static final long NOT_DISPATCHED = Long.MIN_VALUE;
+
+    // The time (System.nanoTime), when the request processed by the thread
+    // was dispatched to the executor. An array, so that it is set without
+    // allocation per request.
+    private static final ThreadLocal<long[]> DISPATCHED_NANOS = ThreadLocal.withInitial(() -> new long[] {NOT_DISPATCHED});
+
+    // The full paths of the requests, which are never shed.
+    private static final String[] HEALTH_PATHS = {
+        ServerHandler.BASE_PATH + "/" + ServerHandler.READY_PATH,
+        ServerHandler.BASE_PATH + "/" + ServerHandler.LIVE_PATH
+    };
+
+    // The header telling the client, when to retry the shed request.
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    // The body of the overload response. It is the same for all the shed requests.
+    private static final byte[] OVERLOADED_RESPONSE = new JSONObject()
+            .put(ServerHandler.JSON_ERROR_REASON, "Server is overloaded, retry later")
+            .toString(4).getBytes(StandardCharsets.UTF_8);
+
+    private final HttpHandler handler;
+    private final ConcurrencyLimiter limiter;
+    private final LongAdder shedCount = new LongAdder();
+
+    /**
+     * Creates the handler, which allows up to {@code maxConcurrency} requests to
+     * be processed concurrently by the protected handler.
+     *
+     * @param handler the protected handler.
+     * @param maxConcurrency the largest number of requests processed concurrently.
+     * It is set independently of the number of threads of the server's executor:
+     * when it is lower, the spare threads shed the excess requests quickly.
+     */
+    public AdmissionControlHandler(HttpHandler handler, int maxConcurrency) {
+        this(handler, new ConcurrencyLimiter(maxConcurrency, Math.min(4, maxConcurrency), maxConcurrency,
+                DEFAULT_LATENCY_THRESHOLD_MILLIS * 1000000L));
+    }
+
+    /**
+     * Creates the handler.
+     *
+     * @param handler the protected handler.
+     * @param limiter the limiter of concurrently processed requests.
+     */
+    public AdmissionControlHandler(HttpHandler handler, ConcurrencyLimiter limiter) {
+        this.handler = handler;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Passes the request to the protected handler, if there is capacity for it,
+     * or responds with HTTP status 503 otherwise.
+     *
+     * @param he the exchange containing the request from the client and used to
+     * send the response.
+     *
+     * @throws IOException if input output exception occurs while reading the request
+     * or sending the response.
+     */
+    @Override
+    public void handle(HttpExchange he) throws IOException {
+        String path = he.getRequestURI().getPath();
+        if (AdmissionControlHandler.isHealthCheck(path)) {
+            handler.handle(he);
+            return;
+        }
+        ConcurrencyLimiter.Priority priority = AdmissionControlHandler.priorityOf(path);
+        if (!limiter.tryAcquire(priority)) {
+            this.shed(he);
+            return;
+        }
+        long start = DISPATCHED_NANOS.get()[0];
+        if (start == NOT_DISPATCHED) {
+            start = System.nanoTime();
+        }
+        try {
+            handler.handle(he);
+        } finally {
+            limiter.release(priority, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Wraps the executor of the server, so that the latency of each request
+     * includes the time it waits for a thread: in the queue of the executor or
+     * for the dispatcher thread of the server, when the queue is full.
+     *
+     * @param executor the executor processing the requests of the server.
+     * @return the executor to pass to the server.
+     */
+    public static Executor timed(Executor executor) {
+        return runnable -> {
+            long dispatched = System.nanoTime();
+            executor.execute(() -> {
+                long[] current = DISPATCHED_NANOS.get();
+                current[0] = dispatched;
+                try {
+                    runnable.run();
+                } finally {
+                    current[0] = NOT_DISPATCHED;
+                }
+            });
+        };
+    }
+
+    /**
+     * Returns the limiter used by this handler.
+     *
+     * @return the limiter.
+     */
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Returns the number of requests shed by this handler.
+     *
+     * @return the number of shed requests.
+     */
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    // Determines the priority of the request by its path.
+    static ConcurrencyLimiter.Priority priorityOf(String path) {
+        int from = 0;
+        while (from < path.length()) {
+            int to = path.indexOf('/', from);
+            if (to < 0) {
+                to = path.length();
+            }
+            if (path.startsWith(EXPENSIVE_PATH_PREFIX, from)) {
+                return ConcurrencyLimiter.Priority.LOW;
+            }
+            from = to + 1;
+        }
+        return ConcurrencyLimiter.Priority.HIGH;
+    }
+
+    // Checks if the request is the readiness or liveness request, which
+    // bypasses the limiter. Trailing slashes are ignored, as by the Router.
+    static boolean isHealthCheck(String path) {
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        for (String healthPath : HEALTH_PATHS) {
+            if (end == healthPath.length() && path.startsWith(healthPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Responds to the client with the overload response without logging
+    // or any other work, which would add to the overload.
+    private void shed(HttpExchange he) throws IOException {
+        shedCount.increment();
+        he.getRequestBody().close();   // drains the unread request contents, so the connection can be reused
+        he.getResponseHeaders().set(HEADER_RETRY_AFTER, RETRY_AFTER_SECONDS);
+        he.sendResponseHeaders(503, OVERLOADED_RESPONSE.length);
+        try (OutputStream os = he.getResponseBody()) {
+            os.write(OVERLOADED_RESPONSE);
+        } catch (IOException ioe) {
+            // the client is gone, nothing to do
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logger, which never blocks the logging thread on I/O. The records are put to
+ * a bounded lock free ring buffer and written by a single background thread,
+ * which takes them in batches and writes every batch with a single write. When
+ * the buffer is full, the record is dropped and counted instead of waiting.
+ * When there are no records, the writer thread sleeps until the next record
+ * is logged.
+ * <p>
+ * The records are written either to the console or to a file, which is rotated
+ * when it grows over the limit: {@code <file>} is renamed to {@code <file>.1},
+ * {@code <file>.1} to {@code <file>.2} and so on, keeping at most the provided
+ * number of old files.
+ * <p>
+ * The class is thread safe.
+ *
+ * @author julius
+ */
+public class AsyncLogger implements AutoCloseable {
+
+    /**
+     * The level of the log record.
+     */
+    public enum Level {
+        /**
+         * Detailed information for debugging.
+         */
+        DEBUG,
+        /**
+         * Normal events, like rejected client requests.
+         */
+        INFO,
+        /**
+         * Unexpected events, which don't stop the server.
+         */
+        WARN,
+        /**
+         * Failures of the server.
+         */
+        ERROR
+    }
+
+    /**
+     * Default capacity of the ring buffer: {@value #DEFAULT_CAPACITY} records.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * Default size, after which the log file is rotated: {@value #DEFAULT_MAX_FILE_BYTES} bytes.
+     */
+    public static final long DEFAULT_MAX_FILE_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Default number of rotated log files kept: {@value #DEFAULT_MAX_FILES}.
+     */
+    public static final int DEFAULT_MAX_FILES = 5;
+
+    // The largest number of records written with a single write.
+    private static final int MAX_BATCH = 256;
+    // How long the closing writer sleeps, while a record is being logged.
+    private static final long CLOSING_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    // How long flush sleeps between the checks of the written records.
+    private static final long FLUSH_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    // The logger used by default, which writes to the console.
+    private static volatile AsyncLogger defaultLogger;
+
+    // The ring buffer. The record at position p is in slot p & mask. The
+    // sequence of the slot is p, when the slot is free for the record at p,
+    // and p + 1, when the record at p is written to it (bounded queue of
+    // D. Vyukov, simplified for a single consumer).
+    private final int mask;
+    private final AtomicReferenceArray<Record> records;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(0);
+    // The position of the next record to be taken by the writer (used only by the writer).
+    private long taken = 0;
+    // The position of the next record to be written (all the records before it are written).
+    private volatile long written = 0;
+
+    private final Level level;
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+    // True, while the writer has no records and sleeps (or is about to). The
+    // logging thread wakes it up after the record is logged.
+    private volatile boolean idle;
+    // The state of the writer thread.
+    private OutputStream out;
+    private long fileBytes;
+
+    /**
+     * Creates the logger, which writes the records of the provided level and
+     * above to the console.
+     *
+     * @param level the lowest level of the written records.
+     */
+    public AsyncLogger(Level level) {
+        this(level, null, 0, 0, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the logger, which writes the records of the provided level and
+     * above to the rotated file.
+     *
+     * @param level the lowest level of the written records.
+     * @param file the log file.
+     * @param maxFileBytes the size, after which the file is rotated.
+     * @param maxFiles the number of rotated files kept.
+     * @param capacity the capacity of the ring buffer (rounded up to a power of 2).
+     */
+    public AsyncLogger(Level level, Path file, long maxFileBytes, int maxFiles, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.records = new AtomicReferenceArray<Record>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.level = level;
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.writer = new Thread(this::writeLoop, "penkiolika-logger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Returns the logger used by default. It writes the records of {@link Level#INFO}
+     * level and above to the console.
+     *
+     * @return the default logger.
+     */
+    public static AsyncLogger getDefault() {
+        AsyncLogger logger = defaultLogger;
+        if (logger == null) {
+            synchronized (AsyncLogger.class) {
+                logger = defaultLogger;
+                if (logger == null) {
+                    logger = new AsyncLogger(Level.INFO);
+                    defaultLogger = logger;
+                }
+            }
+        }
+        return logger;
+    }
+
+    /**
+     * Checks if the records of the level are written. It may be used to avoid
+     * forming the message, which would not be written.
+     *
+     * @param recordLevel the level of the record.
+     * @return true, if the records of the level are written.
+     */
+    public boolean isEnabled(Level recordLevel) {
+        return recordLevel.compareTo(level) >= 0;
+    }
+
+    /**
+     * Logs the message. Never blocks: if the buffer is full, the message is dropped.
+     *
+     * @param recordLevel the level of the record.
+     * @param message the message.
+     * @return true, if the record was accepted, false if it was dropped or its
+     * level is not written.
+     */
+    public boolean log(Level recordLevel, String message) {
+        if (!this.isEnabled(recordLevel)) {
+            return false;
+        }
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        long position = tail.get();
+        while (true) {
+            int slot = (int)position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.increment();        // the writer has not taken the record from this slot yet
+                return false;
+            } else {
+                position = tail.get();      // another thread has taken the slot
+            }
+        }
+        int slot = (int)position & mask;
+        if (closed) {
+            // The writer might have stopped before the slot was taken: the slot
+            // is released without the record, so the writer never waits for it
+            sequences.set(slot, position + 1);
+            dropped.increment();
+            return false;
+        }
+        records.set(slot, new Record(System.currentTimeMillis(), recordLevel, Thread.currentThread().getName(), message));
+        sequences.set(slot, position + 1);
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of records dropped, because the buffer was full (or
+     * they could not be written).
+     *
+     * @return the number of dropped records.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Waits until all the records accepted before the call are written.
+     *
+     * @param timeoutMillis the longest time to wait.
+     * @return true, if the records are written, false if the time has passed.
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (written < target) {
+            if (System.nanoTime() - deadline > 0 || !writer.isAlive()) {
+                return written >= target;
+            }
+            LockSupport.parkNanos(FLUSH_PARK_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the accepted records, stops the writer thread and closes the file.
+     * The records logged afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The loop of the writer thread. The logging thread checks, if the logger
+    // is closed, after it takes the slot, and the writer checks the taken
+    // slots after it sees the logger closed, so every record accepted before
+    // closing is written. The same way, either the writer sees the record
+    // logged after it became idle, or the logging thread wakes it up.
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            boolean closing = closed;
+            long from = taken;
+            int count = this.drain(batch);
+            if (taken != from) {
+                if (count > 0) {
+                    this.write(batch, count);
+                    batch.setLength(0);
+                }
+                written = taken;
+            } else if (closing) {
+                if (taken == tail.get()) {
+                    break;
+                }
+                LockSupport.parkNanos(CLOSING_PARK_NANOS);    // the slot is taken, but the record is not yet there
+            } else {
+                idle = true;
+                if (!this.isLogged(taken)) {
+                    LockSupport.park(this);     // until woken by log or close
+                }
+                idle = false;
+            }
+        }
+        this.closeFile();
+    }
+
+    // Checks if the record at the position is in the buffer.
+    private boolean isLogged(long position) {
+        return sequences.get((int)position & mask) == position + 1;
+    }
+
+    // Takes up to MAX_BATCH records from the buffer and formats them to the batch.
+    // The slots released without the record (see log) are skipped.
+    // Returns the number of records formatted.
+    private int drain(StringBuilder batch) {
+        int count = 0;
+        long position = taken;
+        while (position - taken < MAX_BATCH) {
+            int slot = (int)position & mask;
+            if (sequences.get(slot) != position + 1) {
+                break;
+            }
+            Record record = records.get(slot);
+            records.set(slot, null);
+            sequences.set(slot, position + mask + 1);
+            position++;
+            if (record == null) {
+                continue;
+            }
+            count++;
+            batch.append(TIME_FORMAT.format(Instant.ofEpochMilli(record.millis)))
+                    .append(' ').append(record.level)
+                    .append(" [").append(record.thread).append("] ")
+                    .append(record.message).append(System.lineSeparator());
+        }
+        taken = position;
+        return count;
+    }
+
+    // Writes the batch to the console or to the file, rotating it when needed.
+    private void write(StringBuilder batch, int count) {
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        if (file == null) {
+            System.out.write(bytes, 0, bytes.length);
+            System.out.flush();
+            return;
+        }
+        try {
+            if (out != null && fileBytes + bytes.length > maxFileBytes) {
+                this.closeFile();
+                this.rotate();
+            }
+            if (out == null) {
+                out = new FileOutputStream(file.toFile(), true);
+                fileBytes = Files.size(file);
+            }
+            out.write(bytes);
+            out.flush();
+            fileBytes += bytes.length;
+        } catch (IOException ioe) {
+            dropped.add(count);
+            this.closeFile();
+        }
+    }
+
+    // Renames the log file and the older files, removing the oldest one.
+    private void rotate() throws IOException {
+        for (int i = maxFiles; i >= 1; i--) {
+            Path source = i == 1 ? file : file.resolveSibling(file.getFileName() + "." + (i - 1));
+            Path target = file.resolveSibling(file.getFileName() + "." + i);
+            if (Files.exists(source)) {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles < 1) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // nothing more can be done with the log file
+            }
+            out = null;
+        }
+    }
+
+    // The log record.
+    private static class Record {
+        private final long millis;
+        private final Level level;
+        private final String thread;
+        private final String message;
+
+        Record(long millis, Level level, String thread, String message) {
+            this.millis = millis;
+            this.level = level;
+            this.thread = thread;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONObject;
+
+/**
+ * Solves batches of boards concurrently. The boards are read one per line,
+ * either as JSON arrays (NDJSON) or as 16 numbers separated by commas or
+ * whitespace (compact form), and are solved on a work stealing pool as soon
+ * as they are read. The results are written one JSON object per line in the
+ * order of completion, each tagged with the index of its input line:
+ * <ul>
+ *  <li>{@code {"index":<index>,"status":"solved","distance":<moves>,"nodes":<nodes>}}
+ *      - the length of the optimal solution of the board.
+ *  <li>{@code {"index":<index>,"status":"expired"}} - the time budget of the
+ *      batch passed before the board was solved.
+ *  <li>{@code {"index":<index>,"status":"invalid","reason":<reason>}} - the
+ *      line is not a board or the board cannot be solved.
+ * </ul>
+ * Empty lines are skipped, but counted by the index. At most a few boards per
+ * pool thread are solved or waiting at a time: the reading waits for the
+ * results, so that a long batch doesn't fill the memory. The workers reuse
+ * their search state (see {@link Solver}).
+ * <p>
+ * The class is thread safe: several batches may share the pool.
+ *
+ * @author julius
+ */
+public class BatchSolver {
+
+    /**
+     * Default time budget of the batch: {@value #DEFAULT_BUDGET_MILLIS} ms.
+     */
+    public static final long DEFAULT_BUDGET_MILLIS = 60000;
+
+    /**
+     * The largest time budget of the batch: {@value #MAX_BUDGET_MILLIS} ms.
+     */
+    public static final long MAX_BUDGET_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * The input index field name in JSON: {@value #JSON_INDEX}.
+     */
+    public static final String JSON_INDEX = "index";
+
+    /**
+     * The result status field name in JSON: {@value #JSON_STATUS}.
+     */
+    public static final String JSON_STATUS = "status";
+
+    /**
+     * The field name in JSON of the length of the optimal solution: {@value #JSON_DISTANCE}.
+     */
+    public static final String JSON_DISTANCE = "distance";
+
+    /**
+     * The field name in JSON of the number of expanded nodes: {@value #JSON_NODES}.
+     */
+    public static final String JSON_NODES = "nodes";
+
+    /**
+     * The field name in JSON of the reason, why the line is invalid: {@value #JSON_REASON}.
+     */
+    public static final String JSON_REASON = "reason";
+
+    /**
+     * The status of the solved board: {@value #STATUS_SOLVED}.
+     */
+    public static final String STATUS_SOLVED = "solved";
+
+    /**
+     * The status of the board, which was not solved in time: {@value #STATUS_EXPIRED}.
+     */
+    public static final String STATUS_EXPIRED = "expired";
+
+    /**
+     * The status of the line, which is not a solvable board: {@value #STATUS_INVALID}.
+     */
+    public static final String STATUS_INVALID = "invalid";
+
+    // How many boards per pool thread may be solved or waiting at a time.
+    private static final int PENDING_PER_THREAD = 4;
+
+    private final Solver solver;
+    private final ForkJoinPool pool;
+    private final int maxPending;
+
+    /**
+     * Creates the batch solver with as many pool threads as there are
+     * available processors.
+     */
+    public BatchSolver() {
+        this(new Solver(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the batch solver.
+     *
+     * @param solver the solver of the boards.
+     * @param threads the number of pool threads.
+     */
+    public BatchSolver(Solver solver, int threads) {
+        this.solver = solver;
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        this.pool = new ForkJoinPool(threads,
+                forkJoinPool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                    thread.setName("penkiolika-batch-" + threadNumber.incrementAndGet());
+                    return thread;
+                },
+                null, false);
+        this.maxPending = threads * PENDING_PER_THREAD;
+    }
+
+    /**
+     * Solves the boards read from the input and writes the results to the
+     * output. The output is flushed whenever the written results catch up
+     * with the solved ones, so the results are streamed as they complete.
+     *
+     * @param input the lines of the boards.
+     * @param output where the results are written.
+     * @param budgetMillis the time the batch may take; the boards not solved
+     * in time are reported as expired.
+     * @return the number of lines with boards (including the invalid ones).
+     * @throws IOException if the input cannot be read or the output cannot be
+     * written. The searches of the batch are stopped then.
+     */
+    public int solve(Reader input, Writer output, long budgetMillis) throws IOException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        Batch batch = new Batch(deadlineNanos);
+        BufferedReader in = input instanceof BufferedReader ? (BufferedReader)input : new BufferedReader(input);
+        int index = 0;
+        int boards = 0;
+        int pending = 0;
+        try {
+            for (String line = in.readLine(); line != null; line = in.readLine(), index++) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                boards++;
+                int[] board = BatchSolver.parseBoard(line);
+                if (board == null) {
+                    BatchSolver.writeResult(output, BatchSolver.invalid(index, "Board of " + Heuristics.CELLS +
+                            " numbers from 0 to " + (Heuristics.CELLS - 1) + " expected, and " + line + " received"));
+                } else if (!Penkiolika.isSolvable(board)) {
+                    BatchSolver.writeResult(output, BatchSolver.invalid(index, "Board cannot be solved"));
+                } else {
+                    int boardIndex = index;
+                    pool.execute(() -> batch.results.add(this.solve(batch, boardIndex, board)));
+                    pending++;
+                }
+                pending -= BatchSolver.writeReady(batch, output);
+                while (pending >= maxPending) {
+                    output.flush();
+                    BatchSolver.writeResult(output, batch.take());
+                    pending--;
+                }
+            }
+            while (pending > 0) {
+                pending -= BatchSolver.writeReady(batch, output);
+                if (pending > 0) {
+                    output.flush();
+                    BatchSolver.writeResult(output, batch.take());
+                    pending--;
+                }
+            }
+            output.flush();
+        } catch (IOException ioe) {
+            batch.aborted = true;
+            throw ioe;
+        }
+        return boards;
+    }
+
+    /**
+     * Stops the pool threads. The batches, which are being solved, are not
+     * finished.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Parses the board from the line. The line is either a JSON array or 16
+     * numbers separated by commas or whitespace.
+     *
+     * @param line the line.
+     * @return the board or null, if the line is not a permutation of numbers
+     * from 0 to 15.
+     */
+    static int[] parseBoard(String line) {
+        String numbers = line.trim();
+        if (numbers.startsWith("[") && numbers.endsWith("]")) {
+            numbers = numbers.substring(1, numbers.length() - 1).trim();
+        }
+        String[] fields = numbers.split("[,\\s]+");
+        if (fields.length != Heuristics.CELLS) {
+            return null;
+        }
+        int[] board = new int[Heuristics.CELLS];
+        try {
+            for (int i = 0; i < board.length; i++) {
+                board[i] = Integer.parseInt(fields[i]);
+            }
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+        return Penkiolika.isPermutation(board) ? board : null;
+    }
+
+    // Solves the board on the pool thread.
+    // Returns the result JSON.
+    private JSONObject solve(Batch batch, int index, int[] board) {
+        JSONObject json = new JSONObject();
+        json.put(JSON_INDEX, index);
+        Solver.Solution solution;
+        try {
+            solution = batch.shouldStop() ? null : solver.solve(board, batch::shouldStop);
+        } catch (RuntimeException re) {
+            return BatchSolver.invalid(index, "Board cannot be solved: " + re.getMessage());
+        }
+        if (solution == null) {
+            json.put(JSON_STATUS, STATUS_EXPIRED);
+        } else {
+            json.put(JSON_STATUS, STATUS_SOLVED);
+            json.put(JSON_DISTANCE, solution.getMoves().size());
+            json.put(JSON_NODES, solution.getNodes());
+        }
+        return json;
+    }
+
+    // Writes the results, which are already solved, without waiting.
+    // Returns the number of results written.
+    private static int writeReady(Batch batch, Writer output) throws IOException {
+        int written = 0;
+        for (JSONObject result = batch.results.poll(); result != null; result = batch.results.poll()) {
+            BatchSolver.writeResult(output, result);
+            written++;
+        }
+        return written;
+    }
+
+    private static void writeResult(Writer output, JSONObject result) throws IOException {
+        output.write(result.toString());
+        output.write('\n');
+    }
+
+    private static JSONObject invalid(int index, String reason) {
+        JSONObject json = new JSONObject();
+        json.put(JSON_INDEX, index);
+        json.put(JSON_STATUS, STATUS_INVALID);
+        json.put(JSON_REASON, reason);
+        return json;
+    }
+
+    // The state of a single batch shared with its searches.
+    private static class Batch {
+        private final long deadlineNanos;
+        private final BlockingQueue<JSONObject> results = new LinkedBlockingQueue<JSONObject>();
+        private volatile boolean aborted;
+
+        Batch(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        // Checks if the searches of the batch should stop.
+        private boolean shouldStop() {
+            return aborted || System.nanoTime() - deadlineNanos > 0;
+        }
+
+        // Waits for the next result.
+        private JSONObject take() throws IOException {
+            try {
+                return results.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the results", ie);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Thread safe histogram with fixed buckets. Each bucket is a striped
+ * {@link LongAdder} counter, so concurrent updates don't contend. Values can
+ * also be removed, so the histogram may describe the current state (for example,
+ * the distribution of the distances of live games) and not only the history.
+ *
+ * @author julius
+ */
+public class BucketHistogram {
+
+    /**
+     * The upper bound field name of the bucket JSON: {@value #JSON_UP_TO}.
+     */
+    public static final String JSON_UP_TO = "upTo";
+
+    /**
+     * The count field name of the bucket JSON: {@value #JSON_COUNT}.
+     */
+    public static final String JSON_COUNT = "count";
+
+    // Inclusive upper bounds of the buckets, except the last bucket, which has no bound.
+    private final long[] upperBounds;
+    private final LongAdder[] counts;
+
+    /**
+     * Creates the histogram. The values above the last bound are counted in
+     * an additional, unbounded bucket.
+     *
+     * @param upperBounds inclusive upper bounds of the buckets in ascending order.
+     */
+    public BucketHistogram(long... upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        this.counts = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Creates the histogram of equal width buckets starting at 0.
+     *
+     * @param width the width of each bucket.
+     * @param buckets the number of bounded buckets.
+     * @return the histogram.
+     */
+    public static BucketHistogram linear(long width, int buckets) {
+        long[] bounds = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            bounds[i] = (i + 1) * width - 1;
+        }
+        return new BucketHistogram(bounds);
+    }
+
+    /**
+     * Adds the value to the histogram.
+     *
+     * @param value the value.
+     */
+    public void add(long value) {
+        counts[this.bucketOf(value)].increment();
+    }
+
+    /**
+     * Removes the value, which was previously added, from the histogram.
+     *
+     * @param value the value.
+     */
+    public void remove(long value) {
+        counts[this.bucketOf(value)].decrement();
+    }
+
+    /**
+     * Moves the value from one bucket to another. Does nothing, if both values
+     * fall into the same bucket.
+     *
+     * @param oldValue the value, which was previously added.
+     * @param newValue the value, which replaces it.
+     */
+    public void replace(long oldValue, long newValue) {
+        int oldBucket = this.bucketOf(oldValue);
+        int newBucket = this.bucketOf(newValue);
+        if (oldBucket != newBucket) {
+            counts[oldBucket].decrement();
+            counts[newBucket].increment();
+        }
+    }
+
+    /**
+     * Returns the count of the bucket.
+     *
+     * @param bucket the index of the bucket.
+     * @return the number of values in the bucket.
+     */
+    public long getCount(int bucket) {
+        return counts[bucket].sum();
+    }
+
+    /**
+     * Returns the histogram as JSON array of buckets {@code {"upTo":<bound>,"count":<count>}}.
+     * The bound of the last bucket is null.
+     *
+     * @return the JSON array.
+     */
+    public JSONArray toJson() {
+        JSONArray result = new JSONArray();
+        for (int i = 0; i < counts.length; i++) {
+            JSONObject bucket = new JSONObject();
+            bucket.put(JSON_UP_TO, i < upperBounds.length ? (Object)upperBounds[i] : JSONObject.NULL);
+            bucket.put(JSON_COUNT, counts[i].sum());
+            result.put(bucket);
+        }
+        return result;
+    }
+
+    // Returns the index of the bucket of the value.
+    private int bucketOf(long value) {
+        int low = 0;
+        int high = upperBounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (upperBounds[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
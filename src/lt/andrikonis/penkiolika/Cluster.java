@@ -0,0 +1,385 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Static cluster of game servers. Every node of the cluster knows the same list
+ * of nodes and owns the games, whose ids are mapped to it by consistent hashing:
+ * every node is placed on a hash ring {@value #VIRTUAL_NODES} times and the game
+ * belongs to the first node clockwise from the hash of its id. A node creates
+ * only the games it owns: the ids are {@code <node id>-<number>}, so the owner
+ * is also seen from the id, and the numbers, which would be mapped to another
+ * node, are skipped.
+ * <p>
+ * The requests for the games owned by another node are either forwarded to the
+ * owner over pooled keep-alive connections (see {@link HttpClientConnection})
+ * or answered with a redirect to it (see {@link Mode}).
+ * <p>
+ * The class is thread safe.
+ *
+ * @author julius
+ */
+public class Cluster implements Closeable {
+
+    /**
+     * The number of places of every node on the hash ring: {@value #VIRTUAL_NODES}.
+     */
+    public static final int VIRTUAL_NODES = 64;
+
+    /**
+     * The largest number of idle connections kept to every other node:
+     * {@value #MAX_IDLE_CONNECTIONS}.
+     */
+    public static final int MAX_IDLE_CONNECTIONS = 16;
+
+    /**
+     * The request header set on the forwarded requests to the id of the
+     * forwarding node: {@value #HEADER_FORWARDED_BY}. A forwarded request is
+     * never forwarded again.
+     */
+    public static final String HEADER_FORWARDED_BY = "X-Penkiolika-Forwarded-By";
+
+    /**
+     * How the requests for the games owned by another node are handled.
+     */
+    public enum Mode {
+        /**
+         * The request is sent to the owner and its response is returned.
+         */
+        FORWARD,
+        /**
+         * The client is redirected to the owner (HTTP status 307).
+         */
+        REDIRECT
+    }
+
+    /**
+     * A node of the cluster.
+     */
+    public static final class Node {
+        private final String id;
+        private final String host;
+        private final int port;
+        // The idle connections to the node.
+        private final BlockingQueue<HttpClientConnection> connections =
+                new ArrayBlockingQueue<HttpClientConnection>(MAX_IDLE_CONNECTIONS);
+
+        /**
+         * Creates the node.
+         *
+         * @param id the id of the node. It must not be empty and must not
+         * contain {@code '-'} or {@code '/'}.
+         * @param host the host name of the node.
+         * @param port the port of the node.
+         */
+        public Node(String id, String host, int port) {
+            if (id.isEmpty() || id.indexOf('-') >= 0 || id.indexOf('/') >= 0) {
+                throw new IllegalArgumentException("Node id must not be empty and must not contain '-' or '/': " + id);
+            }
+            this.id = id;
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * Returns the id of the node.
+         *
+         * @return the id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Returns the host name of the node.
+         *
+         * @return the host name.
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * Returns the port of the node.
+         *
+         * @return the port.
+         */
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * Returns the URL of the node: {@code http://<host>:<port>}.
+         *
+         * @return the URL.
+         */
+        public String getUrl() {
+            return "http://" + host + ":" + port;
+        }
+
+        @Override
+        public String toString() {
+            return id + "=" + host + ":" + port;
+        }
+    }
+
+    private final Node self;
+    private final List<Node> nodes;
+    private final Mode mode;
+    private final int timeoutMillis;
+    // The hash ring: the sorted points and the nodes at them.
+    private final int[] points;
+    private final Node[] owners;
+
+    /**
+     * Creates the cluster forwarding the requests.
+     *
+     * @param selfId the id of this node.
+     * @param nodes all the nodes of the cluster (including this node).
+     */
+    public Cluster(String selfId, List<Node> nodes) {
+        this(selfId, nodes, Mode.FORWARD, HttpClientConnection.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates the cluster.
+     *
+     * @param selfId the id of this node.
+     * @param nodes all the nodes of the cluster (including this node). All the
+     * nodes must list the same nodes.
+     * @param mode how the requests for the games of other nodes are handled.
+     * @param timeoutMillis connect and read timeout of the forwarded requests.
+     */
+    public Cluster(String selfId, List<Node> nodes, Mode mode, int timeoutMillis) {
+        Node found = null;
+        for (Node node : nodes) {
+            for (Node other : nodes) {
+                if (node != other && node.id.equals(other.id)) {
+                    throw new IllegalArgumentException("Duplicate node id: " + node.id);
+                }
+            }
+            if (node.id.equals(selfId)) {
+                found = node;
+            }
+        }
+        if (found == null) {
+            throw new IllegalArgumentException("Node " + selfId + " is not in the node list " + nodes);
+        }
+        this.self = found;
+        this.nodes = Collections.unmodifiableList(new ArrayList<Node>(nodes));
+        this.mode = mode;
+        this.timeoutMillis = timeoutMillis;
+        // Ring points of all the nodes, sorted; ties are broken by the order of
+        // the node ids, so that every node builds the same ring.
+        List<Node> sorted = new ArrayList<Node>(nodes);
+        sorted.sort((a, b) -> a.id.compareTo(b.id));
+        long[] ring = new long[sorted.size() * VIRTUAL_NODES];
+        int n = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                int hash = Cluster.hash(sorted.get(i).id + "#" + v);
+                ring[n++] = ((long)hash << 32) | i;
+            }
+        }
+        Arrays.sort(ring);
+        this.points = new int[ring.length];
+        this.owners = new Node[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = (int)(ring[i] >> 32);
+            owners[i] = sorted.get((int)ring[i]);
+        }
+    }
+
+    /**
+     * Parses the list of the nodes: {@code <id>=<host>:<port>,...}.
+     *
+     * @param spec the list of the nodes.
+     * @return the nodes.
+     * @throws IllegalArgumentException if the list cannot be parsed.
+     */
+    public static List<Node> parseNodes(String spec) {
+        List<Node> result = new ArrayList<Node>();
+        for (String field : spec.split(",")) {
+            String trimmed = field.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int equals = trimmed.indexOf('=');
+            int colon = trimmed.lastIndexOf(':');
+            if (equals <= 0 || colon < equals + 2) {
+                throw new IllegalArgumentException("Node <id>=<host>:<port> expected, and " + trimmed + " received");
+            }
+            int port;
+            try {
+                port = Integer.parseInt(trimmed.substring(colon + 1));
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("Node <id>=<host>:<port> expected, and " + trimmed + " received");
+            }
+            result.add(new Node(trimmed.substring(0, equals), trimmed.substring(equals + 1, colon), port));
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("No nodes in " + spec);
+        }
+        return result;
+    }
+
+    /**
+     * Returns this node.
+     *
+     * @return this node.
+     */
+    public Node getSelf() {
+        return self;
+    }
+
+    /**
+     * Returns all the nodes of the cluster.
+     *
+     * @return the unmodifiable list of the nodes.
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns how the requests for the games of other nodes are handled.
+     *
+     * @return the mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the node, which owns the game.
+     *
+     * @param gameId the id of the game.
+     * @return the owner node.
+     */
+    public Node ownerOf(String gameId) {
+        int hash = Cluster.hash(gameId);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            // The first of the equal points
+            while (index > 0 && points[index - 1] == hash) {
+                index--;
+            }
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Checks if the game is owned by this node.
+     *
+     * @param gameId the id of the game.
+     * @return true, if this node owns the game.
+     */
+    public boolean isLocal(String gameId) {
+        return this.ownerOf(gameId) == self;
+    }
+
+    /**
+     * Returns the prefix of the ids of the games created by this node:
+     * {@code <node id>-}.
+     *
+     * @return the prefix.
+     */
+    public String getIdPrefix() {
+        return self.id + "-";
+    }
+
+    /**
+     * Generates the id of a new game owned by this node. The numbers, which
+     * would make ids owned by other nodes, are skipped.
+     *
+     * @param lastNumber the number of the last generated id; it is advanced.
+     * @return the id.
+     */
+    public String newGameId(AtomicInteger lastNumber) {
+        String prefix = this.getIdPrefix();
+        while (true) {
+            String id = prefix + lastNumber.incrementAndGet();
+            if (this.isLocal(id)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Sends the request to the node and waits for the response. The connection
+     * is borrowed from the pool of the node and returned to it afterwards.
+     * The request is marked by {@value #HEADER_FORWARDED_BY} header.
+     *
+     * @param node the node.
+     * @param method the method of the request.
+     * @param path the path (and query) of the request.
+     * @param headers additional request headers or null, if there are none.
+     * @param body the contents of the request or null, if there is none.
+     * @return the response of the node.
+     * @throws IOException if the node cannot be reached or the connection fails
+     * after a request, which is not idempotent, has been sent (it is not sent
+     * again, see {@link HttpClientConnection#request(String, String, Map, byte[])}).
+     */
+    public HttpClientConnection.Response forward(Node node, String method, String path,
+            Map<String, String> headers, byte[] body) throws IOException {
+        Map<String, String> forwardedHeaders = new LinkedHashMap<String, String>();
+        if (headers != null) {
+            forwardedHeaders.putAll(headers);
+        }
+        forwardedHeaders.put(HEADER_FORWARDED_BY, self.id);
+        HttpClientConnection connection = node.connections.poll();
+        if (connection == null) {
+            connection = new HttpClientConnection(node.host, node.port, timeoutMillis);
+        }
+        // The connection is closed by request on failure, so it is not pooled then
+        HttpClientConnection.Response response = connection.request(method, path, forwardedHeaders, body);
+        if (!node.connections.offer(connection)) {
+            connection.close();
+        }
+        return response;
+    }
+
+    /**
+     * Closes the idle connections to the other nodes.
+     */
+    @Override
+    public void close() {
+        for (Node node : nodes) {
+            for (HttpClientConnection connection = node.connections.poll(); connection != null;
+                    connection = node.connections.poll()) {
+                connection.close();
+            }
+        }
+    }
+
+    // The hash of the string on the ring: FNV-1a of the characters followed by
+    // the final mixing of MurmurHash3, as the ids differ only in a few characters.
+    private static int hash(String value) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
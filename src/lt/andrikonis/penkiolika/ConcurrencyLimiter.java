@@ -0,0 +1,147 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive limit of concurrently processed requests. The limit is adjusted
+ * using AIMD (additive increase, multiplicative decrease) algorithm: when the
+ * latency of a high priority request exceeds the threshold, the limit is
+ * decreased by {@value #BACKOFF_RATIO} ratio; otherwise, if the limit is
+ * being used, it grows by one per limit-many requests.
+ * <p>
+ * Low priority (expensive) requests may use only {@value #LOW_PRIORITY_SHARE}
+ * of the limit, so that there is always headroom left for high priority
+ * requests. Low priority latencies don't adjust the limit, because they are
+ * expected to be slow.
+ * <p>
+ * The class is thread safe and lock free.
+ *
+ * @author julius
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * The priority of the request.
+     */
+    public enum Priority {
+        /**
+         * Cheap and latency sensitive requests (gameplay).
+         */
+        HIGH,
+        /**
+         * Expensive requests, which are shed first under load.
+         */
+        LOW
+    }
+
+    /**
+     * The ratio, by which the limit is multiplied when latency is too high: {@value #BACKOFF_RATIO}.
+     */
+    public static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * The share of the limit, which may be used by low priority requests: {@value #LOW_PRIORITY_SHARE}.
+     */
+    public static final double LOW_PRIORITY_SHARE = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    // Current limit as double bits, so that additive increase can be fractional.
+    private final AtomicLong limitBits;
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    /**
+     * Creates the limiter.
+     *
+     * @param initialLimit the initial limit of concurrent requests.
+     * @param minLimit the smallest allowed limit (at least 1).
+     * @param maxLimit the largest allowed limit.
+     * @param latencyThresholdNanos the latency of high priority request, above
+     * which the limit is decreased.
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("1 <= minLimit <= initialLimit <= maxLimit expected, and " +
+                    minLimit + ", " + initialLimit + ", " + maxLimit + " received");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limitBits = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+    }
+
+    /**
+     * Tries to acquire a permit to process the request. If the permit is
+     * acquired, it must be released by calling {@link #release} when the
+     * request is processed.
+     *
+     * @param priority the priority of the request.
+     * @return true, if the permit is acquired, false if the request should be shed.
+     */
+    public boolean tryAcquire(Priority priority) {
+        int allowed = this.getLimit();
+        if (priority == Priority.LOW) {
+            allowed = Math.max(1, (int)(allowed * LOW_PRIORITY_SHARE));
+        }
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases the permit acquired by {@link #tryAcquire} and adjusts the limit
+     * according to the latency of the request.
+     *
+     * @param priority the priority of the request (the same as passed to {@link #tryAcquire}).
+     * @param latencyNanos the time it took to process the request.
+     */
+    public void release(Priority priority, long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        if (priority == Priority.HIGH) {
+            while (true) {
+                long bits = limitBits.get();
+                double limit = Double.longBitsToDouble(bits);
+                double newLimit;
+                if (latencyNanos > latencyThresholdNanos) {
+                    newLimit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                } else if (current * 2 >= limit) {
+                    newLimit = Math.min(maxLimit, limit + 1.0 / limit);
+                } else {
+                    return;     // the limit is not being used, so there is no evidence to grow it
+                }
+                if (newLimit == limit || limitBits.compareAndSet(bits, Double.doubleToRawLongBits(newLimit))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the current limit of concurrent requests.
+     *
+     * @return the current limit.
+     */
+    public int getLimit() {
+        return (int)Double.longBitsToDouble(limitBits.get());
+    }
+
+    /**
+     * Returns the number of requests currently being processed.
+     *
+     * @return the number of acquired permits.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+/**
+ * The direction, in which the empty cell of the Fifteen game is moved.
+ *
+ * @author julius
+ */
+public enum Direction {
+    /**
+     * Move the empty cell to the top.
+     */
+    TOP(ServerHandler.JSON_MOVE_TOP, -Heuristics.SIDE),
+    /**
+     * Move the empty cell to the bottom.
+     */
+    BOTTOM(ServerHandler.JSON_MOVE_BOTTOM, Heuristics.SIDE),
+    /**
+     * Move the empty cell to the left.
+     */
+    LEFT(ServerHandler.JSON_MOVE_LEFT, -1),
+    /**
+     * Move the empty cell to the right.
+     */
+    RIGHT(ServerHandler.JSON_MOVE_RIGHT, 1);
+
+    private final String jsonName;
+    private final int offset;
+
+    // jsonName - the value of the move field in JSON.
+    // offset - the change of the index of the empty cell after the move.
+    private Direction(String jsonName, int offset) {
+        this.jsonName = jsonName;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the name of the direction as used in JSON ({@code "move"} field).
+     *
+     * @return the name of the direction.
+     */
+    public String jsonName() {
+        return jsonName;
+    }
+
+    /**
+     * Returns the direction, which cancels the move in this direction.
+     *
+     * @return the opposite direction.
+     */
+    public Direction opposite() {
+        switch (this) {
+            case TOP:
+                return BOTTOM;
+            case BOTTOM:
+                return TOP;
+            case LEFT:
+                return RIGHT;
+            default:
+                return LEFT;
+        }
+    }
+
+    /**
+     * Checks if the direction is vertical.
+     *
+     * @return true for {@link #TOP} and {@link #BOTTOM}.
+     */
+    public boolean isVertical() {
+        return this == TOP || this == BOTTOM;
+    }
+
+    /**
+     * Checks if the empty cell can be moved in this direction.
+     *
+     * @param emptyIndex the index of the empty cell in the board of 4x4 game.
+     * @return true, if the move is legal.
+     */
+    public boolean canMove(int emptyIndex) {
+        switch (this) {
+            case TOP:
+                return emptyIndex >= Heuristics.SIDE;
+            case BOTTOM:
+                return emptyIndex < Heuristics.CELLS - Heuristics.SIDE;
+            case LEFT:
+                return emptyIndex % Heuristics.SIDE != 0;
+            default:
+                return emptyIndex % Heuristics.SIDE != Heuristics.SIDE - 1;
+        }
+    }
+
+    /**
+     * Returns the index of the empty cell after the move. The move must be
+     * legal (see {@link #canMove(int)}).
+     *
+     * @param emptyIndex the index of the empty cell in the board of 4x4 game.
+     * @return the new index of the empty cell.
+     */
+    public int target(int emptyIndex) {
+        return emptyIndex + offset;
+    }
+
+    /**
+     * Returns the direction by its name as used in JSON.
+     *
+     * @param jsonName the name of the direction.
+     * @return the direction or null, if there is no direction with such name.
+     */
+    public static Direction fromJsonName(String jsonName) {
+        for (Direction direction : Direction.values()) {
+            if (direction.jsonName.equals(jsonName)) {
+                return direction;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Complete table of optimal solutions of the 3x3 (Eight) puzzle. Every board
+ * is identified by the rank of its permutation (Lehmer code), and for every
+ * board reachable from the {@link #FINAL_BOARD final state} the table stores
+ * the number of moves to solve it and the first move of an optimal solution.
+ * The table is built once by a breadth first search from the final state and
+ * may be stored to a file, which is later memory mapped, so no search is done
+ * when answering: a hint takes one lookup, and a solution takes one lookup per
+ * move.
+ * <p>
+ * Only a half of the {@value #STATES} permutations ({@value #REACHABLE_STATES})
+ * are reachable; the other half cannot be solved.
+ * <p>
+ * The moves are identified the same way as in {@link Penkiolika}: the direction,
+ * in which the empty cell is moved. The class is thread safe.
+ *
+ * @author julius
+ */
+public class EightPuzzleTable {
+
+    /**
+     * The width (and height) of the board: {@value #SIDE}.
+     */
+    public static final int SIDE = 3;
+
+    /**
+     * The number of cells of the board: {@value #CELLS}.
+     */
+    public static final int CELLS = SIDE * SIDE;
+
+    /**
+     * The number of permutations of the board (and the size of the table in bytes): {@value #STATES}.
+     */
+    public static final int STATES = 362880;
+
+    /**
+     * The number of boards, which can be solved: {@value #REACHABLE_STATES}.
+     */
+    public static final int REACHABLE_STATES = STATES / 2;
+
+    /**
+     * The board, which is considered final.
+     * <pre>
+     * {@code
+     *   1  2  3
+     *   4  5  6
+     *   7  8 <empty cell>
+     * }
+     * </pre>
+     */
+    public static final int[] FINAL_BOARD = new int[]{1,2,3,4,5,6,7,8,Penkiolika.EMPTY_CELL};
+
+    /**
+     * The move of the empty cell to the top: {@value #MOVE_TOP}.
+     */
+    public static final int MOVE_TOP = 0;
+
+    /**
+     * The move of the empty cell to the bottom: {@value #MOVE_BOTTOM}.
+     */
+    public static final int MOVE_BOTTOM = 1;
+
+    /**
+     * The move of the empty cell to the left: {@value #MOVE_LEFT}.
+     */
+    public static final int MOVE_LEFT = 2;
+
+    /**
+     * The move of the empty cell to the right: {@value #MOVE_RIGHT}.
+     */
+    public static final int MOVE_RIGHT = 3;
+
+    // The table entry of the board, which cannot be solved.
+    private static final byte UNREACHABLE = (byte)0xFF;
+    // The entry is (move << MOVE_SHIFT) | distance. The longest optimal solution
+    // has 31 moves, so the distance fits into 5 bits.
+    private static final int MOVE_SHIFT = 5;
+    private static final int DISTANCE_MASK = (1 << MOVE_SHIFT) - 1;
+
+    // FACTORIALS[i] = i!
+    private static final int[] FACTORIALS = new int[CELLS];
+
+    static {
+        FACTORIALS[0] = 1;
+        for (int i = 1; i < CELLS; i++) {
+            FACTORIALS[i] = FACTORIALS[i - 1] * i;
+        }
+    }
+
+    private final ByteBuffer table;
+
+    // table - the entries indexed by the rank of the board.
+    private EightPuzzleTable(ByteBuffer table) {
+        this.table = table;
+    }
+
+    /**
+     * Builds the table in memory by a breadth first search from the final state.
+     *
+     * @return the built table.
+     */
+    public static EightPuzzleTable generate() {
+        byte[] entries = new byte[STATES];
+        Arrays.fill(entries, UNREACHABLE);
+        int[] queue = new int[REACHABLE_STATES];
+        int head = 0;
+        int tail = 0;
+        int goal = EightPuzzleTable.rank(FINAL_BOARD);
+        entries[goal] = 0;
+        queue[tail++] = goal;
+        int[] board = new int[CELLS];
+        while (head < tail) {
+            int rank = queue[head++];
+            int distance = entries[rank] & DISTANCE_MASK;
+            EightPuzzleTable.unrank(rank, board);
+            int empty = EightPuzzleTable.emptyCellIndex(board);
+            for (int move = MOVE_TOP; move <= MOVE_RIGHT; move++) {
+                int next = EightPuzzleTable.nextEmptyCellIndex(empty, move);
+                if (next < 0) {
+                    continue;
+                }
+                EightPuzzleTable.swap(board, empty, next);
+                int neighbour = EightPuzzleTable.rank(board);
+                EightPuzzleTable.swap(board, empty, next);
+                if (entries[neighbour] == UNREACHABLE) {
+                    // The neighbour is solved by moving the empty cell back.
+                    entries[neighbour] = (byte)((EightPuzzleTable.opposite(move) << MOVE_SHIFT) | (distance + 1));
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+        return new EightPuzzleTable(ByteBuffer.wrap(entries));
+    }
+
+    /**
+     * Memory maps the table from the file created by {@link #write(Path)}.
+     *
+     * @param file the file of the table.
+     * @return the mapped table.
+     * @throws IOException if the file cannot be read or it is not a table file.
+     */
+    public static EightPuzzleTable load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != STATES) {
+                throw new IOException("The table file " + file + " should be " + STATES + " bytes long, but is " + channel.size());
+            }
+            return new EightPuzzleTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, STATES));
+        }
+    }
+
+    /**
+     * Memory maps the table from the file, if it exists. Otherwise generates the
+     * table, stores it to the file and maps it.
+     *
+     * @param file the file of the table.
+     * @return the mapped table.
+     * @throws IOException if the file cannot be read or written.
+     */
+    public static EightPuzzleTable loadOrGenerate(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            EightPuzzleTable.generate().write(file);
+        }
+        return EightPuzzleTable.load(file);
+    }
+
+    /**
+     * Stores the table to the file. The file is replaced atomically, so
+     * concurrent readers never see a partially written table.
+     *
+     * @param file the file of the table.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path file) throws IOException {
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer entries = table.duplicate();
+            entries.clear();
+            while (entries.hasRemaining()) {
+                channel.write(entries);
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the smallest number of moves needed to solve the board.
+     *
+     * @param board the 3x3 board (a permutation of numbers from 0 to 8).
+     * @return the number of moves or -1, if the board cannot be solved.
+     */
+    public int getDistance(int[] board) {
+        byte entry = table.get(EightPuzzleTable.rank(board));
+        return entry == UNREACHABLE ? -1 : entry & DISTANCE_MASK;
+    }
+
+    /**
+     * Returns the first move of an optimal solution of the board.
+     *
+     * @param board the 3x3 board (a permutation of numbers from 0 to 8).
+     * @return the move (one of {@link #MOVE_TOP}, {@link #MOVE_BOTTOM},
+     * {@link #MOVE_LEFT}, {@link #MOVE_RIGHT}) or -1, if the board is already
+     * solved or cannot be solved.
+     */
+    public int getHint(int[] board) {
+        byte entry = table.get(EightPuzzleTable.rank(board));
+        return entry == UNREACHABLE || entry == 0 ? -1 : (entry & 0xFF) >>> MOVE_SHIFT;
+    }
+
+    /**
+     * Returns an optimal solution of the board.
+     *
+     * @param board the 3x3 board (a permutation of numbers from 0 to 8).
+     * @return the moves (see {@link #getHint(int[])}) to bring the board to the
+     * final state (empty, if it is already there) or null, if the board cannot
+     * be solved.
+     */
+    public int[] solve(int[] board) {
+        int distance = this.getDistance(board);
+        if (distance < 0) {
+            return null;
+        }
+        int[] current = board.clone();
+        int[] result = new int[distance];
+        int empty = EightPuzzleTable.emptyCellIndex(current);
+        for (int i = 0; i < distance; i++) {
+            int move = (table.get(EightPuzzleTable.rank(current)) & 0xFF) >>> MOVE_SHIFT;
+            int next = EightPuzzleTable.nextEmptyCellIndex(empty, move);
+            EightPuzzleTable.swap(current, empty, next);
+            empty = next;
+            result[i] = move;
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the rank of the board: the index of its permutation in the
+     * lexicographical order of all the permutations (Lehmer code). It is done in
+     * a single pass using a bit mask of the numbers seen so far.
+     *
+     * @param board the 3x3 board.
+     * @return the rank from 0 to {@value #STATES} - 1.
+     * @throws IllegalArgumentException if the board is not a permutation of
+     * numbers from 0 to 8.
+     */
+    public static int rank(int[] board) {
+        if (board.length != CELLS) {
+            throw new IllegalArgumentException("Board size should equal to " + CELLS);
+        }
+        int seen = 0;
+        int result = 0;
+        for (int i = 0; i < CELLS; i++) {
+            int cell = board[i];
+            if (cell < 0 || cell >= CELLS || (seen & (1 << cell)) != 0) {
+                throw new IllegalArgumentException("Board should contain each number from 0 to " + (CELLS - 1) + " exactly once");
+            }
+            // The numbers smaller than this one, which are not used yet
+            int smaller = cell - Integer.bitCount(seen & ((1 << cell) - 1));
+            result += smaller * FACTORIALS[CELLS - 1 - i];
+            seen |= 1 << cell;
+        }
+        return result;
+    }
+
+    /**
+     * Builds (and stores to a file) the table of solutions of 3x3 puzzle. The
+     * only argument is the file name.
+     *
+     * @param args the command line arguments.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: " + EightPuzzleTable.class.getName() + " <table file>");
+            return;
+        }
+        long start = System.nanoTime();
+        EightPuzzleTable.generate().write(Paths.get(args[0]));
+        System.out.println("Table of " + REACHABLE_STATES + " boards written to " + args[0] + " in " +
+                (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    // Converts the rank back to the board (the inverse of rank).
+    // rank - the rank of the board.
+    // board - the array, where the board is written.
+    private static void unrank(int rank, int[] board) {
+        int unused = (1 << CELLS) - 1;
+        for (int i = 0; i < CELLS; i++) {
+            int factorial = FACTORIALS[CELLS - 1 - i];
+            int smaller = rank / factorial;
+            rank %= factorial;
+            int cell = 0;
+            // Find the unused number, which has exactly "smaller" unused numbers before it.
+            for (int remaining = unused; ; remaining &= remaining - 1) {
+                cell = Integer.numberOfTrailingZeros(remaining);
+                if (smaller-- == 0) {
+                    break;
+                }
+            }
+            board[i] = cell;
+            unused &= ~(1 << cell);
+        }
+    }
+
+    // Convenience method to find out the position of an empty cell.
+    private static int emptyCellIndex(int[] board) {
+        for (int i = 0; i < board.length; i++) {
+            if (board[i] == Penkiolika.EMPTY_CELL) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the new position of the empty cell after the move or -1, if
+    // the move is not legal.
+    private static int nextEmptyCellIndex(int empty, int move) {
+        switch (move) {
+            case MOVE_TOP:
+                return empty >= SIDE ? empty - SIDE : -1;
+            case MOVE_BOTTOM:
+                return empty < CELLS - SIDE ? empty + SIDE : -1;
+            case MOVE_LEFT:
+                return empty % SIDE != 0 ? empty - 1 : -1;
+            case MOVE_RIGHT:
+                return empty % SIDE != SIDE - 1 ? empty + 1 : -1;
+            default:
+                return -1;
+        }
+    }
+
+    // Returns the move, which cancels the provided one.
+    private static int opposite(int move) {
+        return move ^ 1;
+    }
+
+    // Convenience method to swap too cells of the board.
+    private static void swap(int[] board, int cell1, int cell2) {
+        int tmpCellValue = board[cell1];
+        board[cell1] = board[cell2];
+        board[cell2] = tmpCellValue;
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * Streaming binary archive of the games: exports the games of a handler to a
+ * file and imports them back (e.g. to migrate the games to another server or
+ * to seed a load test environment with many games). The archive is never held
+ * in memory as a whole.
+ * <p>
+ * The file starts with the header {@code int magic, int formatVersion}, which
+ * is followed by the blocks of records and ends with an empty block and the
+ * total number of records:
+ * <pre>
+ * {@code
+ *  block:  int records, int length, int crc32, byte[length] records
+ *  end:    int 0, int 0, int 0, long totalRecords
+ *  record: short idLength, byte[idLength] id (UTF-8), byte[8] board (two
+ *          cells per byte), varlong version, varlong moveCount,
+ *          long createdMillis, varlong completion (completedMillis -
+ *          createdMillis + 1 or 0, if not completed), varint startDistance
+ * }
+ * </pre>
+ * The checksum of every block is verified on import.
+ * <p>
+ * The export copies one shard of the store at a time and reads every game
+ * under its monitor only for a moment, so the requests are served meanwhile;
+ * the games changed during the export are written as they are at that moment.
+ * The blocks are written through a {@value #WRITE_BUFFER_BYTES} byte buffer
+ * to a {@link FileChannel}. The import reads the blocks on the calling thread
+ * and verifies, decodes and adds them to the handler on a pool of threads;
+ * the games are spread over the shards of the store, so the threads rarely
+ * contend.
+ *
+ * @author julius
+ */
+public final class GameArchive {
+
+    /**
+     * The first int of the archive: "P15A".
+     */
+    public static final int MAGIC = 0x50313541;
+
+    /**
+     * The version of the archive format: {@value #FORMAT_VERSION}.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * The size of the records of a block, after which the block is written:
+     * {@value #BLOCK_BYTES} bytes.
+     */
+    public static final int BLOCK_BYTES = 64 * 1024;
+
+    /**
+     * The size of the buffer of the export file: {@value #WRITE_BUFFER_BYTES} bytes.
+     */
+    public static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    // The size of the block header.
+    private static final int BLOCK_HEADER_BYTES = 4 + 4 + 4;
+    // The largest size of a record: the longest id and the longest numbers.
+    private static final int MAX_RECORD_BYTES = 2 + 0xffff + Heuristics.CELLS / 2 + 10 + 10 + 8 + 10 + 5;
+    // The largest size of the records of a block accepted on import.
+    private static final int MAX_BLOCK_BYTES = BLOCK_BYTES + MAX_RECORD_BYTES;
+    // The number of blocks read ahead per import thread.
+    private static final int BLOCKS_PER_THREAD = 2;
+
+    private GameArchive() {
+    }
+
+    /**
+     * Writes the games to the archive one by one.
+     */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer block = ByteBuffer.allocate(BLOCK_BYTES + MAX_RECORD_BYTES);
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        private final CRC32 crc = new CRC32();
+        private int blockRecords;
+        private long records;
+        // True, if writing has failed: the end of the archive is not written then.
+        private boolean failed;
+        private boolean closed;
+
+        /**
+         * Creates the archive file (replacing the existing one) and writes its
+         * header.
+         *
+         * @param file the archive file.
+         * @throws IOException if the file cannot be written.
+         */
+        public Writer(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION);
+        }
+
+        /**
+         * Writes the game. Its state is read under the monitor of the game.
+         *
+         * @param id the id of the game. Its UTF-8 form must not be longer than
+         * 65535 bytes.
+         * @param game the game.
+         * @throws IOException if the file cannot be written.
+         */
+        public void write(String id, Penkiolika game) throws IOException {
+            byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+            if (idBytes.length > 0xffff) {
+                throw new IllegalArgumentException("Game id is too long: " + idBytes.length + " bytes");
+            }
+            int[] board;
+            long version;
+            long moveCount;
+            long completedMillis;
+            int startDistance;
+            synchronized(game) {
+                board = game.getBoard();
+                version = game.getVersion();
+                moveCount = game.getMoveCount();
+                completedMillis = game.getCompletedMillis();
+                startDistance = game.getStartDistance();
+            }
+            long createdMillis = game.getCreatedMillis();
+            block.putShort((short)idBytes.length).put(idBytes);
+            for (int i = 0; i < board.length; i += 2) {
+                block.put((byte)((board[i] << 4) | board[i + 1]));
+            }
+            GameArchive.putVarLong(block, version);
+            GameArchive.putVarLong(block, moveCount);
+            block.putLong(createdMillis);
+            GameArchive.putVarLong(block, completedMillis == 0 ? 0 : completedMillis - createdMillis + 1);
+            GameArchive.putVarLong(block, startDistance);
+            blockRecords++;
+            records++;
+            if (block.position() >= BLOCK_BYTES) {
+                this.writeBlock();
+            }
+        }
+
+        /**
+         * Returns the number of games written.
+         *
+         * @return the number of games.
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * Writes the end of the archive and closes the file.
+         *
+         * @throws IOException if the file cannot be written.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (failed) {
+                    return;
+                }
+                if (blockRecords > 0) {
+                    this.writeBlock();
+                }
+                this.reserve(BLOCK_HEADER_BYTES + 8);
+                buffer.putInt(0).putInt(0).putInt(0).putLong(records);
+                this.flush();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+
+        // Moves the current block to the file buffer.
+        private void writeBlock() throws IOException {
+            crc.reset();
+            crc.update(block.array(), 0, block.position());
+            this.reserve(BLOCK_HEADER_BYTES + block.position());
+            buffer.putInt(blockRecords).putInt(block.position()).putInt((int)crc.getValue());
+            block.flip();
+            buffer.put(block);
+            block.clear();
+            blockRecords = 0;
+        }
+
+        // Flushes the file buffer, if it has no room for the provided number of bytes.
+        private void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                this.flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException ioe) {
+                failed = true;
+                throw ioe;
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Exports all the games of the handler to the archive file.
+     *
+     * @param handler the handler.
+     * @param file the archive file (replaced, if it exists).
+     * @return the number of exported games.
+     * @throws IOException if the file cannot be written.
+     */
+    public static long export(ServerHandler handler, Path file) throws IOException {
+        try (Writer writer = new Writer(file)) {
+            for (GameStore.Shard shard : handler.getGameShards()) {
+                for (Map.Entry<String, Penkiolika> entry : shard.snapshot().entrySet()) {
+                    writer.write(entry.getKey(), entry.getValue());
+                }
+            }
+            return writer.getRecords();
+        }
+    }
+
+    /**
+     * Imports the games of the archive file to the handler. The games replace
+     * the games of the handler with the same ids, unless those are newer
+     * versions of the same games. The listeners of the handler are notified
+     * about the imported games.
+     *
+     * @param handler the handler.
+     * @param file the archive file.
+     * @param threads the number of threads decoding and adding the games.
+     * @return the number of imported games.
+     * @throws IOException if the file cannot be read or it is not a valid
+     * archive (e.g. a checksum does not match). The games of the blocks read
+     * before the error stay imported.
+     */
+    public static long load(ServerHandler handler, Path file, int threads) throws IOException {
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "penkiolika-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int maxPending = threads * BLOCKS_PER_THREAD;
+        Semaphore pending = new Semaphore(maxPending);
+        AtomicLong loaded = new AtomicLong(0);
+        AtomicReference<IOException> failure = new AtomicReference<IOException>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES + 8);
+            header.limit(8);
+            GameArchive.readFully(channel, header);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a game archive of format version " + FORMAT_VERSION + ": " + file);
+            }
+            long blockIndex = 0;
+            long total = -1;
+            while (failure.get() == null) {
+                header.clear();
+                header.limit(BLOCK_HEADER_BYTES);
+                GameArchive.readFully(channel, header);
+                header.flip();
+                int records = header.getInt();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (records == 0 && length == 0) {
+                    header.clear();
+                    header.limit(8);
+                    GameArchive.readFully(channel, header);
+                    header.flip();
+                    total = header.getLong();
+                    break;
+                }
+                if (records < 0 || length < 0 || length > MAX_BLOCK_BYTES) {
+                    throw new IOException("Malformed block " + blockIndex + ": records=" + records + ", bytes=" + length);
+                }
+                ByteBuffer block = ByteBuffer.allocate(length);
+                GameArchive.readFully(channel, block);
+                block.flip();
+                long index = blockIndex++;
+                pending.acquire();
+                pool.execute(() -> {
+                    try {
+                        loaded.addAndGet(GameArchive.loadBlock(handler, block, records, checksum, index));
+                    } catch (IOException ioe) {
+                        failure.compareAndSet(null, ioe);
+                    } finally {
+                        pending.release();
+                    }
+                });
+            }
+            // Waits for the blocks being loaded
+            pending.acquire(maxPending);
+            if (failure.get() == null && total != loaded.get()) {
+                throw new IOException("Archive has " + total + " games, but " + loaded.get() + " were read");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing the games", ie);
+        } finally {
+            pool.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return loaded.get();
+    }
+
+    /**
+     * Generates the archive of randomly shuffled games with ids from 1 to the
+     * provided count, e.g. to seed a load test environment. The games are
+     * written as they are generated.
+     *
+     * @param file the archive file (replaced, if it exists).
+     * @param count the number of games.
+     * @param shuffles the number of moves shuffling every game.
+     * @return the number of generated games.
+     * @throws IOException if the file cannot be written.
+     */
+    public static long generate(Path file, long count, int shuffles) throws IOException {
+        try (Writer writer = new Writer(file)) {
+            for (long id = 1; id <= count; id++) {
+                Penkiolika game = new Penkiolika();
+                game.shuffle(shuffles);
+                writer.write(Long.toString(id), game);
+            }
+            return writer.getRecords();
+        }
+    }
+
+    /**
+     * Generates the archive of randomly shuffled games (see {@link #generate}).
+     *
+     * @param args the archive file, the number of games and, optionally, the
+     * number of moves shuffling every game (default {@value Penkiolika#DEFAULT_SHUFFLE_TIMES}).
+     * @throws IOException if the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: GameArchive <file> <games> [<shuffle moves>]");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        long count = GameArchive.generate(Paths.get(args[0]), Long.parseLong(args[1]),
+                args.length > 2 ? Integer.parseInt(args[2]) : Penkiolika.DEFAULT_SHUFFLE_TIMES);
+        System.out.println("Generated " + count + " games to " + args[0] + " in " +
+                (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    // Verifies the block, decodes its games and adds them to the handler.
+    // Returns the number of games.
+    private static int loadBlock(ServerHandler handler, ByteBuffer block, int records, int checksum, long index)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(block.array(), 0, block.limit());
+        if ((int)crc.getValue() != checksum) {
+            throw new IOException("Checksum of block " + index + " does not match");
+        }
+        try {
+            for (int i = 0; i < records; i++) {
+                byte[] idBytes = new byte[block.getShort() & 0xffff];
+                block.get(idBytes);
+                int[] board = new int[Heuristics.CELLS];
+                for (int cell = 0; cell < board.length; cell += 2) {
+                    int packed = block.get() & 0xff;
+                    board[cell] = packed >>> 4;
+                    board[cell + 1] = packed & 0x0f;
+                }
+                long version = GameArchive.getVarLong(block);
+                long moveCount = GameArchive.getVarLong(block);
+                long createdMillis = block.getLong();
+                long completion = GameArchive.getVarLong(block);
+                int startDistance = (int)GameArchive.getVarLong(block);
+                handler.applyGame(new String(idBytes, StandardCharsets.UTF_8), new Penkiolika(board, version,
+                        moveCount, createdMillis, completion == 0 ? 0 : createdMillis + completion - 1, startDistance));
+            }
+        } catch (RuntimeException re) {
+            throw new IOException("Malformed block " + index + ": " + re.getMessage(), re);
+        }
+        if (block.hasRemaining()) {
+            throw new IOException("Malformed block " + index + ": " + block.remaining() + " bytes after the last game");
+        }
+        return records;
+    }
+
+    // Reads until the buffer is full.
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Archive ends unexpectedly");
+            }
+        }
+    }
+
+    // Writes the non negative number 7 bits per byte, the lowest bits first.
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    // Reads the number written by putVarLong.
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long)(b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed number");
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+/**
+ * Listener of the changes of the games managed by {@link ServerHandler}. The
+ * methods are called on the request processing thread right after the change,
+ * while holding the monitor of the game, therefore they must be fast and must
+ * not block.
+ *
+ * @author julius
+ */
+public interface GameListener {
+
+    /**
+     * Called when a new game is created (or added to the handler at its creation).
+     *
+     * @param id the id of the game.
+     * @param game the created game.
+     */
+    void gameCreated(String id, Penkiolika game);
+
+    /**
+     * Called when a move is made in the game.
+     *
+     * @param id the id of the game.
+     * @param game the game after the move.
+     * @param distanceBefore the Manhattan distance of the game before the move.
+     */
+    void gameMoved(String id, Penkiolika game, int distanceBefore);
+
+    /**
+     * Called when a move brings the game to the final state for the first time
+     * (see {@link Penkiolika#getCompletedMillis()}). It is called after
+     * {@link #gameMoved} for the same move.
+     *
+     * @param id the id of the game.
+     * @param game the completed game.
+     */
+    void gameFinished(String id, Penkiolika game);
+
+    /**
+     * Called when the game is deleted.
+     *
+     * @param id the id of the game.
+     * @param game the deleted game.
+     */
+    void gameDeleted(String id, Penkiolika game);
+}
@@ -0,0 +1,163 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * Aggregate statistics of the games. The statistics are maintained incrementally
+ * as the games are created, moved, completed and deleted, so reading them never
+ * requires scanning all the games. All the counters are striped {@link LongAdder}s,
+ * so updates from many request threads don't contend.
+ * <p>
+ * A session of the game lasts from its creation until it is completed or deleted,
+ * whichever happens first.
+ *
+ * @author julius
+ */
+public class GameStatistics implements GameListener {
+
+    /**
+     * The live games field name of the statistics JSON: {@value #JSON_LIVE_GAMES}.
+     */
+    public static final String JSON_LIVE_GAMES = "liveGames";
+
+    /**
+     * The created games field name of the statistics JSON: {@value #JSON_GAMES_CREATED}.
+     */
+    public static final String JSON_GAMES_CREATED = "gamesCreated";
+
+    /**
+     * The completed games field name of the statistics JSON: {@value #JSON_GAMES_COMPLETED}.
+     */
+    public static final String JSON_GAMES_COMPLETED = "gamesCompleted";
+
+    /**
+     * The deleted games field name of the statistics JSON: {@value #JSON_GAMES_DELETED}.
+     */
+    public static final String JSON_GAMES_DELETED = "gamesDeleted";
+
+    /**
+     * The moves field name of the statistics JSON: {@value #JSON_MOVES}.
+     */
+    public static final String JSON_MOVES = "moves";
+
+    /**
+     * The moves to completion histogram field name of the statistics JSON:
+     * {@value #JSON_MOVES_TO_COMPLETION}.
+     */
+    public static final String JSON_MOVES_TO_COMPLETION = "movesToCompletion";
+
+    /**
+     * The average session length field name of the statistics JSON:
+     * {@value #JSON_AVERAGE_SESSION_MILLIS}.
+     */
+    public static final String JSON_AVERAGE_SESSION_MILLIS = "averageSessionMillis";
+
+    /**
+     * The distance histogram field name of the statistics JSON: {@value #JSON_DISTANCE_HISTOGRAM}.
+     * It is the histogram of the Manhattan distances of all live games.
+     */
+    public static final String JSON_DISTANCE_HISTOGRAM = "distanceHistogram";
+
+    /**
+     * The width of the buckets of the distance histogram: {@value #DISTANCE_BUCKET_WIDTH}.
+     */
+    public static final int DISTANCE_BUCKET_WIDTH = 4;
+
+    private final LongAdder liveGames = new LongAdder();
+    private final LongAdder gamesCreated = new LongAdder();
+    private final LongAdder gamesCompleted = new LongAdder();
+    private final LongAdder gamesDeleted = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder sessions = new LongAdder();
+    private final LongAdder sessionMillis = new LongAdder();
+    private final BucketHistogram movesToCompletion =
+            new BucketHistogram(10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000);
+    // The largest Manhattan distance of the 4x4 board is below 64.
+    private final BucketHistogram distances = BucketHistogram.linear(DISTANCE_BUCKET_WIDTH, 64 / DISTANCE_BUCKET_WIDTH);
+
+    @Override
+    public void gameCreated(String id, Penkiolika game) {
+        liveGames.increment();
+        gamesCreated.increment();
+        distances.add(game.getManhattanDistance());
+    }
+
+    @Override
+    public void gameMoved(String id, Penkiolika game, int distanceBefore) {
+        moves.increment();
+        distances.replace(distanceBefore, game.getManhattanDistance());
+    }
+
+    @Override
+    public void gameFinished(String id, Penkiolika game) {
+        gamesCompleted.increment();
+        movesToCompletion.add(game.getMoveCount());
+        this.endSession(game, game.getCompletedMillis());
+    }
+
+    @Override
+    public void gameDeleted(String id, Penkiolika game) {
+        liveGames.decrement();
+        gamesDeleted.increment();
+        distances.remove(game.getManhattanDistance());
+        if (game.getCompletedMillis() == 0) {    // otherwise the session has ended on completion
+            this.endSession(game, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Returns the number of live (created and not yet deleted) games.
+     *
+     * @return the number of live games.
+     */
+    public long getLiveGames() {
+        return liveGames.sum();
+    }
+
+    /**
+     * Returns the number of completed games.
+     *
+     * @return the number of completed games.
+     */
+    public long getGamesCompleted() {
+        return gamesCompleted.sum();
+    }
+
+    /**
+     * Returns the average length of completed or deleted game sessions.
+     *
+     * @return the average session length in milliseconds or 0, if no session has ended.
+     */
+    public double getAverageSessionMillis() {
+        long count = sessions.sum();
+        return count == 0 ? 0 : (double)sessionMillis.sum() / count;
+    }
+
+    /**
+     * Returns the statistics as JSON object.
+     *
+     * @return the JSON object with all the statistics.
+     */
+    public JSONObject toJson() {
+        JSONObject result = new JSONObject();
+        result.put(JSON_LIVE_GAMES, liveGames.sum());
+        result.put(JSON_GAMES_CREATED, gamesCreated.sum());
+        result.put(JSON_GAMES_COMPLETED, gamesCompleted.sum());
+        result.put(JSON_GAMES_DELETED, gamesDeleted.sum());
+        result.put(JSON_MOVES, moves.sum());
+        result.put(JSON_MOVES_TO_COMPLETION, movesToCompletion.toJson());
+        result.put(JSON_AVERAGE_SESSION_MILLIS, this.getAverageSessionMillis());
+        result.put(JSON_DISTANCE_HISTOGRAM, distances.toJson());
+        return result;
+    }
+
+    // Records the end of the game session.
+    private void endSession(Penkiolika game, long nowMillis) {
+        sessions.increment();
+        sessionMillis.add(Math.max(0, nowMillis - game.getCreatedMillis()));
+    }
+}
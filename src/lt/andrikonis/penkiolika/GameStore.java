@@ -0,0 +1,360 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Store of the games split into shards. The shard of the game is chosen by
+ * the hash of its id. Every shard owns its map, its lock, its idle times and
+ * its counters, so the operations over all the games (expiry, snapshots) are
+ * done one shard at a time and never stall the whole store, and the load of
+ * every shard can be observed separately (see {@link #toJson()}).
+ * <p>
+ * The lock of the shard is shared by the changes of the shard (adding and
+ * removing the games, which the map itself makes thread safe) and is held
+ * exclusively only while the shard is snapshotted. The games themselves are
+ * synchronized by their own monitors, as before.
+ * <p>
+ * The class is thread safe.
+ *
+ * @author julius
+ */
+public class GameStore {
+
+    /**
+     * Default number of shards: {@value #DEFAULT_SHARDS}.
+     */
+    public static final int DEFAULT_SHARDS = 16;
+
+    /**
+     * The shards field name of the store JSON: {@value #JSON_SHARDS}.
+     */
+    public static final String JSON_SHARDS = "shards";
+
+    /**
+     * The shard index field name of the shard JSON: {@value #JSON_SHARD}.
+     */
+    public static final String JSON_SHARD = "shard";
+
+    /**
+     * The field name of the shard JSON of the number of games: {@value #JSON_GAMES}.
+     */
+    public static final String JSON_GAMES = "games";
+
+    /**
+     * The field name of the shard JSON of the number of reads: {@value #JSON_READS}.
+     */
+    public static final String JSON_READS = "reads";
+
+    /**
+     * The field name of the shard JSON of the number of reads of missing games:
+     * {@value #JSON_MISSES}.
+     */
+    public static final String JSON_MISSES = "misses";
+
+    /**
+     * The field name of the shard JSON of the number of added games: {@value #JSON_ADDED}.
+     */
+    public static final String JSON_ADDED = "added";
+
+    /**
+     * The field name of the shard JSON of the number of removed games: {@value #JSON_REMOVED}.
+     */
+    public static final String JSON_REMOVED = "removed";
+
+    /**
+     * The field name of the shard JSON of the number of expired games: {@value #JSON_EXPIRED}.
+     */
+    public static final String JSON_EXPIRED = "expired";
+
+    /**
+     * A single shard of the store.
+     */
+    public static class Shard {
+        private final int index;
+        private final ConcurrentHashMap<String, Entry> games = new ConcurrentHashMap<String, Entry>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder added = new LongAdder();
+        private final LongAdder removed = new LongAdder();
+        private final LongAdder expired = new LongAdder();
+
+        // index - the index of the shard in the store.
+        Shard(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Returns the index of this shard in the store.
+         *
+         * @return the index.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the number of games in this shard.
+         *
+         * @return the number of games.
+         */
+        public int size() {
+            return games.size();
+        }
+
+        /**
+         * Copies the games of this shard. No game is added to or removed from
+         * the shard while it is copied, but the games themselves may change
+         * (they should be read under their own monitors).
+         *
+         * @return the map of ids to games (in no particular order).
+         */
+        public Map<String, Penkiolika> snapshot() {
+            lock.writeLock().lock();
+            try {
+                Map<String, Penkiolika> result = new LinkedHashMap<String, Penkiolika>(games.size() * 2);
+                for (Map.Entry<String, Entry> entry : games.entrySet()) {
+                    result.put(entry.getKey(), entry.getValue().game);
+                }
+                return result;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Converts the counters of this shard to JSON: {@code {"shard":<index>,
+         * "games":<games>,"reads":<reads>,"misses":<misses>,"added":<added>,
+         * "removed":<removed>,"expired":<expired>}}. The counters are counted
+         * since the store was created.
+         *
+         * @return the JSON of the shard.
+         */
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put(JSON_SHARD, index);
+            json.put(JSON_GAMES, games.size());
+            json.put(JSON_READS, reads.sum());
+            json.put(JSON_MISSES, misses.sum());
+            json.put(JSON_ADDED, added.sum());
+            json.put(JSON_REMOVED, removed.sum());
+            json.put(JSON_EXPIRED, expired.sum());
+            return json;
+        }
+
+        private Penkiolika get(String id, boolean touch) {
+            Entry entry = games.get(id);
+            if (touch) {
+                reads.increment();
+                if (entry == null) {
+                    misses.increment();
+                } else {
+                    entry.touchedMillis = System.currentTimeMillis();
+                }
+            }
+            return entry == null ? null : entry.game;
+        }
+
+        private Penkiolika put(String id, Penkiolika game) {
+            lock.readLock().lock();
+            try {
+                Entry previous = games.put(id, new Entry(game));
+                if (previous == null) {
+                    added.increment();      // a replaced game is not counted as added
+                }
+                return previous == null ? null : previous.game;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private Penkiolika remove(String id) {
+            lock.readLock().lock();
+            try {
+                Entry entry = games.remove(id);
+                if (entry == null) {
+                    return null;
+                }
+                removed.increment();
+                return entry.game;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private int expireIdle(long touchedBefore, BiConsumer<String, Penkiolika> onExpired) {
+            int count = 0;
+            lock.readLock().lock();
+            try {
+                Iterator<Map.Entry<String, Entry>> it = games.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, Entry> mapEntry = it.next();
+                    Entry entry = mapEntry.getValue();
+                    // Removed only if it has not been replaced meanwhile
+                    if (entry.touchedMillis < touchedBefore && games.remove(mapEntry.getKey(), entry)) {
+                        expired.increment();
+                        count++;
+                        onExpired.accept(mapEntry.getKey(), entry.game);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return count;
+        }
+    }
+
+    // The game and the time it was last read.
+    private static class Entry {
+        private final Penkiolika game;
+        private volatile long touchedMillis = System.currentTimeMillis();
+
+        Entry(Penkiolika game) {
+            this.game = game;
+        }
+    }
+
+    private final Shard[] shards;
+    private final int mask;
+
+    /**
+     * Creates the store with {@value #DEFAULT_SHARDS} shards.
+     */
+    public GameStore() {
+        this(DEFAULT_SHARDS);
+    }
+
+    /**
+     * Creates the store.
+     *
+     * @param shardCount the number of shards (rounded up to a power of 2).
+     */
+    public GameStore(int shardCount) {
+        int size = Integer.highestOneBit(Math.max(1, shardCount) * 2 - 1);
+        this.shards = new Shard[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard(i);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the game and marks it as used (see {@link #expireIdle}).
+     *
+     * @param id the id of the game.
+     * @return the game or null, if there is no such game.
+     */
+    public Penkiolika get(String id) {
+        return this.shardOf(id).get(id, true);
+    }
+
+    /**
+     * Returns the game without marking it as used and without counting the
+     * read. It is meant for the background operations, like listing.
+     *
+     * @param id the id of the game.
+     * @return the game or null, if there is no such game.
+     */
+    public Penkiolika peek(String id) {
+        return this.shardOf(id).get(id, false);
+    }
+
+    /**
+     * Adds the game or replaces the game with the same id. Only an added game
+     * is counted in the {@value #JSON_ADDED} counter of the shard.
+     *
+     * @param id the id of the game.
+     * @param game the game.
+     * @return the game previously stored with the same id or null, if none.
+     */
+    public Penkiolika put(String id, Penkiolika game) {
+        return this.shardOf(id).put(id, game);
+    }
+
+    /**
+     * Removes the game.
+     *
+     * @param id the id of the game.
+     * @return the removed game or null, if there is no such game.
+     */
+    public Penkiolika remove(String id) {
+        return this.shardOf(id).remove(id);
+    }
+
+    /**
+     * Returns the number of games in the store.
+     *
+     * @return the number of games.
+     */
+    public int size() {
+        int result = 0;
+        for (Shard shard : shards) {
+            result += shard.size();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the shards of the store.
+     *
+     * @return the unmodifiable list of the shards.
+     */
+    public List<Shard> getShards() {
+        List<Shard> result = new ArrayList<Shard>(shards.length);
+        Collections.addAll(result, shards);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Removes the games, which have not been read (see {@link #get(String)})
+     * or added for the provided time. The shards are processed one by one.
+     *
+     * @param maxIdleMillis the longest time the game may stay unused.
+     * @param onExpired called for every removed game with its id.
+     * @return the number of removed games.
+     */
+    public int expireIdle(long maxIdleMillis, BiConsumer<String, Penkiolika> onExpired) {
+        long touchedBefore = System.currentTimeMillis() - maxIdleMillis;
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.expireIdle(touchedBefore, onExpired);
+        }
+        return count;
+    }
+
+    /**
+     * Converts the counters of all the shards to JSON: {@code {"shards":[<shard>,...]}}.
+     * For the format of the shard see {@link Shard#toJson()}.
+     *
+     * @return the JSON of the store.
+     */
+    public JSONObject toJson() {
+        JSONArray array = new JSONArray();
+        for (Shard shard : shards) {
+            array.put(shard.toJson());
+        }
+        JSONObject json = new JSONObject();
+        json.put(JSON_SHARDS, array);
+        return json;
+    }
+
+    // Returns the shard of the game.
+    private Shard shardOf(String id) {
+        int hash = id.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & mask];
+    }
+}
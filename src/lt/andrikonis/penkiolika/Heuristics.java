@@ -0,0 +1,278 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+/**
+ * Heuristic estimates of the number of moves needed to bring the Fifteen game
+ * board to the {@link Penkiolika#FINAL_BOARD final state}. All the estimates
+ * are admissible: they never exceed the actual number of moves.
+ *
+ * @author julius
+ */
+public class Heuristics {
+
+    /**
+     * The width (and height) of the board: {@value #SIDE}.
+     */
+    public static final int SIDE = 4;
+
+    /**
+     * The number of cells of the board: {@value #CELLS}.
+     */
+    public static final int CELLS = SIDE * SIDE;
+
+    // MANHATTAN[tile][cell] - the Manhattan distance of the tile in the cell
+    // from its place in the final board. It is 0 for the empty cell.
+    private static final int[][] MANHATTAN = new int[CELLS][CELLS];
+
+    // Base of the line key: the code of every cell of a line is the position
+    // of the tile in the line in the final board (0 to SIDE-1) or SIDE, if
+    // the tile doesn't belong to the line.
+    private static final int LINE_KEY_BASE = SIDE + 1;
+    // LINE_CONFLICTS[key] - the smallest number of tiles, which must be removed
+    // from the line, so that the remaining tiles, which belong to the line,
+    // are in the correct order.
+    private static final byte[] LINE_CONFLICTS;
+
+    static {
+        int keys = 1;
+        for (int i = 0; i < SIDE; i++) {
+            keys *= LINE_KEY_BASE;
+        }
+        LINE_CONFLICTS = new byte[keys];
+        int[] goals = new int[SIDE];
+        int[] longest = new int[SIDE];
+        for (int key = 0; key < keys; key++) {
+            // The tiles to keep are the longest increasing subsequence of the goal positions
+            int count = 0;
+            int best = 0;
+            for (int i = 0, rest = key; i < SIDE; i++, rest /= LINE_KEY_BASE) {
+                int goal = rest % LINE_KEY_BASE;
+                if (goal < SIDE) {
+                    goals[count] = goal;
+                    longest[count] = 1;
+                    for (int j = 0; j < count; j++) {
+                        if (goals[j] < goal && longest[j] + 1 > longest[count]) {
+                            longest[count] = longest[j] + 1;
+                        }
+                    }
+                    best = Math.max(best, longest[count]);
+                    count++;
+                }
+            }
+            LINE_CONFLICTS[key] = (byte)(count - best);
+        }
+        for (int tile = 1; tile < CELLS; tile++) {
+            int goal = tile - 1;
+            for (int cell = 0; cell < CELLS; cell++) {
+                MANHATTAN[tile][cell] = Math.abs(cell / SIDE - goal / SIDE) + Math.abs(cell % SIDE - goal % SIDE);
+            }
+        }
+    }
+
+    /**
+     * The heuristic estimates of a single board: the Manhattan distance, the
+     * linear conflicts of every line and the number of misplaced tiles. It
+     * lets the estimates, which are kept up to date by the game, be passed to
+     * the {@link Solver} instead of calculating them again.
+     * <p>
+     * The class is immutable.
+     */
+    public static final class Estimate {
+        private final int manhattan;
+        private final int[] rowConflicts;
+        private final int[] columnConflicts;
+        private final int misplaced;
+
+        // manhattan - the Manhattan distance.
+        // rowConflicts, columnConflicts - the number of conflicting tiles of
+        //                                 every row and column (copied).
+        // misplaced - the number of misplaced tiles.
+        Estimate(int manhattan, int[] rowConflicts, int[] columnConflicts, int misplaced) {
+            this.manhattan = manhattan;
+            this.rowConflicts = rowConflicts.clone();
+            this.columnConflicts = columnConflicts.clone();
+            this.misplaced = misplaced;
+        }
+
+        /**
+         * Calculates the estimates of the board.
+         *
+         * @param board the board of the Fifteen game (as returned by {@link Penkiolika#getBoard()}).
+         * @return the estimates.
+         */
+        public static Estimate of(int[] board) {
+            int[] rows = new int[SIDE];
+            int[] columns = new int[SIDE];
+            for (int line = 0; line < SIDE; line++) {
+                rows[line] = Heuristics.rowConflicts(board, line);
+                columns[line] = Heuristics.columnConflicts(board, line);
+            }
+            return new Estimate(Heuristics.manhattanDistance(board), rows, columns, Heuristics.misplacedTiles(board));
+        }
+
+        /**
+         * Returns the Manhattan distance (see {@link Heuristics#manhattanDistance(int[])}).
+         *
+         * @return the Manhattan distance.
+         */
+        public int getManhattanDistance() {
+            return manhattan;
+        }
+
+        /**
+         * Returns the linear conflict (see {@link Heuristics#linearConflict(int[])}).
+         *
+         * @return the linear conflict.
+         */
+        public int getLinearConflict() {
+            int result = 0;
+            for (int line = 0; line < SIDE; line++) {
+                result += rowConflicts[line] + columnConflicts[line];
+            }
+            return 2 * result;
+        }
+
+        /**
+         * Returns the sum of the Manhattan distance and the linear conflict:
+         * the best of these estimates of the number of moves to the final state.
+         *
+         * @return the estimated number of moves.
+         */
+        public int getDistance() {
+            return manhattan + this.getLinearConflict();
+        }
+
+        /**
+         * Returns the number of misplaced tiles (see {@link Heuristics#misplacedTiles(int[])}).
+         *
+         * @return the number of misplaced tiles.
+         */
+        public int getMisplacedTiles() {
+            return misplaced;
+        }
+
+        // Returns the number of conflicting tiles of the row.
+        int rowConflicts(int row) {
+            return rowConflicts[row];
+        }
+
+        // Returns the number of conflicting tiles of the column.
+        int columnConflicts(int column) {
+            return columnConflicts[column];
+        }
+    }
+
+    private Heuristics() {
+        // only static methods
+    }
+
+    /**
+     * Calculates the Manhattan distance of the board: the sum of the distances
+     * (in rows and columns) of all the tiles from their places in the final board.
+     *
+     * @param board the board of the Fifteen game (as returned by {@link Penkiolika#getBoard()}).
+     * @return the Manhattan distance.
+     */
+    public static int manhattanDistance(int[] board) {
+        int result = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            result += MANHATTAN[board[cell]][cell];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Manhattan distance of a single tile from its place in the final board.
+     *
+     * @param tile the tile (from 1 to 15, or {@value Penkiolika#EMPTY_CELL} for the empty cell).
+     * @param cell the index of the cell, where the tile is.
+     * @return the distance of the tile (0 for the empty cell).
+     */
+    public static int manhattanDistance(int tile, int cell) {
+        return MANHATTAN[tile][cell];
+    }
+
+    /**
+     * Counts the tiles, which are not in their places in the final board (the
+     * empty cell is not counted).
+     *
+     * @param board the board of the Fifteen game (as returned by {@link Penkiolika#getBoard()}).
+     * @return the number of misplaced tiles.
+     */
+    public static int misplacedTiles(int[] board) {
+        int result = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            result += Heuristics.misplaced(board[cell], cell);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if a single tile is not in its place in the final board.
+     *
+     * @param tile the tile (from 1 to 15, or {@value Penkiolika#EMPTY_CELL} for the empty cell).
+     * @param cell the index of the cell, where the tile is.
+     * @return 1, if the tile is misplaced, 0 if it is in its place or it is the empty cell.
+     */
+    public static int misplaced(int tile, int cell) {
+        return tile != Penkiolika.EMPTY_CELL && tile - 1 != cell ? 1 : 0;
+    }
+
+    /**
+     * Calculates the linear conflict of the board. Two tiles are in a linear
+     * conflict, if they are in the same line (row or column), both belong to
+     * that line in the final board, but are in the reverse order. Each tile,
+     * which has to be removed from the line to resolve its conflicts, has to
+     * make at least two moves more than counted by the Manhattan distance.
+     * Therefore the sum of the Manhattan distance and the linear conflict is
+     * still admissible.
+     *
+     * @param board the board of the Fifteen game (as returned by {@link Penkiolika#getBoard()}).
+     * @return the linear conflict (the number of extra moves).
+     */
+    public static int linearConflict(int[] board) {
+        int result = 0;
+        for (int line = 0; line < SIDE; line++) {
+            result += Heuristics.rowConflicts(board, line) + Heuristics.columnConflicts(board, line);
+        }
+        return 2 * result;
+    }
+
+    /**
+     * Returns the number of tiles, which must be removed from the row to
+     * resolve its linear conflicts.
+     *
+     * @param board the board of the Fifteen game.
+     * @param row the index of the row (from 0 to {@value #SIDE} - 1).
+     * @return the number of conflicting tiles.
+     */
+    static int rowConflicts(int[] board, int row) {
+        int key = 0;
+        for (int column = SIDE - 1; column >= 0; column--) {
+            int tile = board[row * SIDE + column];
+            int goal = tile - 1;
+            key = key * LINE_KEY_BASE + (tile != Penkiolika.EMPTY_CELL && goal / SIDE == row ? goal % SIDE : SIDE);
+        }
+        return LINE_CONFLICTS[key];
+    }
+
+    /**
+     * Returns the number of tiles, which must be removed from the column to
+     * resolve its linear conflicts.
+     *
+     * @param board the board of the Fifteen game.
+     * @param column the index of the column (from 0 to {@value #SIDE} - 1).
+     * @return the number of conflicting tiles.
+     */
+    static int columnConflicts(int[] board, int column) {
+        int key = 0;
+        for (int row = SIDE - 1; row >= 0; row--) {
+            int tile = board[row * SIDE + column];
+            int goal = tile - 1;
+            key = key * LINE_KEY_BASE + (tile != Penkiolika.EMPTY_CELL && goal % SIDE == column ? goal / SIDE : SIDE);
+        }
+        return LINE_CONFLICTS[key];
+    }
+}
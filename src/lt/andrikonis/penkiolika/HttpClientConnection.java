@@ -0,0 +1,359 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A minimal HTTP/1.1 client, which keeps one persistent (keep-alive) connection
+ * to a server. It is not thread safe: each thread should use its own connection.
+ * <p>
+ * The standard {@link java.net.HttpURLConnection} is not used, because it does
+ * not allow {@code PATCH} requests and because it adds considerable overhead
+ * per request, which distorts the measurements of the load generator.
+ *
+ * @author julius
+ */
+public class HttpClientConnection implements Closeable {
+
+    /**
+     * Default timeout in milliseconds for connecting and reading: {@value #DEFAULT_TIMEOUT_MILLIS}.
+     */
+    public static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    // The current connection or null, if it is not (yet) opened.
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+    // True, once the current request has been written to the connection.
+    private boolean requestSent;
+    // True, if the last response on the current connection had no contents.
+    private boolean lastResponseEmpty;
+
+    /**
+     * Creates a connection to the provided server. The actual connection is
+     * opened lazily, on the first request.
+     *
+     * @param host the host name of the server.
+     * @param port the port of the server.
+     */
+    public HttpClientConnection(String host, int port) {
+        this(host, port, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a connection to the provided server. The actual connection is
+     * opened lazily, on the first request.
+     *
+     * @param host the host name of the server.
+     * @param port the port of the server.
+     * @param timeoutMillis connect and read timeout in milliseconds.
+     */
+    public HttpClientConnection(String host, int port, int timeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sends the request and waits for the response. If the reused connection
+     * turns out to be closed by the server, it is reopened once and the request
+     * is repeated, but only if the request could not have reached the server
+     * (it failed before it was written) or if repeating it is harmless (its
+     * method is idempotent, see {@link #isIdempotent(String)}). Otherwise the
+     * server might have already made the change, so it is not made twice and
+     * the exception is thrown.
+     *
+     * @param method the method of the request.
+     * @param path the path (and query) of the request.
+     * @param headers additional request headers or null, if there are none.
+     * @param body the contents of the request or null, if the request has no contents.
+     * @return the response to the request.
+     *
+     * @throws IOException if input output exception occurs while sending the
+     * request or reading the response. The connection is closed in such case.
+     */
+    public Response request(String method, String path, Map<String, String> headers, byte[] body) throws IOException {
+        boolean reused = (socket != null);
+        try {
+            return this.doRequest(method, path, headers, body);
+        } catch (IOException ioe) {
+            this.close();
+            if (!reused || (requestSent && !HttpClientConnection.isIdempotent(method))) {
+                throw ioe;
+            }
+        }
+        // A stale keep-alive connection: retry once on a fresh one
+        try {
+            return this.doRequest(method, path, headers, body);
+        } catch (IOException ioe) {
+            this.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Checks if the request method is idempotent (RFC 7231, section 4.2.2): the
+     * repeated request has the same effect on the server as a single one.
+     *
+     * @param method the method of the request.
+     * @return true for GET, HEAD, PUT, DELETE and OPTIONS.
+     */
+    public static boolean isIdempotent(String method) {
+        return method.equals("GET") || method.equals("HEAD") || method.equals("PUT") ||
+                method.equals("DELETE") || method.equals("OPTIONS");
+    }
+
+    // Sends the request and reads the response on the current connection
+    // opening it first, if needed. Parameters are the same as of request method.
+    private Response doRequest(String method, String path, Map<String, String> headers, byte[] body) throws IOException {
+        requestSent = false;
+        if (socket != null && lastResponseEmpty && !HttpClientConnection.isIdempotent(method)) {
+            // The HttpServer of the JDK closes the connection after a response
+            // without contents without telling so, and this request cannot be
+            // repeated, if it fails on such connection: use a new one
+            this.close();
+        }
+        if (socket == null) {
+            this.open();
+        }
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        sb.append("Host: ").append(host).append(':').append(port).append("\r\n");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        if (body != null) {
+            sb.append("Content-Type: application/json\r\n");
+            sb.append("Content-Length: ").append(body.length).append("\r\n");
+        } else if (!method.equals("GET") && !method.equals("DELETE")) {
+            sb.append("Content-Length: 0\r\n");
+        }
+        sb.append("\r\n");
+        out.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body != null) {
+            out.write(body);
+        }
+        out.flush();
+        requestSent = true;
+        return this.readResponse(method);
+    }
+
+    // Opens the socket to the server.
+    private void open() throws IOException {
+        Socket s = new Socket();
+        s.setTcpNoDelay(true);
+        s.setSoTimeout(timeoutMillis);
+        s.connect(new InetSocketAddress(host, port), timeoutMillis);
+        socket = s;
+        in = new BufferedInputStream(s.getInputStream(), 8192);
+        out = new BufferedOutputStream(s.getOutputStream(), 8192);
+    }
+
+    // Reads the response (status line, headers and contents) from the connection.
+    private Response readResponse(String method) throws IOException {
+        String statusLine = this.readLine();
+        int firstSpace = statusLine.indexOf(' ');
+        if (firstSpace < 0 || statusLine.length() < firstSpace + 4) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+        int status;
+        try {
+            status = Integer.parseInt(statusLine.substring(firstSpace + 1, firstSpace + 4));
+        } catch (NumberFormatException nfe) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+        Map<String, String> responseHeaders = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while (!(line = this.readLine()).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                responseHeaders.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+        byte[] body;
+        String contentLength = responseHeaders.get("Content-Length");
+        if (method.equals("HEAD") || status == 204 || status == 304 || (status >= 100 && status < 200)) {
+            body = new byte[0];
+        } else if ("chunked".equalsIgnoreCase(responseHeaders.get("Transfer-Encoding"))) {
+            body = this.readChunked();
+        } else if (contentLength != null) {
+            body = this.readFully(Integer.parseInt(contentLength));
+        } else {
+            body = this.readToEnd();
+        }
+        lastResponseEmpty = (body.length == 0);
+        if ("close".equalsIgnoreCase(responseHeaders.get("Connection"))) {
+            this.close();
+        }
+        return new Response(status, Collections.unmodifiableMap(responseHeaders), body);
+    }
+
+    // Reads one CRLF terminated line (without the line terminator).
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder(64);
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = sb.length();
+                if (length > 0 && sb.charAt(length - 1) == '\r') {
+                    sb.setLength(length - 1);
+                }
+                return sb.toString();
+            }
+            sb.append((char)c);
+        }
+        throw new EOFException("Connection closed by the server");
+    }
+
+    // Reads exactly the provided number of bytes.
+    private byte[] readFully(int length) throws IOException {
+        byte[] result = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(result, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException("Connection closed by the server");
+            }
+            offset += read;
+        }
+        return result;
+    }
+
+    // Reads the contents sent using chunked transfer encoding.
+    private byte[] readChunked() throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        while (true) {
+            String sizeLine = this.readLine();
+            int extension = sizeLine.indexOf(';');
+            if (extension >= 0) {
+                sizeLine = sizeLine.substring(0, extension);
+            }
+            int size = Integer.parseInt(sizeLine.trim(), 16);
+            if (size == 0) {
+                while (!this.readLine().isEmpty()) {
+                    // trailers are ignored
+                }
+                return result.toByteArray();
+            }
+            result.write(this.readFully(size));
+            this.readLine();
+        }
+    }
+
+    // Reads the contents until the server closes the connection.
+    private byte[] readToEnd() throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            result.write(buffer, 0, read);
+        }
+        this.close();
+        return result.toByteArray();
+    }
+
+    /**
+     * Closes the connection. The next request will open a new one.
+     */
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                // nothing more can be done
+            }
+            socket = null;
+            in = null;
+            out = null;
+        }
+    }
+
+    /**
+     * The response received from the server.
+     */
+    public static class Response {
+        private final int statusCode;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        /**
+         * Creates the response object.
+         *
+         * @param statusCode the HTTP status code of the response.
+         * @param headers the headers of the response (case insensitive keys).
+         * @param body the contents of the response.
+         */
+        public Response(int statusCode, Map<String, String> headers, byte[] body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * Returns the HTTP status code of the response.
+         *
+         * @return the status code.
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Returns the value of the response header.
+         *
+         * @param name the name of the header (case insensitive).
+         * @return the value of the header or null, if there is no such header.
+         */
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        /**
+         * Returns all the headers of the response.
+         *
+         * @return unmodifiable map of headers with case insensitive keys.
+         */
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * Returns the contents of the response.
+         *
+         * @return the contents of the response (possibly empty, but never null).
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Returns the contents of the response as a string.
+         *
+         * @return the contents decoded as UTF-8.
+         */
+        public String getBodyString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size log-linear histogram of non-negative values (usually latencies in
+ * nanoseconds). Each power of two range is split into {@value #SUB_BUCKETS_HALF}
+ * linear buckets, so the relative error of the reported values is below 2%.
+ * Values below {@value #SUB_BUCKETS} are recorded exactly.
+ * <p>
+ * The histogram is not thread safe. The intended use is one histogram per
+ * thread, which are {@link #add added} together after the measurement.
+ *
+ * @author julius
+ */
+public class LatencyHistogram {
+
+    // Number of bits of the value, which are kept precisely.
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /**
+     * Number of buckets, where values are recorded exactly: {@value #SUB_BUCKETS}.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets in each subsequent power of two range: {@value #SUB_BUCKETS_HALF}.
+     */
+    public static final int SUB_BUCKETS_HALF = SUB_BUCKETS / 2;
+
+    // Largest shift needed for the positive long value.
+    private static final int MAX_SHIFT = 63 - SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[SUB_BUCKETS + MAX_SHIFT * SUB_BUCKETS_HALF];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records one value.
+     *
+     * @param value the value to record. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[LatencyHistogram.indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Adds all the values recorded in the provided histogram to this one.
+     *
+     * @param other the histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Removes all the recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the smallest recorded value.
+     *
+     * @return the smallest recorded value or 0, if no values were recorded.
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the largest recorded value or 0, if no values were recorded.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the arithmetic mean of the recorded values.
+     *
+     * @return the mean or 0, if no values were recorded.
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double)sum / totalCount;
+    }
+
+    /**
+     * Returns the value, which is greater or equal to the provided percentage
+     * of recorded values. The returned value is the upper bound of the bucket
+     * (but never greater than the largest recorded value).
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the value at the percentile or 0, if no values were recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double bounded = Math.min(Math.max(percentile, 0.0), 100.0);
+        long countAtPercentile = Math.max(1, (long)Math.ceil(bounded / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= countAtPercentile) {
+                return Math.min(LatencyHistogram.highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    // Returns the index of the bucket for the provided (non-negative) value.
+    private static int indexOf(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        int mantissa = (int)(value >>> shift);
+        if (shift == 0) {
+            return mantissa;
+        }
+        return SUB_BUCKETS + (shift - 1) * SUB_BUCKETS_HALF + (mantissa - SUB_BUCKETS_HALF);
+    }
+
+    // Returns the largest value, which falls into the bucket of provided index.
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS_HALF + 1;
+        long mantissa = (index - SUB_BUCKETS) % SUB_BUCKETS_HALF + SUB_BUCKETS_HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
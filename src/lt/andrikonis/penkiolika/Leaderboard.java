@@ -0,0 +1,293 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Leaderboard of the best game completions: the fewest moves and the shortest
+ * wall time from creation to completion. Both are kept overall and for each
+ * {@link Difficulty difficulty} of the game.
+ * <p>
+ * Each top list is a bounded {@link ConcurrentSkipListSet}, so recording a
+ * completion takes O(log K) time and never takes a lock. A completion, which is
+ * worse than the worst one on the full list, is rejected without modifying it.
+ *
+ * @author julius
+ */
+public class Leaderboard implements GameListener {
+
+    /**
+     * The difficulty of the game. It is determined by the Manhattan distance of
+     * the starting board (see {@link Penkiolika#getStartDistance()}).
+     */
+    public enum Difficulty {
+        /**
+         * Starting distance below {@value Leaderboard#MEDIUM_DISTANCE}.
+         */
+        EASY,
+        /**
+         * Starting distance from {@value Leaderboard#MEDIUM_DISTANCE} and below
+         * {@value Leaderboard#HARD_DISTANCE}.
+         */
+        MEDIUM,
+        /**
+         * Starting distance from {@value Leaderboard#HARD_DISTANCE}.
+         */
+        HARD;
+
+        /**
+         * Returns the difficulty of the game with provided starting distance.
+         *
+         * @param startDistance the Manhattan distance of the starting board.
+         * @return the difficulty.
+         */
+        public static Difficulty of(int startDistance) {
+            if (startDistance < MEDIUM_DISTANCE) {
+                return EASY;
+            } else if (startDistance < HARD_DISTANCE) {
+                return MEDIUM;
+            } else {
+                return HARD;
+            }
+        }
+
+        /**
+         * Returns the name of the difficulty as used in JSON.
+         *
+         * @return the lower case name.
+         */
+        public String jsonName() {
+            return this.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * The smallest starting distance of the medium game: {@value #MEDIUM_DISTANCE}.
+     */
+    public static final int MEDIUM_DISTANCE = 20;
+
+    /**
+     * The smallest starting distance of the hard game: {@value #HARD_DISTANCE}.
+     */
+    public static final int HARD_DISTANCE = 35;
+
+    /**
+     * Default number of completions kept on each list: {@value #DEFAULT_SIZE}.
+     */
+    public static final int DEFAULT_SIZE = 10;
+
+    /**
+     * The overall category field name of the leaderboard JSON: {@value #JSON_OVERALL}.
+     * Other categories are named by the difficulty.
+     */
+    public static final String JSON_OVERALL = "overall";
+
+    /**
+     * The fewest moves list field name of the leaderboard JSON: {@value #JSON_FEWEST_MOVES}.
+     */
+    public static final String JSON_FEWEST_MOVES = "fewestMoves";
+
+    /**
+     * The shortest time list field name of the leaderboard JSON: {@value #JSON_FASTEST}.
+     */
+    public static final String JSON_FASTEST = "fastest";
+
+    /**
+     * The moves field name of the completion JSON: {@value #JSON_MOVES}.
+     */
+    public static final String JSON_MOVES = "moves";
+
+    /**
+     * The time field name of the completion JSON: {@value #JSON_MILLIS}.
+     */
+    public static final String JSON_MILLIS = "millis";
+
+    /**
+     * The difficulty field name of the completion JSON: {@value #JSON_DIFFICULTY}.
+     */
+    public static final String JSON_DIFFICULTY = "difficulty";
+
+    // Orders the completions by moves, then by time, then by the order of recording.
+    private static final Comparator<Completion> BY_MOVES = (c1, c2) -> {
+        int result = Long.compare(c1.moves, c2.moves);
+        if (result == 0) {
+            result = Long.compare(c1.millis, c2.millis);
+        }
+        return result != 0 ? result : Long.compare(c1.sequence, c2.sequence);
+    };
+
+    // Orders the completions by time, then by moves, then by the order of recording.
+    private static final Comparator<Completion> BY_TIME = (c1, c2) -> {
+        int result = Long.compare(c1.millis, c2.millis);
+        if (result == 0) {
+            result = Long.compare(c1.moves, c2.moves);
+        }
+        return result != 0 ? result : Long.compare(c1.sequence, c2.sequence);
+    };
+
+    private final int size;
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final TopList overallByMoves;
+    private final TopList overallByTime;
+    private final EnumMap<Difficulty, TopList> byMoves = new EnumMap<Difficulty, TopList>(Difficulty.class);
+    private final EnumMap<Difficulty, TopList> byTime = new EnumMap<Difficulty, TopList>(Difficulty.class);
+
+    /**
+     * Creates the leaderboard keeping {@value #DEFAULT_SIZE} completions on each list.
+     */
+    public Leaderboard() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates the leaderboard.
+     *
+     * @param size the number of completions kept on each list.
+     */
+    public Leaderboard(int size) {
+        this.size = size;
+        this.overallByMoves = new TopList(BY_MOVES);
+        this.overallByTime = new TopList(BY_TIME);
+        for (Difficulty difficulty : Difficulty.values()) {
+            byMoves.put(difficulty, new TopList(BY_MOVES));
+            byTime.put(difficulty, new TopList(BY_TIME));
+        }
+    }
+
+    @Override
+    public void gameCreated(String id, Penkiolika game) {
+        // only completions are recorded
+    }
+
+    @Override
+    public void gameMoved(String id, Penkiolika game, int distanceBefore) {
+        // only completions are recorded
+    }
+
+    @Override
+    public void gameFinished(String id, Penkiolika game) {
+        this.record(id, game.getMoveCount(), game.getCompletedMillis() - game.getCreatedMillis(),
+                Difficulty.of(game.getStartDistance()));
+    }
+
+    @Override
+    public void gameDeleted(String id, Penkiolika game) {
+        // completions stay on the leaderboard after the game is deleted
+    }
+
+    /**
+     * Records the completion of the game.
+     *
+     * @param id the id of the game.
+     * @param moves the number of moves made to complete the game.
+     * @param millis the time from creation to completion of the game.
+     * @param difficulty the difficulty of the game.
+     */
+    public void record(String id, long moves, long millis, Difficulty difficulty) {
+        Completion completion = new Completion(id, moves, Math.max(0, millis), difficulty, sequence.incrementAndGet());
+        overallByMoves.offer(completion);
+        overallByTime.offer(completion);
+        byMoves.get(difficulty).offer(completion);
+        byTime.get(difficulty).offer(completion);
+    }
+
+    /**
+     * Returns the leaderboard as JSON object. It has {@value #JSON_OVERALL} field
+     * and a field for each difficulty. Each of them contains {@value #JSON_FEWEST_MOVES}
+     * and {@value #JSON_FASTEST} arrays of completions
+     * {@code {"id":<id>,"moves":<moves>,"millis":<millis>,"difficulty":<difficulty>}}
+     * ordered from the best.
+     *
+     * @return the JSON object.
+     */
+    public JSONObject toJson() {
+        JSONObject result = new JSONObject();
+        result.put(JSON_OVERALL, Leaderboard.categoryJson(overallByMoves, overallByTime));
+        for (Difficulty difficulty : Difficulty.values()) {
+            result.put(difficulty.jsonName(), Leaderboard.categoryJson(byMoves.get(difficulty), byTime.get(difficulty)));
+        }
+        return result;
+    }
+
+    // Forms the JSON object of one category of the leaderboard.
+    private static JSONObject categoryJson(TopList moves, TopList time) {
+        JSONObject result = new JSONObject();
+        result.put(JSON_FEWEST_MOVES, moves.toJson());
+        result.put(JSON_FASTEST, time.toJson());
+        return result;
+    }
+
+    // One completion of the game.
+    private static class Completion {
+        private final String id;
+        private final long moves;
+        private final long millis;
+        private final Difficulty difficulty;
+        // The order of recording. It makes the completions with equal results distinct.
+        private final long sequence;
+
+        Completion(String id, long moves, long millis, Difficulty difficulty, long sequence) {
+            this.id = id;
+            this.moves = moves;
+            this.millis = millis;
+            this.difficulty = difficulty;
+            this.sequence = sequence;
+        }
+
+        JSONObject toJson() {
+            JSONObject result = new JSONObject();
+            result.put(ServerHandler.JSON_ID, id);
+            result.put(JSON_MOVES, moves);
+            result.put(JSON_MILLIS, millis);
+            result.put(JSON_DIFFICULTY, difficulty.jsonName());
+            return result;
+        }
+    }
+
+    // Bounded concurrent list of the best completions. It may briefly hold
+    // more than the limit, while concurrent offers trim it.
+    private class TopList {
+        private final ConcurrentSkipListSet<Completion> completions;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        TopList(Comparator<Completion> comparator) {
+            this.completions = new ConcurrentSkipListSet<Completion>(comparator);
+        }
+
+        void offer(Completion completion) {
+            if (count.get() >= size) {
+                Completion worst = completions.isEmpty() ? null : completions.last();
+                if (worst != null && completions.comparator().compare(completion, worst) > 0) {
+                    return;     // not good enough, the list is not modified at all
+                }
+            }
+            completions.add(completion);
+            if (count.incrementAndGet() > size) {
+                if (completions.pollLast() != null) {
+                    count.decrementAndGet();
+                }
+            }
+        }
+
+        JSONArray toJson() {
+            JSONArray result = new JSONArray();
+            int added = 0;
+            for (Completion completion : completions) {
+                if (added++ >= size) {
+                    break;
+                }
+                result.put(completion.toJson());
+            }
+            return result;
+        }
+    }
+}
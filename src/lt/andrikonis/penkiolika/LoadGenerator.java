@@ -0,0 +1,658 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Load generator for the game server. It simulates many players, each of which
+ * plays its own game by sending create, move, get and delete requests in
+ * configurable proportions, and reports the throughput and the latency
+ * percentiles of each kind of request.
+ * <p>
+ * Two modes are supported:
+ * <ul>
+ *  <li>{@link Mode#OPEN open loop} - the requests are sent at a constant rate
+ *      regardless of how fast the server responds. The latency is measured
+ *      from the moment the request was scheduled to be sent, not from the moment
+ *      it was actually sent. Thus the time, which the request spent waiting
+ *      for the previous (slow) request, is also counted (coordinated omission
+ *      correction).
+ *  <li>{@link Mode#CLOSED closed loop} - each thread sends the next request
+ *      as soon as it receives the response to the previous one. This measures
+ *      the maximal throughput of the server.
+ * </ul>
+ *
+ * If no host is provided, the game server is started locally for the duration
+ * of the test. With {@code --workers=0} (the default) it processes requests on
+ * its dispatcher thread; otherwise it is started the same way as {@link Server#main}
+ * does, with the provided number of worker threads and admission control.
+ * <p>
+ * The options are passed as {@code --<name>=<value>} command line arguments,
+ * for example:
+ * <pre>
+ * {@code
+ *  java lt.andrikonis.penkiolika.LoadGenerator --mode=open --rate=5000 --threads=16
+ *      --players=1000 --duration=30 --warmup=5 --mix=create:1,move:6,get:3,delete:1
+ * }
+ * </pre>
+ *
+ * @author julius
+ */
+public class LoadGenerator {
+
+    /**
+     * The mode of the load generation.
+     */
+    public enum Mode {
+        /**
+         * Requests are sent at a constant rate (coordinated omission corrected).
+         */
+        OPEN,
+        /**
+         * Each thread sends requests back to back.
+         */
+        CLOSED
+    }
+
+    /**
+     * The kind of request sent by a simulated player.
+     */
+    public enum Operation {
+        /**
+         * Create a new game.
+         */
+        CREATE,
+        /**
+         * Make a random move in the player's game.
+         */
+        MOVE,
+        /**
+         * Retrieve the player's game.
+         */
+        GET,
+        /**
+         * Delete the player's game.
+         */
+        DELETE
+    }
+
+    /**
+     * Default port of the locally started server: {@value #DEFAULT_PORT}.
+     */
+    public static final int DEFAULT_PORT = 8090;
+
+    /**
+     * Default number of sending threads: {@value #DEFAULT_THREADS}.
+     */
+    public static final int DEFAULT_THREADS = 8;
+
+    /**
+     * Default number of simulated players: {@value #DEFAULT_PLAYERS}.
+     */
+    public static final int DEFAULT_PLAYERS = 100;
+
+    /**
+     * Default request rate per second of the open loop mode: {@value #DEFAULT_RATE}.
+     */
+    public static final double DEFAULT_RATE = 1000;
+
+    /**
+     * Default duration of the measurement in seconds: {@value #DEFAULT_DURATION_SECONDS}.
+     */
+    public static final int DEFAULT_DURATION_SECONDS = 10;
+
+    /**
+     * Default duration of the warm-up in seconds: {@value #DEFAULT_WARMUP_SECONDS}.
+     * Responses received during the warm-up are not measured.
+     */
+    public static final int DEFAULT_WARMUP_SECONDS = 2;
+
+    /**
+     * Default request mix: {@value #DEFAULT_MIX}.
+     */
+    public static final String DEFAULT_MIX = "create:1,move:6,get:3,delete:1";
+
+    // The percentiles, which are reported.
+    private static final double[] REPORTED_PERCENTILES = new double[]{50, 90, 99, 99.9, 99.99};
+
+    // The bodies of the move requests.
+    private static final byte[][] MOVE_BODIES = new byte[][]{
+        LoadGenerator.moveBody(ServerHandler.JSON_MOVE_LEFT),
+        LoadGenerator.moveBody(ServerHandler.JSON_MOVE_RIGHT),
+        LoadGenerator.moveBody(ServerHandler.JSON_MOVE_TOP),
+        LoadGenerator.moveBody(ServerHandler.JSON_MOVE_BOTTOM)
+    };
+
+    private String host = null;
+    private int port = DEFAULT_PORT;
+    private int workers = 0;
+    private Mode mode = Mode.CLOSED;
+    private int threads = DEFAULT_THREADS;
+    private int players = DEFAULT_PLAYERS;
+    private double rate = DEFAULT_RATE;
+    private int durationSeconds = DEFAULT_DURATION_SECONDS;
+    private int warmupSeconds = DEFAULT_WARMUP_SECONDS;
+    private final EnumMap<Operation, Integer> mix = LoadGenerator.parseMix(DEFAULT_MIX);
+
+    /**
+     * Runs the load generator.
+     *
+     * @param args options in the form {@code --<name>=<value>}. Supported names
+     * are {@code host}, {@code port}, {@code workers}, {@code mode} ({@code open}
+     * or {@code closed}), {@code threads}, {@code players}, {@code rate},
+     * {@code duration}, {@code warmup} and {@code mix}.
+     *
+     * @throws IOException if the local server cannot be started.
+     * @throws InterruptedException if interrupted while waiting for the load to complete.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadGenerator generator = new LoadGenerator();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Option --<name>=<value> expected, and " + arg + " received");
+            }
+            generator.setOption(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        generator.run().print();
+    }
+
+    /**
+     * Sets the option of the load generator by its name.
+     *
+     * @param name the name of the option (as in {@link #main}).
+     * @param value the value of the option.
+     */
+    public void setOption(String name, String value) {
+        switch (name) {
+            case "host":
+                this.setHost(value);
+                break;
+            case "port":
+                this.setPort(Integer.parseInt(value));
+                break;
+            case "workers":
+                this.setWorkers(Integer.parseInt(value));
+                break;
+            case "mode":
+                this.setMode(Mode.valueOf(value.toUpperCase(Locale.ROOT)));
+                break;
+            case "threads":
+                this.setThreads(Integer.parseInt(value));
+                break;
+            case "players":
+                this.setPlayers(Integer.parseInt(value));
+                break;
+            case "rate":
+                this.setRate(Double.parseDouble(value));
+                break;
+            case "duration":
+                this.setDurationSeconds(Integer.parseInt(value));
+                break;
+            case "warmup":
+                this.setWarmupSeconds(Integer.parseInt(value));
+                break;
+            case "mix":
+                this.setMix(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + name);
+        }
+    }
+
+    /**
+     * Sets the host of the server under test. If it is null (the default),
+     * the game server is started locally.
+     *
+     * @param host the host of the server or null.
+     */
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Sets the port of the server under test.
+     *
+     * @param port the port of the server.
+     */
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Sets the number of worker threads of the locally started server.
+     *
+     * @param workers the number of worker threads or 0, if the requests should
+     * be processed by the dispatcher thread of the server.
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Sets the mode of the load generation.
+     *
+     * @param mode the mode.
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Sets the number of threads sending the requests.
+     *
+     * @param threads the number of threads (at least 1).
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the number of simulated players. Each player plays its own game.
+     * The players are distributed evenly among the threads.
+     *
+     * @param players the number of players (at least 1).
+     */
+    public void setPlayers(int players) {
+        if (players < 1) {
+            throw new IllegalArgumentException("At least one player is needed");
+        }
+        this.players = players;
+    }
+
+    /**
+     * Sets the total request rate per second. It is used in open loop mode only.
+     *
+     * @param rate the number of requests per second.
+     */
+    public void setRate(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        this.rate = rate;
+    }
+
+    /**
+     * Sets the duration of the measurement.
+     *
+     * @param durationSeconds the duration in seconds.
+     */
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * Sets the duration of the warm-up, which precedes the measurement.
+     *
+     * @param warmupSeconds the duration in seconds.
+     */
+    public void setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+    }
+
+    /**
+     * Sets the relative weights of the operations.
+     *
+     * @param mix comma separated list of {@code <operation>:<weight>} pairs,
+     * for example {@value #DEFAULT_MIX}. Operations not in the list get weight 0;
+     * the total weight must be positive.
+     */
+    public void setMix(String mix) {
+        EnumMap<Operation, Integer> parsed = LoadGenerator.parseMix(mix);
+        this.mix.clear();
+        this.mix.putAll(parsed);
+    }
+
+    /**
+     * Runs the load and returns the measurements.
+     *
+     * @return the report of the run.
+     *
+     * @throws IOException if the local server cannot be started.
+     * @throws InterruptedException if interrupted while waiting for the load to complete.
+     */
+    public Report run() throws IOException, InterruptedException {
+        HttpServer localServer = null;
+        String targetHost = host;
+        if (targetHost == null) {
+            if (workers > 0) {
+                localServer = Server.start(port, ServerHandler.BASE_PATH,
+                        new AdmissionControlHandler(new ServerHandler(), workers),
+                        Server.newBoundedExecutor(workers, Server.DEFAULT_QUEUE_CAPACITY));
+            } else {
+                localServer = Server.start(port, ServerHandler.BASE_PATH, new ServerHandler());
+            }
+            targetHost = "localhost";
+        }
+        try {
+            long start = System.nanoTime();
+            long measureStart = start + warmupSeconds * 1000000000L;
+            long end = measureStart + durationSeconds * 1000000000L;
+            List<Worker> workers = new ArrayList<Worker>(threads);
+            List<Thread> workerThreads = new ArrayList<Thread>(threads);
+            for (int i = 0; i < threads; i++) {
+                int workerPlayers = players / threads + (i < players % threads ? 1 : 0);
+                Worker worker = new Worker(i, new HttpClientConnection(targetHost, port),
+                        Math.max(1, workerPlayers), start, measureStart, end);
+                Thread thread = new Thread(worker, "load-generator-" + i);
+                workers.add(worker);
+                workerThreads.add(thread);
+                thread.start();
+            }
+            Report report = new Report(mode, durationSeconds);
+            for (int i = 0; i < threads; i++) {
+                workerThreads.get(i).join();
+                report.add(workers.get(i));
+            }
+            return report;
+        } finally {
+            if (localServer != null) {
+                localServer.stop(0);
+            }
+        }
+    }
+
+    // Chooses a random operation according to the mix.
+    private Operation chooseOperation(ThreadLocalRandom random, int totalWeight) {
+        int r = random.nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            r -= entry.getValue();
+            if (r < 0) {
+                return entry.getKey();
+            }
+        }
+        return Operation.GET;
+    }
+
+    // Parses the operation mix. For the format see setMix.
+    private static EnumMap<Operation, Integer> parseMix(String mix) {
+        EnumMap<Operation, Integer> result = new EnumMap<Operation, Integer>(Operation.class);
+        int totalWeight = 0;
+        for (String pair : mix.split(",")) {
+            String[] elems = pair.trim().split(":");
+            if (elems.length != 2) {
+                throw new IllegalArgumentException("<operation>:<weight> expected, and " + pair + " received");
+            }
+            int weight = Integer.parseInt(elems[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight must not be negative: " + pair);
+            }
+            result.put(Operation.valueOf(elems[0].trim().toUpperCase(Locale.ROOT)), weight);
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Total weight of the operation mix must be positive: " + mix);
+        }
+        return result;
+    }
+
+    // Forms the body of the move request.
+    private static byte[] moveBody(String move) {
+        JSONObject json = new JSONObject();
+        json.put(ServerHandler.JSON_MOVE, move);
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // One sending thread. It owns its players, connection and histograms, so
+    // no synchronization is needed during the measurement.
+    private class Worker implements Runnable {
+        private final HttpClientConnection connection;
+        // The ids of the games of this worker's players (null, if the player has no game).
+        private final String[] gameIds;
+        private final long start;
+        private final long measureStart;
+        private final long end;
+        // Interval between two consecutive requests of this worker in open loop mode.
+        private final long intervalNanos;
+        private final EnumMap<Operation, LatencyHistogram> histograms =
+                new EnumMap<Operation, LatencyHistogram>(Operation.class);
+        private final EnumMap<Operation, long[]> statusCounts = new EnumMap<Operation, long[]>(Operation.class);
+        private long ioErrors;
+
+        Worker(int index, HttpClientConnection connection, int players, long start, long measureStart, long end) {
+            this.connection = connection;
+            this.gameIds = new String[players];
+            this.intervalNanos = (long)(1000000000.0 * threads / rate);
+            // Workers are phase shifted, so that the total rate is even
+            this.start = start + intervalNanos * index / threads;
+            this.measureStart = measureStart;
+            this.end = end;
+            for (Operation operation : Operation.values()) {
+                histograms.put(operation, new LatencyHistogram());
+                statusCounts.put(operation, new long[6]);
+            }
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int totalWeight = 0;
+            for (int weight : mix.values()) {
+                totalWeight += weight;
+            }
+            long intended = start;
+            int player = 0;
+            try {
+                while (true) {
+                    if (mode == Mode.OPEN) {
+                        long now = System.nanoTime();
+                        while (now < intended) {
+                            LockSupport.parkNanos(intended - now);
+                            now = System.nanoTime();
+                        }
+                    } else {
+                        intended = System.nanoTime();
+                    }
+                    if (intended >= end) {
+                        break;
+                    }
+                    Operation operation = (gameIds[player] == null)
+                            ? Operation.CREATE
+                            : LoadGenerator.this.chooseOperation(random, totalWeight);
+                    int status = this.execute(operation, player, random);
+                    long latency = System.nanoTime() - intended;
+                    if (intended >= measureStart) {
+                        histograms.get(operation).record(latency);
+                        if (status < 0) {
+                            ioErrors++;
+                        } else {
+                            statusCounts.get(operation)[Math.min(status / 100, 5)]++;
+                        }
+                    }
+                    player = (player + 1) % gameIds.length;
+                    intended += intervalNanos;
+                }
+            } finally {
+                connection.close();
+            }
+        }
+
+        // Executes the operation on behalf of the player. Returns the HTTP status
+        // of the response or -1 if input output exception occured.
+        private int execute(Operation operation, int player, ThreadLocalRandom random) {
+            String gamePath = ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/";
+            try {
+                HttpClientConnection.Response response;
+                switch (operation) {
+                    case CREATE:
+                        response = connection.request("POST", gamePath, null, null);
+                        if (response.getStatusCode() == 201) {
+                            gameIds[player] = this.readId(response);
+                        }
+                        break;
+                    case MOVE:
+                        response = connection.request("PATCH", gamePath + gameIds[player], null,
+                                MOVE_BODIES[random.nextInt(MOVE_BODIES.length)]);
+                        break;
+                    case GET:
+                        response = connection.request("GET", gamePath + gameIds[player], null, null);
+                        break;
+                    default:
+                        response = connection.request("DELETE", gamePath + gameIds[player], null, null);
+                        gameIds[player] = null;
+                        break;
+                }
+                if (response.getStatusCode() == 404) {
+                    gameIds[player] = null;
+                }
+                return response.getStatusCode();
+            } catch (IOException ioe) {
+                return -1;
+            }
+        }
+
+        // Reads the game id from the response to the create request.
+        private String readId(HttpClientConnection.Response response) {
+            try {
+                return new JSONObject(response.getBodyString()).getString(ServerHandler.JSON_ID);
+            } catch (JSONException jsone) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The results of the load generator run.
+     */
+    public static class Report {
+        private final Mode mode;
+        private final int durationSeconds;
+        private final EnumMap<Operation, LatencyHistogram> histograms =
+                new EnumMap<Operation, LatencyHistogram>(Operation.class);
+        private final EnumMap<Operation, long[]> statusCounts = new EnumMap<Operation, long[]>(Operation.class);
+        private final LatencyHistogram total = new LatencyHistogram();
+        private long ioErrors;
+
+        // Creates an empty report.
+        private Report(Mode mode, int durationSeconds) {
+            this.mode = mode;
+            this.durationSeconds = durationSeconds;
+            for (Operation operation : Operation.values()) {
+                histograms.put(operation, new LatencyHistogram());
+                statusCounts.put(operation, new long[6]);
+            }
+        }
+
+        // Adds the measurements of the worker to the report.
+        private void add(Worker worker) {
+            for (Operation operation : Operation.values()) {
+                histograms.get(operation).add(worker.histograms.get(operation));
+                total.add(worker.histograms.get(operation));
+                long[] counts = statusCounts.get(operation);
+                long[] workerCounts = worker.statusCounts.get(operation);
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += workerCounts[i];
+                }
+            }
+            ioErrors += worker.ioErrors;
+        }
+
+        /**
+         * Returns the latency histogram (in nanoseconds) of the operation.
+         *
+         * @param operation the operation.
+         * @return the histogram of the operation.
+         */
+        public LatencyHistogram getHistogram(Operation operation) {
+            return histograms.get(operation);
+        }
+
+        /**
+         * Returns the latency histogram (in nanoseconds) of all the operations.
+         *
+         * @return the histogram of all the operations.
+         */
+        public LatencyHistogram getTotalHistogram() {
+            return total;
+        }
+
+        /**
+         * Returns the number of responses of the operation with the provided
+         * status class.
+         *
+         * @param operation the operation.
+         * @param statusClass the first digit of HTTP status (from 1 to 5).
+         * @return the number of responses.
+         */
+        public long getStatusCount(Operation operation, int statusClass) {
+            return statusCounts.get(operation)[statusClass];
+        }
+
+        /**
+         * Returns the number of requests, which failed with input output exception.
+         *
+         * @return the number of failed requests.
+         */
+        public long getIoErrors() {
+            return ioErrors;
+        }
+
+        /**
+         * Returns the measured throughput.
+         *
+         * @return the number of responses per second.
+         */
+        public double getThroughput() {
+            return durationSeconds == 0 ? 0 : (double)total.getTotalCount() / durationSeconds;
+        }
+
+        /**
+         * Prints the report to the standard output.
+         */
+        public void print() {
+            System.out.println(String.format(Locale.ROOT, "Mode=%s, duration=%ds, requests=%d, throughput=%.1f req/s, io errors=%d",
+                    mode, durationSeconds, total.getTotalCount(), this.getThroughput(), ioErrors));
+            StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "%-8s %9s %6s %6s %6s %9s", "op", "count", "2xx", "4xx", "5xx", "mean"));
+            for (double percentile : REPORTED_PERCENTILES) {
+                header.append(String.format(Locale.ROOT, " %9s", "p" + LoadGenerator.formatPercentile(percentile)));
+            }
+            header.append(String.format(Locale.ROOT, " %9s", "max"));
+            System.out.println(header + "   (latencies in microseconds)");
+            for (Operation operation : Operation.values()) {
+                this.printLine(operation.name().toLowerCase(Locale.ROOT), histograms.get(operation), statusCounts.get(operation));
+            }
+            long[] totalCounts = new long[6];
+            for (long[] counts : statusCounts.values()) {
+                for (int i = 0; i < counts.length; i++) {
+                    totalCounts[i] += counts[i];
+                }
+            }
+            this.printLine("total", total, totalCounts);
+        }
+
+        // Prints one line of the report table.
+        private void printLine(String name, LatencyHistogram histogram, long[] counts) {
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%-8s %9d %6d %6d %6d %9.1f",
+                    name, histogram.getTotalCount(), counts[2], counts[4], counts[5], histogram.getMean() / 1000.0));
+            for (double percentile : REPORTED_PERCENTILES) {
+                line.append(String.format(Locale.ROOT, " %9.1f", histogram.getValueAtPercentile(percentile) / 1000.0));
+            }
+            line.append(String.format(Locale.ROOT, " %9.1f", histogram.getMax() / 1000.0));
+            System.out.println(line);
+        }
+    }
+
+    // Formats the percentile without unnecessary trailing zeros.
+    private static String formatPercentile(double percentile) {
+        if (percentile == Math.rint(percentile)) {
+            return Long.toString((long)percentile);
+        }
+        return Double.toString(percentile);
+    }
+}
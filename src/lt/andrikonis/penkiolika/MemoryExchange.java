@@ -0,0 +1,183 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONObject;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+/**
+ * The request passed to a handler in memory, without the network, and its
+ * response (see {@link WarmUp}). The exchange may be {@link #reset() reset}
+ * and passed again, so that repeating the same request allocates nothing
+ * but what the handler allocates.
+ *
+ * @author julius
+ */
+final class MemoryExchange extends HttpExchange {
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress("localhost", 0);
+
+    private final String method;
+    private final URI uri;
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+    private final ByteArrayInputStream request;
+    private final ByteArrayOutputStream response = new ByteArrayOutputStream();
+    private InputStream requestBody;
+    private OutputStream responseBody;
+    private int responseCode = -1;
+
+    /**
+     * Creates the exchange of the request.
+     *
+     * @param method the method of the request.
+     * @param uri the URI of the request.
+     * @param body the contents of the request (empty, if there is none).
+     */
+    MemoryExchange(String method, URI uri, byte[] body) {
+        this.method = method;
+        this.uri = uri;
+        this.request = new ByteArrayInputStream(body);
+        this.requestBody = request;
+        this.responseBody = response;
+    }
+
+    /**
+     * Prepares the exchange to be passed to the handler again: the contents
+     * of the request is read from the start and the response is cleared. The
+     * headers of the request are kept.
+     */
+    void reset() {
+        request.reset();
+        requestBody = request;
+        response.reset();
+        responseBody = response;
+        responseHeaders.clear();
+        responseCode = -1;
+    }
+
+    /**
+     * Returns the contents of the response as a string.
+     *
+     * @return the contents.
+     */
+    String getResponseString() {
+        return new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the contents of the response as JSON.
+     *
+     * @return the JSON object.
+     */
+    JSONObject getJson() {
+        return new JSONObject(this.getResponseString());
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // the streams are in memory
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) {
+        this.responseCode = rCode;
+        if (responseLength > 0) {
+            responseHeaders.set("Content-Length", Long.toString(responseLength));   // as the server sets it
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return LOOPBACK;
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return LOOPBACK;
+    }
+
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            this.requestBody = i;
+        }
+        if (o != null) {
+            this.responseBody = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+}
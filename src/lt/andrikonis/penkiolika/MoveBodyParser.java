@@ -0,0 +1,133 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parser of the usual move request contents {@code {"move":"<direction>"}}
+ * directly from its bytes. It recognises only this exact form (with optional
+ * whitespace); anything else (other fields, escapes, unknown directions or
+ * malformed JSON) is left to the general JSON parsing, so that the errors are
+ * reported the same way as before. Parsing allocates nothing.
+ *
+ * @author julius
+ */
+final class MoveBodyParser {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final byte[] MOVE_KEY = ('"' + ServerHandler.JSON_MOVE + '"').getBytes();
+
+    private MoveBodyParser() {
+        // only static methods
+    }
+
+    /**
+     * Reads the contents of the stream into the buffer.
+     *
+     * @param in the stream to read.
+     * @param buffer the buffer to read into.
+     * @return the number of bytes read or -1, if the contents doesn't fit into
+     * the buffer (then the buffer is full and the rest is left in the stream).
+     * @throws IOException if the stream cannot be read.
+     */
+    static int read(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                return length;
+            }
+            length += read;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the move from the contents.
+     *
+     * @param bytes the contents.
+     * @param length the length of the contents.
+     * @return the direction of the move or null, if the contents is not of the
+     * form {@code {"move":"<direction>"}} with one of the known directions.
+     */
+    static Direction parse(byte[] bytes, int length) {
+        int position = MoveBodyParser.skipWhitespace(bytes, 0, length);
+        if (position >= length || bytes[position] != '{') {
+            return null;
+        }
+        position = MoveBodyParser.skipWhitespace(bytes, position + 1, length);
+        if (!MoveBodyParser.startsWith(bytes, position, length, MOVE_KEY)) {
+            return null;
+        }
+        position = MoveBodyParser.skipWhitespace(bytes, position + MOVE_KEY.length, length);
+        if (position >= length || bytes[position] != ':') {
+            return null;
+        }
+        position = MoveBodyParser.skipWhitespace(bytes, position + 1, length);
+        if (position >= length || bytes[position] != '"') {
+            return null;
+        }
+        int start = position + 1;
+        int end = start;
+        while (end < length && bytes[end] != '"') {
+            if (bytes[end] == '\\') {
+                return null;
+            }
+            end++;
+        }
+        if (end >= length) {
+            return null;
+        }
+        position = MoveBodyParser.skipWhitespace(bytes, end + 1, length);
+        if (position >= length || bytes[position] != '}') {
+            return null;
+        }
+        if (MoveBodyParser.skipWhitespace(bytes, position + 1, length) != length) {
+            return null;
+        }
+        for (Direction direction : DIRECTIONS) {
+            if (MoveBodyParser.equals(bytes, start, end, direction.jsonName())) {
+                return direction;
+            }
+        }
+        return null;
+    }
+
+    // Returns the position of the first non whitespace byte from the provided position.
+    private static int skipWhitespace(byte[] bytes, int position, int length) {
+        while (position < length && (bytes[position] == ' ' || bytes[position] == '\t' ||
+                bytes[position] == '\n' || bytes[position] == '\r')) {
+            position++;
+        }
+        return position;
+    }
+
+    // Checks if the bytes at the position start with the prefix.
+    private static boolean startsWith(byte[] bytes, int position, int length, byte[] prefix) {
+        if (length - position < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[position + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Checks if the bytes from start to end are equal to the ASCII string.
+    private static boolean equals(byte[] bytes, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (bytes[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event of a move made in a game by a request. It is
+ * disabled by default; it is enabled by {@code penkiolika.jfc} settings.
+ *
+ * @author julius
+ */
+@Name(MoveEvent.NAME)
+@Label("Move")
+@Category({"Penkiolika", "Game"})
+@Description("Move applied to a game")
+@Enabled(false)
+@StackTrace(false)
+class MoveEvent extends Event {
+
+    /**
+     * The name of the event: {@value #NAME}.
+     */
+    static final String NAME = "lt.andrikonis.penkiolika.Move";
+
+    @Label("Game Id")
+    String gameId;
+
+    @Label("Direction")
+    String direction;
+
+    @Label("Legal")
+    @Description("True, if the move was made")
+    boolean legal;
+
+    @Label("Lock Wait")
+    @Description("The time spent waiting for the lock of the game")
+    @Timespan(Timespan.NANOSECONDS)
+    long lockWait;
+}
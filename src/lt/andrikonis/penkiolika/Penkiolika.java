@@ -45,25 +45,136 @@ public class Penkiolika {
     //  board[ 8] board[ 9] board[10] board[11]
     //  board[12] board[13] board[14] board[15]
     private int[] board;
+    // The version of the game state. It is incremented on every change of the
+    // state, so two different states of the same game never have the same version.
+    private long version;
+    // The number of moves made since the game was created (or shuffled).
+    private long moveCount;
+    // The time, when the game was created.
+    private final long createdMillis;
+    // The Manhattan distance of the board, when the game was created (or shuffled).
+    private int startDistance;
+    // The time, when a move brought the game to the final state for the first
+    // time (or 0, if it has never happened).
+    private long completedMillis;
+    // The heuristic estimates of the board (see Heuristics). They are updated
+    // on every move: only the moved tile and the lines it leaves and enters
+    // change.
+    private int manhattan;
+    private final int[] rowConflicts = new int[Heuristics.SIDE];
+    private final int[] columnConflicts = new int[Heuristics.SIDE];
+    private int conflicts;
+    private int misplaced;
 
     /**
      * Creates a new game, which is already completed.
      */
     public Penkiolika() {
+        createdMillis = System.currentTimeMillis();
         board = FINAL_BOARD.clone();
+        startDistance = 0;
+        this.calculateEstimates();
     }
 
     /**
-     * Creates a new game whith brovided game state.
+     * Creates a new game whith brovided game state. The state is not required
+     * to be solvable (see {@link #isSolvable(int[])}).
      *
-     * @param board the state of the game to be created.
+     * @param board the state of the game to be created. It must be a permutation
+     * of numbers from 0 to 15.
      */
     public Penkiolika(int[] board) {
+        createdMillis = System.currentTimeMillis();
         if (board.length == 16) {
             this.board = board.clone();
         } else {
             throw new IllegalArgumentException("Board size should equal to 16");
         }
+        if (!Penkiolika.isPermutation(this.board)) {
+            throw new IllegalArgumentException("Board should contain each number from 0 to 15 exactly once");
+        }
+        this.calculateEstimates();
+        this.startDistance = manhattan;
+    }
+
+    /**
+     * Restores the game with the state of another game, as it is returned by
+     * the getters of that game (e.g. the game received from another server).
+     *
+     * @param board the state of the game. It must be a permutation of numbers
+     * from 0 to 15.
+     * @param version the version of the game state.
+     * @param moveCount the number of moves made in the game.
+     * @param createdMillis the time, when the game was created.
+     * @param completedMillis the time, when the game was completed, or 0.
+     * @param startDistance the Manhattan distance of the starting board.
+     */
+    Penkiolika(int[] board, long version, long moveCount, long createdMillis, long completedMillis, int startDistance) {
+        this.createdMillis = createdMillis;
+        if (board.length != 16 || !Penkiolika.isPermutation(board)) {
+            throw new IllegalArgumentException("Board should contain each number from 0 to 15 exactly once");
+        }
+        this.board = board.clone();
+        this.version = version;
+        this.moveCount = moveCount;
+        this.completedMillis = completedMillis;
+        this.startDistance = startDistance;
+        this.calculateEstimates();
+    }
+
+    /**
+     * Checks if the board is a permutation of numbers from 0 to 15.
+     *
+     * @param board the board to check.
+     * @return true if and only if the board contains each number from 0 to 15 exactly once.
+     */
+    public static boolean isPermutation(int[] board) {
+        if (board.length != 16) {
+            return false;
+        }
+        int seen = 0;
+        for (int cell : board) {
+            if (cell < 0 || cell >= 16 || (seen & (1 << cell)) != 0) {
+                return false;
+            }
+            seen |= 1 << cell;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the board can be brought to the {@link #FINAL_BOARD final state}
+     * by moves. The check is done in a single pass over the board: the
+     * permutation is checked using a bit mask of seen numbers, and the number
+     * of inversions (pairs of tiles in the wrong order) is counted using the
+     * same mask. For the board of even width, the board is solvable if and only
+     * if the number of inversions plus the row of the empty cell is odd.
+     *
+     * @param board the board to check.
+     * @return true if and only if the board is a permutation of numbers from
+     * 0 to 15, which can be solved.
+     */
+    public static boolean isSolvable(int[] board) {
+        if (board.length != 16) {
+            return false;
+        }
+        int seen = 0;
+        int inversions = 0;
+        int emptyRow = -1;
+        for (int i = 0; i < board.length; i++) {
+            int cell = board[i];
+            if (cell < 0 || cell >= 16 || (seen & (1 << cell)) != 0) {
+                return false;
+            }
+            if (cell == EMPTY_CELL) {
+                emptyRow = i / 4;
+            } else {
+                // Tiles greater than this one, which are before it (the empty cell is not a tile)
+                inversions += Integer.bitCount(seen & ~((2 << cell) - 1));
+            }
+            seen |= 1 << cell;
+        }
+        return ((inversions + emptyRow) & 1) == 1;
     }
 
     /**
@@ -75,6 +186,103 @@ public class Penkiolika {
         return board.clone();
     }
 
+    /**
+     * Returns the version of the current state of the game. The version is
+     * incremented every time the empty cell is moved (including the moves made
+     * while shuffling), therefore it can be used to detect if the game has
+     * changed since it was last seen.
+     *
+     * @return the version of the game state.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of moves made in this game since it was created or
+     * last shuffled.
+     *
+     * @return the number of moves.
+     */
+    public synchronized long getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Returns the time, when this game was created.
+     *
+     * @return the creation time in milliseconds since the epoch (as returned by
+     * {@link System#currentTimeMillis()}).
+     */
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * Returns the time, when a move brought this game to the final state for
+     * the first time. The moves made while shuffling are not taken into account.
+     *
+     * @return the completion time in milliseconds since the epoch or 0, if the
+     * game has never been completed.
+     */
+    public synchronized long getCompletedMillis() {
+        return completedMillis;
+    }
+
+    /**
+     * Returns the Manhattan distance of the board, when this game was created
+     * or last shuffled. It is a measure of the difficulty of the game.
+     *
+     * @return the Manhattan distance of the starting board.
+     */
+    public synchronized int getStartDistance() {
+        return startDistance;
+    }
+
+    /**
+     * Returns the Manhattan distance of the current state of the game. For details
+     * see {@link Heuristics#manhattanDistance(int[])}. It is kept up to date on
+     * every move, so it is not calculated again.
+     *
+     * @return the Manhattan distance of the game board.
+     */
+    public synchronized int getManhattanDistance() {
+        return manhattan;
+    }
+
+    /**
+     * Returns the sum of the Manhattan distance and the linear conflict of the
+     * current state of the game: the estimated number of moves to the final
+     * state (it is never larger than the actual number). For details see
+     * {@link Heuristics#linearConflict(int[])}. It is kept up to date on every
+     * move, so it is not calculated again.
+     *
+     * @return the estimated distance of the game board to the final state.
+     */
+    public synchronized int getDistance() {
+        return manhattan + 2 * conflicts;
+    }
+
+    /**
+     * Returns the number of misplaced tiles of the current state of the game.
+     * For details see {@link Heuristics#misplacedTiles(int[])}.
+     *
+     * @return the number of misplaced tiles.
+     */
+    public synchronized int getMisplacedTiles() {
+        return misplaced;
+    }
+
+    /**
+     * Returns the heuristic estimates of the current state of the game. They
+     * may be passed to the {@link Solver} together with the board.
+     *
+     * @return the estimates.
+     */
+    public synchronized Heuristics.Estimate getEstimate() {
+        return new Heuristics.Estimate(manhattan, rowConflicts, columnConflicts, misplaced);
+    }
+
     /**
      * Shuffles the game board default number of times. For details see
      * {@link #shuffle(int)}.
@@ -94,10 +302,16 @@ public class Penkiolika {
      * The shuffle is needed, because a randomly generated puzzle (game) might
      * not be solvable. A puzzle created from a final state and shuffled is
      * allways solvable (just as in the hardware version of the puzzle).
+     * <p>
+     * The moves made while shuffling are not counted by {@link #getMoveCount()}:
+     * the count is reset to 0 after the shuffle.
      *
      * @param times number of times to move the empty cell.
      */
     public synchronized void shuffle(int times) {
+        ShuffleEvent event = new ShuffleEvent();
+        event.begin();
+        int moves = times;
         Random random = new Random();
          while (times > 0) {
             int direction = random.nextInt(4);
@@ -115,6 +329,15 @@ public class Penkiolika {
                 times--;
             }
         }
+        moveCount = 0;
+        completedMillis = 0;
+        startDistance = manhattan;
+        event.end();
+        if (event.shouldCommit()) {
+            event.moves = moves;
+            event.startDistance = startDistance;
+            event.commit();
+        }
     }
 
     /**
@@ -166,6 +389,26 @@ public class Penkiolika {
         return this.moveEmptyCell(i -> i % 4 != 3, i -> i + 1);
     }
 
+    /**
+     * Moves the empty cell in the provided direction, if it is a legal move.
+     * Does nothing otherwise.
+     *
+     * @param direction the direction of the move.
+     * @return true, if the move was performed, false if it is not a legal move.
+     */
+    public boolean move(Direction direction) {
+        switch (direction) {
+            case TOP:
+                return this.moveTop();
+            case BOTTOM:
+                return this.moveBottom();
+            case LEFT:
+                return this.moveLeft();
+            default:
+                return this.moveRight();
+        }
+    }
+
     // Convenience method to move an empty cell.
     // pCanBeMoved - predicate, that checks if the move current empty cell position
     //               is legal.
@@ -176,7 +419,13 @@ public class Penkiolika {
         int emptyIndex = this.getEmptyCellIndex();
         boolean canBeMoved = pCanBeMoved.test(emptyIndex);
         if (canBeMoved) {
-            this.swapCells(emptyIndex, oGetNextCellIndex.applyAsInt(emptyIndex));
+            int nextIndex = oGetNextCellIndex.applyAsInt(emptyIndex);
+            this.swapCells(emptyIndex, nextIndex);
+            this.updateEstimates(nextIndex, emptyIndex);
+            moveCount++;
+            if (completedMillis == 0 && this.isFinal()) {
+                completedMillis = System.currentTimeMillis();
+            }
         }
         return canBeMoved;
     }
@@ -191,6 +440,48 @@ public class Penkiolika {
         return -1;
     }
 
+    // Calculates the heuristic estimates of the whole board.
+    private void calculateEstimates() {
+        manhattan = Heuristics.manhattanDistance(board);
+        misplaced = Heuristics.misplacedTiles(board);
+        conflicts = 0;
+        for (int line = 0; line < Heuristics.SIDE; line++) {
+            rowConflicts[line] = Heuristics.rowConflicts(board, line);
+            columnConflicts[line] = Heuristics.columnConflicts(board, line);
+            conflicts += rowConflicts[line] + columnConflicts[line];
+        }
+    }
+
+    // Updates the heuristic estimates after a tile has been moved.
+    // from - the index of the cell, where the tile was.
+    // to - the index of the cell, where the tile is now (the previous empty cell).
+    private void updateEstimates(int from, int to) {
+        int tile = board[to];
+        manhattan += Heuristics.manhattanDistance(tile, to) - Heuristics.manhattanDistance(tile, from);
+        misplaced += Heuristics.misplaced(tile, to) - Heuristics.misplaced(tile, from);
+        // The tile changes its row on a vertical move and its column on a horizontal one.
+        // The order of the tiles in the other line doesn't change.
+        if (from % Heuristics.SIDE == to % Heuristics.SIDE) {
+            this.updateRowConflicts(from / Heuristics.SIDE);
+            this.updateRowConflicts(to / Heuristics.SIDE);
+        } else {
+            this.updateColumnConflicts(from % Heuristics.SIDE);
+            this.updateColumnConflicts(to % Heuristics.SIDE);
+        }
+    }
+
+    private void updateRowConflicts(int row) {
+        int updated = Heuristics.rowConflicts(board, row);
+        conflicts += updated - rowConflicts[row];
+        rowConflicts[row] = updated;
+    }
+
+    private void updateColumnConflicts(int column) {
+        int updated = Heuristics.columnConflicts(board, column);
+        conflicts += updated - columnConflicts[column];
+        columnConflicts[column] = updated;
+    }
+
     // Convenience method to swap too cells of the game (used to make an actual
     // move of an empty cell).
     // cell1, cell2 - indexes of the cells to be swapped.
@@ -198,6 +489,7 @@ public class Penkiolika {
         int tmpCellValue = board[cell1];
         board[cell1] = board[cell2];
         board[cell2] = tmpCellValue;
+        version++;
     }
 
     /**
@@ -0,0 +1,486 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Race room of the Fifteen game: many players solve the same starting board
+ * and the room ranks them. The board is created (and shuffled) once for the
+ * room and is never changed, so joining the room costs no shuffle and the
+ * player does not keep a board of its own: the progress of the player (see
+ * {@link Progress}) is the current board packed to a single {@code long} (4
+ * bits for every cell), the index of the empty cell, the Manhattan distance
+ * and the number of moves.
+ * <p>
+ * The progress is immutable. A move replaces the progress of the player with
+ * a compare and set, so the moves never take a lock. The standings of the room
+ * are a {@link ConcurrentSkipListSet} of the current progress of every player,
+ * which the move updates the same way: the new progress is added, the old one
+ * is removed. Reading the standings walks only as many players as requested
+ * and skips the progress, which has already been replaced, so a player is
+ * never listed twice.
+ * <p>
+ * The players are ranked: the ones who completed the board first, by the
+ * number of moves and then by the time of completion; then the others, by
+ * their Manhattan distance to the final board and then by the number of moves.
+ * Once the board is completed, the player cannot move any more.
+ * <p>
+ * The class is thread safe.
+ *
+ * @author julius
+ */
+public class RaceRoom {
+
+    /**
+     * Default number of players in the standings of the room JSON: {@value #DEFAULT_STANDINGS_LIMIT}.
+     */
+    public static final int DEFAULT_STANDINGS_LIMIT = 10;
+
+    /**
+     * Largest number of players in the standings of the room JSON: {@value #MAX_STANDINGS_LIMIT}.
+     */
+    public static final int MAX_STANDINGS_LIMIT = 1000;
+
+    /**
+     * The room id field name of the player JSON: {@value #JSON_ROOM}.
+     */
+    public static final String JSON_ROOM = "room";
+
+    /**
+     * The number of players field name of the room JSON: {@value #JSON_PLAYERS}.
+     */
+    public static final String JSON_PLAYERS = "players";
+
+    /**
+     * The standings field name of the room JSON: {@value #JSON_STANDINGS}.
+     */
+    public static final String JSON_STANDINGS = "standings";
+
+    /**
+     * The moves field name of the player JSON: {@value #JSON_MOVES}.
+     */
+    public static final String JSON_MOVES = "moves";
+
+    /**
+     * The field name of the player JSON of the time from the creation of the
+     * room to the completion of the board: {@value #JSON_MILLIS}.
+     */
+    public static final String JSON_MILLIS = "millis";
+
+    // The bits of one cell of the packed board.
+    private static final int CELL_BITS = 4;
+    private static final long CELL_MASK = (1L << CELL_BITS) - 1;
+    // The packed final board.
+    private static final long FINAL_BOARD = RaceRoom.pack(Penkiolika.FINAL_BOARD);
+
+    // Orders the progress of the players from the best: the completed first by
+    // moves, then by time; the others by distance, then by moves. Then by the
+    // order of joining, so the progress of different players is never equal.
+    private static final Comparator<Progress> STANDING = (p1, p2) -> {
+        boolean final1 = p1.isFinal();
+        boolean final2 = p2.isFinal();
+        if (final1 != final2) {
+            return final1 ? -1 : 1;
+        }
+        int result;
+        if (final1) {
+            result = Long.compare(p1.moves, p2.moves);
+            if (result == 0) {
+                result = Long.compare(p1.completedMillis, p2.completedMillis);
+            }
+        } else {
+            result = Integer.compare(p1.distance, p2.distance);
+            if (result == 0) {
+                result = Long.compare(p1.moves, p2.moves);
+            }
+        }
+        return result != 0 ? result : Integer.compare(p1.player.number, p2.player.number);
+    };
+
+    private final String id;
+    // The starting board of all the players. Never changed.
+    private final int[] startBoard;
+    private final long packedStartBoard;
+    private final int startEmpty;
+    private final int startDistance;
+    private final long createdMillis;
+    // The time the room was last used, see touch.
+    private volatile long touchedMillis;
+    private final ConcurrentHashMap<String, Player> players = new ConcurrentHashMap<String, Player>();
+    // The number of the last player joined. The ids of the players are their numbers.
+    private final AtomicInteger lastPlayer = new AtomicInteger(0);
+    // The current progress of every player (and briefly the replaced progress
+    // of the players moving right now).
+    private final ConcurrentSkipListSet<Progress> standings = new ConcurrentSkipListSet<Progress>(STANDING);
+
+    /**
+     * Creates the room with the starting board. The board is not required to
+     * be solvable (see {@link Penkiolika#isSolvable(int[])}).
+     *
+     * @param id the id of the room.
+     * @param board the starting board. It must be a permutation of numbers
+     * from 0 to 15.
+     */
+    public RaceRoom(String id, int[] board) {
+        if (!Penkiolika.isPermutation(board)) {
+            throw new IllegalArgumentException("Board should contain each number from 0 to 15 exactly once");
+        }
+        this.id = id;
+        this.startBoard = board.clone();
+        this.packedStartBoard = RaceRoom.pack(board);
+        int empty = 0;
+        while (board[empty] != Penkiolika.EMPTY_CELL) {
+            empty++;
+        }
+        this.startEmpty = empty;
+        this.startDistance = Heuristics.manhattanDistance(board);
+        this.createdMillis = System.currentTimeMillis();
+        this.touchedMillis = createdMillis;
+    }
+
+    /**
+     * Returns the id of this room.
+     *
+     * @return the id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the starting board of the players of this room.
+     *
+     * @return the board.
+     */
+    public int[] getStartBoard() {
+        return startBoard.clone();
+    }
+
+    /**
+     * Returns the time, when this room was created. The time of the completion
+     * of the players is counted from it.
+     *
+     * @return the creation time in milliseconds since the epoch.
+     */
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * Marks this room as used now, so that it is not removed as idle (see
+     * {@link ServerHandler#expireIdleRooms(long)}).
+     */
+    public void touch() {
+        touchedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the time, when this room was last used (see {@link #touch()}).
+     *
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getTouchedMillis() {
+        return touchedMillis;
+    }
+
+    /**
+     * Returns the number of the players, who have joined this room.
+     *
+     * @return the number of players.
+     */
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    /**
+     * Adds a new player to this room. The player starts at the starting board.
+     *
+     * @return the player.
+     */
+    public Player join() {
+        int number = lastPlayer.incrementAndGet();
+        Player player = new Player(this, Integer.toString(number), number);
+        // Ranked before it can be found, so no move can replace the progress before
+        standings.add(player.progress);
+        players.put(player.id, player);
+        return player;
+    }
+
+    /**
+     * Finds the player of this room.
+     *
+     * @param playerId the id of the player.
+     * @return the player or null, if there is no such player in this room.
+     */
+    public Player getPlayer(String playerId) {
+        return players.get(playerId);
+    }
+
+    /**
+     * Returns the best players of this room, ordered from the best. The order
+     * is only as consistent as the concurrent moves allow: a player moving
+     * while the standings are read may be missing.
+     *
+     * @param limit the largest number of players returned.
+     * @return the current progress of the players.
+     */
+    public List<Progress> getStandings(int limit) {
+        List<Progress> result = new ArrayList<Progress>(Math.min(limit, DEFAULT_STANDINGS_LIMIT));
+        for (Progress progress : standings) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (progress.player.progress == progress) {     // not replaced by a move
+                result.add(progress);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns this room as JSON object {@code {"id":<id>,"board":<starting board>,
+     * "players":<number of players>,"standings":[<player>,...]}}. The players
+     * have the format of {@link Progress#toJson()}, but without the board and
+     * the room id.
+     *
+     * @param limit the largest number of players in the standings.
+     * @return the JSON object.
+     */
+    public JSONObject toJson(int limit) {
+        JSONObject result = new JSONObject();
+        result.put(ServerHandler.JSON_ID, id);
+        result.put(ServerHandler.JSON_BOARD, new JSONArray(startBoard));
+        result.put(JSON_PLAYERS, players.size());
+        JSONArray standingsJson = new JSONArray();
+        for (Progress progress : this.getStandings(limit)) {
+            standingsJson.put(progress.toJson(false));
+        }
+        result.put(JSON_STANDINGS, standingsJson);
+        return result;
+    }
+
+    // Returns the number of the progress in the standings, including the
+    // replaced progress, which has not been removed yet.
+    int getStandingsSize() {
+        return standings.size();
+    }
+
+    // Packs the board to 4 bits per cell, the cell 0 in the lowest bits.
+    private static long pack(int[] board) {
+        long result = 0;
+        for (int cell = board.length - 1; cell >= 0; cell--) {
+            result = (result << CELL_BITS) | board[cell];
+        }
+        return result;
+    }
+
+    /**
+     * The player of the race room.
+     */
+    public static final class Player {
+        // Replaces the progress of the player without a lock.
+        private static final AtomicReferenceFieldUpdater<Player, Progress> PROGRESS =
+                AtomicReferenceFieldUpdater.newUpdater(Player.class, Progress.class, "progress");
+
+        private final RaceRoom room;
+        private final String id;
+        // The order of joining the room.
+        private final int number;
+        private volatile Progress progress;
+
+        private Player(RaceRoom room, String id, int number) {
+            this.room = room;
+            this.id = id;
+            this.number = number;
+            this.progress = new Progress(this, room.packedStartBoard, room.startEmpty, room.startDistance, 0, 0);
+        }
+
+        /**
+         * Returns the id of this player. It is unique within the room only.
+         *
+         * @return the id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Returns the room of this player.
+         *
+         * @return the room.
+         */
+        public RaceRoom getRoom() {
+            return room;
+        }
+
+        /**
+         * Returns the current progress of this player.
+         *
+         * @return the progress.
+         */
+        public Progress getProgress() {
+            return progress;
+        }
+
+        /**
+         * Moves the empty cell of the board of this player in the provided
+         * direction, if it is a legal move and the board is not completed yet,
+         * and updates the standings of the room.
+         *
+         * @param direction the direction of the move.
+         * @return the progress after the move or null, if the move is not legal.
+         */
+        public Progress move(Direction direction) {
+            while (true) {
+                Progress current = progress;
+                if (current.isFinal() || !direction.canMove(current.empty)) {
+                    return null;
+                }
+                Progress next = current.next(direction);
+                if (PROGRESS.compareAndSet(this, current, next)) {
+                    room.standings.add(next);
+                    room.standings.remove(current);
+                    // A concurrent move might have replaced the next progress
+                    // and removed it, before it was added
+                    if (progress != next) {
+                        room.standings.remove(next);
+                    }
+                    return next;
+                }
+            }
+        }
+    }
+
+    /**
+     * The progress of the player of the race room at one moment. It never changes.
+     */
+    public static final class Progress {
+        private final Player player;
+        // The board packed by RaceRoom.pack.
+        private final long board;
+        private final int empty;
+        private final int distance;
+        private final long moves;
+        // The time of the move completing the board or 0.
+        private final long completedMillis;
+
+        private Progress(Player player, long board, int empty, int distance, long moves, long completedMillis) {
+            this.player = player;
+            this.board = board;
+            this.empty = empty;
+            this.distance = distance;
+            this.moves = moves;
+            this.completedMillis = completedMillis;
+        }
+
+        /**
+         * Returns the player of this progress.
+         *
+         * @return the player.
+         */
+        public Player getPlayer() {
+            return player;
+        }
+
+        /**
+         * Returns the board of the player.
+         *
+         * @return the board (in the same form as {@link Penkiolika#getBoard()}).
+         */
+        public int[] getBoard() {
+            int[] result = new int[Heuristics.CELLS];
+            long packed = board;
+            for (int cell = 0; cell < result.length; cell++, packed >>>= CELL_BITS) {
+                result[cell] = (int)(packed & CELL_MASK);
+            }
+            return result;
+        }
+
+        /**
+         * Checks if the board of the player is in the final state.
+         *
+         * @return true if and only if the board is final.
+         */
+        public boolean isFinal() {
+            return board == FINAL_BOARD;
+        }
+
+        /**
+         * Returns the Manhattan distance of the board of the player.
+         *
+         * @return the distance.
+         */
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * Returns the number of moves made by the player.
+         *
+         * @return the number of moves.
+         */
+        public long getMoveCount() {
+            return moves;
+        }
+
+        /**
+         * Returns the time, when the player completed the board.
+         *
+         * @return the completion time in milliseconds since the epoch or 0, if
+         * the board has not been completed by a move.
+         */
+        public long getCompletedMillis() {
+            return completedMillis;
+        }
+
+        /**
+         * Returns this progress as JSON object {@code {"id":<player id>,"room":<room id>,
+         * "board":<board>,"final":true|false,"moves":<moves>,"distance":<distance>}}.
+         * The completed player also has {@code "millis"}: the time from the
+         * creation of the room to the completion.
+         *
+         * @return the JSON object.
+         */
+        public JSONObject toJson() {
+            return this.toJson(true);
+        }
+
+        // Forms the JSON object of the progress.
+        // withBoard - true, if the board and the room id should be included.
+        private JSONObject toJson(boolean withBoard) {
+            JSONObject result = new JSONObject();
+            result.put(ServerHandler.JSON_ID, player.id);
+            if (withBoard) {
+                result.put(JSON_ROOM, player.room.id);
+                result.put(ServerHandler.JSON_BOARD, new JSONArray(this.getBoard()));
+            }
+            result.put(ServerHandler.JSON_FINAL, this.isFinal());
+            result.put(JSON_MOVES, moves);
+            result.put(ServerHandler.JSON_DISTANCE, distance);
+            if (completedMillis != 0) {
+                result.put(JSON_MILLIS, Math.max(0, completedMillis - player.room.createdMillis));
+            }
+            return result;
+        }
+
+        // Makes the legal move: the tile of the target cell moves to the empty cell.
+        private Progress next(Direction direction) {
+            int target = direction.target(empty);
+            int tile = (int)((board >>> (target * CELL_BITS)) & CELL_MASK);
+            long nextBoard = (board & ~(CELL_MASK << (target * CELL_BITS))) | ((long)tile << (empty * CELL_BITS));
+            int nextDistance = distance + Heuristics.manhattanDistance(tile, empty) - Heuristics.manhattanDistance(tile, target);
+            return new Progress(player, nextBoard, target, nextDistance, moves + 1,
+                    nextBoard == FINAL_BOARD ? System.currentTimeMillis() : 0);
+        }
+    }
+}
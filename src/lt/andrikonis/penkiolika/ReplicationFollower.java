@@ -0,0 +1,386 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * The hot standby side of the replication of the games (see {@link ReplicationPrimary}).
+ * It connects to the primary, receives the snapshot of its games and then
+ * its changes, and applies them to the games of the local handler. While
+ * following, the handler is read only: it serves the replicated games, but
+ * refuses the changes. When the connection is lost, the follower reconnects
+ * every {@value #RECONNECT_MILLIS} ms and receives a new snapshot.
+ * <p>
+ * The frames are read into one direct buffer, which is reused for every frame,
+ * and the records are decoded straight from it. The replication lag is the
+ * time from the oldest change of the last frame on the primary to its
+ * application here (the clocks of the servers are assumed to be synchronized)
+ * and the number of the changes of the primary not yet applied.
+ * <p>
+ * After {@link #promote()} the follower stops and the handler accepts the
+ * changes, so it may replace the primary.
+ * <p>
+ * The class is thread safe.
+ *
+ * @author julius
+ */
+public class ReplicationFollower implements Closeable {
+
+    /**
+     * The period of reconnecting to the primary: {@value #RECONNECT_MILLIS} ms.
+     */
+    public static final long RECONNECT_MILLIS = 1000;
+
+    /**
+     * The time without frames, after which the primary is considered lost:
+     * {@value #TIMEOUT_MILLIS} ms.
+     */
+    public static final long TIMEOUT_MILLIS = 3 * ReplicationPrimary.HEARTBEAT_MILLIS;
+
+    /**
+     * The field name of the replication JSON of the primary address: {@value #JSON_PRIMARY}.
+     */
+    public static final String JSON_PRIMARY = "primary";
+
+    /**
+     * The field name of the replication JSON telling, if the follower is
+     * connected: {@value #JSON_CONNECTED}.
+     */
+    public static final String JSON_CONNECTED = "connected";
+
+    /**
+     * The field name of the replication JSON telling, if the follower has been
+     * promoted: {@value #JSON_PROMOTED}.
+     */
+    public static final String JSON_PROMOTED = "promoted";
+
+    /**
+     * The field name of the replication JSON of the sequence number of the last
+     * applied change: {@value #JSON_APPLIED_SEQUENCE}.
+     */
+    public static final String JSON_APPLIED_SEQUENCE = "appliedSequence";
+
+    /**
+     * The field name of the replication JSON of the last known sequence number
+     * of the primary: {@value #JSON_PRIMARY_SEQUENCE}.
+     */
+    public static final String JSON_PRIMARY_SEQUENCE = "primarySequence";
+
+    /**
+     * The field name of the replication JSON of the replication lag in changes:
+     * {@value #JSON_LAG_CHANGES}.
+     */
+    public static final String JSON_LAG_CHANGES = "lagChanges";
+
+    /**
+     * The field name of the replication JSON of the replication lag of the
+     * last frame: {@value #JSON_LAG_MILLIS}.
+     */
+    public static final String JSON_LAG_MILLIS = "lagMillis";
+
+    /**
+     * The field name of the replication JSON of the largest replication lag:
+     * {@value #JSON_MAX_LAG_MILLIS}.
+     */
+    public static final String JSON_MAX_LAG_MILLIS = "maxLagMillis";
+
+    /**
+     * The field name of the replication JSON of the number of connections to
+     * the primary: {@value #JSON_CONNECTS}.
+     */
+    public static final String JSON_CONNECTS = "connects";
+
+    // The initial size of the frame buffer. It grows for larger frames.
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    private final ServerHandler handler;
+    private final String host;
+    private final int port;
+    private final Thread thread;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(ReplicationFrames.HEADER_BYTES);
+    private ByteBuffer body = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+    private volatile Selector selector;
+    private volatile boolean stopped;
+    private volatile boolean promoted;
+    private volatile boolean connected;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long lagMillis;
+    private volatile long maxLagMillis;
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder connects = new LongAdder();
+
+    /**
+     * Creates the follower of the primary. It is started by {@link #start()}.
+     *
+     * @param handler the handler, which receives the games.
+     * @param host the host of the primary.
+     * @param port the replication port of the primary.
+     */
+    public ReplicationFollower(ServerHandler handler, String host, int port) {
+        this.handler = handler;
+        this.host = host;
+        this.port = port;
+        this.thread = new Thread(this::follow, "penkiolika-replication-follower");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Makes the handler read only and starts following the primary.
+     */
+    public void start() {
+        handler.setReadOnly(true);
+        handler.setReplicationFollower(this);
+        thread.start();
+    }
+
+    /**
+     * Stops following the primary and makes the handler accept the changes.
+     * The changes already received are applied first.
+     *
+     * @return false, if the follower has already been promoted.
+     */
+    public synchronized boolean promote() {
+        if (promoted) {
+            return false;
+        }
+        this.close();
+        promoted = true;
+        handler.setReadOnly(false);
+        return true;
+    }
+
+    /**
+     * Checks if the follower has been promoted.
+     *
+     * @return true, if promoted.
+     */
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    /**
+     * Checks if the follower is connected to the primary.
+     *
+     * @return true, if connected.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Returns the sequence number of the last change of the primary applied
+     * by this follower.
+     *
+     * @return the sequence number.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Converts the state of the follower to JSON: {@code {"primary":<host:port>,
+     * "connected":true|false,"promoted":true|false,"appliedSequence":<sequence>,
+     * "primarySequence":<sequence>,"lagChanges":<changes>,"lagMillis":<lag>,
+     * "maxLagMillis":<lag>,"frames":<frames>,"records":<records>,"connects":<connects>}}.
+     *
+     * @return the JSON of the follower.
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put(JSON_PRIMARY, host + ":" + port);
+        json.put(JSON_CONNECTED, connected);
+        json.put(JSON_PROMOTED, promoted);
+        json.put(JSON_APPLIED_SEQUENCE, appliedSequence);
+        json.put(JSON_PRIMARY_SEQUENCE, primarySequence);
+        json.put(JSON_LAG_CHANGES, Math.max(0, primarySequence - appliedSequence));
+        json.put(JSON_LAG_MILLIS, lagMillis);
+        json.put(JSON_MAX_LAG_MILLIS, maxLagMillis);
+        json.put(ReplicationPrimary.JSON_FRAMES, frames.sum());
+        json.put(ReplicationPrimary.JSON_RECORDS, records.sum());
+        json.put(JSON_CONNECTS, connects.sum());
+        return json;
+    }
+
+    /**
+     * Stops following the primary and waits for the follower thread to end.
+     * The handler stays read only.
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+        thread.interrupt();
+        if (thread.isAlive() && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Connects to the primary and applies its changes until stopped.
+    private void follow() {
+        while (!stopped) {
+            try (SocketChannel channel = SocketChannel.open(); Selector sel = Selector.open()) {
+                selector = sel;
+                channel.socket().connect(new InetSocketAddress(host, port), (int)TIMEOUT_MILLIS);
+                channel.socket().setTcpNoDelay(true);
+                channel.configureBlocking(false);
+                channel.register(sel, SelectionKey.OP_READ);
+                connected = true;
+                connects.increment();
+                this.receive(channel, sel);
+            } catch (IOException ioe) {
+                if (!stopped) {
+                    handler.getLogger().log(AsyncLogger.Level.WARN, "Replication from primary " + host + ":" + port +
+                            " failed. Reason=" + ioe.getMessage());
+                }
+            } finally {
+                connected = false;
+                selector = null;
+            }
+            if (!stopped) {
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException ie) {
+                    // stopped
+                }
+            }
+        }
+    }
+
+    // Receives the frames and applies them until stopped.
+    private void receive(SocketChannel channel, Selector sel) throws IOException {
+        Set<String> snapshotIds = new HashSet<String>();
+        while (!stopped) {
+            header.clear();
+            this.readFully(channel, sel, header);
+            header.flip();
+            if (header.getInt() != ReplicationFrames.MAGIC) {
+                throw new IOException("Not a replication frame");
+            }
+            int count = header.getInt();
+            int bodyLength = header.getInt();
+            long lastSequence = header.getLong();
+            long latestSequence = header.getLong();
+            long eventMillis = header.getLong();
+            if (count < 0 || bodyLength < 0 || bodyLength > ReplicationFrames.MAX_BODY_BYTES) {
+                throw new IOException("Malformed replication frame: records=" + count + ", bytes=" + bodyLength);
+            }
+            if (body.capacity() < bodyLength) {
+                body = ByteBuffer.allocateDirect(Integer.highestOneBit(bodyLength - 1) * 2);
+            }
+            body.clear();
+            body.limit(bodyLength);
+            this.readFully(channel, sel, body);
+            body.flip();
+            for (int i = 0; i < count; i++) {
+                snapshotIds = this.apply(body, snapshotIds);
+            }
+            frames.increment();
+            records.add(count);
+            appliedSequence = lastSequence;
+            primarySequence = latestSequence;
+            long lag = Math.max(0, System.currentTimeMillis() - eventMillis);
+            lagMillis = lag;
+            if (lag > maxLagMillis) {
+                maxLagMillis = lag;
+            }
+        }
+    }
+
+    // Decodes one record from the frame and applies it to the handler.
+    // snapshotIds - the ids of the games of the snapshot being received or
+    // null, if the snapshot has already been received.
+    // Returns the ids of the games of the snapshot, if it is still being received.
+    private Set<String> apply(ByteBuffer frame, Set<String> snapshotIds) throws IOException {
+        try {
+            byte type = frame.get();
+            int idLength = frame.getShort() & 0xffff;
+            String id = null;
+            if (idLength > 0) {
+                byte[] idBytes = new byte[idLength];
+                frame.get(idBytes);
+                id = new String(idBytes, StandardCharsets.UTF_8);
+            }
+            switch (type) {
+                case ReplicationFrames.TYPE_STATE: {
+                    int[] board = new int[Heuristics.CELLS];
+                    for (int i = 0; i < board.length; i++) {
+                        board[i] = frame.get();
+                    }
+                    long version = frame.getLong();
+                    long moveCount = frame.getLong();
+                    long createdMillis = frame.getLong();
+                    long completedMillis = frame.getLong();
+                    int startDistance = frame.getInt();
+                    handler.applyGame(id, new Penkiolika(board, version, moveCount, createdMillis,
+                            completedMillis, startDistance));
+                    if (snapshotIds != null) {
+                        snapshotIds.add(id);
+                    }
+                    return snapshotIds;
+                }
+                case ReplicationFrames.TYPE_DELETE:
+                    handler.applyDelete(id);
+                    return snapshotIds;
+                case ReplicationFrames.TYPE_SNAPSHOT_END:
+                    if (snapshotIds != null) {
+                        // The games deleted on the primary while not connected
+                        for (String localId : handler.snapshotGames().keySet()) {
+                            if (!snapshotIds.contains(localId)) {
+                                handler.applyDelete(localId);
+                            }
+                        }
+                    }
+                    return null;
+                default:
+                    throw new IOException("Unknown replication record type " + type);
+            }
+        } catch (RuntimeException re) {
+            throw new IOException("Malformed replication record: " + re.getMessage(), re);
+        }
+    }
+
+    // Reads until the buffer is full.
+    private void readFully(SocketChannel channel, Selector sel, ByteBuffer buffer) throws IOException {
+        long idleSince = System.nanoTime();
+        while (buffer.hasRemaining()) {
+            if (stopped) {
+                throw new IOException("Replication stopped");
+            }
+            int read = channel.read(buffer);
+            if (read < 0) {
+                throw new EOFException("Connection closed by the primary");
+            } else if (read > 0) {
+                idleSince = System.nanoTime();
+            } else if (System.nanoTime() - idleSince > TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS)) {
+                throw new IOException("No frames from the primary for " + TIMEOUT_MILLIS + " ms");
+            } else {
+                sel.select(TIMEOUT_MILLIS);
+                sel.selectedKeys().clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary format of the replication stream between {@link ReplicationPrimary}
+ * and {@link ReplicationFollower}. The stream is a sequence of frames, each of
+ * them a fixed header followed by a batch of records:
+ * <pre>
+ * {@code
+ *  header: int magic, int records, int bodyLength, long lastSequence,
+ *          long primarySequence, long eventMillis
+ *  record: byte type, short idLength, byte[idLength] id (UTF-8),
+ *          and for the state record only:
+ *          byte[16] board, long version, long moveCount, long createdMillis,
+ *          long completedMillis, int startDistance
+ * }
+ * </pre>
+ * The {@code lastSequence} is the sequence number of the last record of the
+ * frame, the {@code primarySequence} is the latest sequence number of the
+ * primary, when the frame was sent, and the {@code eventMillis} is the time
+ * of the oldest event of the frame. A frame without records is a heartbeat.
+ * <p>
+ * The state record carries the whole state of the game, so applying it twice
+ * or applying an older state after a newer one (which is skipped by version)
+ * does no harm.
+ *
+ * @author julius
+ */
+final class ReplicationFrames {
+
+    // The first int of every frame: "P15R".
+    static final int MAGIC = 0x50313552;
+    // The size of the frame header in bytes.
+    static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 8 + 8;
+    // The largest size of the records of one frame in bytes.
+    static final int MAX_BODY_BYTES = 1 << 20;
+
+    // The record of the created or changed game.
+    static final byte TYPE_STATE = 1;
+    // The record of the deleted game.
+    static final byte TYPE_DELETE = 2;
+    // The record ending the snapshot sent to a new follower. The games, which
+    // were not in the snapshot, are deleted by the follower.
+    static final byte TYPE_SNAPSHOT_END = 3;
+
+    private ReplicationFrames() {
+    }
+
+    // Encodes the state record. Must be called while holding the monitor of the game.
+    // Returns the buffer ready to be read.
+    static ByteBuffer encodeState(String id, Penkiolika game) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + idBytes.length + Heuristics.CELLS + 4 * 8 + 4);
+        record.put(TYPE_STATE).putShort((short)idBytes.length).put(idBytes);
+        for (int cell : game.getBoard()) {
+            record.put((byte)cell);
+        }
+        record.putLong(game.getVersion())
+                .putLong(game.getMoveCount())
+                .putLong(game.getCreatedMillis())
+                .putLong(game.getCompletedMillis())
+                .putInt(game.getStartDistance());
+        record.flip();
+        return record;
+    }
+
+    // Encodes the delete record.
+    // Returns the buffer ready to be read.
+    static ByteBuffer encodeDelete(String id) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + idBytes.length);
+        record.put(TYPE_DELETE).putShort((short)idBytes.length).put(idBytes);
+        record.flip();
+        return record;
+    }
+
+    // Encodes the record ending the snapshot.
+    // Returns the buffer ready to be read.
+    static ByteBuffer encodeSnapshotEnd() {
+        ByteBuffer record = ByteBuffer.allocate(1 + 2);
+        record.put(TYPE_SNAPSHOT_END).putShort((short)0);
+        record.flip();
+        return record;
+    }
+
+    // Writes the frame header to the buffer and prepares it to be read.
+    static void writeHeader(ByteBuffer header, int records, int bodyLength, long lastSequence,
+            long primarySequence, long eventMillis) {
+        header.clear();
+        header.putInt(MAGIC).putInt(records).putInt(bodyLength)
+                .putLong(lastSequence).putLong(primarySequence).putLong(eventMillis);
+        header.flip();
+    }
+}
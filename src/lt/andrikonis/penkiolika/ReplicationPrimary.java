@@ -0,0 +1,367 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * The primary side of the replication of the games to hot standby servers (see
+ * {@link ReplicationFollower}). It listens for the followers on its own TCP
+ * port and streams the changes of the games of the handler to every connected
+ * follower: first the snapshot of all the games, then the created, moved and
+ * deleted games as they happen (for the format see {@link ReplicationFrames}).
+ * <p>
+ * Every change is encoded once, on the request thread, and queued for every
+ * follower. Each follower has its own sender thread, which takes the queued
+ * records in batches and writes every batch as one frame with a single
+ * gathering write of the header and the records, so the records are never
+ * copied again. A follower, which falls {@value #MAX_PENDING_RECORDS} records
+ * behind, is disconnected; it reconnects and receives a new snapshot. When
+ * there are no changes, the followers receive a heartbeat frame every
+ * {@value #HEARTBEAT_MILLIS} ms.
+ * <p>
+ * The class is thread safe.
+ *
+ * @author julius
+ */
+public class ReplicationPrimary implements GameListener, Closeable {
+
+    /**
+     * The period of the heartbeat frames, when there are no changes: {@value #HEARTBEAT_MILLIS} ms.
+     */
+    public static final long HEARTBEAT_MILLIS = 1000;
+
+    /**
+     * The largest number of records in one frame: {@value #MAX_BATCH_RECORDS}.
+     */
+    public static final int MAX_BATCH_RECORDS = 512;
+
+    /**
+     * The largest number of records waiting to be sent to one follower:
+     * {@value #MAX_PENDING_RECORDS}.
+     */
+    public static final int MAX_PENDING_RECORDS = 100000;
+
+    /**
+     * The field name of the replication JSON of the primary port: {@value #JSON_PORT}.
+     */
+    public static final String JSON_PORT = "port";
+
+    /**
+     * The field name of the replication JSON of the number of connected
+     * followers: {@value #JSON_FOLLOWERS}.
+     */
+    public static final String JSON_FOLLOWERS = "followers";
+
+    /**
+     * The field name of the replication JSON of the sequence number of the last
+     * change: {@value #JSON_SEQUENCE}.
+     */
+    public static final String JSON_SEQUENCE = "sequence";
+
+    /**
+     * The field name of the replication JSON of the number of frames: {@value #JSON_FRAMES}.
+     */
+    public static final String JSON_FRAMES = "frames";
+
+    /**
+     * The field name of the replication JSON of the number of records: {@value #JSON_RECORDS}.
+     */
+    public static final String JSON_RECORDS = "records";
+
+    /**
+     * The field name of the replication JSON of the number of lost followers:
+     * {@value #JSON_DISCONNECTS}.
+     */
+    public static final String JSON_DISCONNECTS = "disconnects";
+
+    private final ServerHandler handler;
+    private final ServerSocketChannel serverChannel;
+    private final Thread acceptor;
+    // The sequence number of the last change.
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final List<Follower> followers = new CopyOnWriteArrayList<Follower>();
+    private final AtomicInteger followerNumber = new AtomicInteger(0);
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Starts listening for the followers and publishing the changes of the
+     * games of the handler.
+     *
+     * @param handler the handler, whose games are replicated.
+     * @param port the port to listen for the followers (0 for any free port).
+     * @throws IOException if the port cannot be opened.
+     */
+    public ReplicationPrimary(ServerHandler handler, int port) throws IOException {
+        this.handler = handler;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        handler.addGameListener(this);
+        handler.setReplicationPrimary(this);
+        this.acceptor = new Thread(this::accept, "penkiolika-replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port, on which the followers are accepted.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of connected followers.
+     *
+     * @return the number of followers.
+     */
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * Converts the state of the primary to JSON: {@code {"port":<port>,
+     * "followers":<followers>,"sequence":<sequence>,"frames":<frames>,
+     * "records":<records>,"disconnects":<disconnects>}}. The frames and
+     * the records are counted over all the followers.
+     *
+     * @return the JSON of the primary.
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put(JSON_PORT, this.getPort());
+        json.put(JSON_FOLLOWERS, followers.size());
+        json.put(JSON_SEQUENCE, sequence.get());
+        json.put(JSON_FRAMES, frames.sum());
+        json.put(JSON_RECORDS, records.sum());
+        json.put(JSON_DISCONNECTS, disconnects.sum());
+        return json;
+    }
+
+    @Override
+    public void gameCreated(String id, Penkiolika game) {
+        this.publishState(id, game);
+    }
+
+    @Override
+    public void gameMoved(String id, Penkiolika game, int distanceBefore) {
+        this.publishState(id, game);
+    }
+
+    @Override
+    public void gameFinished(String id, Penkiolika game) {
+        // the completion is a part of the state published on the move
+    }
+
+    @Override
+    public void gameDeleted(String id, Penkiolika game) {
+        long number = sequence.incrementAndGet();
+        if (!followers.isEmpty()) {
+            this.publish(new Record(number, System.currentTimeMillis(), ReplicationFrames.encodeDelete(id)));
+        }
+    }
+
+    /**
+     * Stops accepting the followers and disconnects the connected ones.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverChannel.close();
+        } catch (IOException ioe) {
+            // nothing more can be done
+        }
+        for (Follower follower : followers) {
+            follower.close();
+        }
+    }
+
+    // Publishes the state of the game. Called while holding the monitor of the game.
+    private void publishState(String id, Penkiolika game) {
+        long number = sequence.incrementAndGet();
+        if (!followers.isEmpty()) {
+            this.publish(new Record(number, System.currentTimeMillis(), ReplicationFrames.encodeState(id, game)));
+        }
+    }
+
+    // Queues the record for every follower.
+    private void publish(Record record) {
+        for (Follower follower : followers) {
+            if (!follower.queue.offer(record)) {
+                handler.getLogger().log(AsyncLogger.Level.WARN, "Replication follower " + follower.getName() +
+                        " is more than " + MAX_PENDING_RECORDS + " records behind. Disconnecting");
+                follower.close();
+            }
+        }
+    }
+
+    // Accepts the followers until closed.
+    private void accept() {
+        while (!closed) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                Follower follower = new Follower(channel, "penkiolika-replication-" + followerNumber.incrementAndGet());
+                followers.add(follower);
+                follower.start();
+            } catch (IOException ioe) {
+                if (!closed) {
+                    handler.getLogger().log(AsyncLogger.Level.WARN, "Unable to accept replication follower. Reason=" + ioe.getMessage());
+                }
+            }
+        }
+    }
+
+    // The encoded change and its sequence number.
+    private static class Record {
+        private final long sequence;
+        private final long millis;
+        // The encoded record. It is shared by all the followers, so it is only
+        // read through duplicates.
+        private final ByteBuffer bytes;
+
+        Record(long sequence, long millis, ByteBuffer bytes) {
+            this.sequence = sequence;
+            this.millis = millis;
+            this.bytes = bytes;
+        }
+    }
+
+    // The connection to a single follower and its sender thread.
+    private class Follower extends Thread {
+        private final SocketChannel channel;
+        private final BlockingQueue<Record> queue = new LinkedBlockingQueue<Record>(MAX_PENDING_RECORDS);
+        private final ByteBuffer header = ByteBuffer.allocateDirect(ReplicationFrames.HEADER_BYTES);
+        private final ByteBuffer[] buffers = new ByteBuffer[MAX_BATCH_RECORDS + 1];
+        private final List<Record> batch = new ArrayList<Record>(MAX_BATCH_RECORDS);
+        // The sequence number of the last record sent.
+        private long lastSequence;
+
+        Follower(SocketChannel channel, String name) {
+            super(name);
+            this.channel = channel;
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                channel.socket().setTcpNoDelay(true);
+                this.sendSnapshot();
+                while (!closed && channel.isOpen()) {
+                    Record first = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        this.sendFrame();
+                        continue;
+                    }
+                    batch.add(first);
+                    int bytes = first.bytes.remaining();
+                    while (batch.size() < MAX_BATCH_RECORDS) {
+                        Record next = queue.peek();
+                        if (next == null || bytes + next.bytes.remaining() > ReplicationFrames.MAX_BODY_BYTES) {
+                            break;
+                        }
+                        batch.add(queue.poll());
+                        bytes += next.bytes.remaining();
+                    }
+                    this.sendFrame();
+                }
+            } catch (IOException ioe) {
+                if (!closed && channel.isOpen()) {
+                    handler.getLogger().log(AsyncLogger.Level.WARN, "Replication follower " + this.getName() +
+                            " disconnected. Reason=" + ioe.getMessage());
+                }
+            } catch (InterruptedException ie) {
+                // closed
+            } finally {
+                followers.remove(this);
+                disconnects.increment();
+                this.close();
+            }
+        }
+
+        // Sends all the games of the handler. The follower is already queueing
+        // the changes, so none are lost; the changes older than the snapshot are
+        // skipped by the follower.
+        private void sendSnapshot() throws IOException {
+            lastSequence = sequence.get();
+            int bytes = 0;
+            for (Map.Entry<String, Penkiolika> entry : handler.snapshotGames().entrySet()) {
+                ByteBuffer encoded;
+                synchronized(entry.getValue()) {
+                    encoded = ReplicationFrames.encodeState(entry.getKey(), entry.getValue());
+                }
+                if (batch.size() == MAX_BATCH_RECORDS || bytes + encoded.remaining() > ReplicationFrames.MAX_BODY_BYTES) {
+                    this.sendFrame();
+                    bytes = 0;
+                }
+                batch.add(new Record(lastSequence, System.currentTimeMillis(), encoded));
+                bytes += encoded.remaining();
+            }
+            if (batch.size() == MAX_BATCH_RECORDS) {
+                this.sendFrame();
+            }
+            batch.add(new Record(lastSequence, System.currentTimeMillis(), ReplicationFrames.encodeSnapshotEnd()));
+            this.sendFrame();
+        }
+
+        // Sends the batch (or the heartbeat, if the batch is empty) as one frame
+        // with a gathering write and clears the batch.
+        private void sendFrame() throws IOException {
+            int count = batch.size();
+            int bodyLength = 0;
+            for (int i = 0; i < count; i++) {
+                buffers[i + 1] = batch.get(i).bytes.duplicate();
+                bodyLength += buffers[i + 1].remaining();
+            }
+            long eventMillis = count == 0 ? System.currentTimeMillis() : batch.get(0).millis;
+            if (count > 0) {
+                lastSequence = Math.max(lastSequence, batch.get(count - 1).sequence);
+            }
+            ReplicationFrames.writeHeader(header, count, bodyLength, lastSequence, sequence.get(), eventMillis);
+            buffers[0] = header;
+            long remaining = ReplicationFrames.HEADER_BYTES + bodyLength;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers, 0, count + 1);
+            }
+            frames.increment();
+            records.add(count);
+            for (int i = 0; i <= count; i++) {
+                buffers[i] = null;
+            }
+            batch.clear();
+        }
+
+        // Disconnects the follower.
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                // nothing more can be done
+            }
+            this.interrupt();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of a request handled by {@link ServerHandler}.
+ * It is disabled by default; it is enabled by {@code penkiolika.jfc} settings.
+ *
+ * @author julius
+ */
+@Name(RequestEvent.NAME)
+@Label("Request")
+@Category({"Penkiolika", "Server"})
+@Description("Request handled by the game server")
+@Enabled(false)
+@StackTrace(false)
+class RequestEvent extends Event {
+
+    /**
+     * The name of the event: {@value #NAME}.
+     */
+    static final String NAME = "lt.andrikonis.penkiolika.Request";
+
+    @Label("Method")
+    String method;
+
+    @Label("Route")
+    @Description("The matched route or null, if the request was rejected")
+    String route;
+
+    @Label("Status")
+    int status;
+
+    @Label("Game Id")
+    String gameId;
+
+    @Label("Response Size")
+    @Description("The size of the response contents or -1, if it was streamed")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,219 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of encoded responses by game id. Each cached response is stored together
+ * with the version of the game it was encoded from, so a stale response is
+ * never returned, even if the invalidation was missed.
+ * <p>
+ * The total size of the cached responses is bounded. When it exceeds the limit,
+ * the responses are evicted using the second chance (CLOCK) algorithm until the
+ * size drops to {@value #LOW_WATERMARK_PERCENT}% of the limit. Only one thread
+ * evicts at a time; other threads don't wait for it.
+ * <p>
+ * The class is thread safe.
+ *
+ * @author julius
+ */
+public class ResponseCache {
+
+    /**
+     * Default limit of the total size of the cached responses: {@value #DEFAULT_MAX_BYTES} bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * The size, to which the cache is reduced on eviction, in percents of the
+     * limit: {@value #LOW_WATERMARK_PERCENT}.
+     */
+    public static final int LOW_WATERMARK_PERCENT = 90;
+
+    // Approximate memory used by the cache entry in addition to the response itself.
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final ConcurrentMap<String, CachedResponse> entries = new ConcurrentHashMap<String, CachedResponse>();
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong(0);
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates the cache with the default size limit.
+     */
+    public ResponseCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates the cache.
+     *
+     * @param maxBytes the limit of the total size of the cached responses.
+     */
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached response of the game.
+     *
+     * @param id the id of the game.
+     * @param version the current version of the game.
+     * @return the cached response or null, if there is no response cached for
+     * this version of the game. The returned array must not be modified.
+     */
+    public byte[] get(String id, long version) {
+        CachedResponse entry = entries.get(id);
+        if (entry != null && entry.version == version) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            hits.increment();
+            return entry.response;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches the response of the game. Replaces the previously cached response
+     * of the same game, unless it is of a newer version.
+     *
+     * @param id the id of the game.
+     * @param version the version of the game, which the response was encoded from.
+     * @param response the encoded response. It must not be modified afterwards.
+     */
+    public void put(String id, long version, byte[] response) {
+        CachedResponse entry = new CachedResponse(version, response);
+        CachedResponse previous;
+        while (true) {
+            previous = entries.get(id);
+            if (previous == null) {
+                if (entries.putIfAbsent(id, entry) == null) {
+                    break;
+                }
+            } else if (previous.version > version) {
+                return;
+            } else if (entries.replace(id, previous, entry)) {
+                break;
+            }
+        }
+        long delta = entry.size() - (previous == null ? 0 : previous.size());
+        if (usedBytes.addAndGet(delta) > maxBytes) {
+            this.evict();
+        }
+    }
+
+    /**
+     * Removes the cached response of the game.
+     *
+     * @param id the id of the game.
+     */
+    public void invalidate(String id) {
+        CachedResponse removed = entries.remove(id);
+        if (removed != null) {
+            usedBytes.addAndGet(-removed.size());
+        }
+    }
+
+    /**
+     * Returns the approximate memory used by the cached responses.
+     *
+     * @return the used memory in bytes.
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Returns the number of cached responses.
+     *
+     * @return the number of cached responses.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of times the cached response was found.
+     *
+     * @return the number of cache hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of times the cached response was not found.
+     *
+     * @return the number of cache misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of responses evicted because of the size limit.
+     *
+     * @return the number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Evicts the responses until the used memory drops to the low watermark.
+    // Recently used responses get the second chance: they are only marked as
+    // not used on the first pass.
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long target = maxBytes / 100 * LOW_WATERMARK_PERCENT;
+            for (int pass = 0; pass < 2 && usedBytes.get() > target; pass++) {
+                Iterator<Map.Entry<String, CachedResponse>> it = entries.entrySet().iterator();
+                while (it.hasNext() && usedBytes.get() > target) {
+                    Map.Entry<String, CachedResponse> mapEntry = it.next();
+                    CachedResponse entry = mapEntry.getValue();
+                    if (entry.referenced) {
+                        entry.referenced = false;
+                    } else if (entries.remove(mapEntry.getKey(), entry)) {
+                        usedBytes.addAndGet(-entry.size());
+                        evictions.increment();
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    // The cached response together with the version of the game.
+    private static class CachedResponse {
+        private final long version;
+        private final byte[] response;
+        // Set when the response is used, cleared by the eviction.
+        private volatile boolean referenced;
+
+        CachedResponse(long version, byte[] response) {
+            this.version = version;
+            this.response = response;
+        }
+
+        // The approximate memory used by this entry.
+        long size() {
+            return response.length + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
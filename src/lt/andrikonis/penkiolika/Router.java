@@ -0,0 +1,142 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table of request routes. Each route is a method and a list of path segments,
+ * where a segment is either a literal or a parameter (any non empty segment).
+ * The path is matched in place: it is not split or copied, and the parameters
+ * are recorded as positions in the path, so matching a request allocates
+ * nothing. As with {@link String#split(String)}, trailing slashes are ignored.
+ * <p>
+ * The routes must be added before the table is used. Afterwards the table is
+ * thread safe.
+ *
+ * @param <T> the type of the route targets.
+ *
+ * @author julius
+ */
+class Router<T> {
+
+    /**
+     * The largest number of parameters of the route: {@value #MAX_PARAMETERS}.
+     */
+    static final int MAX_PARAMETERS = 4;
+
+    /**
+     * The mutable result of the matching. It should be reused by the thread,
+     * which matches the requests.
+     */
+    static class Match {
+        private String path;
+        private final int[] parameterStarts = new int[MAX_PARAMETERS];
+        private final int[] parameterEnds = new int[MAX_PARAMETERS];
+
+        /**
+         * Returns the value of the parameter of the matched route.
+         *
+         * @param index the index of the parameter (among the parameters of the route).
+         * @return the value of the parameter.
+         */
+        String parameter(int index) {
+            return path.substring(parameterStarts[index], parameterEnds[index]);
+        }
+    }
+
+    // The route: the method, the segments (null for a parameter) and the target.
+    private static class Route<T> {
+        private final String method;
+        private final String[] segments;
+        private final T target;
+
+        Route(String method, String[] segments, T target) {
+            this.method = method;
+            this.segments = segments;
+            this.target = target;
+        }
+    }
+
+    private final List<Route<T>> routes = new ArrayList<Route<T>>();
+
+    /**
+     * Adds the route to the table.
+     *
+     * @param method the method of the request.
+     * @param segments the segments of the path. The null segment is a parameter.
+     * @param target the target of the route.
+     * @return this table.
+     */
+    Router<T> add(String method, String[] segments, T target) {
+        int parameters = 0;
+        for (String segment : segments) {
+            if (segment == null) {
+                parameters++;
+            }
+        }
+        if (parameters > MAX_PARAMETERS) {
+            throw new IllegalArgumentException("At most " + MAX_PARAMETERS + " parameters expected, and " +
+                    parameters + " received");
+        }
+        routes.add(new Route<T>(method, segments.clone(), target));
+        return this;
+    }
+
+    /**
+     * Finds the route matching the request.
+     *
+     * @param method the method of the request.
+     * @param path the path of the request.
+     * @param from the index, from which the path is matched. The character at
+     * this index must be a slash.
+     * @param match the result, where the parameters of the matched route are written.
+     * @return the target of the matched route or null, if no route matches.
+     */
+    T match(String method, String path, int from, Match match) {
+        for (int i = 0; i < routes.size(); i++) {
+            Route<T> route = routes.get(i);
+            if (route.method.equals(method) && Router.matches(route.segments, path, from, match)) {
+                match.path = path;
+                return route.target;
+            }
+        }
+        return null;
+    }
+
+    // Checks if the path matches the segments, writing the positions of the
+    // parameters to the match.
+    private static boolean matches(String[] segments, String path, int from, Match match) {
+        int position = from;
+        int parameter = 0;
+        for (String segment : segments) {
+            if (position >= path.length() || path.charAt(position) != '/') {
+                return false;
+            }
+            int start = position + 1;
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (segment == null) {
+                if (end == start) {
+                    return false;
+                }
+                match.parameterStarts[parameter] = start;
+                match.parameterEnds[parameter] = end;
+                parameter++;
+            } else if (end - start != segment.length() || !path.regionMatches(start, segment, 0, segment.length())) {
+                return false;
+            }
+            position = end;
+        }
+        for (; position < path.length(); position++) {
+            if (path.charAt(position) != '/') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -5,6 +5,14 @@ package lt.andrikonis.penkiolika;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
@@ -12,7 +20,43 @@ import com.sun.net.httpserver.HttpServer;
  * Class, for starting the HTTP server. It provides two ways to do it:
  * <ol>
  *  <li> using {@link #main} method. Starts the game server using integrated
- *       request handler.
+ *       request handler protected by {@link AdmissionControlHandler} and
+ *       a bounded pool of {@value #DEFAULT_WORKER_THREADS} worker threads. Up
+ *       to {@value AdmissionControlHandler#DEFAULT_MAX_CONCURRENCY} requests are
+ *       processed concurrently, or the number set by {@value #MAX_CONCURRENCY_PROPERTY}
+ *       system property.
+ *       The errors are logged asynchronously (see {@link AsyncLogger}) to the
+ *       file set by {@value #LOG_FILE_PROPERTY} system property (default
+ *       {@value #DEFAULT_LOG_FILE}) with the level set by {@value #LOG_LEVEL_PROPERTY}
+ *       system property (default {@code INFO}). The games and the race rooms
+ *       unused for the time set by {@value #GAME_MAX_IDLE_PROPERTY} system
+ *       property are removed (by default they are kept forever). The server emits Java Flight
+ *       Recorder events of requests, moves, shuffles and solver runs; they are
+ *       disabled by default and enabled by {@code penkiolika.jfc} settings.
+ *       The events use {@code jdk.jfr} API, so on Java 8 the server needs
+ *       update 262 or newer.
+ *       If {@value #CLUSTER_NODES_PROPERTY} and {@value #CLUSTER_SELF_PROPERTY}
+ *       system properties are set, the server is a node of the {@link Cluster}
+ *       and handles the requests for the games of other nodes as set by
+ *       {@value #CLUSTER_MODE_PROPERTY} system property. For example, two nodes
+ *       on one machine are started with
+ *       {@code -Dpenkiolika.cluster.nodes=a=localhost:8080,b=localhost:8081}
+ *       and {@code -Dpenkiolika.cluster.self=a} or {@code b}; the port of the
+ *       node is used, if no port is provided. If {@value #REPLICATION_PORT_PROPERTY}
+ *       system property is set, the server streams the changes of its games
+ *       to the hot standby servers connecting to that port (see {@link ReplicationPrimary}).
+ *       If {@value #REPLICATION_PRIMARY_PROPERTY} system property is set, the
+ *       server is a read only hot standby of that primary (see {@link ReplicationFollower})
+ *       until it is promoted. The games of the archive file set by
+ *       {@value #IMPORT_FILE_PROPERTY} system property are imported before the
+ *       server starts (see {@link GameArchive}). If {@value #WARMUP_MILLIS_PROPERTY}
+ *       system property is set, the server warms up after it starts (see
+ *       {@link WarmUp}) and answers the readiness request with HTTP status 503
+ *       until the warm-up ends. When the JVM shuts down, the server drains the
+ *       requests in progress for the time set by {@value #SHUTDOWN_DRAIN_MILLIS_PROPERTY}
+ *       system property and stops gracefully (see {@link ServerLifecycle});
+ *       if {@value #SNAPSHOT_FILE_PROPERTY} system property is set, the games
+ *       are written to that file and restored from it on the next start.
  *  <li> using {@link #start} method. Starts the HTTP server using port, base path
  *       and request handler provided as parameters.
  * </ol>
@@ -27,33 +71,240 @@ public class Server {
      */
     public static final int DEFAULT_SERVER_PORT = 8080;
 
+    /**
+     * Default number of threads processing the requests: {@value #DEFAULT_WORKER_THREADS}.
+     */
+    public static final int DEFAULT_WORKER_THREADS = 32;
+
+    /**
+     * Default capacity of the queue of accepted, but not yet processed requests:
+     * {@value #DEFAULT_QUEUE_CAPACITY}. When the queue is full, the server stops
+     * accepting new connections until there is room in the queue.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * The system property of the largest number of requests processed
+     * concurrently: {@value #MAX_CONCURRENCY_PROPERTY}.
+     */
+    public static final String MAX_CONCURRENCY_PROPERTY = "penkiolika.maxConcurrency";
+
+    /**
+     * The system property of the log file: {@value #LOG_FILE_PROPERTY}.
+     */
+    public static final String LOG_FILE_PROPERTY = "penkiolika.log.file";
+
+    /**
+     * The system property of the lowest level of the logged records: {@value #LOG_LEVEL_PROPERTY}.
+     */
+    public static final String LOG_LEVEL_PROPERTY = "penkiolika.log.level";
+
+    /**
+     * Default log file: {@value #DEFAULT_LOG_FILE}.
+     */
+    public static final String DEFAULT_LOG_FILE = "penkiolika.log";
+
+    /**
+     * The system property of the time, after which an unused game or race room
+     * is removed: {@value #GAME_MAX_IDLE_PROPERTY} (in milliseconds, 0 keeps them forever).
+     */
+    public static final String GAME_MAX_IDLE_PROPERTY = "penkiolika.game.maxIdleMillis";
+
+    /**
+     * The system property of the nodes of the cluster: {@value #CLUSTER_NODES_PROPERTY}
+     * (in the form {@code <id>=<host>:<port>,...}, see {@link Cluster#parseNodes}).
+     */
+    public static final String CLUSTER_NODES_PROPERTY = "penkiolika.cluster.nodes";
+
+    /**
+     * The system property of the id of this node of the cluster: {@value #CLUSTER_SELF_PROPERTY}.
+     */
+    public static final String CLUSTER_SELF_PROPERTY = "penkiolika.cluster.self";
+
+    /**
+     * The system property of the handling of the requests for the games of other
+     * nodes: {@value #CLUSTER_MODE_PROPERTY} ({@code forward} (default) or
+     * {@code redirect}, see {@link Cluster.Mode}).
+     */
+    public static final String CLUSTER_MODE_PROPERTY = "penkiolika.cluster.mode";
+
+    /**
+     * The system property of the port, on which the server accepts the
+     * replication followers: {@value #REPLICATION_PORT_PROPERTY}.
+     */
+    public static final String REPLICATION_PORT_PROPERTY = "penkiolika.replication.port";
+
+    /**
+     * The system property of the replication address of the primary, which
+     * the server follows: {@value #REPLICATION_PRIMARY_PROPERTY} (in the form
+     * {@code <host>:<port>}).
+     */
+    public static final String REPLICATION_PRIMARY_PROPERTY = "penkiolika.replication.primary";
+
+    /**
+     * The system property of the archive file of the games imported on start:
+     * {@value #IMPORT_FILE_PROPERTY} (see {@link GameArchive}).
+     */
+    public static final String IMPORT_FILE_PROPERTY = "penkiolika.import.file";
+
+    /**
+     * The system property of the time limit of the warm-up after the start:
+     * {@value #WARMUP_MILLIS_PROPERTY} (in milliseconds, 0 starts without the
+     * warm-up, see {@link WarmUp}).
+     */
+    public static final String WARMUP_MILLIS_PROPERTY = "penkiolika.warmup.millis";
+
+    /**
+     * The system property of the snapshot file of the games, written on
+     * shutdown and restored on start: {@value #SNAPSHOT_FILE_PROPERTY}.
+     */
+    public static final String SNAPSHOT_FILE_PROPERTY = "penkiolika.snapshot.file";
+
+    /**
+     * The system property of the longest time of waiting for the requests in
+     * progress on shutdown: {@value #SHUTDOWN_DRAIN_MILLIS_PROPERTY} (in
+     * milliseconds, default {@value ServerLifecycle#DEFAULT_DRAIN_MILLIS}).
+     */
+    public static final String SHUTDOWN_DRAIN_MILLIS_PROPERTY = "penkiolika.shutdown.drainMillis";
+
+    // The longest period of checking for unused games.
+    private static final long MAX_EXPIRY_PERIOD_MILLIS = 60000;
+
     /**
      * Starts the game server.
      *
      * @param args the command line arguments. Only the first argument is used
      * and it is optional. If it is provided, it should be integer number meaning
      * the port number on which the server should listen for requests. If it is
-     * not provided, {@link #DEFAULT_SERVER_PORT} is used.
+     * not provided, the port of this node of the cluster or {@link #DEFAULT_SERVER_PORT}
+     * is used.
      *
      * @throws java.io.IOException if input output exception occurs during server
      * creation. For details see {@link com.sun.net.httpserver.HttpServer#create(java.net.InetSocketAddress, int)}
      * documentation.
      */
     public static void main(String[] args) throws IOException {
+        Cluster cluster = Server.createCluster();
+        int defaultPort = cluster == null ? DEFAULT_SERVER_PORT : cluster.getSelf().getPort();
         int port;
         if (args.length >= 1) {
             try {
                 port = Integer.parseInt(args[0]);
             } catch (NumberFormatException nfe) {
                 System.out.println("Integer as a parameter expected, and " + args[0] + " received." +
-                        "Assuming port=" + DEFAULT_SERVER_PORT);
-                port = DEFAULT_SERVER_PORT;
+                        "Assuming port=" + defaultPort);
+                port = defaultPort;
             }
         } else {
-            System.out.println("No parameter provided. Assuming port=" + DEFAULT_SERVER_PORT);
-            port = DEFAULT_SERVER_PORT;
+            System.out.println("No parameter provided. Assuming port=" + defaultPort);
+            port = defaultPort;
+        }
+        AsyncLogger.Level logLevel;
+        try {
+            logLevel = AsyncLogger.Level.valueOf(System.getProperty(LOG_LEVEL_PROPERTY, AsyncLogger.Level.INFO.name()));
+        } catch (IllegalArgumentException iae) {
+            System.out.println("Unknown log level " + System.getProperty(LOG_LEVEL_PROPERTY) + ". Assuming INFO");
+            logLevel = AsyncLogger.Level.INFO;
+        }
+        AsyncLogger logger = new AsyncLogger(logLevel, Paths.get(System.getProperty(LOG_FILE_PROPERTY, DEFAULT_LOG_FILE)),
+                AsyncLogger.DEFAULT_MAX_FILE_BYTES, AsyncLogger.DEFAULT_MAX_FILES, AsyncLogger.DEFAULT_CAPACITY);
+        ServerHandler serverHandler = new ServerHandler(logger, cluster);
+        ServerLifecycle lifecycle = new ServerLifecycle(serverHandler, logger,
+                Long.getLong(SHUTDOWN_DRAIN_MILLIS_PROPERTY, ServerLifecycle.DEFAULT_DRAIN_MILLIS));
+        if (cluster != null) {
+            lifecycle.addResource(cluster);
+        }
+        String snapshotFile = System.getProperty(SNAPSHOT_FILE_PROPERTY);
+        if (snapshotFile != null) {
+            lifecycle.setSnapshotFile(Paths.get(snapshotFile));
+            long start = System.nanoTime();
+            long restored = lifecycle.restoreSnapshot(Runtime.getRuntime().availableProcessors());
+            System.out.println("Restored " + restored + " games from " + snapshotFile + " in " +
+                    (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        String importFile = System.getProperty(IMPORT_FILE_PROPERTY);
+        if (importFile != null) {
+            long start = System.nanoTime();
+            long imported = GameArchive.load(serverHandler, Paths.get(importFile), Runtime.getRuntime().availableProcessors());
+            System.out.println("Imported " + imported + " games from " + importFile + " in " +
+                    (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        long maxIdleMillis = Long.getLong(GAME_MAX_IDLE_PROPERTY, 0);
+        if (maxIdleMillis > 0) {
+            long period = Math.min(maxIdleMillis, MAX_EXPIRY_PERIOD_MILLIS);
+            ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "penkiolika-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            expiry.scheduleWithFixedDelay(() -> {
+                serverHandler.expireIdleGames(maxIdleMillis);
+                serverHandler.expireIdleRooms(maxIdleMillis);
+            }, period, period, TimeUnit.MILLISECONDS);
+            lifecycle.addResource(expiry::shutdownNow);
+        }
+        Integer replicationPort = Integer.getInteger(REPLICATION_PORT_PROPERTY);
+        if (replicationPort != null) {
+            ReplicationPrimary primary = new ReplicationPrimary(serverHandler, replicationPort);
+            lifecycle.addResource(primary);
+            System.out.println("Replication primary on port=" + primary.getPort());
+        }
+        String replicationPrimary = System.getProperty(REPLICATION_PRIMARY_PROPERTY);
+        if (replicationPrimary != null) {
+            int colon = replicationPrimary.lastIndexOf(':');
+            try {
+                ReplicationFollower follower = new ReplicationFollower(serverHandler, replicationPrimary.substring(0, colon),
+                        Integer.parseInt(replicationPrimary.substring(colon + 1)));
+                follower.start();
+                lifecycle.addResource(follower);
+                System.out.println("Replication follower of primary " + replicationPrimary);
+            } catch (RuntimeException re) {
+                System.out.println("Replication primary <host>:<port> expected, and " + replicationPrimary +
+                        " received. Assuming no replication");
+            }
+        }
+        long warmUpMillis = Long.getLong(WARMUP_MILLIS_PROPERTY, 0);
+        serverHandler.setReady(warmUpMillis <= 0);
+        HttpHandler handler = lifecycle.track(new AdmissionControlHandler(serverHandler,
+                Integer.getInteger(MAX_CONCURRENCY_PROPERTY, AdmissionControlHandler.DEFAULT_MAX_CONCURRENCY)));
+        ThreadPoolExecutor executor = Server.newBoundedExecutor(DEFAULT_WORKER_THREADS, DEFAULT_QUEUE_CAPACITY);
+        lifecycle.setHttpServer(Server.start(port, ServerHandler.BASE_PATH, handler,
+                AdmissionControlHandler.timed(executor)), executor);
+        lifecycle.installShutdownHook();
+        if (warmUpMillis > 0) {
+            try {
+                WarmUp.Result result = new WarmUp(warmUpMillis, logger).run();
+                System.out.println("Warmed up: " + result);
+            } catch (IOException ioe) {
+                System.out.println("Warm-up failed: " + ioe.getMessage());
+            } finally {
+                serverHandler.setReady(true);
+            }
+        }
+    }
+
+    // Creates the cluster from the system properties.
+    // Returns the cluster or null, if the server is not clustered.
+    private static Cluster createCluster() {
+        String nodes = System.getProperty(CLUSTER_NODES_PROPERTY);
+        String self = System.getProperty(CLUSTER_SELF_PROPERTY);
+        if (nodes == null || self == null) {
+            if (nodes != null || self != null) {
+                System.out.println("Both " + CLUSTER_NODES_PROPERTY + " and " + CLUSTER_SELF_PROPERTY +
+                        " must be set. Assuming no cluster");
+            }
+            return null;
+        }
+        Cluster.Mode mode;
+        try {
+            mode = Cluster.Mode.valueOf(System.getProperty(CLUSTER_MODE_PROPERTY, Cluster.Mode.FORWARD.name()).toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            System.out.println("Unknown cluster mode " + System.getProperty(CLUSTER_MODE_PROPERTY) + ". Assuming forward");
+            mode = Cluster.Mode.FORWARD;
         }
-        Server.start(port, ServerHandler.BASE_PATH, new ServerHandler());
+        Cluster cluster = new Cluster(self, Cluster.parseNodes(nodes), mode, HttpClientConnection.DEFAULT_TIMEOUT_MILLIS);
+        System.out.println("Cluster node " + cluster.getSelf() + " of " + cluster.getNodes() + ", mode=" + mode);
+        return cluster;
     }
 
     /**
@@ -70,12 +321,53 @@ public class Server {
      * documentation.
      */
     public static HttpServer start(int port, String basePath, HttpHandler handler) throws IOException {
+        return Server.start(port, basePath, handler, null);
+    }
+
+    /**
+     * Starts the HTTP server, which listens to provided port and responds according
+     * to provided request handler. The requests are processed using the provided
+     * executor.
+     *
+     * @param port port, for server to listen to requests.
+     * @param basePath base path for requests to the server.
+     * @param handler request handler object for this server.
+     * @param executor executor to process the requests or null, if they should
+     * be processed by the single dispatcher thread of the server.
+     * @return reference to the started server.
+     *
+     * @throws java.io.IOException if input output exception occurs during server
+     * creation. For details see {@link com.sun.net.httpserver.HttpServer#create(java.net.InetSocketAddress, int)}
+     * documentation.
+     */
+    public static HttpServer start(int port, String basePath, HttpHandler handler, Executor executor) throws IOException {
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         server.createContext(basePath, handler);
-        server.setExecutor(null);
+        server.setExecutor(executor);
         server.start();
         System.out.println("Server started on port=" + port);
         return server;
     }
 
+    /**
+     * Creates an executor with fixed number of threads and a bounded queue. When
+     * the queue is full, the request is processed by the submitting (dispatcher)
+     * thread of the server. This stops the server from accepting new connections
+     * until the load drops, instead of queueing them without limit.
+     *
+     * @param threads the number of worker threads.
+     * @param queueCapacity the capacity of the queue of waiting requests.
+     * @return the executor.
+     */
+    public static ThreadPoolExecutor newBoundedExecutor(int threads, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "penkiolika-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
 }
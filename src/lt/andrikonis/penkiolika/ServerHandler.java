@@ -5,14 +5,25 @@ package lt.andrikonis.penkiolika;
 
 import java.io.IOException;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.function.Function;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -25,16 +36,114 @@ import com.sun.net.httpserver.HttpHandler;
  * This handler listens to the following requests:
  * <ul>
  *  <li>{@code POST} request to {@code /penkiolika/game/} - creates a new game
- *      and returns it. Returns HTTP status 201 on success.
+ *      and returns it. Returns HTTP status 201 on success. If the request has no
+ *      contents, or its JSON has no {@code "board"} field, the game is shuffled
+ *      randomly. Otherwise the game is created with the provided board
+ *      {@code {"board":<game state>}}. Returns HTTP status 415 if the contents
+ *      is not a JSON object and 422 if the board is not a permutation of
+ *      numbers from 0 to 15 or if it cannot be solved.
  *  <li>{@code GET} request to {@code /penkiolika/game/<id>} - returns an existing
  *      game. Returns HTTP status 200 on success and 404 if the game is not found.
+ *      If the request has {@code If-None-Match} header, which matches the current
+ *      {@code ETag} of the game, returns HTTP status 304 without contents.
  *  <li>{@code PATCH} request to {@code /penkiolika/game/<id>} - orders a server
  *      to make a move in the specified game. A move is specified in JSON using
  *      this syntax: {@code {"move":"left"|"right"|"top"|"bottom"}}. Returns the
  *      game after the move. Returns HTTP status 200 on success, 404 if the game
  *      is not found and 409 if the move is not legal in current game state.
+ *      If the request has {@code If-Match} header, the move is made only if
+ *      it matches the current {@code ETag} of the game. Otherwise HTTP status
+ *      412 is returned.
  *  <li>{@code DELETE} request to {@code /penkiolika/game/<id>} - deletes the
  *      specified game and returns the deleted game.
+ *  <li>{@code POST} request to {@code /penkiolika/game/<id>/solve-jobs} - starts
+ *      a background job to find the optimal solution of the current state of
+ *      the game and returns the job (see {@link SolveJobManager.Job#toJson()}).
+ *      The contents is optional: {@code {"timeoutMillis":<timeout>}} limits
+ *      the time the job may take (default {@value SolveJobManager#DEFAULT_TIMEOUT_MILLIS},
+ *      at most {@value SolveJobManager#MAX_TIMEOUT_MILLIS}). Returns HTTP status
+ *      202 on success, 404 if the game is not found, 422 if the game cannot be
+ *      solved and 503 if there are too many jobs waiting.
+ *  <li>{@code GET} request to {@code /penkiolika/game/<id>/solve-jobs/<job id>}
+ *      - returns the job with its status and, when solved, the moves of the
+ *      solution. Returns HTTP status 200 on success and 404 if the job is not
+ *      found. The finished jobs are kept for
+ *      {@value SolveJobManager#DEFAULT_RESULT_TTL_MILLIS} ms.
+ *  <li>{@code DELETE} request to {@code /penkiolika/game/<id>/solve-jobs/<job id>}
+ *      - cancels the job and returns it. Returns HTTP status 200 on success and
+ *      404 if the job is not found.
+ *  <li>{@code POST} request to {@code /penkiolika/solve-batch?timeoutMillis=<budget>}
+ *      - finds the lengths of the optimal solutions of many boards. The contents
+ *      is a stream of boards, one per line, and the response is a stream of
+ *      results, one JSON object per line, in the order they are solved (see
+ *      {@link BatchSolver}). The optional {@code timeoutMillis} parameter limits
+ *      the time of the whole batch (default {@value BatchSolver#DEFAULT_BUDGET_MILLIS},
+ *      at most {@value BatchSolver#MAX_BUDGET_MILLIS}). Returns HTTP status 200
+ *      and 400 if the parameter is invalid.
+ *  <li>{@code GET} request to {@code /penkiolika/games?cursor=<cursor>&limit=<limit>&final=true|false}
+ *      - returns one page of the existing games. All the parameters are optional.
+ *      The page is a JSON object {@code {"games":[<game>,...],"nextCursor":<cursor>}},
+ *      where {@code "nextCursor"} should be passed as {@code cursor} parameter to
+ *      get the next page, or is null, if there are no more pages. A page contains
+ *      at most {@code <limit>} games (default {@value #DEFAULT_LIST_LIMIT}, at most
+ *      {@value #MAX_LIST_LIMIT}), but it may contain less (even none) and still
+ *      have the next page. If {@code final} parameter is provided, only the games
+ *      with the same {@code "final"} value are returned. The games are listed
+ *      in the order of creation; games created or deleted during the listing
+ *      may or may not be listed. Only the games with numeric ids (after the id
+ *      prefix of the cluster node), like the ones the server creates, are
+ *      listed: games imported or restored with other ids can be retrieved
+ *      by id, but they are not listed. Returns HTTP status 200 on success and
+ *      400 if parameters are invalid.
+ *  <li>{@code GET} request to {@code /penkiolika/stats} - returns the aggregate
+ *      statistics of the games. For the format see {@link GameStatistics#toJson()}.
+ *      Returns HTTP status 200.
+ *  <li>{@code GET} request to {@code /penkiolika/stats/shards} - returns the
+ *      load of every shard of the game store. For the format see
+ *      {@link GameStore#toJson()}. Returns HTTP status 200.
+ *  <li>{@code GET} request to {@code /penkiolika/stats/replication} - returns
+ *      the state of the replication of the games: {@code {"readOnly":true|false,
+ *      "primary":<primary>,"follower":<follower>}}. For the formats of the
+ *      optional primary and follower see {@link ReplicationPrimary#toJson()}
+ *      and {@link ReplicationFollower#toJson()}. Returns HTTP status 200.
+ *  <li>{@code POST} request to {@code /penkiolika/replication/promote} - stops
+ *      the replication to this follower and makes it accept the changes of
+ *      the games. Returns the state of the replication and HTTP status 200 on
+ *      success and 409 if this server is not a replication follower.
+ *  <li>{@code GET} request to {@code /penkiolika/leaderboard} - returns the best
+ *      game completions. For the format see {@link Leaderboard#toJson()}.
+ *      Returns HTTP status 200.
+ *  <li>{@code POST} request to {@code /penkiolika/room/} - creates a race room
+ *      (see {@link RaceRoom}), whose players all start from the same board, and
+ *      returns it. The board is shuffled once for the room or provided in the
+ *      contents, as for the new game. Returns HTTP status 201 on success, 415
+ *      and 422 as the game creation.
+ *  <li>{@code GET} request to {@code /penkiolika/room/<room id>?limit=<limit>}
+ *      - returns the room with its standings: the best {@code <limit>} players
+ *      (default {@value RaceRoom#DEFAULT_STANDINGS_LIMIT}, at most
+ *      {@value RaceRoom#MAX_STANDINGS_LIMIT}). For the format see
+ *      {@link RaceRoom#toJson(int)}. Returns HTTP status 200 on success, 400 if
+ *      the limit is invalid and 404 if the room is not found.
+ *  <li>{@code DELETE} request to {@code /penkiolika/room/<room id>} - deletes
+ *      the room with all its players and returns it.
+ *  <li>{@code POST} request to {@code /penkiolika/room/<room id>/players} -
+ *      joins a new player to the room and returns the player (see
+ *      {@link RaceRoom.Progress#toJson()}). Returns HTTP status 201 on success
+ *      and 404 if the room is not found.
+ *  <li>{@code GET} request to {@code /penkiolika/room/<room id>/players/<player id>}
+ *      - returns the player. Returns HTTP status 200 on success and 404 if the
+ *      room or the player is not found.
+ *  <li>{@code PATCH} request to {@code /penkiolika/room/<room id>/players/<player id>}
+ *      - makes the move of the player, specified as for the game, and returns
+ *      the player after the move. Returns HTTP status 200 on success, 404 if
+ *      the room or the player is not found and 409 if the move is not legal or
+ *      the player has already completed the board.
+ *  <li>{@code GET} request to {@code /penkiolika/ready} - tells, if the server
+ *      should receive the traffic: {@code {"ready":true|false}}. Returns HTTP
+ *      status 200, when ready, and 503, while the server is still warming up
+ *      (see {@link WarmUp}).
+ *  <li>{@code GET} request to {@code /penkiolika/live} - tells, that the server
+ *      is running: {@code {"live":true}}. Returns HTTP status 200.
  * </ul>
  *
  * The {@code <id>} parameter in theese requests is an id of the game, which is
@@ -47,7 +156,11 @@ import com.sun.net.httpserver.HttpHandler;
  *  {
  *      "id":<id>,
  *      "board":<game state>,
- *      "final":true|false
+ *      "final":true|false,
+ *      "version":<version>,
+ *      "distance":<distance>,
+ *      "manhattanDistance":<manhattan distance>,
+ *      "misplacedTiles":<misplaced tiles>
  *  }
  * }
  * </pre>
@@ -67,6 +180,35 @@ import com.sun.net.httpserver.HttpHandler;
  * The {@code "final"} boolean parameter is true if and only if the game state is
  * final. This means that the numbers in the bord are in consecutive order and that
  * the empty space is in the bottom right corner of the board.<br>
+ * The {@code <version>} is an integer, which is increased every time the game
+ * changes. Every response containing a game also has the {@code ETag} header
+ * {@code "<version>"}. It may be used for conditional requests described above.<br>
+ * The {@code <distance>}, {@code <manhattan distance>} and {@code <misplaced tiles>}
+ * are optional integers, which estimate how far the game is from the final state
+ * (see {@link Heuristics}): the Manhattan distance plus the linear conflict (it
+ * never exceeds the number of moves needed), the Manhattan distance alone and
+ * the number of tiles not in their final places. They are kept up to date by
+ * the game on every move, so they cost nothing to return.
+ * <p>
+ * The handler may be a hot standby of another server (see {@link ReplicationFollower}).
+ * Then it is read only: the requests creating, moving and deleting the games
+ * return HTTP status 503 until the handler is promoted.
+ * <p>
+ * The handler may be a node of a {@link Cluster}. The node creates only the
+ * games it owns (their ids start with {@code <node id>-}) and lists only its
+ * own games. The requests for the games owned by another node (the ones with
+ * {@code <id>} in the path) are forwarded to the owner or redirected to it with
+ * HTTP status 307, as configured. Returns HTTP status 502 if the owner cannot
+ * be reached.
+ * <p>
+ * The race rooms are kept only by the server (or the node of the cluster),
+ * which created them: they are neither replicated nor archived, and their
+ * players are not counted by the statistics and the leaderboard. The rooms,
+ * which are not used (by any request for the room or its players), may be
+ * removed together with their players (see {@link #expireIdleRooms(long)}).
+ * <p>
+ * Encoded game responses are cached by game version (see {@link ResponseCache}),
+ * so repeated reads of an unchanged game don't encode it again.
  * <p>
  * The errors are returned as JSON objects {@code {"reason":<reason>}}, where
  * {@code <reason>} is a string with error details.
@@ -85,6 +227,97 @@ public class ServerHandler implements HttpHandler {
      */
     public static final String GAME_PATH = "game";
 
+    /**
+     * The subpath for the request to list games for this handler: {@value #GAMES_PATH}.
+     */
+    public static final String GAMES_PATH = "games";
+
+    /**
+     * The subpath (under the game) for requests about solve jobs for this handler: {@value #SOLVE_JOBS_PATH}.
+     */
+    public static final String SOLVE_JOBS_PATH = "solve-jobs";
+
+    /**
+     * The subpath for the request solving a batch of boards for this handler: {@value #SOLVE_BATCH_PATH}.
+     */
+    public static final String SOLVE_BATCH_PATH = "solve-batch";
+
+    /**
+     * The subpath for the request of game statistics for this handler: {@value #STATS_PATH}.
+     */
+    public static final String STATS_PATH = "stats";
+
+    /**
+     * The subpath (under the statistics) for the request of game store shard
+     * statistics for this handler: {@value #SHARDS_PATH}.
+     */
+    public static final String SHARDS_PATH = "shards";
+
+    /**
+     * The subpath for the requests about the replication for this handler
+     * (also under the statistics): {@value #REPLICATION_PATH}.
+     */
+    public static final String REPLICATION_PATH = "replication";
+
+    /**
+     * The subpath (under the replication) for the request promoting the
+     * follower for this handler: {@value #PROMOTE_PATH}.
+     */
+    public static final String PROMOTE_PATH = "promote";
+
+    /**
+     * The subpath for the request of the leaderboard for this handler: {@value #LEADERBOARD_PATH}.
+     */
+    public static final String LEADERBOARD_PATH = "leaderboard";
+
+    /**
+     * The subpath for requests about race rooms for this handler: {@value #ROOM_PATH}.
+     */
+    public static final String ROOM_PATH = "room";
+
+    /**
+     * The subpath (under the race room) for requests about its players for
+     * this handler: {@value #PLAYERS_PATH}.
+     */
+    public static final String PLAYERS_PATH = "players";
+
+    /**
+     * The subpath for the readiness request for this handler: {@value #READY_PATH}.
+     */
+    public static final String READY_PATH = "ready";
+
+    /**
+     * The subpath for the liveness request for this handler: {@value #LIVE_PATH}.
+     */
+    public static final String LIVE_PATH = "live";
+
+    /**
+     * Default number of games in one page of the game list: {@value #DEFAULT_LIST_LIMIT}.
+     */
+    public static final int DEFAULT_LIST_LIMIT = 100;
+
+    /**
+     * Largest number of games in one page of the game list: {@value #MAX_LIST_LIMIT}.
+     */
+    public static final int MAX_LIST_LIMIT = 1000;
+
+    /**
+     * Largest number of game ids checked to form one page of the game list:
+     * {@value #MAX_LIST_SCAN}. It bounds the cost of the request, if many games
+     * have been deleted.
+     */
+    public static final int MAX_LIST_SCAN = 100000;
+
+    /**
+     * The games field name of the returned game list JSON: {@value #JSON_GAMES}.
+     */
+    public static final String JSON_GAMES = "games";
+
+    /**
+     * The next cursor field name of the returned game list JSON: {@value #JSON_NEXT_CURSOR}.
+     */
+    public static final String JSON_NEXT_CURSOR = "nextCursor";
+
     /**
      * The id field name of the returned game JSON: {@value #JSON_ID}.
      */
@@ -100,6 +333,27 @@ public class ServerHandler implements HttpHandler {
      */
     public static final String JSON_FINAL = "final";
 
+    /**
+     * The version field name of the returned game JSON: {@value #JSON_VERSION}.
+     */
+    public static final String JSON_VERSION = "version";
+
+    /**
+     * The field name in JSON of the estimated distance of the game to the final
+     * state: {@value #JSON_DISTANCE}.
+     */
+    public static final String JSON_DISTANCE = "distance";
+
+    /**
+     * The field name in JSON of the Manhattan distance of the game: {@value #JSON_MANHATTAN_DISTANCE}.
+     */
+    public static final String JSON_MANHATTAN_DISTANCE = "manhattanDistance";
+
+    /**
+     * The field name in JSON of the number of misplaced tiles of the game: {@value #JSON_MISPLACED_TILES}.
+     */
+    public static final String JSON_MISPLACED_TILES = "misplacedTiles";
+
     /**
      * The move field name of the JSON passed as contents to the move request:
      * {@value #JSON_MOVE}.
@@ -139,17 +393,178 @@ public class ServerHandler implements HttpHandler {
      */
     public static final String JSON_ERROR_REASON = "reason";
 
+    /**
+     * The field name of the replication JSON telling, if the games cannot be
+     * changed: {@value #JSON_READ_ONLY}.
+     */
+    public static final String JSON_READ_ONLY = "readOnly";
+
+    /**
+     * The field name of the replication JSON of the primary state (see
+     * {@link ReplicationPrimary#toJson()}): {@value #JSON_REPLICATION_PRIMARY}.
+     */
+    public static final String JSON_REPLICATION_PRIMARY = "primary";
+
+    /**
+     * The field name of the replication JSON of the follower state (see
+     * {@link ReplicationFollower#toJson()}): {@value #JSON_REPLICATION_FOLLOWER}.
+     */
+    public static final String JSON_REPLICATION_FOLLOWER = "follower";
+
+    /**
+     * The field name of the readiness JSON: {@value #JSON_READY}.
+     */
+    public static final String JSON_READY = "ready";
+
+    /**
+     * The field name of the liveness JSON: {@value #JSON_LIVE}.
+     */
+    public static final String JSON_LIVE = "live";
+
+    /**
+     * The field name in the solve job request JSON for the time limit of the
+     * job: {@value #JSON_TIMEOUT_MILLIS}.
+     */
+    public static final String JSON_TIMEOUT_MILLIS = "timeoutMillis";
+
+    // Names of the headers for conditional requests.
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_MATCH = "If-Match";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_LOCATION = "Location";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    // The headers of the request forwarded to the node owning the game.
+    private static final String[] FORWARDED_HEADERS = {HEADER_IF_MATCH, HEADER_IF_NONE_MATCH};
+    // The headers of the response of the node owning the game returned to the client.
+    private static final String[] RETURNED_HEADERS = {HEADER_ETAG, HEADER_CONTENT_TYPE, HEADER_LOCATION};
+    // The type of the streamed results: one JSON object per line.
+    private static final String CONTENT_TYPE_NDJSON = "application/x-ndjson";
+    // One level of indentation of the streamed game list, the same as of encodeJson.
+    private static final String LIST_INDENT = "    ";
+
+    // The targets of the routes of the requests.
+    private enum Route {
+        CREATE_GAME(false, true), GET_GAME(true, false), MOVE(true, true), DELETE_GAME(true, true),
+        CREATE_SOLVE_JOB(true, false), GET_SOLVE_JOB(true, false), CANCEL_SOLVE_JOB(true, false),
+        SOLVE_BATCH(false, false), LIST_GAMES(false, false), STATS(false, false), SHARD_STATS(false, false),
+        REPLICATION_STATS(false, false), PROMOTE(false, false), LEADERBOARD(false, false),
+        READY(false, false), LIVE(false, false), CREATE_ROOM(false, true), GET_ROOM(false, false),
+        DELETE_ROOM(false, true), JOIN_ROOM(false, true), GET_PLAYER(false, false), MOVE_PLAYER(false, true);
+
+        // True, if the first parameter of the route is the id of the game.
+        private final boolean hasGameId;
+        // True, if the route changes the games (refused by a read only handler).
+        private final boolean changesGames;
+
+        private Route(boolean hasGameId, boolean changesGames) {
+            this.hasGameId = hasGameId;
+            this.changesGames = changesGames;
+        }
+    }
+
+    // The routes of the requests relative to the base path. Null segment is a parameter.
+    private static final Router<Route> ROUTER = new Router<Route>()
+            .add("POST", new String[]{GAME_PATH}, Route.CREATE_GAME)
+            .add("GET", new String[]{GAME_PATH, null}, Route.GET_GAME)
+            .add("PATCH", new String[]{GAME_PATH, null}, Route.MOVE)
+            .add("DELETE", new String[]{GAME_PATH, null}, Route.DELETE_GAME)
+            .add("POST", new String[]{GAME_PATH, null, SOLVE_JOBS_PATH}, Route.CREATE_SOLVE_JOB)
+            .add("GET", new String[]{GAME_PATH, null, SOLVE_JOBS_PATH, null}, Route.GET_SOLVE_JOB)
+            .add("DELETE", new String[]{GAME_PATH, null, SOLVE_JOBS_PATH, null}, Route.CANCEL_SOLVE_JOB)
+            .add("POST", new String[]{SOLVE_BATCH_PATH}, Route.SOLVE_BATCH)
+            .add("GET", new String[]{GAMES_PATH}, Route.LIST_GAMES)
+            .add("GET", new String[]{STATS_PATH}, Route.STATS)
+            .add("GET", new String[]{STATS_PATH, SHARDS_PATH}, Route.SHARD_STATS)
+            .add("GET", new String[]{STATS_PATH, REPLICATION_PATH}, Route.REPLICATION_STATS)
+            .add("POST", new String[]{REPLICATION_PATH, PROMOTE_PATH}, Route.PROMOTE)
+            .add("GET", new String[]{LEADERBOARD_PATH}, Route.LEADERBOARD)
+            .add("GET", new String[]{READY_PATH}, Route.READY)
+            .add("GET", new String[]{LIVE_PATH}, Route.LIVE)
+            .add("POST", new String[]{ROOM_PATH}, Route.CREATE_ROOM)
+            .add("GET", new String[]{ROOM_PATH, null}, Route.GET_ROOM)
+            .add("DELETE", new String[]{ROOM_PATH, null}, Route.DELETE_ROOM)
+            .add("POST", new String[]{ROOM_PATH, null, PLAYERS_PATH}, Route.JOIN_ROOM)
+            .add("GET", new String[]{ROOM_PATH, null, PLAYERS_PATH, null}, Route.GET_PLAYER)
+            .add("PATCH", new String[]{ROOM_PATH, null, PLAYERS_PATH, null}, Route.MOVE_PLAYER);
+    // The result of the route matching, reused by every request thread.
+    private static final ThreadLocal<Router.Match> MATCH = ThreadLocal.withInitial(Router.Match::new);
+    // The size of the buffer for the move request contents. Larger contents
+    // is parsed as general JSON.
+    private static final int BODY_BUFFER_SIZE = 512;
+    // The buffer for the move request contents, reused by every request thread.
+    private static final ThreadLocal<byte[]> BODY_BUFFER = ThreadLocal.withInitial(() -> new byte[BODY_BUFFER_SIZE]);
+
     // All the games, which were created using this handler.
-    private final ConcurrentMap<String, Penkiolika> games;
+    private final GameStore games = new GameStore();
     // The ID of the last game created (or 0, if none have been created yet).
-    // It is used to generate unique ids for new games.
+    // It is used to generate unique ids for new games. The ids are consecutive
+    // numbers, which also allows listing the games page by page. In a cluster
+    // the ids are the numbers prefixed by the node id and the numbers of the
+    // ids owned by other nodes are skipped.
     private final AtomicInteger lastId = new AtomicInteger(0);
+    // The race rooms by id.
+    private final ConcurrentHashMap<String, RaceRoom> rooms = new ConcurrentHashMap<String, RaceRoom>();
+    // The number of the last race room created. The ids of the rooms are the
+    // numbers prefixed as the ids of the games.
+    private final AtomicInteger lastRoomId = new AtomicInteger(0);
+    // Encoded game responses by game id.
+    private final ResponseCache responseCache = new ResponseCache();
+    // Aggregate statistics of the games.
+    private final GameStatistics statistics = new GameStatistics();
+    // The best completions of the games.
+    private final Leaderboard leaderboard = new Leaderboard();
+    // Listeners of the changes of the games (including the statistics and the leaderboard).
+    private final List<GameListener> listeners =
+            new CopyOnWriteArrayList<GameListener>(new GameListener[]{statistics, leaderboard});
+    // The logger of the errors. Responding with an error never waits for it.
+    private final AsyncLogger logger;
+    // Background jobs solving the games.
+    private final SolveJobManager solveJobs = new SolveJobManager();
+    // Solves the batches of boards.
+    private final BatchSolver batchSolver = new BatchSolver();
+    // The cluster of this node or null, if the handler is not clustered.
+    private final Cluster cluster;
+    // The prefix of the ids of the games created by this handler.
+    private final String idPrefix;
+    // True, if the changes of the games are refused (the handler is a replication follower).
+    private volatile boolean readOnly;
+    // False, while the server should not receive the traffic yet (it is warming up).
+    private volatile boolean ready = true;
+    // The replication of the games of this handler or null, if they are not replicated.
+    private volatile ReplicationPrimary replicationPrimary;
+    // The replication of the games to this handler or null, if it is not a follower.
+    private volatile ReplicationFollower replicationFollower;
 
     /**
-     * Creates a Fifteen game request handler with no precreated games.
+     * Creates a Fifteen game request handler with no precreated games. The
+     * errors are logged to the {@link AsyncLogger#getDefault() default logger}.
      */
     public ServerHandler() {
-        games = new ConcurrentHashMap<String, Penkiolika>();
+        this(AsyncLogger.getDefault());
+    }
+
+    /**
+     * Creates a Fifteen game request handler with no precreated games.
+     *
+     * @param logger the logger of the errors.
+     */
+    public ServerHandler(AsyncLogger logger) {
+        this(logger, null);
+    }
+
+    /**
+     * Creates a Fifteen game request handler, which is a node of the cluster,
+     * with no precreated games.
+     *
+     * @param logger the logger of the errors.
+     * @param cluster the cluster of this node or null, if the handler is not
+     * clustered.
+     */
+    public ServerHandler(AsyncLogger logger, Cluster cluster) {
+        this.logger = logger;
+        this.cluster = cluster;
+        this.idPrefix = cluster == null ? "" : cluster.getIdPrefix();
     }
 
     /**
@@ -159,7 +574,175 @@ public class ServerHandler implements HttpHandler {
      */
     public ServerHandler(Map<String, Penkiolika> games) {
         this();
-        this.games.putAll(games);
+        // New ids must not clash with the ids of the provided games
+        for (Map.Entry<String, Penkiolika> entry : games.entrySet()) {
+            this.games.put(entry.getKey(), entry.getValue());
+            this.reserveId(entry.getKey());
+            this.fireGameCreated(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Adds the listener of the changes of the games of this handler. The listener
+     * is not notified about the games, which already exist.
+     *
+     * @param listener the listener to add.
+     */
+    public void addGameListener(GameListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes the games, which have not been read or moved for the provided
+     * time. The listeners are notified as if the games were deleted. The games
+     * are expired one shard of the store at a time (see {@link GameStore}).
+     *
+     * @param maxIdleMillis the longest time the game may stay unused.
+     * @return the number of removed games.
+     */
+    public int expireIdleGames(long maxIdleMillis) {
+        return games.expireIdle(maxIdleMillis, (id, game) -> {
+            responseCache.invalidate(id);
+            this.fireGameDeleted(id, game);
+        });
+    }
+
+    /**
+     * Removes the race rooms (with their players), which have not been used
+     * by any request for the room or its players for the provided time.
+     *
+     * @param maxIdleMillis the longest time the room may stay unused.
+     * @return the number of removed rooms.
+     */
+    public int expireIdleRooms(long maxIdleMillis) {
+        long touchedBefore = System.currentTimeMillis() - maxIdleMillis;
+        int count = 0;
+        for (RaceRoom room : rooms.values()) {
+            if (room.getTouchedMillis() < touchedBefore && rooms.remove(room.getId(), room)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Makes this handler refuse (or accept again) the requests changing the
+     * games: creating, moving and deleting them. Such requests are answered
+     * with HTTP status 503. The games are still served.
+     *
+     * @param readOnly true, if the changes should be refused.
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Checks if this handler refuses the requests changing the games.
+     *
+     * @return true, if the changes are refused.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Sets the readiness of the server reported by the readiness request. The
+     * handler is ready from the start; the server, which warms up (see
+     * {@link WarmUp}), is not ready until the warm-up ends. The requests are
+     * served either way.
+     *
+     * @param ready true, if the server should receive the traffic.
+     */
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * Checks if the server should receive the traffic.
+     *
+     * @return true, if ready.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Stops the background solver threads of this handler. The solve job and
+     * solve batch requests fail after that.
+     */
+    public void shutdown() {
+        solveJobs.shutdown();
+        batchSolver.shutdown();
+    }
+
+    // Sets the replication of the games of this handler (see ReplicationPrimary).
+    void setReplicationPrimary(ReplicationPrimary primary) {
+        this.replicationPrimary = primary;
+    }
+
+    // Sets the replication of the games to this handler (see ReplicationFollower).
+    void setReplicationFollower(ReplicationFollower follower) {
+        this.replicationFollower = follower;
+    }
+
+    // Returns the logger of the errors of this handler.
+    AsyncLogger getLogger() {
+        return logger;
+    }
+
+    // Returns the shards of the store of the games of this handler.
+    List<GameStore.Shard> getGameShards() {
+        return games.getShards();
+    }
+
+    // Copies all the games of this handler, one shard of the store at a time.
+    // Returns the map of ids to games.
+    Map<String, Penkiolika> snapshotGames() {
+        Map<String, Penkiolika> result = new HashMap<String, Penkiolika>();
+        for (GameStore.Shard shard : games.getShards()) {
+            result.putAll(shard.snapshot());
+        }
+        return result;
+    }
+
+    // Adds the game received from another server or replaces the existing game
+    // with it, unless the existing game is the same game with a newer state.
+    // The listeners are notified as if the game was created or moved.
+    void applyGame(String id, Penkiolika game) {
+        Penkiolika previous = games.peek(id);
+        if (previous != null && previous.getCreatedMillis() == game.getCreatedMillis() &&
+                previous.getVersion() >= game.getVersion()) {
+            return;
+        }
+        games.put(id, game);
+        this.reserveId(id);
+        responseCache.invalidate(id);
+        if (previous == null || previous.getCreatedMillis() != game.getCreatedMillis()) {
+            if (previous != null) {
+                this.fireGameDeleted(id, previous);
+            }
+            this.fireGameCreated(id, game);
+        } else {
+            synchronized(game) {
+                this.fireGameMoved(id, game, previous.getManhattanDistance(), previous.getCompletedMillis() != 0);
+            }
+        }
+    }
+
+    // Removes the game deleted by another server.
+    void applyDelete(String id) {
+        Penkiolika game = games.remove(id);
+        if (game != null) {
+            responseCache.invalidate(id);
+            this.fireGameDeleted(id, game);
+        }
+    }
+
+    // Makes sure, that the new ids of this handler never clash with the id of
+    // an existing game.
+    private void reserveId(String id) {
+        int numericId = ServerHandler.parseNumericId(id.startsWith(idPrefix) ? id.substring(idPrefix.length()) : id);
+        lastId.accumulateAndGet(numericId, Math::max);
     }
 
     /**
@@ -174,45 +757,292 @@ public class ServerHandler implements HttpHandler {
      */
     @Override
     public void handle(HttpExchange he) throws IOException {
+        RequestEvent event = new RequestEvent();
+        event.begin();
         String method = he.getRequestMethod();
-        String fullPath = he.getRequestURI().getPath();
-        if (fullPath.startsWith(BASE_PATH)) {
-            String relativePath = fullPath.substring(BASE_PATH.length());
-            String[] relativePathElems = relativePath.split("/");
-            if (method.equals("POST") && this.pathMatches(relativePathElems, new String[]{GAME_PATH})) {
-                handlePostNewGame(he);
-            } else if (method.equals("GET") && this.pathMatches(relativePathElems, new String[]{GAME_PATH, null})) {
-                handleGetGame(he, relativePathElems[2]);
-            } else if (method.equals("PATCH") && this.pathMatches(relativePathElems, new String[]{GAME_PATH, null})) {
-                String body;
-                try(BufferedReader br = new BufferedReader(new InputStreamReader(he.getRequestBody()))) {
-                    body = br.lines().collect(Collectors.joining("\n"));
-                }
-                try{
-                    JSONObject json = new JSONObject(body);
-                    handlePatchDoMove(he, relativePathElems[2], json);
-                } catch (JSONException jsone) {
-                    this.respondError(he, 415, "JSON object contents is expected, received: " + body + ". " + jsone.getMessage());
+        Route route = null;
+        String gameId = null;
+        try {
+            String fullPath = he.getRequestURI().getRawPath();
+            if (fullPath.startsWith(BASE_PATH)) {
+                Router.Match match = MATCH.get();
+                route = ROUTER.match(method, fullPath, BASE_PATH.length(), match);
+                if (route == null) {
+                    this.respondError(he, 400, "Method " + method + " for path is not supported: " + fullPath);
+                } else {
+                    if (route.hasGameId) {
+                        gameId = match.parameter(0);
+                    }
+                    Cluster.Node owner = this.remoteOwnerOf(he, gameId);
+                    if (owner == null) {
+                        this.handle(he, route, gameId, match);
+                    } else if (cluster.getMode() == Cluster.Mode.REDIRECT) {
+                        this.redirect(he, owner);
+                    } else {
+                        this.forward(he, owner);
+                    }
                 }
-            } else if (method.equals("DELETE") && this.pathMatches(relativePathElems, new String[]{GAME_PATH, null})) {
-                handleDeleteGame(he, relativePathElems[2]);
             } else {
-                this.respondError(he, 400, "Method " + method + " for path is not supported: " + fullPath);
+                this.respondError(he, 500, "Wrong path for this handler: " + fullPath);
+            }
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.method = method;
+                event.route = route == null ? null : route.name();
+                event.status = he.getResponseCode();
+                event.gameId = gameId;
+                String contentLength = he.getResponseHeaders().getFirst(HEADER_CONTENT_LENGTH);
+                event.bytes = contentLength == null ? -1 : Long.parseLong(contentLength);
+                event.commit();
+            }
+        }
+    }
+
+    // Handles the request of the matched route.
+    // route - the matched route.
+    // id - the id of the game or null, if the route has no game id.
+    // match - the parameters of the route.
+    private void handle(HttpExchange he, Route route, String id, Router.Match match) throws IOException {
+        if (readOnly && route.changesGames) {
+            this.respondError(he, 503, "This server is a replication follower, the games cannot be changed");
+            return;
+        }
+        switch (route) {
+            case CREATE_GAME: {
+                JSONObject json = this.readJsonObject(he);
+                if (json != null) {
+                    handlePostNewGame(he, json);
+                }
+                break;
+            }
+            case GET_GAME:
+                handleGetGame(he, id);
+                break;
+            case MOVE:
+                handlePatch(he, id);
+                break;
+            case DELETE_GAME:
+                handleDeleteGame(he, id);
+                break;
+            case CREATE_SOLVE_JOB: {
+                JSONObject json = this.readJsonObject(he);
+                if (json != null) {
+                    handlePostSolveJob(he, id, json);
+                }
+                break;
+            }
+            case GET_SOLVE_JOB:
+                handleGetSolveJob(he, id, match.parameter(1), false);
+                break;
+            case CANCEL_SOLVE_JOB:
+                handleGetSolveJob(he, id, match.parameter(1), true);
+                break;
+            case SOLVE_BATCH:
+                handlePostSolveBatch(he);
+                break;
+            case LIST_GAMES:
+                handleGetGames(he);
+                break;
+            case STATS:
+                respondJson(he, 200, statistics.toJson());
+                break;
+            case SHARD_STATS:
+                respondJson(he, 200, games.toJson());
+                break;
+            case REPLICATION_STATS:
+                respondJson(he, 200, this.getReplicationJson());
+                break;
+            case PROMOTE: {
+                ReplicationFollower follower = replicationFollower;
+                if (follower == null || !follower.promote()) {
+                    respondError(he, 409, "This server is not a replication follower");
+                } else {
+                    respondJson(he, 200, this.getReplicationJson());
+                }
+                break;
+            }
+            case LEADERBOARD:
+                respondJson(he, 200, leaderboard.toJson());
+                break;
+            case READY: {
+                boolean isReady = ready;
+                JSONObject json = new JSONObject();
+                json.put(JSON_READY, isReady);
+                respondJson(he, isReady ? 200 : 503, json);
+                break;
+            }
+            case LIVE: {
+                JSONObject json = new JSONObject();
+                json.put(JSON_LIVE, true);
+                respondJson(he, 200, json);
+                break;
+            }
+            case CREATE_ROOM: {
+                JSONObject json = this.readJsonObject(he);
+                if (json != null) {
+                    handlePostNewRoom(he, json);
+                }
+                break;
+            }
+            case GET_ROOM:
+                handleGetRoom(he, match.parameter(0));
+                break;
+            case DELETE_ROOM:
+                handleDeleteRoom(he, match.parameter(0));
+                break;
+            case JOIN_ROOM:
+                handlePostJoinRoom(he, match.parameter(0));
+                break;
+            case GET_PLAYER:
+                handleGetPlayer(he, match.parameter(0), match.parameter(1));
+                break;
+            case MOVE_PLAYER:
+                handlePatchPlayer(he, match.parameter(0), match.parameter(1));
+                break;
+            default:
+                this.respondError(he, 500, "Route " + route + " is not handled");
+        }
+    }
+
+    // Finds the node, which owns the game, if it is not this node. The requests
+    // already forwarded by another node are always handled here.
+    // id - the id of the game or null, if the request has no game id.
+    // Returns the owner node or null, if the request is handled by this node.
+    private Cluster.Node remoteOwnerOf(HttpExchange he, String id) {
+        if (cluster == null || id == null || he.getRequestHeaders().containsKey(Cluster.HEADER_FORWARDED_BY)) {
+            return null;
+        }
+        Cluster.Node owner = cluster.ownerOf(id);
+        return owner == cluster.getSelf() ? null : owner;
+    }
+
+    // Redirects the client to the node, which owns the game of the request.
+    // owner - the owner node.
+    private void redirect(HttpExchange he, Cluster.Node owner) throws IOException {
+        he.getResponseHeaders().set(HEADER_LOCATION, owner.getUrl() + ServerHandler.pathAndQuery(he));
+        he.sendResponseHeaders(307, -1);
+        he.close();
+    }
+
+    // Forwards the request to the node, which owns the game of the request,
+    // and responds with the response of the owner.
+    // owner - the owner node.
+    private void forward(HttpExchange he, Cluster.Node owner) throws IOException {
+        byte[] body = ServerHandler.readBytes(he);
+        Map<String, String> headers = new HashMap<String, String>();
+        for (String name : FORWARDED_HEADERS) {
+            String value = he.getRequestHeaders().getFirst(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        HttpClientConnection.Response response;
+        try {
+            response = cluster.forward(owner, he.getRequestMethod(), ServerHandler.pathAndQuery(he), headers,
+                    body.length == 0 ? null : body);
+        } catch (IOException ioe) {
+            respondError(he, 502, "Node " + owner.getId() + ", which owns the game, cannot be reached: " + ioe.getMessage());
+            return;
+        }
+        for (String name : RETURNED_HEADERS) {
+            String value = response.getHeader(name);
+            if (value != null) {
+                he.getResponseHeaders().set(name, value);
             }
+        }
+        if (response.getBody().length == 0) {
+            he.sendResponseHeaders(response.getStatusCode(), -1);
+            he.close();
         } else {
-            this.respondError(he, 500, "Wrong path for this handler: " + fullPath);
+            this.respondBytes(he, response.getStatusCode(), response.getBody());
+        }
+    }
+
+    // Handles the PATCH request: reads the move and makes it.
+    // id - the id of the game of the move.
+    private void handlePatch(HttpExchange he, String id) throws IOException {
+        Direction direction = this.readMove(he);
+        if (direction != null) {
+            handlePatchDoMove(he, id, direction);
         }
+    }
 
+    // Reads the move from the contents of the PATCH request. The usual contents
+    // is parsed directly from its bytes; anything else goes through the general
+    // JSON parsing, which reports the errors.
+    // Returns the direction of the move or null, if the error has been responded.
+    private Direction readMove(HttpExchange he) throws IOException {
+        byte[] buffer = BODY_BUFFER.get();
+        int length = MoveBodyParser.read(he.getRequestBody(), buffer);
+        Direction direction = length >= 0 ? MoveBodyParser.parse(buffer, length) : null;
+        if (direction != null) {
+            return direction;
+        }
+        String body;
+        if (length >= 0) {
+            body = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        } else {
+            // The contents doesn't fit into the buffer: it is decoded as a
+            // whole, so that no character is split at the end of the buffer
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(2 * BODY_BUFFER_SIZE);
+            bytes.write(buffer, 0, buffer.length);
+            bytes.write(ServerHandler.readBytes(he));
+            body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+        try {
+            JSONObject json = new JSONObject(body);
+            if (json.has(JSON_MOVE)) {
+                String move = json.getString(JSON_MOVE);
+                direction = Direction.fromJsonName(move);
+                if (direction == null) {
+                    respondError(he, 400, "Unknown move " + move);
+                }
+            } else {
+                respondError(he, 400, "Move must be provided");
+            }
+        } catch (JSONException jsone) {
+            this.respondError(he, 415, "JSON object contents is expected, received: " + body + ". " + jsone.getMessage());
+        }
+        return direction;
     }
 
     // Handles the POST request to create a new game.
-    private void handlePostNewGame(HttpExchange he) throws IOException {
-        String id = "" + lastId.incrementAndGet();
-        Penkiolika game = new Penkiolika();
-        game.shuffle();
+    // inJson - the JSON optionally specifying the board of the game.
+    private void handlePostNewGame(HttpExchange he, JSONObject inJson) throws IOException {
+        Penkiolika game;
+        if (inJson.has(JSON_BOARD)) {
+            int[] board = this.readSolvableBoard(he, inJson);
+            if (board == null) {
+                return;
+            }
+            game = new Penkiolika(board);
+        } else {
+            game = new Penkiolika();
+            game.shuffle();
+        }
+        String id = cluster == null ? "" + lastId.incrementAndGet() : cluster.newGameId(lastId);
         games.put(id, game);
+        this.fireGameCreated(id, game);
         JSONObject json = this.getGameJson(id, game);
-        respondJson(he, 201, json);
+        respondGameJson(he, 201, json);
+    }
+
+    // Convenience method to read the board of the request JSON and check, that
+    // it can be solved.
+    // inJson - the JSON with the board field.
+    // Returns the board or null, if the error has been responded.
+    private int[] readSolvableBoard(HttpExchange he, JSONObject inJson) throws IOException {
+        int[] board = ServerHandler.readBoard(inJson.opt(JSON_BOARD));
+        if (board == null) {
+            respondError(he, 422, "Board must be an array of " + Heuristics.CELLS + " integers, received: " + inJson.opt(JSON_BOARD));
+            return null;
+        } else if (!Penkiolika.isSolvable(board)) {
+            respondError(he, 422, "Board must be a solvable permutation of numbers from 0 to " +
+                    (Heuristics.CELLS - 1) + ", received: " + inJson.opt(JSON_BOARD));
+            return null;
+        }
+        return board;
     }
 
     // Handles the GET request to retrieve a created game by id.
@@ -222,42 +1052,91 @@ public class ServerHandler implements HttpHandler {
         if (game == null) {
             respondError(he, 404, "Game with id=" + id + " not found");
         } else {
-            JSONObject json = this.getGameJson(id, game);
-            respondJson(he, 200, json);
+            String ifNoneMatch = he.getRequestHeaders().getFirst(HEADER_IF_NONE_MATCH);
+            long version = game.getVersion();
+            if (ifNoneMatch != null && ServerHandler.etagMatches(ifNoneMatch, version, true)) {
+                respondNotModified(he, version);
+            } else {
+                byte[] response = responseCache.get(id, version);
+                if (response == null) {
+                    JSONObject json = this.getGameJson(id, game);
+                    version = json.getLong(JSON_VERSION);
+                    response = this.encodeJson(json);
+                    this.cacheResponse(id, game, version, response);
+                }
+                respondGame(he, 200, version, response);
+            }
         }
     }
 
-    // Handles the PATCH request to make a move in the game.
+    // Makes a move in the game.
     // id - the id of the game of the move.
-    // inJson - the JSON specifying the move.
-    private void handlePatchDoMove(HttpExchange he, String id, JSONObject inJson) throws IOException {
-        if (inJson.has(JSON_MOVE)) {
-            String move = inJson.getString(JSON_MOVE);
-            Function<Penkiolika, Boolean> moveFun = null;
-            if (move.equals(JSON_MOVE_LEFT)) {
-                moveFun = game -> game.moveLeft();
-            } else if (move.equals(JSON_MOVE_RIGHT)) {
-                moveFun = game -> game.moveRight();
-            } else if (move.equals(JSON_MOVE_TOP)) {
-                moveFun = game -> game.moveTop();
-            } else if (move.equals(JSON_MOVE_BOTTOM)) {
-                moveFun = game -> game.moveBottom();
-            }
-            if (moveFun == null) {
-                respondError(he, 400, "Unknown move " + move);
+    // direction - the direction of the move.
+    private void handlePatchDoMove(HttpExchange he, String id, Direction direction) throws IOException {
+        Penkiolika game = games.get(id);
+        if (game == null) {
+            respondError(he, 404, "Game with id=" + id + " not found");
+            return;
+        }
+        String ifMatch = he.getRequestHeaders().getFirst(HEADER_IF_MATCH);
+        JSONObject json = null;
+        boolean deleted = false;
+        boolean preconditionFailed = false;
+        MoveEvent event = new MoveEvent();
+        event.begin();
+        long lockRequested = System.nanoTime();
+        // The version check and the move must be atomic, otherwise a concurrent
+        // move from another client might get lost
+        synchronized(game) {
+            long lockWait = System.nanoTime() - lockRequested;
+            if (games.peek(id) != game) {
+                deleted = true;     // concurrently, after it was retrieved
+            } else if (ifMatch != null && !ServerHandler.etagMatches(ifMatch, game.getVersion(), false)) {
+                preconditionFailed = true;
             } else {
-                Penkiolika game = games.get(id);
-                if (game == null) {
-                    respondError(he, 404, "Game with id=" + id + " not found");
-                } else if (moveFun.apply(game)) {
-                    JSONObject json = this.getGameJson(id, game);
-                    respondJson(he, 200, json);
-                } else {
-                    respondError(he, 409, "Unable to move " + move + " in game with id=" + id);
+                int distanceBefore = game.getManhattanDistance();
+                boolean completedBefore = game.getCompletedMillis() != 0;
+                if (game.move(direction)) {
+                    json = this.getGameJson(id, game);
+                    this.fireGameMoved(id, game, distanceBefore, completedBefore);
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.gameId = id;
+                    event.direction = direction.jsonName();
+                    event.legal = json != null;
+                    event.lockWait = lockWait;
+                    event.commit();
                 }
             }
+        }
+        if (deleted) {
+            respondError(he, 404, "Game with id=" + id + " not found");
+        } else if (preconditionFailed) {
+            respondError(he, 412, "Game with id=" + id + " has changed, its current version is not " + ifMatch);
+        } else if (json != null) {
+            long version = json.getLong(JSON_VERSION);
+            byte[] response = this.encodeJson(json);
+            this.cacheResponse(id, game, version, response);
+            respondGame(he, 200, version, response);
         } else {
-            respondError(he, 400, "Move must be provided");
+            respondError(he, 409, "Unable to move " + direction.jsonName() + " in game with id=" + id);
+        }
+    }
+
+    // Caches the encoded game, unless the game has been deleted or replaced
+    // meanwhile. The store is checked after the response is cached, because
+    // the request, which deletes or replaces the game, invalidates the cache
+    // after it changes the store: either this check or that invalidation
+    // removes the stale response.
+    // id - the id of the game.
+    // game - the game, which was encoded.
+    // version - the version of the game, which was encoded.
+    // response - encoded game JSON.
+    private void cacheResponse(String id, Penkiolika game, long version, byte[] response) {
+        responseCache.put(id, version, response);
+        if (games.peek(id) != game) {
+            responseCache.invalidate(id);
         }
     }
 
@@ -268,32 +1147,417 @@ public class ServerHandler implements HttpHandler {
         if (game == null) {
             respondError(he, 404, "Game with id=" + id + " not found");
         } else {
+            responseCache.invalidate(id);
+            this.fireGameDeleted(id, game);
             JSONObject json = this.getGameJson(id, game);
-            respondJson(he, 200, json);
-        }
-    }
-
-    // Convenience method to check if the request path matches the expected value.
-    // The first element of the path is ommited, because the full request path
-    // is expected to start by "/" and due to how String.split(String) method works.
-    // Other than that, request path is matched element by element to the matcher.
-    // If the matcher's element is null, then the respective element of the path
-    // might be anything. Otherwise it must match exactly.
-    // receivedPath - full request path split by "/" character
-    // pathToMatch - matcher array
-    private boolean pathMatches(String[] receivedPath, String[] pathToMatch) {
-        if (receivedPath.length == pathToMatch.length + 1 && receivedPath[0].equals("")) {
-            for (int i=0; i<pathToMatch.length; i++) {
-                if ((pathToMatch[i] != null) && !(pathToMatch[i].equals(receivedPath[i+1]))) {
-                    return false;
-                }
+            respondGameJson(he, 200, json);
+        }
+    }
+
+    // Handles the POST request to start a job solving the game.
+    // id - the id of the game to solve.
+    // inJson - the JSON optionally specifying the time limit of the job.
+    private void handlePostSolveJob(HttpExchange he, String id, JSONObject inJson) throws IOException {
+        Object timeout = inJson.opt(JSON_TIMEOUT_MILLIS);
+        long timeoutMillis = SolveJobManager.DEFAULT_TIMEOUT_MILLIS;
+        if (timeout != null) {
+            timeoutMillis = timeout instanceof Number ? ((Number)timeout).longValue() : -1;
+        }
+        if (timeoutMillis <= 0 || timeoutMillis > SolveJobManager.MAX_TIMEOUT_MILLIS) {
+            respondError(he, 400, "Timeout must be from 1 to " + SolveJobManager.MAX_TIMEOUT_MILLIS +
+                    " ms, received: " + inJson.opt(JSON_TIMEOUT_MILLIS));
+            return;
+        }
+        Penkiolika game = games.get(id);
+        if (game == null) {
+            respondError(he, 404, "Game with id=" + id + " not found");
+            return;
+        }
+        int[] board;
+        long version;
+        Heuristics.Estimate estimate;
+        synchronized(game) {
+            board = game.getBoard();
+            version = game.getVersion();
+            estimate = game.getEstimate();
+        }
+        if (!Penkiolika.isSolvable(board)) {
+            respondError(he, 422, "Game with id=" + id + " cannot be solved");
+            return;
+        }
+        SolveJobManager.Job job;
+        try {
+            job = solveJobs.submit(id, version, board, estimate, timeoutMillis);
+        } catch (RejectedExecutionException ree) {
+            respondError(he, 503, "Too many solve jobs are waiting, retry later");
+            return;
+        }
+        he.getResponseHeaders().set(HEADER_LOCATION,
+                BASE_PATH + "/" + GAME_PATH + "/" + id + "/" + SOLVE_JOBS_PATH + "/" + job.getId());
+        respondJson(he, 202, job.toJson());
+    }
+
+    // Handles the GET request to retrieve the solve job or the DELETE request
+    // to cancel it.
+    // gameId - the id of the game of the job.
+    // jobId - the id of the job.
+    // cancel - true, if the job should be cancelled.
+    private void handleGetSolveJob(HttpExchange he, String gameId, String jobId, boolean cancel) throws IOException {
+        SolveJobManager.Job job = solveJobs.get(jobId);
+        if (job == null || !job.getGameId().equals(gameId)) {
+            respondError(he, 404, "Solve job with id=" + jobId + " of game with id=" + gameId + " not found");
+        } else {
+            if (cancel) {
+                solveJobs.cancel(jobId);
             }
-            return true;
+            respondJson(he, 200, job.toJson());
+        }
+    }
+
+    // Handles the POST request to create a new race room. The board is shuffled
+    // here once for all the players of the room.
+    // inJson - the JSON optionally specifying the starting board of the room.
+    private void handlePostNewRoom(HttpExchange he, JSONObject inJson) throws IOException {
+        int[] board;
+        if (inJson.has(JSON_BOARD)) {
+            board = this.readSolvableBoard(he, inJson);
+            if (board == null) {
+                return;
+            }
+        } else {
+            Penkiolika shuffled = new Penkiolika();
+            shuffled.shuffle();
+            board = shuffled.getBoard();
+        }
+        RaceRoom room = new RaceRoom(idPrefix + lastRoomId.incrementAndGet(), board);
+        rooms.put(room.getId(), room);
+        respondJson(he, 201, room.toJson(RaceRoom.DEFAULT_STANDINGS_LIMIT));
+    }
+
+    // Handles the GET request to retrieve the race room with its standings.
+    // id - the id of the room.
+    private void handleGetRoom(HttpExchange he, String id) throws IOException {
+        int limit;
+        try {
+            String param = ServerHandler.parseQuery(he.getRequestURI().getRawQuery()).get("limit");
+            limit = param == null ? RaceRoom.DEFAULT_STANDINGS_LIMIT : Integer.parseInt(param);
+        } catch (IllegalArgumentException iae) {
+            limit = -1;
+        }
+        if (limit < 1 || limit > RaceRoom.MAX_STANDINGS_LIMIT) {
+            respondError(he, 400, "Parameter limit must be from 1 to " + RaceRoom.MAX_STANDINGS_LIMIT +
+                    ", received: " + he.getRequestURI().getRawQuery());
+            return;
+        }
+        RaceRoom room = this.getRoom(id);
+        if (room == null) {
+            respondError(he, 404, "Room with id=" + id + " not found");
+        } else {
+            respondJson(he, 200, room.toJson(limit));
+        }
+    }
+
+    // Handles the DELETE request to remove the race room.
+    // id - the id of the room.
+    private void handleDeleteRoom(HttpExchange he, String id) throws IOException {
+        RaceRoom room = rooms.remove(id);
+        if (room == null) {
+            respondError(he, 404, "Room with id=" + id + " not found");
         } else {
-            return false;
+            respondJson(he, 200, room.toJson(RaceRoom.DEFAULT_STANDINGS_LIMIT));
         }
     }
 
+    // Handles the POST request to join a new player to the race room.
+    // id - the id of the room.
+    private void handlePostJoinRoom(HttpExchange he, String id) throws IOException {
+        RaceRoom room = this.getRoom(id);
+        if (room == null) {
+            respondError(he, 404, "Room with id=" + id + " not found");
+        } else {
+            respondJson(he, 201, room.join().getProgress().toJson());
+        }
+    }
+
+    // Handles the GET request to retrieve the player of the race room.
+    // roomId - the id of the room.
+    // playerId - the id of the player.
+    private void handleGetPlayer(HttpExchange he, String roomId, String playerId) throws IOException {
+        RaceRoom.Player player = this.findPlayer(he, roomId, playerId);
+        if (player != null) {
+            respondJson(he, 200, player.getProgress().toJson());
+        }
+    }
+
+    // Handles the PATCH request to make the move of the player of the race room.
+    // roomId - the id of the room.
+    // playerId - the id of the player.
+    private void handlePatchPlayer(HttpExchange he, String roomId, String playerId) throws IOException {
+        Direction direction = this.readMove(he);
+        if (direction == null) {
+            return;
+        }
+        RaceRoom.Player player = this.findPlayer(he, roomId, playerId);
+        if (player == null) {
+            return;
+        }
+        RaceRoom.Progress progress = player.move(direction);
+        if (progress == null) {
+            respondError(he, 409, "Unable to move " + direction.jsonName() + " for player with id=" + playerId +
+                    " in room with id=" + roomId);
+        } else {
+            respondJson(he, 200, progress.toJson());
+        }
+    }
+
+    // Returns the race room and marks it as used (see expireIdleRooms).
+    // Returns null, if there is no such room.
+    private RaceRoom getRoom(String id) {
+        RaceRoom room = rooms.get(id);
+        if (room != null) {
+            room.touch();
+        }
+        return room;
+    }
+
+    // Convenience method to find the player of the race room.
+    // Returns the player or null, if the error has been responded.
+    private RaceRoom.Player findPlayer(HttpExchange he, String roomId, String playerId) throws IOException {
+        RaceRoom room = this.getRoom(roomId);
+        RaceRoom.Player player = room == null ? null : room.getPlayer(playerId);
+        if (room == null) {
+            respondError(he, 404, "Room with id=" + roomId + " not found");
+        } else if (player == null) {
+            respondError(he, 404, "Player with id=" + playerId + " not found in room with id=" + roomId);
+        }
+        return player;
+    }
+
+    // Handles the GET request to list the games page by page. The games are
+    // looked up by consecutive ids starting after the cursor, so no list of
+    // games is formed in memory and every page is as cheap as the first one.
+    // The games are streamed to the client as they are found, formatted the
+    // same way as the other responses (see encodeJson). The games with non
+    // numeric ids are not found this way, so they are not listed.
+    private void handleGetGames(HttpExchange he) throws IOException {
+        Map<String, String> params;
+        int cursor;
+        int limit;
+        Boolean finalFilter;
+        try {
+            params = ServerHandler.parseQuery(he.getRequestURI().getRawQuery());
+            cursor = params.containsKey("cursor") ? Integer.parseInt(params.get("cursor")) : -1;
+            limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : DEFAULT_LIST_LIMIT;
+        } catch (IllegalArgumentException iae) {
+            respondError(he, 400, "Invalid parameters: " + he.getRequestURI().getRawQuery());
+            return;
+        }
+        String finalParam = params.get(JSON_FINAL);
+        if (finalParam == null) {
+            finalFilter = null;
+        } else if (finalParam.equals("true") || finalParam.equals("false")) {
+            finalFilter = Boolean.valueOf(finalParam);
+        } else {
+            respondError(he, 400, "Parameter " + JSON_FINAL + " must be true or false, received: " + finalParam);
+            return;
+        }
+        if (cursor < -1 || limit < 1 || limit > MAX_LIST_LIMIT) {
+            respondError(he, 400, "Parameter cursor must be a cursor returned by previous request and limit must be from 1 to " + MAX_LIST_LIMIT);
+            return;
+        }
+        he.sendResponseHeaders(200, 0);     // chunked: the length is not known in advance
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(he.getResponseBody(), StandardCharsets.UTF_8), 16384)) {
+            out.write("{\n" + LIST_INDENT + JSONObject.quote(JSON_GAMES) + ": [");
+            int last = lastId.get();
+            int found = 0;
+            int id = cursor;
+            int scanEnd = (int)Math.min(last, (long)cursor + MAX_LIST_SCAN);
+            while (found < limit && id < scanEnd) {
+                id++;
+                String gameId = idPrefix + id;
+                Penkiolika game = games.peek(gameId);
+                if (game != null) {
+                    JSONObject json = this.getGameJson(gameId, game);
+                    if (finalFilter == null || finalFilter.booleanValue() == json.getBoolean(JSON_FINAL)) {
+                        out.write(found > 0 ? ",\n" : "\n");
+                        out.write(LIST_INDENT);
+                        out.write(LIST_INDENT);
+                        json.write(out, LIST_INDENT.length(), 2 * LIST_INDENT.length());
+                        found++;
+                    }
+                }
+            }
+            String nextCursor = (id >= last) ? "null" : JSONObject.quote(Integer.toString(id));
+            out.write((found > 0 ? "\n" + LIST_INDENT : "") + "],\n" + LIST_INDENT +
+                    JSONObject.quote(JSON_NEXT_CURSOR) + ": " + nextCursor + "\n}");
+        } catch (IOException ioe) {
+            logger.log(AsyncLogger.Level.WARN, "IOException while sending game list to client. Reason=" + ioe.getMessage());
+        }
+    }
+
+    // Handles the POST request to solve a batch of boards. The results are
+    // streamed to the client as they are solved, while the boards are still
+    // being read.
+    private void handlePostSolveBatch(HttpExchange he) throws IOException {
+        long budgetMillis;
+        try {
+            String budget = ServerHandler.parseQuery(he.getRequestURI().getRawQuery()).get(JSON_TIMEOUT_MILLIS);
+            budgetMillis = budget == null ? BatchSolver.DEFAULT_BUDGET_MILLIS : Long.parseLong(budget);
+        } catch (IllegalArgumentException iae) {
+            budgetMillis = -1;
+        }
+        if (budgetMillis <= 0 || budgetMillis > BatchSolver.MAX_BUDGET_MILLIS) {
+            respondError(he, 400, "Parameter " + JSON_TIMEOUT_MILLIS + " must be from 1 to " +
+                    BatchSolver.MAX_BUDGET_MILLIS + " ms, received: " + he.getRequestURI().getRawQuery());
+            return;
+        }
+        he.getResponseHeaders().set(HEADER_CONTENT_TYPE, CONTENT_TYPE_NDJSON);
+        he.sendResponseHeaders(200, 0);     // chunked: the results are streamed
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(he.getResponseBody(), StandardCharsets.UTF_8), 16384);
+                Reader in = new InputStreamReader(he.getRequestBody(), StandardCharsets.UTF_8)) {
+            batchSolver.solve(in, out, budgetMillis);
+        } catch (IOException ioe) {
+            logger.log(AsyncLogger.Level.WARN, "IOException while solving batch for client. Reason=" + ioe.getMessage());
+        }
+    }
+
+    // Convenience method to parse the query of the request URI.
+    // rawQuery - the query as received from the client (not decoded).
+    // Returns the map of parameter names to their (decoded) values.
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        HashMap<String, String> result = new HashMap<String, String>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                if (!pair.isEmpty()) {
+                    int equals = pair.indexOf('=');
+                    if (equals < 0) {
+                        result.put(URLDecoder.decode(pair, "UTF-8"), "");
+                    } else {
+                        result.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                                URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // Convenience method to convert the game id to number.
+    // Returns the number or -1, if the id is not a non-negative number.
+    private static int parseNumericId(String id) {
+        try {
+            return Math.max(-1, Integer.parseInt(id));
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    // Convenience method to read the contents of the request as a string.
+    private String readBody(HttpExchange he) throws IOException {
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(he.getRequestBody(), StandardCharsets.UTF_8))) {
+            return br.lines().collect(Collectors.joining("\n"));
+        }
+    }
+
+    // Convenience method to read the contents of the request as a JSON object.
+    // Empty contents is read as an empty object.
+    // Returns the JSON object or null, if the error has been responded.
+    private JSONObject readJsonObject(HttpExchange he) throws IOException {
+        String body = this.readBody(he);
+        try {
+            return body.trim().isEmpty() ? new JSONObject() : new JSONObject(body);
+        } catch (JSONException jsone) {
+            this.respondError(he, 415, "JSON object contents is expected, received: " + body + ". " + jsone.getMessage());
+            return null;
+        }
+    }
+
+    // Reads the whole contents of the request.
+    private static byte[] readBytes(HttpExchange he) throws IOException {
+        try (InputStream is = he.getRequestBody()) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = is.read(buffer); read >= 0; read = is.read(buffer)) {
+                result.write(buffer, 0, read);
+            }
+            return result.toByteArray();
+        }
+    }
+
+    // Returns the raw path and query of the request.
+    private static String pathAndQuery(HttpExchange he) {
+        String query = he.getRequestURI().getRawQuery();
+        return he.getRequestURI().getRawPath() + (query == null ? "" : "?" + query);
+    }
+
+    // Convenience method to convert the board from JSON.
+    // value - the value of the board field in the request JSON.
+    // Returns the board or null, if the value is not an array of 16 integers.
+    private static int[] readBoard(Object value) {
+        if (!(value instanceof JSONArray) || ((JSONArray)value).length() != Heuristics.CELLS) {
+            return null;
+        }
+        JSONArray array = (JSONArray)value;
+        int[] result = new int[Heuristics.CELLS];
+        for (int i = 0; i < result.length; i++) {
+            Object cell = array.get(i);
+            if (!(cell instanceof Integer)) {
+                return null;
+            }
+            result[i] = (Integer)cell;
+        }
+        return result;
+    }
+
+    // Notifies the listeners about the created game.
+    private void fireGameCreated(String id, Penkiolika game) {
+        synchronized(game) {
+            for (GameListener listener : listeners) {
+                listener.gameCreated(id, game);
+            }
+        }
+    }
+
+    // Notifies the listeners about the move made in the game. Must be called
+    // while holding the monitor of the game.
+    // distanceBefore - the Manhattan distance of the game before the move.
+    // completedBefore - if the game has been completed before the move.
+    private void fireGameMoved(String id, Penkiolika game, int distanceBefore, boolean completedBefore) {
+        boolean completedNow = !completedBefore && game.getCompletedMillis() != 0;
+        for (GameListener listener : listeners) {
+            listener.gameMoved(id, game, distanceBefore);
+            if (completedNow) {
+                listener.gameFinished(id, game);
+            }
+        }
+    }
+
+    // Notifies the listeners about the deleted game.
+    private void fireGameDeleted(String id, Penkiolika game) {
+        synchronized(game) {
+            for (GameListener listener : listeners) {
+                listener.gameDeleted(id, game);
+            }
+        }
+    }
+
+    // Forms the replication JSON object: {"readOnly":true|false,"primary":<primary>,
+    // "follower":<follower>}. The primary and the follower are present only,
+    // if the games are replicated from or to this handler.
+    private JSONObject getReplicationJson() {
+        JSONObject json = new JSONObject();
+        json.put(JSON_READ_ONLY, readOnly);
+        ReplicationPrimary primary = replicationPrimary;
+        if (primary != null) {
+            json.put(JSON_REPLICATION_PRIMARY, primary.toJson());
+        }
+        ReplicationFollower follower = replicationFollower;
+        if (follower != null) {
+            json.put(JSON_REPLICATION_FOLLOWER, follower.toJson());
+        }
+        return json;
+    }
+
     // Convenience method to form a game JSON object.
     // id - id of the game
     // game - the game, which should be converted to JSON.
@@ -303,32 +1567,112 @@ public class ServerHandler implements HttpHandler {
         synchronized(game) {
             result.put(JSON_BOARD, new JSONArray(game.getBoard()));
             result.put(JSON_FINAL, game.isFinal());
+            result.put(JSON_VERSION, game.getVersion());
+            result.put(JSON_DISTANCE, game.getDistance());
+            result.put(JSON_MANHATTAN_DISTANCE, game.getManhattanDistance());
+            result.put(JSON_MISPLACED_TILES, game.getMisplacedTiles());
         }
         return result;
     }
 
+    // Convenience method to form the entity tag of the provided game version.
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    // Convenience method to check if the value of If-Match or If-None-Match
+    // header matches the provided game version. The header may contain "*",
+    // which matches any version, or a comma separated list of (possibly weak)
+    // entity tags. If-Match uses strong comparison, so a weak tag never matches,
+    // and If-None-Match uses weak comparison (RFC 7232, section 2.3.2).
+    // header - the value of the header.
+    // version - the current version of the game.
+    // weak - true to use weak comparison.
+    private static boolean etagMatches(String header, long version, boolean weak) {
+        String expected = ServerHandler.etag(version);
+        for (String tag : header.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.startsWith("W/")) {
+                if (!weak) {
+                    continue;
+                }
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Convenience method to respond to the client with the game JSON object,
+    // which was formed by getGameJson, and its entity tag.
+    // statusCode - status code of the HTTP response.
+    // json - game JSON of the response.
+    private void respondGameJson(HttpExchange he, int statusCode, JSONObject json) throws IOException {
+        this.respondGame(he, statusCode, json.getLong(JSON_VERSION), this.encodeJson(json));
+    }
+
+    // Convenience method to respond to the client with the encoded game JSON
+    // object and its entity tag.
+    // statusCode - status code of the HTTP response.
+    // version - the version of the game, which was encoded.
+    // response - encoded game JSON.
+    private void respondGame(HttpExchange he, int statusCode, long version, byte[] response) throws IOException {
+        he.getResponseHeaders().set(HEADER_ETAG, ServerHandler.etag(version));
+        this.respondBytes(he, statusCode, response);
+    }
+
+    // Convenience method to respond to the client, that the game has not changed
+    // since it was last retrieved.
+    // version - the current version of the game.
+    private void respondNotModified(HttpExchange he, long version) throws IOException {
+        he.getResponseHeaders().set(HEADER_ETAG, ServerHandler.etag(version));
+        he.sendResponseHeaders(304, -1);
+        he.close();
+    }
+
     // Convenience method to respond to the client by provided status code and
     // JSON object.
     // statusCode - status code of the HTTP response.
     // json - contents JSON of the response.
     private void respondJson(HttpExchange he, int statusCode, JSONObject json) throws IOException {
-        byte[] response = json.toString(4).getBytes();
+        this.respondBytes(he, statusCode, this.encodeJson(json));
+    }
+
+    // Convenience method to encode JSON object to the form, in which it is
+    // sent to the client.
+    private byte[] encodeJson(JSONObject json) {
+        return json.toString(4).getBytes();
+    }
+
+    // Convenience method to respond to the client by provided status code and
+    // encoded contents.
+    // statusCode - status code of the HTTP response.
+    // response - contents of the response.
+    private void respondBytes(HttpExchange he, int statusCode, byte[] response) throws IOException {
         he.sendResponseHeaders(statusCode, response.length);
         try (OutputStream os = he.getResponseBody()) {
             os.write(response);
             os.flush();
         } catch (IOException ioe) {
-            System.out.println("IOException while sendng response status=" + statusCode +
-                    ", contents=" + json.toString() + " to client. Reason=" + ioe.getMessage());
+            if (logger.isEnabled(AsyncLogger.Level.WARN)) {
+                logger.log(AsyncLogger.Level.WARN, "IOException while sendng response status=" + statusCode +
+                        ", contents=" + new String(response) + " to client. Reason=" + ioe.getMessage());
+            }
         }
     }
 
     // Convenience method to log the error, form the error JSON response and
-    // respond with it to the client.
+    // respond with it to the client. The logging never blocks on I/O: the
+    // message is dropped, if the logger cannot keep up.
     // statusCode - status code of the HTTP response.
     // reason - error reason message.
     private void respondError(HttpExchange he, int statusCode, String reason) throws IOException {
-        System.out.println("Responding error " + statusCode + ": " + reason);
+        AsyncLogger.Level level = statusCode >= 500 ? AsyncLogger.Level.WARN : AsyncLogger.Level.INFO;
+        if (logger.isEnabled(level)) {
+            logger.log(level, "Responding error " + statusCode + ": " + reason);
+        }
         JSONObject json = new JSONObject();
         json.put(JSON_ERROR_REASON, reason);
         this.respondJson(he, statusCode, json);
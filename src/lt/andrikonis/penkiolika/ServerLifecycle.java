@@ -0,0 +1,249 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The managed lifecycle of the game server: restores the games from the
+ * snapshot on start and shuts the server down gracefully, so that a restart
+ * loses nothing. The shutdown (see {@link #shutdown()}, also run by the JVM
+ * shutdown hook, see {@link #installShutdownHook()}):
+ * <ol>
+ *  <li> reports, that the server is not ready (see {@link ServerHandler#setReady(boolean)}),
+ *  <li> stops accepting the connections and waits for the requests in progress
+ *       (see {@link #track(HttpHandler)}) to complete, but no longer than the
+ *       drain time,
+ *  <li> stops the worker threads, the solver threads of the handler and the
+ *       registered resources (e.g. the replication and the cluster), the last
+ *       registered first,
+ *  <li> writes the final snapshot of the games (see {@link GameArchive}); the
+ *       previous snapshot is replaced atomically, only when the new one is
+ *       complete,
+ *  <li> writes the records of the asynchronous logger and closes it.
+ * </ol>
+ * The class is thread safe; the server is shut down only once.
+ *
+ * @author julius
+ */
+public class ServerLifecycle {
+
+    /**
+     * Default longest time of waiting for the requests in progress on shutdown:
+     * {@value #DEFAULT_DRAIN_MILLIS} ms.
+     */
+    public static final long DEFAULT_DRAIN_MILLIS = 10000;
+
+    // The period of checking, whether the requests in progress have completed.
+    private static final long DRAIN_POLL_MILLIS = 10;
+
+    private final ServerHandler handler;
+    private final AsyncLogger logger;
+    private final long drainMillis;
+    // The resources closed on shutdown, in the order of registration.
+    private final List<Closeable> resources = new ArrayList<Closeable>();
+    // The number of the requests in progress in the tracked handlers.
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private HttpServer server;
+    private ThreadPoolExecutor executor;
+    private Path snapshotFile;
+    private boolean shutDown;
+
+    /**
+     * Creates the lifecycle of the server.
+     *
+     * @param handler the handler of the server.
+     * @param logger the logger of the server, closed on shutdown.
+     * @param drainMillis the longest time of waiting for the requests in
+     * progress on shutdown.
+     */
+    public ServerLifecycle(ServerHandler handler, AsyncLogger logger, long drainMillis) {
+        this.handler = handler;
+        this.logger = logger;
+        this.drainMillis = drainMillis;
+    }
+
+    /**
+     * Sets the started HTTP server, which is stopped on shutdown.
+     *
+     * @param server the HTTP server.
+     * @param executor the executor processing the requests of the server (see
+     * {@link Server#newBoundedExecutor(int, int)}) or null, if they are
+     * processed by the dispatcher thread.
+     */
+    public synchronized void setHttpServer(HttpServer server, ThreadPoolExecutor executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Wraps the handler of the server, so that its requests in progress are
+     * awaited on shutdown. They are counted by the handler itself, so the
+     * requests processed by the dispatcher thread of the server (e.g. when the
+     * queue of the executor is full) are awaited as well.
+     *
+     * @param handler the handler of the server.
+     * @return the handler to pass to the server.
+     */
+    public HttpHandler track(HttpHandler handler) {
+        return he -> {
+            inFlight.incrementAndGet();
+            try {
+                handler.handle(he);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Returns the number of the requests in progress in the handlers wrapped
+     * by {@link #track(HttpHandler)}.
+     *
+     * @return the number of the requests in progress.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Sets the file of the snapshot of the games, which is written on shutdown
+     * and may be restored on start (see {@link #restoreSnapshot(int)}).
+     *
+     * @param file the snapshot file or null, if no snapshot is written.
+     */
+    public synchronized void setSnapshotFile(Path file) {
+        this.snapshotFile = file;
+    }
+
+    /**
+     * Registers the resource, which is closed on shutdown after the requests
+     * have been drained and before the snapshot is written. The resources are
+     * closed in the reverse order of the registration.
+     *
+     * @param resource the resource.
+     */
+    public synchronized void addResource(Closeable resource) {
+        resources.add(resource);
+    }
+
+    /**
+     * Imports the games of the snapshot file to the handler, if the file exists.
+     *
+     * @param threads the number of threads decoding and adding the games.
+     * @return the number of restored games (0, if there is no snapshot).
+     * @throws IOException if the snapshot cannot be read.
+     */
+    public long restoreSnapshot(int threads) throws IOException {
+        Path file;
+        synchronized(this) {
+            file = snapshotFile;
+        }
+        if (file == null || !Files.exists(file)) {
+            return 0;
+        }
+        return GameArchive.load(handler, file, threads);
+    }
+
+    /**
+     * Registers the JVM shutdown hook, which shuts the server down.
+     */
+    public void installShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "penkiolika-shutdown"));
+    }
+
+    /**
+     * Shuts the server down gracefully. The failures of the single steps are
+     * reported, but do not stop the following steps.
+     *
+     * @return true, if the server has been shut down, false if it had already
+     * been shut down before.
+     */
+    public synchronized boolean shutdown() {
+        if (shutDown) {
+            return false;
+        }
+        shutDown = true;
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(drainMillis);
+        System.out.println("Shutting down");
+        handler.setReady(false);
+        if (server != null) {
+            // The server closes the listener at once, but then returns early only
+            // when an exchange ends meanwhile, otherwise it waits for the whole
+            // delay (in whole seconds). So it is stopped in the background and
+            // the requests in progress are awaited by their count.
+            HttpServer stopped = server;
+            Thread stopper = new Thread(() -> stopped.stop((int)TimeUnit.MILLISECONDS.toSeconds(drainMillis + 999)),
+                    "penkiolika-stop");
+            stopper.setDaemon(true);
+            stopper.start();
+        }
+        try {
+            // The executor is checked too, because it reads the request before
+            // the tracked handler is called
+            while ((inFlight.get() > 0 || (executor != null &&
+                    (executor.getActiveCount() > 0 || !executor.getQueue().isEmpty()))) &&
+                    System.nanoTime() < deadline) {
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            }
+            if (executor != null) {
+                executor.shutdown();
+                if (!executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    System.out.println("Requests still in progress after " + drainMillis + " ms. Interrupting");
+                    executor.shutdownNow();
+                }
+            } else if (inFlight.get() > 0) {
+                System.out.println("Requests still in progress after " + drainMillis + " ms");
+            }
+        } catch (InterruptedException ie) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Requests drained in " + (System.nanoTime() - start) / 1000000 + " ms");
+        handler.shutdown();
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            try {
+                resources.get(i).close();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Unable to close " + resources.get(i) + ". Reason=" + e.getMessage());
+            }
+        }
+        if (snapshotFile != null) {
+            this.writeSnapshot(snapshotFile);
+        }
+        logger.close();
+        System.out.println("Shut down in " + (System.nanoTime() - start) / 1000000 + " ms");
+        return true;
+    }
+
+    // Writes the snapshot of the games to the temporary file and replaces the
+    // snapshot file with it.
+    private void writeSnapshot(Path file) {
+        long start = System.nanoTime();
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            long games = GameArchive.export(handler, tmpFile);
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Snapshot of " + games + " games written to " + file + " in " +
+                    (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (IOException ioe) {
+            System.out.println("Unable to write snapshot to " + file + ". Reason=" + ioe.getMessage());
+            logger.log(AsyncLogger.Level.ERROR, "Unable to write snapshot to " + file + ". Reason=" + ioe.getMessage());
+        }
+    }
+}
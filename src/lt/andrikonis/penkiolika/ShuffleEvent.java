@@ -0,0 +1,41 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of a shuffle of a game (generation of a new
+ * board). It is disabled by default; it is enabled by {@code penkiolika.jfc}
+ * settings.
+ *
+ * @author julius
+ */
+@Name(ShuffleEvent.NAME)
+@Label("Shuffle")
+@Category({"Penkiolika", "Game"})
+@Description("Game board shuffled")
+@Enabled(false)
+@StackTrace(false)
+class ShuffleEvent extends Event {
+
+    /**
+     * The name of the event: {@value #NAME}.
+     */
+    static final String NAME = "lt.andrikonis.penkiolika.Shuffle";
+
+    @Label("Moves")
+    @Description("The number of moves made while shuffling")
+    int moves;
+
+    @Label("Start Distance")
+    @Description("The Manhattan distance of the shuffled board")
+    int startDistance;
+}
@@ -0,0 +1,50 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of a search run by {@link Solver}. It is disabled
+ * by default; it is enabled by {@code penkiolika.jfc} settings.
+ *
+ * @author julius
+ */
+@Name(SolveEvent.NAME)
+@Label("Solve")
+@Category({"Penkiolika", "Solver"})
+@Description("Search for the optimal solution of a board")
+@Enabled(false)
+@StackTrace(false)
+class SolveEvent extends Event {
+
+    /**
+     * The name of the event: {@value #NAME}.
+     */
+    static final String NAME = "lt.andrikonis.penkiolika.Solve";
+
+    @Label("Heuristic")
+    String heuristic;
+
+    @Label("Initial Estimate")
+    @Description("The heuristic estimate of the board")
+    int initialEstimate;
+
+    @Label("Depth")
+    @Description("The length of the solution or -1, if the search was stopped")
+    int depth;
+
+    @Label("Nodes Expanded")
+    long nodes;
+
+    @Label("Stopped")
+    @Description("True, if the search was stopped before finding the solution")
+    boolean stopped;
+}
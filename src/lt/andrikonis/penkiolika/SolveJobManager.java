@@ -0,0 +1,424 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Runs solve jobs in the background, so that the request threads are not tied
+ * up by the searches. The jobs are run on a dedicated pool with a bounded
+ * queue: when it is full, new jobs are rejected instead of queued without
+ * limit. Each job has a deadline (counted from its submission) and may be
+ * cancelled; the search checks both cooperatively (see {@link Solver}).
+ * <p>
+ * Finished jobs are kept for the provided time to live, so that their
+ * results can be retrieved, and are removed afterwards.
+ * <p>
+ * The class is thread safe.
+ *
+ * @author julius
+ */
+public class SolveJobManager {
+
+    /**
+     * Default capacity of the queue of submitted, but not yet started jobs:
+     * {@value #DEFAULT_QUEUE_CAPACITY}.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * Default time the job may take from its submission: {@value #DEFAULT_TIMEOUT_MILLIS} ms.
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * The largest time the job may take from its submission: {@value #MAX_TIMEOUT_MILLIS} ms.
+     */
+    public static final long MAX_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * Default time the finished job is kept: {@value #DEFAULT_RESULT_TTL_MILLIS} ms.
+     */
+    public static final long DEFAULT_RESULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * The job id field name in JSON: {@value #JSON_JOB_ID}.
+     */
+    public static final String JSON_JOB_ID = "jobId";
+
+    /**
+     * The game id field name in JSON: {@value #JSON_GAME_ID}.
+     */
+    public static final String JSON_GAME_ID = "gameId";
+
+    /**
+     * The field name in JSON of the game version, which is solved: {@value #JSON_VERSION}.
+     */
+    public static final String JSON_VERSION = "version";
+
+    /**
+     * The job status field name in JSON: {@value #JSON_STATUS}.
+     */
+    public static final String JSON_STATUS = "status";
+
+    /**
+     * The field name in JSON of the moves of the solution: {@value #JSON_MOVES}.
+     */
+    public static final String JSON_MOVES = "moves";
+
+    /**
+     * The field name in JSON of the number of expanded nodes: {@value #JSON_NODES}.
+     */
+    public static final String JSON_NODES = "nodes";
+
+    /**
+     * The field name in JSON of the time the search took: {@value #JSON_ELAPSED_MILLIS}.
+     */
+    public static final String JSON_ELAPSED_MILLIS = "elapsedMillis";
+
+    /**
+     * The status of the job.
+     */
+    public enum Status {
+        /**
+         * The job waits for a free solver thread.
+         */
+        QUEUED,
+        /**
+         * The job is being solved.
+         */
+        RUNNING,
+        /**
+         * The solution has been found.
+         */
+        SOLVED,
+        /**
+         * The job has been cancelled before finding the solution.
+         */
+        CANCELLED,
+        /**
+         * The deadline of the job passed before finding the solution.
+         */
+        EXPIRED,
+        /**
+         * The search failed unexpectedly.
+         */
+        FAILED;
+
+        /**
+         * Returns the name of the status as used in JSON.
+         *
+         * @return the lower case name.
+         */
+        public String jsonName() {
+            return this.name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Checks if the job with this status has finished.
+         *
+         * @return true, if the status will not change anymore.
+         */
+        public boolean isFinished() {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+
+    /**
+     * The job solving one state of a game.
+     */
+    public static class Job {
+        private final String id;
+        private final String gameId;
+        private final long version;
+        private final int[] board;
+        private final Heuristics.Estimate estimate;
+        private final long deadlineNanos;
+        private final AtomicReference<Status> status = new AtomicReference<Status>(Status.QUEUED);
+        private volatile boolean cancelRequested;
+        private volatile Future<?> future;
+        // The fields below are written before the status becomes finished.
+        private Solver.Solution solution;
+        private long elapsedMillis;
+        private volatile long finishedMillis;
+
+        // id - the id of the job.
+        // gameId - the id of the solved game.
+        // version - the version of the solved game.
+        // board - the solved board.
+        // estimate - the estimates of the board or null, if they are not known.
+        // deadlineNanos - the time (as returned by System.nanoTime()), when the job expires.
+        Job(String id, String gameId, long version, int[] board, Heuristics.Estimate estimate, long deadlineNanos) {
+            this.id = id;
+            this.gameId = gameId;
+            this.version = version;
+            this.board = board.clone();
+            this.estimate = estimate;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Returns the id of the job.
+         *
+         * @return the id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Returns the id of the game, which is solved.
+         *
+         * @return the id of the game.
+         */
+        public String getGameId() {
+            return gameId;
+        }
+
+        /**
+         * Returns the current status of the job.
+         *
+         * @return the status.
+         */
+        public Status getStatus() {
+            return status.get();
+        }
+
+        /**
+         * Returns the solution found by the job.
+         *
+         * @return the solution or null, if the status is not {@link Status#SOLVED}.
+         */
+        public Solver.Solution getSolution() {
+            return status.get() == Status.SOLVED ? solution : null;
+        }
+
+        /**
+         * Converts the job to JSON: {@code {"jobId":<id>,"gameId":<id>,"version":<version>,
+         * "status":"queued"|"running"|"solved"|"cancelled"|"expired"|"failed"}}. The
+         * solved job also has {@code "moves":["left"|"right"|"top"|"bottom",...],
+         * "nodes":<nodes>,"elapsedMillis":<millis>} fields.
+         *
+         * @return the JSON of the job.
+         */
+        public JSONObject toJson() {
+            Status current = status.get();
+            JSONObject json = new JSONObject();
+            json.put(JSON_JOB_ID, id);
+            json.put(JSON_GAME_ID, gameId);
+            json.put(JSON_VERSION, version);
+            json.put(JSON_STATUS, current.jsonName());
+            if (current == Status.SOLVED) {
+                JSONArray moves = new JSONArray();
+                for (Direction move : solution.getMoves()) {
+                    moves.put(move.jsonName());
+                }
+                json.put(JSON_MOVES, moves);
+                json.put(JSON_NODES, solution.getNodes());
+                json.put(JSON_ELAPSED_MILLIS, elapsedMillis);
+            }
+            return json;
+        }
+
+        // Checks if the search of this job should stop.
+        private boolean shouldStop() {
+            return cancelRequested || System.nanoTime() - deadlineNanos > 0;
+        }
+
+        // Sets the final status of the job.
+        private void finish(Status finalStatus) {
+            finishedMillis = System.currentTimeMillis();
+            status.set(finalStatus);
+        }
+    }
+
+    private final Solver solver;
+    private final ThreadPoolExecutor executor;
+    private final long resultTtlMillis;
+    private final ConcurrentMap<String, Job> jobs = new ConcurrentHashMap<String, Job>();
+    private final AtomicLong lastJobId = new AtomicLong(0);
+    // The time, when the finished jobs are checked for removal next time.
+    private final AtomicLong nextSweepMillis = new AtomicLong(0);
+
+    /**
+     * Creates the manager with the half of available processors as solver
+     * threads and default limits.
+     */
+    public SolveJobManager() {
+        this(new Solver(), Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                DEFAULT_QUEUE_CAPACITY, DEFAULT_RESULT_TTL_MILLIS);
+    }
+
+    /**
+     * Creates the manager.
+     *
+     * @param solver the solver of the jobs.
+     * @param threads the number of solver threads.
+     * @param queueCapacity the largest number of jobs waiting for a solver thread.
+     * @param resultTtlMillis the time the finished job is kept.
+     */
+    public SolveJobManager(Solver solver, int threads, int queueCapacity, long resultTtlMillis) {
+        this.solver = solver;
+        this.resultTtlMillis = resultTtlMillis;
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "penkiolika-solver-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Submits the job to solve the board.
+     *
+     * @param gameId the id of the game.
+     * @param version the version of the game, which the board belongs to.
+     * @param board the board to solve. It must be solvable.
+     * @param timeoutMillis the time the job may take (including the time in the queue).
+     * @return the submitted job.
+     * @throws RejectedExecutionException if there are too many jobs waiting.
+     */
+    public Job submit(String gameId, long version, int[] board, long timeoutMillis) {
+        return this.submit(gameId, version, board, null, timeoutMillis);
+    }
+
+    /**
+     * Submits the job to solve the board, whose heuristic estimates are
+     * already known (see {@link Penkiolika#getEstimate()}).
+     *
+     * @param gameId the id of the game.
+     * @param version the version of the game, which the board belongs to.
+     * @param board the board to solve. It must be solvable.
+     * @param estimate the estimates of the board or null, if they are not known.
+     * @param timeoutMillis the time the job may take (including the time in the queue).
+     * @return the submitted job.
+     * @throws RejectedExecutionException if there are too many jobs waiting.
+     */
+    public Job submit(String gameId, long version, int[] board, Heuristics.Estimate estimate, long timeoutMillis) {
+        this.removeExpired();
+        String id = "" + lastJobId.incrementAndGet();
+        Job job = new Job(id, gameId, version, board, estimate,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        jobs.put(id, job);
+        try {
+            job.future = executor.submit(() -> this.run(job));
+        } catch (RejectedExecutionException ree) {
+            jobs.remove(id);
+            throw ree;
+        }
+        return job;
+    }
+
+    /**
+     * Returns the job.
+     *
+     * @param id the id of the job.
+     * @return the job or null, if there is no such job (or it has been removed).
+     */
+    public Job get(String id) {
+        this.removeExpired();
+        return jobs.get(id);
+    }
+
+    /**
+     * Cancels the job. The queued job is cancelled immediately, the running job
+     * is cancelled as soon as the search notices it. The finished job is not
+     * affected.
+     *
+     * @param id the id of the job.
+     * @return the job or null, if there is no such job (or it has been removed).
+     */
+    public Job cancel(String id) {
+        Job job = jobs.get(id);
+        if (job != null) {
+            job.cancelRequested = true;
+            if (job.status.compareAndSet(Status.QUEUED, Status.CANCELLED)) {
+                job.finishedMillis = System.currentTimeMillis();
+                Future<?> future = job.future;
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Returns the number of jobs kept by this manager (queued, running and finished).
+     *
+     * @return the number of jobs.
+     */
+    public int size() {
+        return jobs.size();
+    }
+
+    /**
+     * Stops the solver threads. The running searches are not interrupted, but
+     * the queued jobs are not started.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Solves the job on the solver thread.
+    private void run(Job job) {
+        if (!job.status.compareAndSet(Status.QUEUED, Status.RUNNING)) {
+            return;     // cancelled while queued
+        }
+        if (job.shouldStop()) {
+            job.finish(job.cancelRequested ? Status.CANCELLED : Status.EXPIRED);
+            return;
+        }
+        long start = System.nanoTime();
+        Solver.Solution solution;
+        try {
+            solution = solver.solve(job.board, job.estimate, job::shouldStop);
+        } catch (RuntimeException re) {
+            job.finish(Status.FAILED);
+            throw re;
+        }
+        job.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (solution != null) {
+            job.solution = solution;
+            job.finish(Status.SOLVED);
+        } else {
+            job.finish(job.cancelRequested ? Status.CANCELLED : Status.EXPIRED);
+        }
+    }
+
+    // Removes the finished jobs, which have been kept longer than their time
+    // to live. It is done at most once per second (or per time to live, if
+    // it is shorter).
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        long next = nextSweepMillis.get();
+        if (now < next || !nextSweepMillis.compareAndSet(next, now + Math.min(1000, resultTtlMillis))) {
+            return;
+        }
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            long finished = job.finishedMillis;
+            if (finished != 0 && job.status.get().isFinished() && now - finished >= resultTtlMillis) {
+                it.remove();
+            }
+        }
+    }
+}
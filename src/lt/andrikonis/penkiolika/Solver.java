@@ -0,0 +1,368 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Optimal solver of the Fifteen game. It uses IDA* (iterative deepening A*)
+ * search with one of the admissible {@link Heuristic}s, by default the sum of
+ * the Manhattan distance and the linear conflict (see {@link Heuristics}). The
+ * heuristic is updated incrementally on every move of the search: only the
+ * moved tile and the two lines it leaves and enters are recalculated, and the
+ * walking distance (see {@link WalkingDistance}) takes one table lookup.
+ * <p>
+ * The search checks periodically, if it should stop (because it is cancelled
+ * or its deadline has passed), so it can be run as a background job.
+ * <p>
+ * The class is thread safe: every thread has its own search state, which is
+ * reused by its following searches, so solving many boards on a pool of
+ * threads allocates (almost) nothing but the solutions.
+ *
+ * @author julius
+ */
+public class Solver {
+
+    /**
+     * The largest length of the solution the solver looks for: {@value #MAX_DEPTH}.
+     * Every solvable board has an optimal solution of at most 80 moves.
+     */
+    public static final int MAX_DEPTH = 100;
+
+    // How many nodes are expanded between the checks, if the search should stop.
+    // Must be a power of 2.
+    private static final int STOP_CHECK_INTERVAL = 1 << 12;
+    // Special return values of the depth first search.
+    private static final int FOUND = -1;
+    private static final int STOPPED = -2;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The heuristic guiding the search. All of them are admissible, so the
+     * solutions are optimal; the better heuristic expands fewer nodes.
+     */
+    public enum Heuristic {
+        /**
+         * The Manhattan distance.
+         */
+        MANHATTAN("manhattan"),
+        /**
+         * The Manhattan distance and the linear conflict.
+         */
+        LINEAR_CONFLICT("manhattan+linear-conflict"),
+        /**
+         * The larger of the walking distance and of the Manhattan distance
+         * with the linear conflict.
+         */
+        WALKING_DISTANCE("walking-distance");
+
+        private final String label;
+
+        private Heuristic(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the short description of the heuristic.
+         *
+         * @return the description, like {@code "manhattan+linear-conflict"}.
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Heuristic heuristic;
+    // The search state of every thread.
+    private final ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+
+    /**
+     * Creates the solver using {@link Heuristic#LINEAR_CONFLICT} heuristic.
+     */
+    public Solver() {
+        this(Heuristic.LINEAR_CONFLICT);
+    }
+
+    /**
+     * Creates the solver.
+     *
+     * @param heuristic the heuristic guiding the search.
+     */
+    public Solver(Heuristic heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Returns the heuristic guiding the search.
+     *
+     * @return the heuristic.
+     */
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+
+    /**
+     * The optimal solution of the board.
+     */
+    public static class Solution {
+        private final List<Direction> moves;
+        private final long nodes;
+
+        // moves - the moves of the solution.
+        // nodes - the number of nodes expanded by the search.
+        Solution(List<Direction> moves, long nodes) {
+            this.moves = Collections.unmodifiableList(moves);
+            this.nodes = nodes;
+        }
+
+        /**
+         * Returns the moves, which bring the board to the final state.
+         *
+         * @return the unmodifiable list of moves (empty, if the board is already final).
+         */
+        public List<Direction> getMoves() {
+            return moves;
+        }
+
+        /**
+         * Returns the number of nodes expanded while searching for the solution.
+         *
+         * @return the number of nodes.
+         */
+        public long getNodes() {
+            return nodes;
+        }
+    }
+
+    /**
+     * Finds the optimal solution of the board.
+     *
+     * @param board the board of the Fifteen game (as returned by {@link Penkiolika#getBoard()}).
+     * @return the solution.
+     * @throws IllegalArgumentException if the board cannot be solved.
+     */
+    public Solution solve(int[] board) {
+        return this.solve(board, () -> false);
+    }
+
+    /**
+     * Finds the optimal solution of the board. The search stops early, if
+     * the provided condition becomes true. The condition is checked every
+     * few thousand nodes, so it must be cheap.
+     *
+     * @param board the board of the Fifteen game (as returned by {@link Penkiolika#getBoard()}).
+     * @param stop the condition to stop the search.
+     * @return the solution or null, if the search was stopped.
+     * @throws IllegalArgumentException if the board cannot be solved.
+     */
+    public Solution solve(int[] board, BooleanSupplier stop) {
+        return this.solve(board, null, stop);
+    }
+
+    /**
+     * Finds the optimal solution of the board, starting from the already
+     * known heuristic estimates of the board (for example, those kept by the
+     * game, see {@link Penkiolika#getEstimate()}), so that they are not
+     * calculated again. The search stops early, if the provided condition
+     * becomes true. The condition is checked every few thousand nodes, so it
+     * must be cheap.
+     *
+     * @param board the board of the Fifteen game (as returned by {@link Penkiolika#getBoard()}).
+     * @param estimate the estimates of the same board or null, if they are not known.
+     * @param stop the condition to stop the search.
+     * @return the solution or null, if the search was stopped.
+     * @throws IllegalArgumentException if the board cannot be solved.
+     */
+    public Solution solve(int[] board, Heuristics.Estimate estimate, BooleanSupplier stop) {
+        if (!Penkiolika.isSolvable(board)) {
+            throw new IllegalArgumentException("Board must be a solvable permutation of numbers from 0 to " +
+                    (Heuristics.CELLS - 1));
+        }
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        Search search = searches.get();
+        search.reset(board, estimate, heuristic, stop);
+        int initialEstimate = search.heuristic();
+        Solution solution = search.run();
+        event.end();
+        if (event.shouldCommit()) {
+            event.heuristic = heuristic.getLabel();
+            event.initialEstimate = initialEstimate;
+            event.depth = solution == null ? -1 : solution.getMoves().size();
+            event.nodes = search.nodes;
+            event.stopped = solution == null;
+            event.commit();
+        }
+        return solution;
+    }
+
+    // The state of the search. It is reset before every search.
+    private static class Search {
+        private final int[] board = new int[Heuristics.CELLS];
+        private boolean linearConflict;
+        private boolean walkingDistance;
+        private BooleanSupplier stop;
+        private int emptyIndex;
+        private int manhattan;
+        // The number of conflicting tiles of each row and column, and their sum.
+        private final int[] rowConflicts = new int[Heuristics.SIDE];
+        private final int[] columnConflicts = new int[Heuristics.SIDE];
+        private int conflicts;
+        // The indexes of the row and column configurations of the walking distance.
+        private int rowState;
+        private int columnState;
+        // The moves of the current path.
+        private final Direction[] path = new Direction[MAX_DEPTH];
+        private int pathLength;
+        private long nodes;
+
+        // Prepares the search of the board.
+        // board - the board to solve.
+        // estimate - the estimates of the board or null, if they have to be calculated.
+        // heuristic - the heuristic of the search.
+        // stop - the condition to stop the search.
+        void reset(int[] board, Heuristics.Estimate estimate, Heuristic heuristic, BooleanSupplier stop) {
+            System.arraycopy(board, 0, this.board, 0, Heuristics.CELLS);
+            this.linearConflict = heuristic != Heuristic.MANHATTAN;
+            this.walkingDistance = heuristic == Heuristic.WALKING_DISTANCE;
+            this.stop = stop;
+            for (int i = 0; i < this.board.length; i++) {
+                if (this.board[i] == Penkiolika.EMPTY_CELL) {
+                    emptyIndex = i;
+                }
+            }
+            manhattan = estimate == null ? Heuristics.manhattanDistance(this.board) : estimate.getManhattanDistance();
+            conflicts = 0;
+            pathLength = 0;
+            nodes = 0;
+            for (int line = 0; linearConflict && line < Heuristics.SIDE; line++) {
+                if (estimate == null) {
+                    rowConflicts[line] = Heuristics.rowConflicts(this.board, line);
+                    columnConflicts[line] = Heuristics.columnConflicts(this.board, line);
+                } else {
+                    rowConflicts[line] = estimate.rowConflicts(line);
+                    columnConflicts[line] = estimate.columnConflicts(line);
+                }
+                conflicts += rowConflicts[line] + columnConflicts[line];
+            }
+            if (walkingDistance) {
+                rowState = WalkingDistance.rowState(this.board);
+                columnState = WalkingDistance.columnState(this.board);
+            }
+        }
+
+        // Runs the iterations of the search with increasing bounds.
+        // Returns the solution or null, if the search was stopped.
+        Solution run() {
+            int bound = this.heuristic();
+            while (true) {
+                int result = this.search(0, bound, null);
+                if (result == FOUND) {
+                    List<Direction> moves = new ArrayList<Direction>(pathLength);
+                    for (int i = 0; i < pathLength; i++) {
+                        moves.add(path[i]);
+                    }
+                    return new Solution(moves, nodes);
+                } else if (result == STOPPED) {
+                    return null;
+                }
+                bound = result;
+            }
+        }
+
+        // The depth first search limited by the bound.
+        // depth - the number of moves made.
+        // bound - the largest allowed estimated length of the solution.
+        // previous - the last move made (or null, if none).
+        // Returns FOUND, if the solution is found (it is left in the path), STOPPED,
+        // if the search should stop, or the smallest estimate exceeding the bound.
+        private int search(int depth, int bound, Direction previous) {
+            nodes++;
+            if ((nodes & (STOP_CHECK_INTERVAL - 1)) == 0 && stop.getAsBoolean()) {
+                return STOPPED;
+            }
+            int heuristic = this.heuristic();
+            if (heuristic == 0) {
+                pathLength = depth;
+                return FOUND;
+            }
+            int estimate = depth + heuristic;
+            if (estimate > bound) {
+                return estimate;
+            }
+            int min = Integer.MAX_VALUE;
+            for (Direction direction : DIRECTIONS) {
+                if ((previous != null && direction == previous.opposite()) || !direction.canMove(emptyIndex)) {
+                    continue;
+                }
+                this.move(direction);
+                path[depth] = direction;
+                int result = this.search(depth + 1, bound, direction);
+                if (result == FOUND) {
+                    return FOUND;
+                }
+                this.move(direction.opposite());
+                if (result == STOPPED) {
+                    return STOPPED;
+                }
+                min = Math.min(min, result);
+            }
+            return min;
+        }
+
+        // The estimated number of moves to the final state.
+        private int heuristic() {
+            int estimate = manhattan + 2 * conflicts;
+            if (walkingDistance) {
+                estimate = Math.max(estimate, WalkingDistance.distance(rowState) + WalkingDistance.distance(columnState));
+            }
+            return estimate;
+        }
+
+        // Moves the empty cell and updates the heuristic.
+        private void move(Direction direction) {
+            int from = emptyIndex;
+            int to = direction.target(from);
+            int tile = board[to];
+            manhattan += Heuristics.manhattanDistance(tile, from) - Heuristics.manhattanDistance(tile, to);
+            board[from] = tile;
+            board[to] = Penkiolika.EMPTY_CELL;
+            emptyIndex = to;
+            if (walkingDistance) {
+                // The tile moves to the row (column) of the empty cell from the next one
+                if (direction.isVertical()) {
+                    rowState = WalkingDistance.next(rowState, to > from, (tile - 1) / Heuristics.SIDE);
+                } else {
+                    columnState = WalkingDistance.next(columnState, to > from, (tile - 1) % Heuristics.SIDE);
+                }
+            }
+            // The tile changes its row on a vertical move and its column on a horizontal one.
+            // The order of the tiles in the other line doesn't change.
+            if (!linearConflict) {
+                return;
+            } else if (direction.isVertical()) {
+                this.updateRow(from / Heuristics.SIDE);
+                this.updateRow(to / Heuristics.SIDE);
+            } else {
+                this.updateColumn(from % Heuristics.SIDE);
+                this.updateColumn(to % Heuristics.SIDE);
+            }
+        }
+
+        private void updateRow(int row) {
+            int updated = Heuristics.rowConflicts(board, row);
+            conflicts += updated - rowConflicts[row];
+            rowConflicts[row] = updated;
+        }
+
+        private void updateColumn(int column) {
+            int updated = Heuristics.columnConflicts(board, column);
+            conflicts += updated - columnConflicts[column];
+            columnConflicts[column] = updated;
+        }
+    }
+}
@@ -0,0 +1,557 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Regression benchmark of the {@link Solver}. It solves a fixed corpus of
+ * instances with every solver configuration and records the wall time, the
+ * expanded nodes, the nodes per second and the optimality of every solution.
+ * The results may be compared with a stored baseline: a solution longer than
+ * the known optimal length, more expanded nodes than in the baseline (the
+ * number of nodes doesn't depend on the machine) or a total time of a
+ * configuration slower than the baseline by more than the tolerance are
+ * reported as regressions. A result missing from the baseline is reported as
+ * well, so the baseline must be recorded with the same number of threads
+ * (the bundled one with {@value #DEFAULT_THREADS}).
+ * <p>
+ * The corpus ({@value #CORPUS_RESOURCE}) and the baseline ({@value #BASELINE_RESOURCE})
+ * are bundled with the classes. The corpus has one instance per line: 16
+ * numbers of the board and the length of its optimal solution. The baseline
+ * has one result per line: the configuration, the index of the instance, the
+ * nodes and the milliseconds. The times of the bundled baseline are only
+ * indicative; the baseline should be recorded on the machine, where the
+ * benchmark is run.
+ *
+ * @author julius
+ */
+public class SolverBenchmark {
+
+    /**
+     * The name of the bundled corpus resource: {@value #CORPUS_RESOURCE}.
+     */
+    public static final String CORPUS_RESOURCE = "solver-corpus.txt";
+
+    /**
+     * The name of the bundled baseline resource: {@value #BASELINE_RESOURCE}.
+     */
+    public static final String BASELINE_RESOURCE = "solver-baseline.txt";
+
+    /**
+     * Default allowed slowdown of the total time of a configuration: {@value #DEFAULT_TOLERANCE}.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.25;
+
+    /**
+     * Default number of instances solved in parallel: {@value #DEFAULT_THREADS},
+     * the same as in the bundled baseline.
+     */
+    public static final int DEFAULT_THREADS = 2;
+
+    /**
+     * The instance of the corpus.
+     */
+    public static class Instance {
+        private final int index;
+        private final int[] board;
+        private final int optimalLength;
+
+        /**
+         * Creates the instance.
+         *
+         * @param index the index of the instance in the corpus.
+         * @param board the board.
+         * @param optimalLength the length of the optimal solution.
+         */
+        public Instance(int index, int[] board, int optimalLength) {
+            this.index = index;
+            this.board = board.clone();
+            this.optimalLength = optimalLength;
+        }
+
+        /**
+         * Returns the index of the instance in the corpus.
+         *
+         * @return the index.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the board of the instance.
+         *
+         * @return the copy of the board.
+         */
+        public int[] getBoard() {
+            return board.clone();
+        }
+
+        /**
+         * Returns the length of the optimal solution.
+         *
+         * @return the number of moves.
+         */
+        public int getOptimalLength() {
+            return optimalLength;
+        }
+    }
+
+    /**
+     * The configuration of the solver: the heuristic and the number of
+     * instances solved in parallel.
+     */
+    public static class Configuration {
+        private final Solver.Heuristic heuristic;
+        private final int threads;
+
+        /**
+         * Creates the configuration.
+         *
+         * @param heuristic the heuristic of the solver.
+         * @param threads the number of instances solved in parallel.
+         */
+        public Configuration(Solver.Heuristic heuristic, int threads) {
+            this.heuristic = heuristic;
+            this.threads = threads;
+        }
+
+        /**
+         * Returns the name of the configuration, as used in the baseline.
+         *
+         * @return the name, like {@code "manhattan+linear-conflict/4"}.
+         */
+        public String getName() {
+            return heuristic.getLabel() + "/" + threads;
+        }
+
+        @Override
+        public String toString() {
+            return this.getName();
+        }
+    }
+
+    /**
+     * The result of solving a single instance.
+     */
+    public static class Result {
+        private final String configuration;
+        private final int index;
+        private final long nodes;
+        private final long millis;
+        private final boolean optimal;
+
+        /**
+         * Creates the result.
+         *
+         * @param configuration the name of the configuration.
+         * @param index the index of the instance.
+         * @param nodes the number of expanded nodes.
+         * @param millis the wall time in milliseconds.
+         * @param optimal true, if the solution has the optimal length.
+         */
+        public Result(String configuration, int index, long nodes, long millis, boolean optimal) {
+            this.configuration = configuration;
+            this.index = index;
+            this.nodes = nodes;
+            this.millis = millis;
+            this.optimal = optimal;
+        }
+
+        /**
+         * Returns the name of the configuration.
+         *
+         * @return the name of the configuration.
+         */
+        public String getConfiguration() {
+            return configuration;
+        }
+
+        /**
+         * Returns the index of the instance.
+         *
+         * @return the index.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the number of nodes expanded by the search.
+         *
+         * @return the number of nodes.
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the wall time of the search.
+         *
+         * @return the time in milliseconds.
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Returns the number of nodes expanded per second.
+         *
+         * @return the number of nodes per second.
+         */
+        public long getNodesPerSecond() {
+            return nodes * 1000 / Math.max(1, millis);
+        }
+
+        /**
+         * Checks if the solution has the optimal length.
+         *
+         * @return true, if the solution is optimal.
+         */
+        public boolean isOptimal() {
+            return optimal;
+        }
+
+        // The key of the result in the baseline.
+        private String key() {
+            return configuration + " " + index;
+        }
+    }
+
+    /**
+     * Returns the configurations, which are benchmarked: every heuristic
+     * solving one instance at a time and the provided number of instances in
+     * parallel.
+     *
+     * @param threads the number of instances solved in parallel.
+     * @return the configurations.
+     */
+    public static List<Configuration> getConfigurations(int threads) {
+        List<Configuration> configurations = new ArrayList<Configuration>();
+        for (Solver.Heuristic heuristic : Solver.Heuristic.values()) {
+            configurations.add(new Configuration(heuristic, 1));
+            if (threads > 1) {
+                configurations.add(new Configuration(heuristic, threads));
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * Reads the bundled corpus.
+     *
+     * @return the instances of the corpus.
+     * @throws IOException if the corpus cannot be read.
+     */
+    public static List<Instance> loadCorpus() throws IOException {
+        try (Reader reader = SolverBenchmark.openResource(CORPUS_RESOURCE)) {
+            return SolverBenchmark.readCorpus(reader);
+        }
+    }
+
+    /**
+     * Reads the corpus. Empty lines and the text after {@code #} are ignored.
+     *
+     * @param reader the reader of the corpus.
+     * @return the instances of the corpus.
+     * @throws IOException if the corpus cannot be read or is malformed.
+     */
+    public static List<Instance> readCorpus(Reader reader) throws IOException {
+        List<Instance> instances = new ArrayList<Instance>();
+        for (String[] fields : SolverBenchmark.readLines(reader)) {
+            if (fields.length != Heuristics.CELLS + 1) {
+                throw new IOException("Board of " + Heuristics.CELLS + " cells and its optimal length expected, and " +
+                        Arrays.toString(fields) + " received");
+            }
+            int[] board = new int[Heuristics.CELLS];
+            try {
+                for (int i = 0; i < board.length; i++) {
+                    board[i] = Integer.parseInt(fields[i]);
+                }
+                if (!Penkiolika.isSolvable(board)) {
+                    throw new IOException("Board is not solvable: " + Arrays.toString(board));
+                }
+                instances.add(new Instance(instances.size(), board, Integer.parseInt(fields[Heuristics.CELLS])));
+            } catch (NumberFormatException nfe) {
+                throw new IOException("Numbers expected, and " + Arrays.toString(fields) + " received", nfe);
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * Reads the bundled baseline.
+     *
+     * @return the baseline.
+     * @throws IOException if the baseline cannot be read.
+     */
+    public static List<Result> loadBaseline() throws IOException {
+        try (Reader reader = SolverBenchmark.openResource(BASELINE_RESOURCE)) {
+            return SolverBenchmark.readBaseline(reader);
+        }
+    }
+
+    /**
+     * Reads the baseline. Empty lines and the text after {@code #} are ignored.
+     *
+     * @param reader the reader of the baseline.
+     * @return the results of the baseline.
+     * @throws IOException if the baseline cannot be read or is malformed.
+     */
+    public static List<Result> readBaseline(Reader reader) throws IOException {
+        List<Result> results = new ArrayList<Result>();
+        for (String[] fields : SolverBenchmark.readLines(reader)) {
+            if (fields.length != 4) {
+                throw new IOException("Configuration, index, nodes and milliseconds expected, and " +
+                        Arrays.toString(fields) + " received");
+            }
+            try {
+                results.add(new Result(fields[0], Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]), true));
+            } catch (NumberFormatException nfe) {
+                throw new IOException("Numbers expected, and " + Arrays.toString(fields) + " received", nfe);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Writes the results as the baseline.
+     *
+     * @param results the results.
+     * @param writer the writer of the baseline.
+     * @throws IOException if the baseline cannot be written.
+     */
+    public static void writeBaseline(List<Result> results, Writer writer) throws IOException {
+        writer.write("# configuration instance nodes millis\n");
+        for (Result result : results) {
+            writer.write(result.key() + " " + result.nodes + " " + result.millis + "\n");
+        }
+    }
+
+    /**
+     * Solves all the instances with the configuration.
+     *
+     * @param configuration the configuration of the solver.
+     * @param instances the instances to solve.
+     * @return the results in the order of the instances.
+     */
+    public static List<Result> run(Configuration configuration, List<Instance> instances) {
+        Solver solver = new Solver(configuration.heuristic);
+        ExecutorService executor = Executors.newFixedThreadPool(configuration.threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            for (Instance instance : instances) {
+                futures.add(executor.submit(() -> SolverBenchmark.solve(solver, configuration, instance)));
+            }
+            List<Result> results = new ArrayList<Result>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Benchmark interrupted", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Benchmark failed", ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Compares the results with the baseline.
+     *
+     * @param results the results.
+     * @param baseline the results of the baseline.
+     * @param tolerance the allowed slowdown of the total time of a
+     * configuration (0.25 allows it to be 25% slower).
+     * @return the descriptions of the regressions (empty, if there are none).
+     */
+    public static List<String> compare(List<Result> results, List<Result> baseline, double tolerance) {
+        Map<String, Result> expected = new HashMap<String, Result>();
+        for (Result result : baseline) {
+            expected.put(result.key(), result);
+        }
+        List<String> regressions = new ArrayList<String>();
+        Map<String, long[]> totalMillis = new HashMap<String, long[]>();   // configuration -> {actual, baseline}
+        for (Result result : results) {
+            if (!result.optimal) {
+                regressions.add(result.configuration + ": solution of instance " + result.index + " is not optimal");
+            }
+            Result before = expected.get(result.key());
+            if (before == null) {
+                regressions.add(result.configuration + ": instance " + result.index + " has no result in the baseline");
+                continue;
+            }
+            if (result.nodes > before.nodes) {
+                regressions.add(result.configuration + ": instance " + result.index + " expanded " + result.nodes +
+                        " nodes, and " + before.nodes + " in the baseline");
+            }
+            long[] totals = totalMillis.get(result.configuration);
+            if (totals == null) {
+                totals = new long[2];
+                totalMillis.put(result.configuration, totals);
+            }
+            totals[0] += result.millis;
+            totals[1] += before.millis;
+        }
+        List<String> configurations = new ArrayList<String>(totalMillis.keySet());
+        Collections.sort(configurations);
+        for (String configuration : configurations) {
+            long[] totals = totalMillis.get(configuration);
+            if (totals[0] > totals[1] * (1 + tolerance)) {
+                regressions.add(configuration + ": took " + totals[0] + " ms, and " + totals[1] +
+                        " ms in the baseline");
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Runs the benchmark of the bundled corpus with all the configurations and
+     * compares the results with the baseline. Exits with status 1, if there
+     * are regressions. The arguments (all optional):
+     * <ul>
+     *  <li> {@code --threads <n>} - the number of instances solved in parallel
+     *       (default {@value #DEFAULT_THREADS}).
+     *  <li> {@code --baseline <file>} - the baseline to compare with (default
+     *       the bundled one).
+     *  <li> {@code --write-baseline <file>} - writes the results as the new
+     *       baseline instead of comparing.
+     *  <li> {@code --tolerance <fraction>} - the allowed slowdown (default
+     *       {@value #DEFAULT_TOLERANCE}).
+     * </ul>
+     *
+     * @param args the arguments.
+     * @throws IOException if the corpus or the baseline cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        int threads = DEFAULT_THREADS;
+        Path baselineFile = null;
+        Path newBaselineFile = null;
+        double tolerance = DEFAULT_TOLERANCE;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Value of " + args[i] + " expected");
+                }
+                switch (args[i]) {
+                    case "--threads":
+                        threads = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--baseline":
+                        baselineFile = Paths.get(args[i + 1]);
+                        break;
+                    case "--write-baseline":
+                        newBaselineFile = Paths.get(args[i + 1]);
+                        break;
+                    case "--tolerance":
+                        tolerance = Double.parseDouble(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException iae) {
+            System.out.println(iae.getMessage());
+            System.out.println("Usage: " + SolverBenchmark.class.getName() + " [--threads <n>] [--baseline <file>] " +
+                    "[--write-baseline <file>] [--tolerance <fraction>]");
+            return;
+        }
+        List<Instance> instances = SolverBenchmark.loadCorpus();
+        // The first run warms up the just in time compiler.
+        SolverBenchmark.run(new Configuration(Solver.Heuristic.LINEAR_CONFLICT, 1), instances.subList(0, 1));
+        List<Result> results = new ArrayList<Result>();
+        System.out.println(String.format(Locale.ROOT, "%-30s %8s %8s %12s %8s %12s",
+                "configuration", "instance", "optimal", "nodes", "ms", "nodes/s"));
+        for (Configuration configuration : SolverBenchmark.getConfigurations(threads)) {
+            for (Result result : SolverBenchmark.run(configuration, instances)) {
+                System.out.println(String.format(Locale.ROOT, "%-30s %8d %8s %12d %8d %12d",
+                        result.configuration, result.index, result.optimal, result.nodes, result.millis,
+                        result.getNodesPerSecond()));
+                results.add(result);
+            }
+        }
+        if (newBaselineFile != null) {
+            try (Writer writer = Files.newBufferedWriter(newBaselineFile, StandardCharsets.UTF_8)) {
+                SolverBenchmark.writeBaseline(results, writer);
+            }
+            System.out.println("Baseline written to " + newBaselineFile);
+            return;
+        }
+        List<Result> baseline;
+        if (baselineFile == null) {
+            baseline = SolverBenchmark.loadBaseline();
+        } else {
+            try (Reader reader = Files.newBufferedReader(baselineFile, StandardCharsets.UTF_8)) {
+                baseline = SolverBenchmark.readBaseline(reader);
+            }
+        }
+        List<String> regressions = SolverBenchmark.compare(results, baseline, tolerance);
+        for (String regression : regressions) {
+            System.out.println("REGRESSION " + regression);
+        }
+        if (!regressions.isEmpty()) {
+            System.exit(1);
+        }
+        System.out.println("No regressions");
+    }
+
+    // Solves the instance and measures the search.
+    private static Result solve(Solver solver, Configuration configuration, Instance instance) {
+        long start = System.nanoTime();
+        Solver.Solution solution = solver.solve(instance.board);
+        long millis = (System.nanoTime() - start) / 1000000;
+        return new Result(configuration.getName(), instance.index, solution.getNodes(), millis,
+                solution.getMoves().size() == instance.optimalLength);
+    }
+
+    // Opens the resource bundled with this class.
+    private static Reader openResource(String name) throws IOException {
+        InputStream in = SolverBenchmark.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Resource " + name + " not found");
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    // Reads the non empty lines without comments, split to fields.
+    private static List<String[]> readLines(Reader reader) throws IOException {
+        List<String[]> lines = new ArrayList<String[]>();
+        BufferedReader in = new BufferedReader(reader);
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                lines.add(line.split("\\s+"));
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.Arrays;
+
+/**
+ * Walking distance heuristic of the Fifteen game. It counts the vertical moves
+ * and the horizontal moves separately, ignoring the order of the tiles within
+ * a row (or a column): the row configuration of the board is the number of
+ * tiles in every row, which belong to every row of the final board, and the
+ * row walking distance is the number of vertical moves needed to bring the
+ * row configuration to the final one, when any tile of the neighbouring row
+ * may be moved into the row of the empty cell. The column walking distance
+ * is the same for the columns (because the final board is symmetric, the same
+ * table is used for both), and the walking distance is their sum. It is
+ * admissible and usually much larger than the Manhattan distance, because it
+ * accounts for the tiles blocking each other in the rows and the columns.
+ * <p>
+ * There are only {@value #STATES} configurations, so the distances of all of
+ * them and the configurations after every move are calculated by a breadth
+ * first search from the final configuration, when the class is loaded (in
+ * about 0.1 s). The tables take about 600 KB. The configurations are
+ * identified by their index in the tables: the {@link Solver} finds the
+ * indexes of the board once and then updates them on every move with a
+ * single lookup (see {@link #next(int, boolean, int)}).
+ * <p>
+ * The class is thread safe.
+ *
+ * @author julius
+ */
+public final class WalkingDistance {
+
+    /**
+     * The number of the row (and column) configurations: {@value #STATES}.
+     */
+    public static final int STATES = 24964;
+
+    // The configuration key has 3 bits for every count of the tiles in the row
+    // (0 to 4), which belong to a row of the final board: the count of the row
+    // r and the final row g is at the bits from 3 * (r * SIDE + g).
+    private static final int COUNT_BITS = 3;
+    private static final int COUNT_MASK = (1 << COUNT_BITS) - 1;
+    // KEYS[state] - the key of the configuration. The keys are sorted, so the
+    // index of the configuration of the key is found by a binary search.
+    private static final long[] KEYS = new long[STATES];
+    // DISTANCES[state] - the walking distance of the configuration.
+    private static final byte[] DISTANCES = new byte[STATES];
+    // NEXT[(state * 2 + down) * SIDE + group] - the configuration after the empty
+    // cell is moved up (down = 0) or down (down = 1) by moving the tile, which
+    // belongs to the row group of the final board; -1, if there is no such move.
+    private static final short[] NEXT = new short[STATES * 2 * Heuristics.SIDE];
+    // The size of the open addressing set of the keys found by the search.
+    // Must be a power of 2.
+    private static final int FOUND_SIZE = 1 << 16;
+
+    static {
+        // Breadth first search from the final configuration. The keys are never
+        // 0 (there are 15 tiles), so 0 marks the free slot of the set.
+        long[] found = new long[FOUND_SIZE];
+        long[] queue = new long[STATES];
+        byte[] queueDistances = new byte[STATES];
+        int head = 0;
+        int tail = 0;
+        int[] counts = new int[Heuristics.CELLS];
+        for (int row = 0; row < Heuristics.SIDE; row++) {
+            counts[row * Heuristics.SIDE + row] = row == Heuristics.SIDE - 1 ? Heuristics.SIDE - 1 : Heuristics.SIDE;
+        }
+        long goal = WalkingDistance.key(counts);
+        found[WalkingDistance.slot(found, goal)] = goal;
+        queue[tail++] = goal;
+        while (head < tail) {
+            int distance = queueDistances[head];
+            long key = queue[head++];
+            WalkingDistance.unpack(key, counts);
+            int emptyRow = WalkingDistance.emptyRow(counts);
+            for (int down = 0; down <= 1; down++) {
+                for (int group = 0; group < Heuristics.SIDE; group++) {
+                    long next = WalkingDistance.move(counts, emptyRow, down == 1, group);
+                    if (next < 0) {
+                        continue;
+                    }
+                    int slot = WalkingDistance.slot(found, next);
+                    if (found[slot] == 0) {
+                        if (tail == STATES) {
+                            throw new IllegalStateException("Walking distance search found more than " + STATES + " configurations");
+                        }
+                        found[slot] = next;
+                        queueDistances[tail] = (byte)(distance + 1);
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        if (tail != STATES) {
+            throw new IllegalStateException("Walking distance search found " + tail + " configurations instead of " + STATES);
+        }
+        System.arraycopy(queue, 0, KEYS, 0, STATES);
+        Arrays.sort(KEYS);
+        for (int i = 0; i < STATES; i++) {
+            DISTANCES[Arrays.binarySearch(KEYS, queue[i])] = queueDistances[i];
+        }
+        for (int state = 0; state < STATES; state++) {
+            WalkingDistance.unpack(KEYS[state], counts);
+            int emptyRow = WalkingDistance.emptyRow(counts);
+            for (int down = 0; down <= 1; down++) {
+                for (int group = 0; group < Heuristics.SIDE; group++) {
+                    long next = WalkingDistance.move(counts, emptyRow, down == 1, group);
+                    NEXT[(state * 2 + down) * Heuristics.SIDE + group] =
+                            (short)(next < 0 ? -1 : Arrays.binarySearch(KEYS, next));
+                }
+            }
+        }
+    }
+
+    private WalkingDistance() {
+        // only static methods
+    }
+
+    /**
+     * Calculates the walking distance of the board: the sum of its row and
+     * column walking distances.
+     *
+     * @param board the board of the Fifteen game (as returned by {@link Penkiolika#getBoard()}).
+     * @return the walking distance.
+     */
+    public static int walkingDistance(int[] board) {
+        return DISTANCES[WalkingDistance.rowState(board)] + DISTANCES[WalkingDistance.columnState(board)];
+    }
+
+    /**
+     * Finds the row configuration of the board.
+     *
+     * @param board the board of the Fifteen game.
+     * @return the index of the configuration.
+     */
+    public static int rowState(int[] board) {
+        long key = 0;
+        for (int cell = 0; cell < Heuristics.CELLS; cell++) {
+            int tile = board[cell];
+            if (tile != Penkiolika.EMPTY_CELL) {
+                key += 1L << (COUNT_BITS * (cell / Heuristics.SIDE * Heuristics.SIDE + (tile - 1) / Heuristics.SIDE));
+            }
+        }
+        return Arrays.binarySearch(KEYS, key);
+    }
+
+    /**
+     * Finds the column configuration of the board. The columns are treated as
+     * the rows of the transposed board.
+     *
+     * @param board the board of the Fifteen game.
+     * @return the index of the configuration.
+     */
+    public static int columnState(int[] board) {
+        long key = 0;
+        for (int cell = 0; cell < Heuristics.CELLS; cell++) {
+            int tile = board[cell];
+            if (tile != Penkiolika.EMPTY_CELL) {
+                key += 1L << (COUNT_BITS * (cell % Heuristics.SIDE * Heuristics.SIDE + (tile - 1) % Heuristics.SIDE));
+            }
+        }
+        return Arrays.binarySearch(KEYS, key);
+    }
+
+    /**
+     * Returns the walking distance of the row (or column) configuration.
+     *
+     * @param state the index of the configuration.
+     * @return the number of moves.
+     */
+    public static int distance(int state) {
+        return DISTANCES[state];
+    }
+
+    /**
+     * Finds the configuration after the move. For the row configuration the
+     * empty cell moves up or down and the tile of the neighbouring row moves
+     * into its row; for the column configuration the empty cell moves left
+     * (as up) or right (as down).
+     *
+     * @param state the index of the configuration before the move.
+     * @param down true, if the empty cell moves down (or right), false if up (or left).
+     * @param group the row (or column) of the moved tile in the final board.
+     * @return the index of the configuration after the move.
+     */
+    public static int next(int state, boolean down, int group) {
+        return NEXT[(state * 2 + (down ? 1 : 0)) * Heuristics.SIDE + group];
+    }
+
+    // Finds the slot of the key in the open addressing set: the slot holding
+    // the key or the free slot, where it should be added.
+    private static int slot(long[] set, long key) {
+        int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 48) & (set.length - 1);
+        while (set[slot] != 0 && set[slot] != key) {
+            slot = (slot + 1) & (set.length - 1);
+        }
+        return slot;
+    }
+
+    // Packs the counts of the tiles to the configuration key.
+    // counts - counts[r * SIDE + g] is the number of tiles in the row r, which
+    // belong to the row g of the final board.
+    private static long key(int[] counts) {
+        long key = 0;
+        for (int i = Heuristics.CELLS - 1; i >= 0; i--) {
+            key = (key << COUNT_BITS) | counts[i];
+        }
+        return key;
+    }
+
+    // Unpacks the configuration key to the counts of the tiles.
+    private static void unpack(long key, int[] counts) {
+        for (int i = 0; i < Heuristics.CELLS; i++, key >>>= COUNT_BITS) {
+            counts[i] = (int)(key & COUNT_MASK);
+        }
+    }
+
+    // Finds the row of the empty cell: the row with one tile less.
+    private static int emptyRow(int[] counts) {
+        for (int row = 0; row < Heuristics.SIDE; row++) {
+            int sum = 0;
+            for (int group = 0; group < Heuristics.SIDE; group++) {
+                sum += counts[row * Heuristics.SIDE + group];
+            }
+            if (sum < Heuristics.SIDE) {
+                return row;
+            }
+        }
+        throw new IllegalStateException("No empty cell in the configuration");
+    }
+
+    // Finds the configuration after moving the tile of the group from the
+    // neighbouring row into the row of the empty cell. The counts are left
+    // unchanged.
+    // Returns the key of the configuration or -1, if there is no such move.
+    private static long move(int[] counts, int emptyRow, boolean down, int group) {
+        int fromRow = down ? emptyRow + 1 : emptyRow - 1;
+        if (fromRow < 0 || fromRow >= Heuristics.SIDE || counts[fromRow * Heuristics.SIDE + group] == 0) {
+            return -1;
+        }
+        counts[fromRow * Heuristics.SIDE + group]--;
+        counts[emptyRow * Heuristics.SIDE + group]++;
+        long key = WalkingDistance.key(counts);
+        counts[fromRow * Heuristics.SIDE + group]++;
+        counts[emptyRow * Heuristics.SIDE + group]--;
+        return key;
+    }
+}
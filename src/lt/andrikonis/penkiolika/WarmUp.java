@@ -0,0 +1,349 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Warms up the just started server, so that the first real requests are not
+ * served by the interpreted code. It drives synthetic traffic through a
+ * {@link ServerHandler} in the same process: creates games, reads them (also
+ * conditionally), moves them, lists them, reads the statistics, solves the
+ * games with solve jobs and batches and deletes the games. The requests are
+ * passed to the handler directly as in-memory exchanges, without the network.
+ * <p>
+ * The traffic runs in rounds. The warm-up ends, when the JIT compiler has
+ * settled: it spent at most {@value #SETTLED_COMPILATION_MILLIS} ms compiling
+ * in each of the last {@value #SETTLED_ROUNDS} rounds (and at least
+ * {@value #MIN_ROUNDS} rounds have run). If the compilation time cannot be
+ * monitored, {@value #UNMONITORED_ROUNDS} rounds are run. Either way the
+ * warm-up ends, when its time limit passes; the current round is completed
+ * first.
+ * <p>
+ * The traffic goes to a separate handler, which is created for the warm-up
+ * and shut down after it: the compiled code is shared, but the games,
+ * statistics, leaderboard, listeners and replication of the handler serving
+ * the real requests are untouched. While the server is warming up, its
+ * handler should report that it is not ready (see {@link ServerHandler#setReady(boolean)}).
+ *
+ * @author julius
+ */
+public class WarmUp {
+
+    /**
+     * Default time limit of the warm-up: {@value #DEFAULT_TIME_LIMIT_MILLIS} ms.
+     */
+    public static final long DEFAULT_TIME_LIMIT_MILLIS = 30000;
+
+    /**
+     * The smallest number of rounds of the warm-up, if the time limit allows:
+     * {@value #MIN_ROUNDS}.
+     */
+    public static final int MIN_ROUNDS = 5;
+
+    /**
+     * The number of the last rounds, which must have settled compilation:
+     * {@value #SETTLED_ROUNDS}.
+     */
+    public static final int SETTLED_ROUNDS = 3;
+
+    /**
+     * The longest compilation time of a settled round: {@value #SETTLED_COMPILATION_MILLIS} ms.
+     */
+    public static final long SETTLED_COMPILATION_MILLIS = 5;
+
+    /**
+     * The number of rounds, if the compilation time cannot be monitored:
+     * {@value #UNMONITORED_ROUNDS}.
+     */
+    public static final int UNMONITORED_ROUNDS = 20;
+
+    /**
+     * The number of games played in one round: {@value #ROUND_GAMES}.
+     */
+    public static final int ROUND_GAMES = 50;
+
+    // The number of moves made in every played game.
+    private static final int GAME_MOVES = 20;
+    // The number of random moves from the final state of the solved boards.
+    // Such boards are solved in a few milliseconds.
+    private static final int SOLVE_SHUFFLES = 30;
+    // The number of boards in the solved batch.
+    private static final int BATCH_BOARDS = 4;
+    // The time limit of the solve job and of the solved batch.
+    private static final long SOLVE_TIMEOUT_MILLIS = 1000;
+    // The JSON of the moves by the change of the position of the empty space.
+    private static final String[] MOVE_BODIES = {
+        "{\"" + ServerHandler.JSON_MOVE + "\":\"" + ServerHandler.JSON_MOVE_TOP + "\"}",
+        "{\"" + ServerHandler.JSON_MOVE + "\":\"" + ServerHandler.JSON_MOVE_BOTTOM + "\"}",
+        "{\"" + ServerHandler.JSON_MOVE + "\":\"" + ServerHandler.JSON_MOVE_LEFT + "\"}",
+        "{\"" + ServerHandler.JSON_MOVE + "\":\"" + ServerHandler.JSON_MOVE_RIGHT + "\"}"
+    };
+    // The number of cells in a row of the board.
+    private static final int SIDE = 4;
+    private static final int[] MOVE_OFFSETS = {-SIDE, SIDE, -1, 1};
+
+    private final long timeLimitMillis;
+    private final AsyncLogger logger;
+    private final Random random = new Random();
+    // The number of requests made by this warm-up.
+    private long requests;
+
+    /**
+     * Creates the warm-up with the provided time limit. The errors of the
+     * warm-up handler are logged to the {@link AsyncLogger#getDefault() default logger}.
+     *
+     * @param timeLimitMillis the longest time of the warm-up.
+     */
+    public WarmUp(long timeLimitMillis) {
+        this(timeLimitMillis, AsyncLogger.getDefault());
+    }
+
+    /**
+     * Creates the warm-up with the provided time limit.
+     *
+     * @param timeLimitMillis the longest time of the warm-up.
+     * @param logger the logger of the errors of the warm-up handler.
+     */
+    public WarmUp(long timeLimitMillis, AsyncLogger logger) {
+        this.timeLimitMillis = timeLimitMillis;
+        this.logger = logger;
+    }
+
+    /**
+     * Runs the warm-up until the compilation settles or the time limit passes.
+     * The warm-up is not thread safe: it should be run by one thread at a time.
+     *
+     * @return the result of the warm-up.
+     * @throws IOException if a synthetic request fails: it was answered with
+     * an unexpected status.
+     */
+    public Result run() throws IOException {
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        boolean monitored = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+        long start = System.nanoTime();
+        long deadline = start + timeLimitMillis * 1000000;
+        long startCompilation = monitored ? compilation.getTotalCompilationTime() : 0;
+        long lastCompilation = startCompilation;
+        requests = 0;
+        int rounds = 0;
+        int settledRounds = 0;
+        boolean settled = false;
+        ServerHandler handler = new ServerHandler(logger);
+        try {
+            while (!settled && System.nanoTime() - deadline < 0) {
+                this.round(handler);
+                rounds++;
+                if (monitored) {
+                    long current = compilation.getTotalCompilationTime();
+                    settledRounds = current - lastCompilation <= SETTLED_COMPILATION_MILLIS ? settledRounds + 1 : 0;
+                    lastCompilation = current;
+                    settled = rounds >= MIN_ROUNDS && settledRounds >= SETTLED_ROUNDS;
+                } else {
+                    settled = rounds >= UNMONITORED_ROUNDS;
+                }
+            }
+        } finally {
+            handler.shutdown();
+        }
+        return new Result(rounds, requests, (System.nanoTime() - start) / 1000000,
+                monitored ? lastCompilation - startCompilation : -1, settled);
+    }
+
+    // Runs one round of the synthetic traffic.
+    private void round(ServerHandler handler) throws IOException {
+        for (int i = 0; i < ROUND_GAMES; i++) {
+            this.playGame(handler);
+        }
+        this.request(handler, "GET", ServerHandler.GAMES_PATH + "?limit=" + ROUND_GAMES, null, null, 200);
+        this.request(handler, "GET", ServerHandler.STATS_PATH, null, null, 200);
+        this.request(handler, "GET", ServerHandler.LEADERBOARD_PATH, null, null, 200);
+        this.solveJob(handler);
+        this.solveBatch(handler);
+    }
+
+    // Creates a shuffled game, moves it, reads it and deletes it.
+    private void playGame(ServerHandler handler) throws IOException {
+        JSONObject game = this.request(handler, "POST", ServerHandler.GAME_PATH + "/", null, null, 201).getJson();
+        String path = ServerHandler.GAME_PATH + "/" + game.getString(ServerHandler.JSON_ID);
+        JSONArray board = game.getJSONArray(ServerHandler.JSON_BOARD);
+        int empty = 0;
+        while (board.getInt(empty) != Penkiolika.EMPTY_CELL) {
+            empty++;
+        }
+        for (int i = 0; i < GAME_MOVES; i++) {
+            int move;
+            int next;
+            do {
+                move = random.nextInt(MOVE_OFFSETS.length);
+                next = empty + MOVE_OFFSETS[move];
+            } while (next < 0 || next >= Penkiolika.FINAL_BOARD.length ||
+                    Math.abs(MOVE_OFFSETS[move]) == 1 && next / SIDE != empty / SIDE);
+            this.request(handler, "PATCH", path, MOVE_BODIES[move], null, 200);
+            empty = next;
+        }
+        MemoryExchange read = this.request(handler, "GET", path, null, null, 200);
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("If-None-Match", read.getResponseHeaders().getFirst("ETag"));
+        this.request(handler, "GET", path, null, headers, 304);
+        this.request(handler, "DELETE", path, null, null, 200);
+    }
+
+    // Creates a game, which is easy to solve, solves it with a solve job and
+    // deletes it.
+    private void solveJob(ServerHandler handler) throws IOException {
+        JSONObject board = new JSONObject();
+        board.put(ServerHandler.JSON_BOARD, this.solvableBoard());
+        JSONObject game = this.request(handler, "POST", ServerHandler.GAME_PATH + "/", board.toString(), null, 201).getJson();
+        String path = ServerHandler.GAME_PATH + "/" + game.getString(ServerHandler.JSON_ID);
+        JSONObject timeout = new JSONObject();
+        timeout.put(ServerHandler.JSON_TIMEOUT_MILLIS, SOLVE_TIMEOUT_MILLIS);
+        JSONObject job = this.request(handler, "POST", path + "/" + ServerHandler.SOLVE_JOBS_PATH,
+                timeout.toString(), null, 202).getJson();
+        String jobPath = path + "/" + ServerHandler.SOLVE_JOBS_PATH + "/" + job.getString(SolveJobManager.JSON_JOB_ID);
+        long deadline = System.nanoTime() + SOLVE_TIMEOUT_MILLIS * 1000000;
+        while (!this.isFinished(job) && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Warm-up interrupted", ie);
+            }
+            job = this.request(handler, "GET", jobPath, null, null, 200).getJson();
+        }
+        if (!this.isFinished(job)) {
+            this.request(handler, "DELETE", jobPath, null, null, 200);
+        }
+        this.request(handler, "DELETE", path, null, null, 200);
+    }
+
+    // Solves a batch of boards, which are easy to solve.
+    private void solveBatch(ServerHandler handler) throws IOException {
+        StringBuilder batch = new StringBuilder();
+        for (int i = 0; i < BATCH_BOARDS; i++) {
+            batch.append(Arrays.toString(this.solvableBoard())).append('\n');
+        }
+        this.request(handler, "POST", ServerHandler.SOLVE_BATCH_PATH + "?" + ServerHandler.JSON_TIMEOUT_MILLIS +
+                "=" + SOLVE_TIMEOUT_MILLIS, batch.toString(), null, 200);
+    }
+
+    // Returns the board, which is a few moves from the final state.
+    private int[] solvableBoard() {
+        Penkiolika game = new Penkiolika();
+        game.shuffle(SOLVE_SHUFFLES);
+        return game.getBoard();
+    }
+
+    // Checks if the solve job JSON has a finished status.
+    private boolean isFinished(JSONObject job) {
+        String status = job.getString(SolveJobManager.JSON_STATUS);
+        return !SolveJobManager.Status.QUEUED.jsonName().equals(status) &&
+                !SolveJobManager.Status.RUNNING.jsonName().equals(status);
+    }
+
+    // Passes the request to the handler and checks the status of the response.
+    // path - the path relative to the base path of the handler.
+    // body - the contents of the request or null, if there is none.
+    // headers - the headers of the request or null, if there are none.
+    // expectedStatus - the status of a successful response.
+    // Returns the completed exchange.
+    private MemoryExchange request(ServerHandler handler, String method, String path, String body,
+            Map<String, String> headers, int expectedStatus) throws IOException {
+        MemoryExchange exchange = new MemoryExchange(method, URI.create(ServerHandler.BASE_PATH + "/" + path),
+                body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8));
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                exchange.getRequestHeaders().set(header.getKey(), header.getValue());
+            }
+        }
+        handler.handle(exchange);
+        requests++;
+        if (exchange.getResponseCode() != expectedStatus) {
+            throw new IOException("Warm-up request " + method + " " + path + " answered with status " +
+                    exchange.getResponseCode() + " instead of " + expectedStatus + ": " + exchange.getResponseString());
+        }
+        return exchange;
+    }
+
+    /**
+     * The result of the warm-up.
+     */
+    public static final class Result {
+        private final int rounds;
+        private final long requests;
+        private final long millis;
+        private final long compilationMillis;
+        private final boolean settled;
+
+        private Result(int rounds, long requests, long millis, long compilationMillis, boolean settled) {
+            this.rounds = rounds;
+            this.requests = requests;
+            this.millis = millis;
+            this.compilationMillis = compilationMillis;
+            this.settled = settled;
+        }
+
+        /**
+         * Returns the number of rounds of the synthetic traffic.
+         *
+         * @return the number of rounds.
+         */
+        public int getRounds() {
+            return rounds;
+        }
+
+        /**
+         * Returns the number of synthetic requests.
+         *
+         * @return the number of requests.
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Returns the time of the warm-up.
+         *
+         * @return the time in milliseconds.
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Returns the time the JIT compiler spent compiling during the warm-up
+         * (in all the threads of the process).
+         *
+         * @return the time in milliseconds or -1, if it cannot be monitored.
+         */
+        public long getCompilationMillis() {
+            return compilationMillis;
+        }
+
+        /**
+         * Checks if the compilation has settled before the time limit passed.
+         *
+         * @return true, if the compilation has settled.
+         */
+        public boolean isSettled() {
+            return settled;
+        }
+
+        @Override
+        public String toString() {
+            return "rounds=" + rounds + ", requests=" + requests + ", millis=" + millis +
+                    ", compilationMillis=" + compilationMillis + ", settled=" + settled;
+        }
+    }
+}
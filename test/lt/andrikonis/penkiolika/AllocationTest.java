@@ -0,0 +1,208 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+/**
+ * Allocation regression tests of the game requests of ServerHandler class and
+ * of the moves of Penkiolika class. Every operation is repeated until the JIT
+ * compiler has optimized it, then the bytes allocated by the test thread per
+ * operation are measured (with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)})
+ * and checked against the budget of the operation (see {@link Budget}). The
+ * requests are passed to the handler in memory (see {@link MemoryExchange}),
+ * so only the handler allocates while they are measured.
+ * <p>
+ * The budgets are the current allocation with at least a half of it as headroom.
+ * The allocation is measured without compressed object pointers and class
+ * pointers (as with a heap over 32 GB), where the objects are larger, so that
+ * the budgets hold for any heap size and also leave room for the general JSON
+ * path of the requests. When an operation is made to allocate less, its budget
+ * should be lowered, so that it stays so; the budget of 0 keeps the operation
+ * allocation free.
+ *
+ * @author julius
+ */
+public class AllocationTest extends BaseTest {
+
+    // The budgets of the allocated bytes per operation.
+    private enum Budget {
+        // POST /penkiolika/game/: the shuffle, the game and its JSON response.
+        CREATE_GAME(64 * 1024),
+        // GET /penkiolika/game/<id>: the cached response of the game.
+        GET_GAME(2 * 1024),
+        // PATCH /penkiolika/game/<id>: the move and the JSON response of the game.
+        MOVE_GAME(20 * 1024),
+        // DELETE /penkiolika/game/<id>: the JSON response of the deleted game.
+        DELETE_GAME(20 * 1024),
+        // Penkiolika.moveLeft() and moveRight().
+        PENKIOLIKA_MOVE(0),
+        // Penkiolika.getBoard(): the copy of the board.
+        PENKIOLIKA_GET_BOARD(128);
+
+        private final long bytes;
+
+        private Budget(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    // The number of times the operation is repeated before it is measured.
+    private static final int WARM_UP_OPERATIONS = 20000;
+    // The number of operations in one measurement.
+    private static final int MEASURED_OPERATIONS = 5000;
+    // The number of measurements; the lowest is checked, so that a single
+    // disturbance (for example, a compilation) does not fail the test.
+    private static final int MEASUREMENTS = 3;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(ServerHandler.class);
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean)bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(ServerHandler.class);
+    }
+
+    /**
+     * Test of the allocation of the create, get, move and delete requests, of
+     * class ServerHandler.
+     *
+     * @throws IOException if a request fails.
+     */
+    @Test
+    public void testGameRequests() throws IOException {
+        String testName = "gameRequests/1";
+        this.logTestStart(testName);
+        assumeTrue(threads != null, "Thread allocation counter is not supported");
+        ServerHandler handler = new ServerHandler();
+        try {
+            MemoryExchange create = this.exchange("POST", "", null);
+            this.checkBudget(Budget.CREATE_GAME, i -> this.handle(handler, create, 201));
+            String path = create.getJson().getString(ServerHandler.JSON_ID);
+            MemoryExchange get = this.exchange("GET", path, null);
+            this.checkBudget(Budget.GET_GAME, i -> this.handle(handler, get, 200));
+            // Every other move returns the empty space, so every move is legal
+            int empty = 0;
+            while (handler.snapshotGames().get(path).getBoard()[empty] != Penkiolika.EMPTY_CELL) {
+                empty++;
+            }
+            boolean leftFirst = empty % 4 != 0;
+            MemoryExchange left = this.exchange("PATCH", path, "{\"" + ServerHandler.JSON_MOVE + "\":\"" +
+                    ServerHandler.JSON_MOVE_LEFT + "\"}");
+            MemoryExchange right = this.exchange("PATCH", path, "{\"" + ServerHandler.JSON_MOVE + "\":\"" +
+                    ServerHandler.JSON_MOVE_RIGHT + "\"}");
+            this.checkBudget(Budget.MOVE_GAME, i -> this.handle(handler, (i % 2 == 0) == leftFirst ? left : right, 200));
+            // The games to delete are created before every measurement
+            MemoryExchange[] deletes = new MemoryExchange[Math.max(WARM_UP_OPERATIONS, MEASURED_OPERATIONS)];
+            this.checkBudget(Budget.DELETE_GAME, count -> {
+                for (int i = 0; i < count; i++) {
+                    this.handle(handler, create, 201);
+                    deletes[i] = this.exchange("DELETE", create.getJson().getString(ServerHandler.JSON_ID), null);
+                }
+            }, i -> this.handle(handler, deletes[i], 200));
+        } finally {
+            handler.shutdown();
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of the allocation of the moves and of getBoard method, of class
+     * Penkiolika.
+     */
+    @Test
+    public void testPenkiolika() {
+        String testName = "penkiolika/1";
+        this.logTestStart(testName);
+        assumeTrue(threads != null, "Thread allocation counter is not supported");
+        Penkiolika game = new Penkiolika();
+        game.shuffle();
+        this.checkBudget(Budget.PENKIOLIKA_MOVE, i -> {
+            if (!game.moveLeft()) {
+                game.moveRight();
+            }
+        });
+        this.checkBudget(Budget.PENKIOLIKA_GET_BOARD, i -> game.getBoard());
+        this.logTestEnd(testName);
+    }
+
+    // The measured operation.
+    private interface Operation {
+        // Runs the operation the given time (from 0).
+        void run(int i) throws IOException;
+    }
+
+    // Measures the operation and checks, that it allocates within its budget.
+    private void checkBudget(Budget budget, Operation operation) {
+        this.checkBudget(budget, count -> { }, operation);
+    }
+
+    // Measures the operation and checks, that it allocates within its budget.
+    // prepare - prepares the given number of operations (not measured).
+    private void checkBudget(Budget budget, Operation prepare, Operation operation) {
+        long lowest = Long.MAX_VALUE;
+        try {
+            prepare.run(WARM_UP_OPERATIONS);
+            for (int i = 0; i < WARM_UP_OPERATIONS; i++) {
+                operation.run(i);
+            }
+            long threadId = Thread.currentThread().getId();
+            for (int m = 0; m < MEASUREMENTS; m++) {
+                prepare.run(MEASURED_OPERATIONS);
+                long start = threads.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < MEASURED_OPERATIONS; i++) {
+                    operation.run(i);
+                }
+                lowest = Math.min(lowest, (threads.getThreadAllocatedBytes(threadId) - start) / MEASURED_OPERATIONS);
+            }
+        } catch (IOException ioe) {
+            fail(budget + " failed: " + ioe.getMessage());
+        }
+        BaseTest.log(budget + " allocates " + lowest + " bytes (budget " + budget.bytes + ")");
+        assertTrue(lowest <= budget.bytes, budget + " allocates " + lowest + " bytes, budget is " + budget.bytes);
+    }
+
+    // Passes the request to the handler and checks the status of the response.
+    private void handle(ServerHandler handler, MemoryExchange exchange, int expectedStatus) throws IOException {
+        exchange.reset();
+        handler.handle(exchange);
+        if (exchange.getResponseCode() != expectedStatus) {
+            throw new IOException(exchange.getRequestMethod() + " answered with status " +
+                    exchange.getResponseCode() + ": " + exchange.getResponseString());
+        }
+    }
+
+    // Creates the exchange of the game request.
+    // id - the id of the game or empty string.
+    // body - the contents of the request or null, if there is none.
+    private MemoryExchange exchange(String method, String id, String body) {
+        return new MemoryExchange(method, URI.create(ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/" + id),
+                body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for AsyncLogger class.
+ *
+ * @author julius
+ */
+public class AsyncLoggerTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(AsyncLogger.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(AsyncLogger.class);
+    }
+
+    /**
+     * Test of log and flush methods, of class AsyncLogger.
+     * @param dir temporary directory for the log files.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testLog(@TempDir Path dir) throws IOException, InterruptedException {
+        String testName = "log/2 and flush/1";
+        this.logTestStart(testName);
+        Path file = dir.resolve("test.log");
+        try (AsyncLogger logger = new AsyncLogger(AsyncLogger.Level.INFO, file, 1024 * 1024, 2, 1024)) {
+            assertFalse(logger.isEnabled(AsyncLogger.Level.DEBUG));
+            assertFalse(logger.log(AsyncLogger.Level.DEBUG, "not written"));
+            int threads = 4;
+            int messages = 200;
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                new Thread(() -> {
+                    for (int i = 0; i < messages; i++) {
+                        logger.log(AsyncLogger.Level.WARN, "message " + thread + "-" + i);
+                    }
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            assertTrue(logger.flush(5000));
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            assertEquals(threads * messages, lines.size() + logger.getDroppedCount());
+            assertTrue(lines.get(0).contains(" WARN ["));
+            assertFalse(lines.stream().anyMatch(line -> line.contains("not written")));
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of dropping the records, when the buffer is full, of class AsyncLogger.
+     * @param dir temporary directory for the log files.
+     * @throws IOException
+     */
+    @Test
+    public void testDrop(@TempDir Path dir) throws IOException {
+        String testName = "log/2 (full buffer)";
+        this.logTestStart(testName);
+        Path file = dir.resolve("test.log");
+        AsyncLogger logger = new AsyncLogger(AsyncLogger.Level.INFO, file, 1024 * 1024, 2, 4);
+        int accepted = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (logger.log(AsyncLogger.Level.INFO, "message " + i)) {
+                accepted++;
+            }
+        }
+        assertEquals(10000, accepted + logger.getDroppedCount());
+        assertTrue(logger.getDroppedCount() > 0);
+        logger.close();
+        assertEquals(accepted, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+        assertFalse(logger.log(AsyncLogger.Level.ERROR, "after close"));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of closing the logger, while the records are being logged, of class
+     * AsyncLogger: every accepted record is written.
+     * @param dir temporary directory for the log files.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testClose(@TempDir Path dir) throws IOException, InterruptedException {
+        String testName = "close";
+        this.logTestStart(testName);
+        Path file = dir.resolve("test.log");
+        AsyncLogger logger = new AsyncLogger(AsyncLogger.Level.INFO, file, 1024 * 1024, 2, 1024);
+        int threads = 4;
+        AtomicInteger accepted = new AtomicInteger(0);
+        CountDownLatch started = new CountDownLatch(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                started.countDown();
+                for (int i = 0; i < 100000; i++) {
+                    if (logger.log(AsyncLogger.Level.INFO, "message " + i)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        started.await();
+        logger.close();
+        done.await();
+        assertEquals(accepted.get(), Files.readAllLines(file, StandardCharsets.UTF_8).size());
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of the rotation of the log file, of class AsyncLogger.
+     * @param dir temporary directory for the log files.
+     * @throws IOException
+     */
+    @Test
+    public void testRotate(@TempDir Path dir) throws IOException {
+        String testName = "rotate";
+        this.logTestStart(testName);
+        Path file = dir.resolve("test.log");
+        try (AsyncLogger logger = new AsyncLogger(AsyncLogger.Level.INFO, file, 200, 2, 16)) {
+            for (int i = 0; i < 50; i++) {
+                logger.log(AsyncLogger.Level.INFO, "message number " + i);
+                assertTrue(logger.flush(5000));
+            }
+        }
+        assertTrue(Files.size(file) <= 200);
+        assertTrue(Files.exists(dir.resolve("test.log.1")));
+        assertTrue(Files.exists(dir.resolve("test.log.2")));
+        assertFalse(Files.exists(dir.resolve("test.log.3")));
+        List<String> last = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertTrue(last.get(last.size() - 1).endsWith("message number 49"));
+        this.logTestEnd(testName);
+    }
+}
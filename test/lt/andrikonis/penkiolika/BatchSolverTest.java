@@ -0,0 +1,103 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for BatchSolver class.
+ *
+ * @author julius
+ */
+public class BatchSolverTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(BatchSolver.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(BatchSolver.class);
+    }
+
+    /**
+     * Test of parseBoard method, of class BatchSolver.
+     */
+    @Test
+    public void testParseBoard() {
+        String testName = "parseBoard/1";
+        this.logTestStart(testName);
+        int[] board = new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15};
+        assertArrayEquals(board, BatchSolver.parseBoard("[1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15]"));
+        assertArrayEquals(board, BatchSolver.parseBoard(" [ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 0, 15 ] "));
+        assertArrayEquals(board, BatchSolver.parseBoard("1 2 3 4 5 6 7 8 9 10 11 12 13 14 0 15"));
+        assertArrayEquals(board, BatchSolver.parseBoard("1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15"));
+        assertNull(BatchSolver.parseBoard("1,2,3,4,5,6,7,8,9,10,11,12,13,14,15"));
+        assertNull(BatchSolver.parseBoard("1,2,3,4,5,6,7,8,9,10,11,12,13,14,14,0"));
+        assertNull(BatchSolver.parseBoard("{\"board\":[1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15]}"));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of solve method, of class BatchSolver.
+     *
+     * @throws Exception if the batch fails.
+     */
+    @Test
+    public void testSolve() throws Exception {
+        String testName = "solve/1";
+        this.logTestStart(testName);
+        BatchSolver batchSolver = new BatchSolver(new Solver(), 2);
+        StringBuilder input = new StringBuilder();
+        int[][] boards = new int[20][];
+        for (int i = 0; i < boards.length; i++) {
+            Penkiolika game = new Penkiolika();
+            game.shuffle(20);
+            boards[i] = game.getBoard();
+            input.append(new JSONArray(boards[i])).append('\n');
+        }
+        input.append("2,1,3,4,5,6,7,8,9,10,11,12,13,14,15,0\n");
+        input.append("not a board\n");
+        StringWriter output = new StringWriter();
+        assertEquals(22, batchSolver.solve(new StringReader(input.toString()), output, 10000));
+        String[] lines = output.toString().split("\n");
+        assertEquals(22, lines.length);
+        Set<Integer> indexes = new HashSet<Integer>();
+        Solver solver = new Solver();
+        for (String line : lines) {
+            JSONObject json = new JSONObject(line);
+            int index = json.getInt(BatchSolver.JSON_INDEX);
+            assertTrue(indexes.add(index));
+            if (index < boards.length) {
+                assertEquals(BatchSolver.STATUS_SOLVED, json.getString(BatchSolver.JSON_STATUS));
+                assertEquals(solver.solve(boards[index]).getMoves().size(), json.getInt(BatchSolver.JSON_DISTANCE));
+            } else {
+                assertEquals(BatchSolver.STATUS_INVALID, json.getString(BatchSolver.JSON_STATUS));
+                assertTrue(json.has(BatchSolver.JSON_REASON));
+            }
+        }
+        // The budget passes before the hard board is solved
+        output = new StringWriter();
+        assertEquals(1, batchSolver.solve(new StringReader("15,14,13,12,11,10,9,8,7,6,5,4,3,1,2,0"), output, 1));
+        assertEquals(BatchSolver.STATUS_EXPIRED, new JSONObject(output.toString().trim()).getString(BatchSolver.JSON_STATUS));
+        batchSolver.shutdown();
+        this.logTestEnd(testName);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for Cluster class and clustered ServerHandler.
+ *
+ * @author julius
+ */
+public class ClusterTest extends BaseTest {
+
+    /**
+     * Port of the first test node: {@value #TEST_PORT_A}.
+     */
+    public static final int TEST_PORT_A = 8091;
+
+    /**
+     * Port of the second test node: {@value #TEST_PORT_B}.
+     */
+    public static final int TEST_PORT_B = 8092;
+
+    /**
+     * Port, on which no test node listens: {@value #TEST_PORT_NONE}.
+     */
+    public static final int TEST_PORT_NONE = 8093;
+
+    private static final String NODES = "a=localhost:" + TEST_PORT_A + ",b=localhost:" + TEST_PORT_B;
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(Cluster.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(Cluster.class);
+    }
+
+    /**
+     * Test of parseNodes, ownerOf and newGameId methods, of class Cluster.
+     */
+    @Test
+    public void testOwnership() {
+        String testName = "ownership/1";
+        this.logTestStart(testName);
+        List<Cluster.Node> nodes = Cluster.parseNodes("a=localhost:1, b=10.0.0.2:2,c=host:3");
+        assertEquals(3, nodes.size());
+        assertEquals("b", nodes.get(1).getId());
+        assertEquals("10.0.0.2", nodes.get(1).getHost());
+        assertEquals(2, nodes.get(1).getPort());
+        assertEquals("http://host:3", nodes.get(2).getUrl());
+        assertThrows(IllegalArgumentException.class, () -> Cluster.parseNodes("a=localhost"));
+        assertThrows(IllegalArgumentException.class, () -> Cluster.parseNodes("a-1=localhost:1"));
+        assertThrows(IllegalArgumentException.class, () -> Cluster.parseNodes(""));
+        assertThrows(IllegalArgumentException.class, () -> new Cluster("d", nodes));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Cluster("a", Cluster.parseNodes("a=localhost:1,a=localhost:2")));
+        // Every node builds the same ring, whatever the order of the list
+        Cluster a = new Cluster("a", nodes);
+        List<Cluster.Node> reversed = new ArrayList<Cluster.Node>(Cluster.parseNodes("a=localhost:1, b=10.0.0.2:2,c=host:3"));
+        Collections.reverse(reversed);
+        Cluster c = new Cluster("c", reversed);
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < 3000; i++) {
+            String id = "x-" + i;
+            String owner = a.ownerOf(id).getId();
+            assertEquals(owner, c.ownerOf(id).getId());
+            counts.merge(owner, 1, Integer::sum);
+        }
+        for (String id : Arrays.asList("a", "b", "c")) {
+            assertTrue(counts.get(id) > 600 && counts.get(id) < 1400, "Games of " + id + ": " + counts.get(id));
+        }
+        // New ids are owned by the node creating them
+        AtomicInteger lastNumber = new AtomicInteger(0);
+        for (int i = 0; i < 100; i++) {
+            String id = a.newGameId(lastNumber);
+            assertTrue(id.startsWith("a-"));
+            assertTrue(a.isLocal(id));
+            assertFalse(c.isLocal(id));
+        }
+        assertTrue(lastNumber.get() > 100);
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of forwarding the requests to the node owning the game.
+     *
+     * @throws Exception if the requests fail.
+     */
+    @Test
+    public void testForward() throws Exception {
+        String testName = "forward/1";
+        this.logTestStart(testName);
+        Cluster clusterA = new Cluster("a", Cluster.parseNodes(NODES));
+        Cluster clusterB = new Cluster("b", Cluster.parseNodes(NODES));
+        HttpServer serverA = Server.start(TEST_PORT_A, ServerHandler.BASE_PATH,
+                new ServerHandler(AsyncLogger.getDefault(), clusterA));
+        HttpServer serverB = Server.start(TEST_PORT_B, ServerHandler.BASE_PATH,
+                new ServerHandler(AsyncLogger.getDefault(), clusterB));
+        try (HttpClientConnection toA = new HttpClientConnection("localhost", TEST_PORT_A);
+                HttpClientConnection toB = new HttpClientConnection("localhost", TEST_PORT_B)) {
+            HttpClientConnection.Response created = toA.request("POST", gamePath(""), null,
+                    "{\"board\":[1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15]}".getBytes());
+            assertEquals(201, created.getStatusCode());
+            String id = new JSONObject(created.getBodyString()).getString(ServerHandler.JSON_ID);
+            assertTrue(id.startsWith("a-"));
+            assertEquals("a", clusterB.ownerOf(id).getId());
+            // Read through the other node
+            HttpClientConnection.Response read = toB.request("GET", gamePath(id), null, null);
+            assertEquals(200, read.getStatusCode());
+            assertEquals(created.getHeader("ETag"), read.getHeader("ETag"));
+            assertEquals(id, new JSONObject(read.getBodyString()).getString(ServerHandler.JSON_ID));
+            HttpClientConnection.Response notModified = toB.request("GET", gamePath(id),
+                    Collections.singletonMap("If-None-Match", read.getHeader("ETag")), null);
+            assertEquals(304, notModified.getStatusCode());
+            // Move and delete through the other node
+            assertEquals(412, toB.request("PATCH", gamePath(id),
+                    Collections.singletonMap("If-Match", "\"100\""), "{\"move\":\"right\"}".getBytes()).getStatusCode());
+            HttpClientConnection.Response moved = toB.request("PATCH", gamePath(id), null, "{\"move\":\"right\"}".getBytes());
+            assertEquals(200, moved.getStatusCode());
+            assertTrue(new JSONObject(moved.getBodyString()).getBoolean(ServerHandler.JSON_FINAL));
+            assertEquals(200, toB.request("DELETE", gamePath(id), null, null).getStatusCode());
+            assertEquals(404, toA.request("GET", gamePath(id), null, null).getStatusCode());
+            assertEquals(404, toB.request("GET", gamePath(id), null, null).getStatusCode());
+            // The games of the node are created and listed by the node only
+            String idB = new JSONObject(toB.request("POST", gamePath(""), null, null).getBodyString())
+                    .getString(ServerHandler.JSON_ID);
+            assertTrue(idB.startsWith("b-"));
+            assertEquals(200, toA.request("GET", gamePath(idB), null, null).getStatusCode());
+            JSONObject listB = new JSONObject(toB.request("GET", ServerHandler.BASE_PATH + "/" +
+                    ServerHandler.GAMES_PATH, null, null).getBodyString());
+            assertEquals(1, listB.getJSONArray(ServerHandler.JSON_GAMES).length());
+            assertEquals(idB, listB.getJSONArray(ServerHandler.JSON_GAMES).getJSONObject(0).getString(ServerHandler.JSON_ID));
+        } finally {
+            serverA.stop(0);
+            serverB.stop(0);
+            clusterA.close();
+            clusterB.close();
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of redirecting the requests to the node owning the game and of the
+     * node, which cannot be reached.
+     *
+     * @throws Exception if the requests fail.
+     */
+    @Test
+    public void testRedirect() throws Exception {
+        String testName = "redirect/1";
+        this.logTestStart(testName);
+        String nodes = NODES + ",c=localhost:" + TEST_PORT_NONE;
+        Cluster clusterA = new Cluster("a", Cluster.parseNodes(nodes), Cluster.Mode.REDIRECT, 1000);
+        Cluster clusterB = new Cluster("b", Cluster.parseNodes(nodes), Cluster.Mode.FORWARD, 1000);
+        HttpServer serverA = Server.start(TEST_PORT_A, ServerHandler.BASE_PATH,
+                new ServerHandler(AsyncLogger.getDefault(), clusterA));
+        HttpServer serverB = Server.start(TEST_PORT_B, ServerHandler.BASE_PATH,
+                new ServerHandler(AsyncLogger.getDefault(), clusterB));
+        try (HttpClientConnection toA = new HttpClientConnection("localhost", TEST_PORT_A);
+                HttpClientConnection toB = new HttpClientConnection("localhost", TEST_PORT_B)) {
+            String idB = new JSONObject(toB.request("POST", gamePath(""), null, null).getBodyString())
+                    .getString(ServerHandler.JSON_ID);
+            HttpClientConnection.Response redirected = toA.request("GET", gamePath(idB) + "?x=1", null, null);
+            assertEquals(307, redirected.getStatusCode());
+            assertEquals("http://localhost:" + TEST_PORT_B + gamePath(idB) + "?x=1", redirected.getHeader("Location"));
+            // The game of the node, which is not running
+            AtomicInteger lastNumber = new AtomicInteger(0);
+            String idC;
+            do {
+                idC = "c-" + lastNumber.incrementAndGet();
+            } while (!"c".equals(clusterB.ownerOf(idC).getId()));
+            HttpClientConnection.Response unreachable = toB.request("GET", gamePath(idC), null, null);
+            assertEquals(502, unreachable.getStatusCode());
+        } finally {
+            serverA.stop(0);
+            serverB.stop(0);
+            clusterA.close();
+            clusterB.close();
+        }
+        this.logTestEnd(testName);
+    }
+
+    private static String gamePath(String id) {
+        return ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/" + id;
+    }
+}
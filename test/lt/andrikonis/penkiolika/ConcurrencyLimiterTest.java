@@ -0,0 +1,179 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for ConcurrencyLimiter and AdmissionControlHandler classes.
+ *
+ * @author julius
+ */
+public class ConcurrencyLimiterTest extends BaseTest {
+
+    // Latency threshold of the tested limiters.
+    private static final long THRESHOLD = 1000000L;
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(ConcurrencyLimiter.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(ConcurrencyLimiter.class);
+    }
+
+    /**
+     * Test of tryAcquire method, of class ConcurrencyLimiter.
+     */
+    @Test
+    public void testTryAcquire() {
+        String testName = "tryAcquire/1";
+        this.logTestStart(testName);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 10, THRESHOLD);
+        assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.LOW));
+        assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.LOW));
+        assertFalse(limiter.tryAcquire(ConcurrencyLimiter.Priority.LOW));   // low priority may use half of the limit
+        assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH));
+        assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH));
+        assertFalse(limiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH));
+        assertEquals(4, limiter.getInFlight());
+        limiter.release(ConcurrencyLimiter.Priority.LOW, THRESHOLD * 100);
+        assertEquals(4, limiter.getLimit());    // low priority latency doesn't change the limit
+        assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of limit adjustment, of class ConcurrencyLimiter.
+     */
+    @Test
+    public void testAdjustLimit() {
+        String testName = "release/2";
+        this.logTestStart(testName);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, THRESHOLD);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH));
+            limiter.release(ConcurrencyLimiter.Priority.HIGH, THRESHOLD * 2);
+        }
+        assertEquals(2, limiter.getLimit());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH));
+            limiter.release(ConcurrencyLimiter.Priority.HIGH, THRESHOLD / 2);
+        }
+        assertEquals(2, limiter.getLimit());    // single request at a time is no evidence to grow the limit
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH));
+            assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH));
+            limiter.release(ConcurrencyLimiter.Priority.HIGH, THRESHOLD / 2);
+            limiter.release(ConcurrencyLimiter.Priority.HIGH, THRESHOLD / 2);
+        }
+        assertTrue(limiter.getLimit() > 2);
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of request priority, of class AdmissionControlHandler.
+     */
+    @Test
+    public void testPriorityOf() {
+        String testName = "priorityOf/1";
+        this.logTestStart(testName);
+        assertEquals(ConcurrencyLimiter.Priority.HIGH, AdmissionControlHandler.priorityOf("/penkiolika/game/1"));
+        assertEquals(ConcurrencyLimiter.Priority.HIGH, AdmissionControlHandler.priorityOf("/penkiolika/game/"));
+        assertEquals(ConcurrencyLimiter.Priority.LOW, AdmissionControlHandler.priorityOf("/penkiolika/game/1/solve"));
+        assertEquals(ConcurrencyLimiter.Priority.LOW, AdmissionControlHandler.priorityOf("/penkiolika/solve-batch"));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of timed method, of class AdmissionControlHandler: the time the
+     * request waits for a thread counts in its latency.
+     *
+     * @throws Exception if the test is interrupted.
+     */
+    @Test
+    public void testTimed() throws Exception {
+        String testName = "timed/1";
+        this.logTestStart(testName);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 4, THRESHOLD);
+        AdmissionControlHandler handler = new AdmissionControlHandler(he -> { }, limiter);
+        HttpExchange he = mock(HttpExchange.class);
+        when(he.getRequestURI()).thenReturn(new URI("/penkiolika/game/1"));
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            Executor executor = AdmissionControlHandler.timed(worker);
+            CountDownLatch handled = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    Thread.sleep(THRESHOLD * 10 / 1000000);   // the only thread is busy
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            executor.execute(() -> {
+                try {
+                    handler.handle(he);
+                    handled.countDown();
+                } catch (IOException ioe) {
+                    fail(ioe);
+                }
+            });
+            assertTrue(handled.await(5, TimeUnit.SECONDS));
+        } finally {
+            worker.shutdown();
+        }
+        assertEquals(3, limiter.getLimit());    // the request was quick, but it waited for the thread
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of handle method, of class AdmissionControlHandler: the readiness
+     * and liveness requests are not shed, when the limit is used up.
+     *
+     * @throws Exception if the request fails.
+     */
+    @Test
+    public void testHandleHealthCheck() throws Exception {
+        String testName = "handle/1";
+        this.logTestStart(testName);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, THRESHOLD);
+        AdmissionControlHandler handler = new AdmissionControlHandler(new ServerHandler(), limiter);
+        assertTrue(limiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH));   // the limit is used up
+        MemoryExchange game = new MemoryExchange("GET",
+                new URI(ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/"), new byte[0]);
+        handler.handle(game);
+        assertEquals(503, game.getResponseCode());
+        for (String path : new String[] {ServerHandler.LIVE_PATH, ServerHandler.READY_PATH + "/"}) {
+            MemoryExchange health = new MemoryExchange("GET", new URI(ServerHandler.BASE_PATH + "/" + path), new byte[0]);
+            handler.handle(health);
+            assertEquals(200, health.getResponseCode(), path);
+        }
+        assertEquals(1, handler.getShedCount());
+        assertEquals(1, limiter.getInFlight());
+        assertTrue(AdmissionControlHandler.isHealthCheck(ServerHandler.BASE_PATH + "/" + ServerHandler.LIVE_PATH));
+        assertFalse(AdmissionControlHandler.isHealthCheck(ServerHandler.BASE_PATH + "/" + ServerHandler.LIVE_PATH + "ly"));
+        assertFalse(AdmissionControlHandler.isHealthCheck("/" + ServerHandler.LIVE_PATH));
+        this.logTestEnd(testName);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for EightPuzzleTable class.
+ *
+ * @author julius
+ */
+public class EightPuzzleTableTest extends BaseTest {
+
+    private static EightPuzzleTable table;
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(EightPuzzleTable.class);
+        table = EightPuzzleTable.generate();
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(EightPuzzleTable.class);
+    }
+
+    /**
+     * Test of rank method, of class EightPuzzleTable.
+     */
+    @Test
+    public void testRank() {
+        String testName = "rank/1";
+        this.logTestStart(testName);
+        assertEquals(0, EightPuzzleTable.rank(new int[]{0,1,2,3,4,5,6,7,8}));
+        assertEquals(1, EightPuzzleTable.rank(new int[]{0,1,2,3,4,5,6,8,7}));
+        assertEquals(EightPuzzleTable.STATES - 1, EightPuzzleTable.rank(new int[]{8,7,6,5,4,3,2,1,0}));
+        assertThrows(IllegalArgumentException.class, () -> EightPuzzleTable.rank(new int[]{0,1,2,3,4,5,6,7,7}));
+        assertThrows(IllegalArgumentException.class, () -> EightPuzzleTable.rank(new int[]{0,1,2}));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of generate and getDistance methods, of class EightPuzzleTable.
+     */
+    @Test
+    public void testGetDistance() {
+        String testName = "generate/0 and getDistance/1";
+        this.logTestStart(testName);
+        assertEquals(0, table.getDistance(EightPuzzleTable.FINAL_BOARD));
+        assertEquals(1, table.getDistance(new int[]{1,2,3,4,5,6,7,0,8}));
+        assertEquals(-1, table.getDistance(new int[]{2,1,3,4,5,6,7,8,0}));
+        assertEquals(31, table.getDistance(new int[]{8,6,7,2,5,4,3,0,1}));   // one of the two hardest boards
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of getHint and solve methods, of class EightPuzzleTable.
+     */
+    @Test
+    public void testSolve() {
+        String testName = "getHint/1 and solve/1";
+        this.logTestStart(testName);
+        assertEquals(EightPuzzleTable.MOVE_RIGHT, table.getHint(new int[]{1,2,3,4,5,6,7,0,8}));
+        assertEquals(-1, table.getHint(EightPuzzleTable.FINAL_BOARD));
+        assertEquals(0, table.solve(EightPuzzleTable.FINAL_BOARD).length);
+        assertNull(table.solve(new int[]{2,1,3,4,5,6,7,8,0}));
+        Random random = new Random(34);
+        for (int i = 0; i < 100; i++) {
+            int[] board = EightPuzzleTableTest.shuffle(random, 50);
+            int[] moves = table.solve(board);
+            assertEquals(table.getDistance(board), moves.length);
+            assertTrue(moves.length <= 50);
+            assertArrayEquals(EightPuzzleTable.FINAL_BOARD, EightPuzzleTableTest.apply(board, moves));
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of write and load methods, of class EightPuzzleTable.
+     * @param dir temporary directory for the table file.
+     * @throws IOException
+     */
+    @Test
+    public void testWriteAndLoad(@TempDir Path dir) throws IOException {
+        String testName = "write/1 and load/1";
+        this.logTestStart(testName);
+        Path file = dir.resolve("eight.table");
+        EightPuzzleTable mapped = EightPuzzleTable.loadOrGenerate(file);
+        assertEquals(EightPuzzleTable.STATES, Files.size(file));
+        int[] board = new int[]{8,6,7,2,5,4,3,0,1};
+        assertEquals(31, mapped.getDistance(board));
+        assertArrayEquals(table.solve(board), mapped.solve(board));
+        Files.write(file, new byte[10]);
+        assertThrows(IOException.class, () -> EightPuzzleTable.load(file));
+        this.logTestEnd(testName);
+    }
+
+    // Convenience method to get a solvable board by random moves from the final one.
+    private static int[] shuffle(Random random, int times) {
+        int[] board = EightPuzzleTable.FINAL_BOARD.clone();
+        int empty = board.length - 1;
+        while (times > 0) {
+            int next = EightPuzzleTableTest.next(empty, random.nextInt(4));
+            if (next >= 0) {
+                board[empty] = board[next];
+                board[next] = Penkiolika.EMPTY_CELL;
+                empty = next;
+                times--;
+            }
+        }
+        return board;
+    }
+
+    // Convenience method to apply the moves to the board.
+    private static int[] apply(int[] board, int[] moves) {
+        int[] result = board.clone();
+        int empty = 0;
+        while (result[empty] != Penkiolika.EMPTY_CELL) {
+            empty++;
+        }
+        for (int move : moves) {
+            int next = EightPuzzleTableTest.next(empty, move);
+            assertTrue(next >= 0, "Illegal move " + move);
+            result[empty] = result[next];
+            result[next] = Penkiolika.EMPTY_CELL;
+            empty = next;
+        }
+        return result;
+    }
+
+    // Returns the position of the empty cell after the move or -1, if the move is illegal.
+    private static int next(int empty, int move) {
+        int side = EightPuzzleTable.SIDE;
+        if (move == EightPuzzleTable.MOVE_TOP) {
+            return empty >= side ? empty - side : -1;
+        } else if (move == EightPuzzleTable.MOVE_BOTTOM) {
+            return empty < side * (side - 1) ? empty + side : -1;
+        } else if (move == EightPuzzleTable.MOVE_LEFT) {
+            return empty % side != 0 ? empty - 1 : -1;
+        } else {
+            return empty % side != side - 1 ? empty + 1 : -1;
+        }
+    }
+}
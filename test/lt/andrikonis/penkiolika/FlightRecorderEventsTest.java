@@ -0,0 +1,208 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Java Flight Recorder events: {@link RequestEvent}, {@link MoveEvent},
+ * {@link ShuffleEvent} and {@link SolveEvent}.
+ *
+ * @author julius
+ */
+public class FlightRecorderEventsTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(SolveEvent.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(SolveEvent.class);
+    }
+
+    /**
+     * Test of penkiolika.jfc settings.
+     *
+     * @throws Exception if the settings cannot be read.
+     */
+    @Test
+    public void testSettings() throws Exception {
+        String testName = "settings/1";
+        this.logTestStart(testName);
+        Configuration configuration;
+        try (InputStream in = SolveEvent.class.getResourceAsStream("penkiolika.jfc")) {
+            assertNotNull(in);
+            configuration = Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        for (String name : new String[]{RequestEvent.NAME, MoveEvent.NAME, ShuffleEvent.NAME, SolveEvent.NAME}) {
+            assertEquals("true", configuration.getSettings().get(name + "#enabled"));
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of the events emitted by the game and the solver.
+     *
+     * @param directory the temporary directory for the recording.
+     * @throws Exception if the recording fails.
+     */
+    @Test
+    public void testEvents(@TempDir Path directory) throws Exception {
+        String testName = "events/1";
+        this.logTestStart(testName);
+        Path file = directory.resolve("penkiolika.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ShuffleEvent.NAME);
+            recording.enable(SolveEvent.NAME);
+            recording.start();
+            Penkiolika game = new Penkiolika();
+            game.shuffle(20);
+            new Solver().solve(game.getBoard());
+            new Solver().solve(new int[]{15,14,13,12,11,10,9,8,7,6,5,4,3,1,2,0}, () -> true);
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        int shuffles = 0;
+        int solved = 0;
+        int stopped = 0;
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (ShuffleEvent.NAME.equals(name)) {
+                shuffles++;
+                assertEquals(20, event.getInt("moves"));
+                assertTrue(event.getInt("startDistance") <= 20);
+            } else if (SolveEvent.NAME.equals(name)) {
+                assertTrue(event.getLong("nodes") > 0);
+                if (event.getBoolean("stopped")) {
+                    stopped++;
+                    assertEquals(-1, event.getInt("depth"));
+                } else {
+                    solved++;
+                    assertTrue(event.getInt("depth") >= event.getInt("initialEstimate"));
+                }
+            }
+        }
+        assertEquals(1, shuffles);
+        assertEquals(1, solved);
+        assertEquals(1, stopped);
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of the events emitted by the requests to ServerHandler: a create,
+     * a legal move and an illegal move.
+     *
+     * @param directory the temporary directory for the recording.
+     * @throws Exception if the recording fails.
+     */
+    @Test
+    public void testRequestEvents(@TempDir Path directory) throws Exception {
+        String testName = "events/2";
+        this.logTestStart(testName);
+        int[] board = {1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,0};
+        Direction legal = null;
+        for (Direction direction : Direction.values()) {
+            if (new Penkiolika(board).move(direction)) {
+                legal = direction;
+            }
+        }
+        assertNotNull(legal);
+        Penkiolika moved = new Penkiolika(board);
+        moved.move(legal);
+        Direction illegal = null;
+        for (Direction direction : Direction.values()) {
+            if (!new Penkiolika(moved.getBoard()).move(direction)) {
+                illegal = direction;    // illegal after the legal move
+            }
+        }
+        assertNotNull(illegal);
+        Path file = directory.resolve("penkiolika.jfr");
+        ServerHandler handler = new ServerHandler();
+        String id;
+        List<MemoryExchange> exchanges = new ArrayList<MemoryExchange>();
+        try (Recording recording = new Recording()) {
+            recording.enable(RequestEvent.NAME);
+            recording.enable(MoveEvent.NAME);
+            recording.start();
+            String gamePath = ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/";
+            MemoryExchange create = new MemoryExchange("POST", URI.create(gamePath),
+                    ("{\"" + ServerHandler.JSON_BOARD + "\":" + Arrays.toString(board) + "}").getBytes(StandardCharsets.UTF_8));
+            handler.handle(create);
+            exchanges.add(create);
+            id = create.getJson().getString(ServerHandler.JSON_ID);
+            for (Direction direction : new Direction[]{legal, illegal}) {
+                MemoryExchange move = new MemoryExchange("PATCH", URI.create(gamePath + id),
+                        ("{\"" + ServerHandler.JSON_MOVE + "\":\"" + direction.jsonName() + "\"}").getBytes(StandardCharsets.UTF_8));
+                handler.handle(move);
+                exchanges.add(move);
+            }
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            handler.shutdown();
+        }
+        assertEquals(201, exchanges.get(0).getResponseCode());
+        assertEquals(200, exchanges.get(1).getResponseCode());
+        assertEquals(409, exchanges.get(2).getResponseCode());
+        List<RecordedEvent> requests = new ArrayList<RecordedEvent>();
+        List<RecordedEvent> moves = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            String name = event.getEventType().getName();
+            if (RequestEvent.NAME.equals(name)) {
+                requests.add(event);
+            } else if (MoveEvent.NAME.equals(name)) {
+                moves.add(event);
+            }
+        }
+        requests.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        moves.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        assertEquals(3, requests.size());
+        String[] routes = {"CREATE_GAME", "MOVE", "MOVE"};
+        for (int i = 0; i < routes.length; i++) {
+            RecordedEvent request = requests.get(i);
+            MemoryExchange exchange = exchanges.get(i);
+            assertEquals(exchange.getRequestMethod(), request.getString("method"));
+            assertEquals(routes[i], request.getString("route"));
+            assertEquals(exchange.getResponseCode(), request.getInt("status"));
+            assertEquals(i == 0 ? null : id, request.getString("gameId"));
+            assertEquals(exchange.getResponseString().getBytes(StandardCharsets.UTF_8).length, request.getLong("bytes"));
+        }
+        assertEquals(2, moves.size());
+        assertEquals(id, moves.get(0).getString("gameId"));
+        assertEquals(legal.jsonName(), moves.get(0).getString("direction"));
+        assertTrue(moves.get(0).getBoolean("legal"));
+        assertEquals(illegal.jsonName(), moves.get(1).getString("direction"));
+        assertFalse(moves.get(1).getBoolean("legal"));
+        for (RecordedEvent move : moves) {
+            assertTrue(move.getDuration("lockWait").toNanos() >= 0);
+            assertTrue(move.getDuration("lockWait").toNanos() <= move.getDuration().toNanos());
+        }
+        this.logTestEnd(testName);
+    }
+}
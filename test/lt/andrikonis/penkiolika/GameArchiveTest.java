@@ -0,0 +1,117 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for GameArchive class.
+ *
+ * @author julius
+ */
+public class GameArchiveTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(GameArchive.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(GameArchive.class);
+    }
+
+    /**
+     * Test of export and load methods, of class GameArchive.
+     *
+     * @param directory the temporary directory for the archive.
+     * @throws Exception if the archive cannot be written or read.
+     */
+    @Test
+    public void testExportAndLoad(@TempDir Path directory) throws Exception {
+        String testName = "exportAndLoad/1";
+        this.logTestStart(testName);
+        Map<String, Penkiolika> games = new HashMap<String, Penkiolika>();
+        for (int i = 1; i <= 5000; i++) {
+            Penkiolika game = new Penkiolika();
+            game.shuffle(30);
+            games.put(Integer.toString(i), game);
+        }
+        Penkiolika completed = new Penkiolika(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15});
+        completed.moveRight();
+        games.put("completed-ąčę", completed);
+        ServerHandler source = new ServerHandler(games);
+        Path file = directory.resolve("games.p15");
+        assertEquals(5001, GameArchive.export(source, file));
+        // Far less than the JSON of the games
+        assertTrue(Files.size(file) < 5001 * 40, "Archive size " + Files.size(file));
+        ServerHandler target = new ServerHandler();
+        assertEquals(5001, GameArchive.load(target, file, 3));
+        Map<String, Penkiolika> loaded = target.snapshotGames();
+        assertEquals(5001, loaded.size());
+        for (Map.Entry<String, Penkiolika> entry : games.entrySet()) {
+            Penkiolika expected = entry.getValue();
+            Penkiolika actual = loaded.get(entry.getKey());
+            assertEquals(expected, actual);
+            assertEquals(expected.getVersion(), actual.getVersion());
+            assertEquals(expected.getMoveCount(), actual.getMoveCount());
+            assertEquals(expected.getCreatedMillis(), actual.getCreatedMillis());
+            assertEquals(expected.getCompletedMillis(), actual.getCompletedMillis());
+            assertEquals(expected.getStartDistance(), actual.getStartDistance());
+            assertEquals(expected.getDistance(), actual.getDistance());
+        }
+        assertTrue(loaded.get("completed-ąčę").getCompletedMillis() != 0);
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of load method, of class GameArchive, with damaged archives.
+     *
+     * @param directory the temporary directory for the archive.
+     * @throws Exception if the archive cannot be written.
+     */
+    @Test
+    public void testLoadDamaged(@TempDir Path directory) throws Exception {
+        String testName = "loadDamaged/1";
+        this.logTestStart(testName);
+        Path file = directory.resolve("games.p15");
+        assertEquals(20000, GameArchive.generate(file, 20000, 20));
+        long size = Files.size(file);
+        assertEquals(20000, GameArchive.load(new ServerHandler(), file, 2));
+        // A changed byte in the middle of a block
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(size / 2);
+            int b = raf.read();
+            raf.seek(size / 2);
+            raf.write(b ^ 0x01);
+        }
+        IOException ioe = assertThrows(IOException.class, () -> GameArchive.load(new ServerHandler(), file, 2));
+        assertTrue(ioe.getMessage().contains("Checksum"), ioe.getMessage());
+        // A cut archive
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size - 10);
+        }
+        assertThrows(IOException.class, () -> GameArchive.load(new ServerHandler(), file, 2));
+        // Not an archive
+        Files.write(file, "{\"games\":[]}".getBytes());
+        assertThrows(IOException.class, () -> GameArchive.load(new ServerHandler(), file, 2));
+        this.logTestEnd(testName);
+    }
+}
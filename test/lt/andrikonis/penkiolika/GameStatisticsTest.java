@@ -0,0 +1,95 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for GameStatistics and BucketHistogram classes.
+ *
+ * @author julius
+ */
+public class GameStatisticsTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(GameStatistics.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(GameStatistics.class);
+    }
+
+    /**
+     * Test of the histogram buckets, of class BucketHistogram.
+     */
+    @Test
+    public void testBucketHistogram() {
+        String testName = "BucketHistogram";
+        this.logTestStart(testName);
+        BucketHistogram histogram = new BucketHistogram(10, 20);
+        histogram.add(0);
+        histogram.add(10);
+        histogram.add(11);
+        histogram.add(1000);
+        histogram.replace(11, 12);
+        histogram.replace(0, 15);
+        histogram.remove(1000);
+        assertEquals(1, histogram.getCount(0));
+        assertEquals(2, histogram.getCount(1));
+        assertEquals(0, histogram.getCount(2));
+        JSONArray json = histogram.toJson();
+        assertEquals(3, json.length());
+        assertEquals(20, json.getJSONObject(1).getLong(BucketHistogram.JSON_UP_TO));
+        assertTrue(json.getJSONObject(2).isNull(BucketHistogram.JSON_UP_TO));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of the game lifecycle, of class GameStatistics.
+     */
+    @Test
+    public void testGameLifecycle() {
+        String testName = "game lifecycle";
+        this.logTestStart(testName);
+        GameStatistics statistics = new GameStatistics();
+        // One move to the right from the final state
+        Penkiolika game1 = new Penkiolika(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15});
+        Penkiolika game2 = new Penkiolika(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15});
+        statistics.gameCreated("1", game1);
+        statistics.gameCreated("2", game2);
+        int distanceBefore = game1.getManhattanDistance();
+        assertTrue(game1.moveRight());
+        statistics.gameMoved("1", game1, distanceBefore);
+        statistics.gameFinished("1", game1);
+        statistics.gameDeleted("2", game2);
+        JSONObject json = statistics.toJson();
+        assertEquals(1, json.getLong(GameStatistics.JSON_LIVE_GAMES));
+        assertEquals(2, json.getLong(GameStatistics.JSON_GAMES_CREATED));
+        assertEquals(1, json.getLong(GameStatistics.JSON_GAMES_COMPLETED));
+        assertEquals(1, json.getLong(GameStatistics.JSON_GAMES_DELETED));
+        assertEquals(1, json.getLong(GameStatistics.JSON_MOVES));
+        JSONArray movesToCompletion = json.getJSONArray(GameStatistics.JSON_MOVES_TO_COMPLETION);
+        assertEquals(1, movesToCompletion.getJSONObject(0).getLong(BucketHistogram.JSON_COUNT));
+        JSONArray distances = json.getJSONArray(GameStatistics.JSON_DISTANCE_HISTOGRAM);
+        assertEquals(1, distances.getJSONObject(0).getLong(BucketHistogram.JSON_COUNT));   // the completed game
+        for (int i = 1; i < distances.length(); i++) {
+            assertEquals(0, distances.getJSONObject(i).getLong(BucketHistogram.JSON_COUNT));
+        }
+        assertTrue(statistics.getAverageSessionMillis() >= 0);
+        this.logTestEnd(testName);
+    }
+}
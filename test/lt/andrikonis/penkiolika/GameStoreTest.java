@@ -0,0 +1,117 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for GameStore class.
+ *
+ * @author julius
+ */
+public class GameStoreTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(GameStore.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(GameStore.class);
+    }
+
+    /**
+     * Test of get, put, remove and snapshot methods, of class GameStore.
+     */
+    @Test
+    public void testGetPutRemove() {
+        String testName = "getPutRemove/1";
+        this.logTestStart(testName);
+        GameStore store = new GameStore(5);
+        assertEquals(8, store.getShards().size());
+        Map<String, Penkiolika> games = new HashMap<String, Penkiolika>();
+        for (int i = 1; i <= 100; i++) {
+            Penkiolika game = new Penkiolika();
+            games.put("" + i, game);
+            assertNull(store.put("" + i, game));
+        }
+        assertEquals(100, store.size());
+        for (Map.Entry<String, Penkiolika> entry : games.entrySet()) {
+            assertSame(entry.getValue(), store.get(entry.getKey()));
+            assertSame(entry.getValue(), store.peek(entry.getKey()));
+        }
+        assertNull(store.get("no-such-game"));
+        Map<String, Penkiolika> snapshot = new HashMap<String, Penkiolika>();
+        for (GameStore.Shard shard : store.getShards()) {
+            Map<String, Penkiolika> shardGames = shard.snapshot();
+            assertEquals(shard.size(), shardGames.size());
+            snapshot.putAll(shardGames);
+        }
+        assertEquals(games, snapshot);
+        assertSame(games.get("7"), store.remove("7"));
+        assertNull(store.remove("7"));
+        assertNull(store.get("7"));
+        assertEquals(99, store.size());
+        Penkiolika replacement = new Penkiolika();
+        assertSame(games.get("8"), store.put("8", replacement));
+        assertSame(replacement, store.peek("8"));
+        assertEquals(99, store.size());
+        // The counters of the shards add up
+        JSONArray shards = store.toJson().getJSONArray(GameStore.JSON_SHARDS);
+        long added = 0;
+        long reads = 0;
+        long misses = 0;
+        long removed = 0;
+        for (int i = 0; i < shards.length(); i++) {
+            JSONObject shard = shards.getJSONObject(i);
+            assertEquals(i, shard.getInt(GameStore.JSON_SHARD));
+            added += shard.getLong(GameStore.JSON_ADDED);
+            reads += shard.getLong(GameStore.JSON_READS);
+            misses += shard.getLong(GameStore.JSON_MISSES);
+            removed += shard.getLong(GameStore.JSON_REMOVED);
+        }
+        assertEquals(100, added);
+        assertEquals(102, reads);
+        assertEquals(2, misses);
+        assertEquals(1, removed);
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of expireIdle method, of class GameStore.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testExpireIdle() throws InterruptedException {
+        String testName = "expireIdle/1";
+        this.logTestStart(testName);
+        GameStore store = new GameStore();
+        store.put("1", new Penkiolika());
+        store.put("2", new Penkiolika());
+        Map<String, Penkiolika> expired = new HashMap<String, Penkiolika>();
+        assertEquals(0, store.expireIdle(60000, expired::put));
+        Thread.sleep(50);
+        store.get("2");
+        assertEquals(1, store.expireIdle(25, expired::put));
+        assertTrue(expired.containsKey("1"));
+        assertNull(store.peek("1"));
+        assertNotNull(store.peek("2"));
+        this.logTestEnd(testName);
+    }
+}
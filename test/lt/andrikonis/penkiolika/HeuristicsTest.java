@@ -0,0 +1,83 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Heuristics class.
+ *
+ * @author julius
+ */
+public class HeuristicsTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(Heuristics.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(Heuristics.class);
+    }
+
+    /**
+     * Test of manhattanDistance method, of class Heuristics.
+     */
+    @Test
+    public void testManhattanDistance() {
+        String testName = "manhattanDistance/1";
+        this.logTestStart(testName);
+        assertEquals(0, Heuristics.manhattanDistance(Penkiolika.FINAL_BOARD));
+        assertEquals(1, Heuristics.manhattanDistance(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15}));
+        assertEquals(10, Heuristics.manhattanDistance(new int[]{15,2,3,4,5,6,7,8,9,10,11,12,13,14,1,0}));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of linearConflict method, of class Heuristics.
+     */
+    @Test
+    public void testLinearConflict() {
+        String testName = "linearConflict/1";
+        this.logTestStart(testName);
+        assertEquals(0, Heuristics.linearConflict(Penkiolika.FINAL_BOARD));
+        assertEquals(2, Heuristics.linearConflict(new int[]{2,1,3,4,5,6,7,8,9,10,11,12,13,14,15,0}));
+        // 4 3 2 1 in the first row: three of them must leave the row
+        assertEquals(6, Heuristics.linearConflict(new int[]{4,3,2,1,5,6,7,8,9,10,11,12,13,14,15,0}));
+        // 5 and 1 swapped in the first column, 3 and 2 swapped in the first row
+        assertEquals(4, Heuristics.linearConflict(new int[]{5,3,2,4,1,6,7,8,9,10,11,12,13,14,15,0}));
+        // The tiles out of their lines are not in conflict
+        assertEquals(0, Heuristics.linearConflict(new int[]{6,5,3,4,2,1,7,8,9,10,11,12,13,14,15,0}));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of misplacedTiles method and Estimate class, of class Heuristics.
+     */
+    @Test
+    public void testMisplacedTiles() {
+        String testName = "misplacedTiles/1";
+        this.logTestStart(testName);
+        assertEquals(0, Heuristics.misplacedTiles(Penkiolika.FINAL_BOARD));
+        assertEquals(1, Heuristics.misplacedTiles(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15}));
+        assertEquals(15, Heuristics.misplacedTiles(new int[]{0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,15}));
+        int[] board = new int[]{5,3,2,4,1,6,7,8,9,10,11,12,13,14,15,0};
+        Heuristics.Estimate estimate = Heuristics.Estimate.of(board);
+        assertEquals(Heuristics.manhattanDistance(board), estimate.getManhattanDistance());
+        assertEquals(4, estimate.getLinearConflict());
+        assertEquals(Heuristics.manhattanDistance(board) + 4, estimate.getDistance());
+        assertEquals(4, estimate.getMisplacedTiles());
+        this.logTestEnd(testName);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for HttpClientConnection class.
+ *
+ * @author julius
+ */
+public class HttpClientConnectionTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(HttpClientConnection.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(HttpClientConnection.class);
+    }
+
+    /**
+     * Test of request method, of class HttpClientConnection, when the reused
+     * connection fails after the request has been sent.
+     *
+     * @throws Exception if the test server fails.
+     */
+    @Test
+    public void testRequestRetry() throws Exception {
+        String testName = "request/4";
+        this.logTestStart(testName);
+        AtomicInteger received = new AtomicInteger(0);
+        // The server reads the 2nd and the 4th request and closes the connection
+        // without a response, as if the read timed out after the change was made
+        try (ServerSocket server = new ServerSocket(0);
+                HttpClientConnection connection = new HttpClientConnection("localhost", server.getLocalPort())) {
+            Thread thread = new Thread(() -> HttpClientConnectionTest.serve(server, received, "ok", 2, 4));
+            thread.setDaemon(true);
+            thread.start();
+            assertEquals(200, connection.request("GET", "/1", null, null).getStatusCode());
+            // The move might have been made, so it is not sent again
+            assertThrows(IOException.class, () -> connection.request("PATCH", "/2", null, "{}".getBytes()));
+            assertEquals(2, received.get());
+            assertEquals(200, connection.request("GET", "/3", null, null).getStatusCode());
+            // Reading is harmless, so it is sent again on a new connection
+            assertEquals(200, connection.request("GET", "/4", null, null).getStatusCode());
+            assertEquals(5, received.get());
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of request method, of class HttpClientConnection, when the server
+     * closes the connection after a response without contents.
+     *
+     * @throws Exception if the test server fails.
+     */
+    @Test
+    public void testRequestAfterEmptyResponse() throws Exception {
+        String testName = "request/5";
+        this.logTestStart(testName);
+        AtomicInteger received = new AtomicInteger(0);
+        try (ServerSocket server = new ServerSocket(0);
+                HttpClientConnection connection = new HttpClientConnection("localhost", server.getLocalPort())) {
+            Thread thread = new Thread(() -> HttpClientConnectionTest.serve(server, received, ""));
+            thread.setDaemon(true);
+            thread.start();
+            assertEquals(200, connection.request("GET", "/1", null, null).getStatusCode());
+            // Not sent on the connection, which the server has closed
+            assertEquals(200, connection.request("PATCH", "/2", null, "{}".getBytes()).getStatusCode());
+            assertEquals(200, connection.request("POST", "/3", null, null).getStatusCode());
+            assertEquals(3, received.get());
+        }
+        this.logTestEnd(testName);
+    }
+
+    // Answers the requests with status 200 one connection at a time, but closes
+    // the connection without a response after reading the dropped requests.
+    // Like the HttpServer of the JDK, it also closes the connection after the
+    // response without contents.
+    // received - the number of the requests received.
+    // contents - the contents of the responses.
+    // dropped - the numbers of the dropped requests (from 1).
+    private static void serve(ServerSocket server, AtomicInteger received, String contents, int... dropped) {
+        try {
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                    OutputStream out = socket.getOutputStream();
+                    boolean open = true;
+                    while (open) {
+                        int contentLength = 0;
+                        String line = in.readLine();
+                        if (line == null) {
+                            break;
+                        }
+                        while (!(line = in.readLine()).isEmpty()) {
+                            if (line.toLowerCase().startsWith("content-length:")) {
+                                contentLength = Integer.parseInt(line.substring(15).trim());
+                            }
+                        }
+                        for (int i = 0; i < contentLength; i++) {
+                            in.read();
+                        }
+                        int number = received.incrementAndGet();
+                        for (int drop : dropped) {
+                            open &= number != drop;
+                        }
+                        if (open) {
+                            out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + contents.length() + "\r\n\r\n" + contents)
+                                    .getBytes(StandardCharsets.ISO_8859_1));
+                            out.flush();
+                            open = !contents.isEmpty();
+                        }
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            // the server socket is closed at the end of the test
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for LatencyHistogram class.
+ *
+ * @author julius
+ */
+public class LatencyHistogramTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(LatencyHistogram.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(LatencyHistogram.class);
+    }
+
+    /**
+     * Test of small values, which must be recorded exactly.
+     */
+    @Test
+    public void testExactValues() {
+        String testName = "exact values";
+        this.logTestStart(testName);
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of large values, which must be within the relative error.
+     */
+    @Test
+    public void testRelativeError() {
+        String testName = "relative error";
+        this.logTestStart(testName);
+        long[] values = new long[]{1000, 123456, 9876543, 1000000007L, 3600000000000L};
+        for (long value : values) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(value * 2);
+            long p50 = histogram.getValueAtPercentile(50);
+            assertTrue(p50 >= value, "value=" + value + ", p50=" + p50);
+            assertTrue(p50 <= value + value / 50, "value=" + value + ", p50=" + p50);
+            assertEquals(value * 2, histogram.getValueAtPercentile(100));
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of add method, of class LatencyHistogram.
+     */
+    @Test
+    public void testAdd() {
+        String testName = "add/1";
+        this.logTestStart(testName);
+        LatencyHistogram h1 = new LatencyHistogram();
+        LatencyHistogram h2 = new LatencyHistogram();
+        LatencyHistogram empty = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            h1.record(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            h2.record(1000000);
+        }
+        h1.add(h2);
+        h1.add(empty);
+        assertEquals(100, h1.getTotalCount());
+        assertEquals(10, h1.getMin());
+        assertEquals(10, h1.getValueAtPercentile(90));
+        assertEquals(1000000, h1.getValueAtPercentile(91));
+        assertEquals(0, empty.getValueAtPercentile(99));
+        this.logTestEnd(testName);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Leaderboard class.
+ *
+ * @author julius
+ */
+public class LeaderboardTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(Leaderboard.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(Leaderboard.class);
+    }
+
+    /**
+     * Test of record method, of class Leaderboard.
+     */
+    @Test
+    public void testRecord() {
+        String testName = "record/4";
+        this.logTestStart(testName);
+        Leaderboard leaderboard = new Leaderboard(3);
+        leaderboard.record("1", 50, 1000, Leaderboard.Difficulty.HARD);
+        leaderboard.record("2", 30, 5000, Leaderboard.Difficulty.HARD);
+        leaderboard.record("3", 40, 500, Leaderboard.Difficulty.EASY);
+        leaderboard.record("4", 90, 9000, Leaderboard.Difficulty.EASY);
+        leaderboard.record("5", 20, 700, Leaderboard.Difficulty.MEDIUM);
+        JSONObject json = leaderboard.toJson();
+        JSONObject overall = json.getJSONObject(Leaderboard.JSON_OVERALL);
+        assertIds(overall.getJSONArray(Leaderboard.JSON_FEWEST_MOVES), "5", "2", "3");
+        assertIds(overall.getJSONArray(Leaderboard.JSON_FASTEST), "3", "5", "1");
+        JSONObject hard = json.getJSONObject(Leaderboard.Difficulty.HARD.jsonName());
+        assertIds(hard.getJSONArray(Leaderboard.JSON_FEWEST_MOVES), "2", "1");
+        assertIds(json.getJSONObject("easy").getJSONArray(Leaderboard.JSON_FASTEST), "3", "4");
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of concurrent recording, of class Leaderboard.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testConcurrentRecord() throws InterruptedException {
+        String testName = "concurrent record/4";
+        this.logTestStart(testName);
+        Leaderboard leaderboard = new Leaderboard(5);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    long moves = (i * 7919L + thread) % 10000 + 1;
+                    leaderboard.record("" + moves, moves, moves, Leaderboard.Difficulty.of((int)(moves % 60)));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        JSONArray best = leaderboard.toJson().getJSONObject(Leaderboard.JSON_OVERALL).getJSONArray(Leaderboard.JSON_FEWEST_MOVES);
+        assertEquals(5, best.length());
+        long previous = 0;
+        for (int i = 0; i < best.length(); i++) {
+            long moves = best.getJSONObject(i).getLong(Leaderboard.JSON_MOVES);
+            assertTrue(moves >= previous);
+            previous = moves;
+        }
+        assertEquals(1, best.getJSONObject(0).getLong(Leaderboard.JSON_MOVES));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of recording the finished game, of class Leaderboard.
+     */
+    @Test
+    public void testGameFinished() {
+        String testName = "gameFinished/2";
+        this.logTestStart(testName);
+        Leaderboard leaderboard = new Leaderboard();
+        Penkiolika game = new Penkiolika(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15});
+        assertTrue(game.moveRight());
+        leaderboard.gameFinished("7", game);
+        JSONObject easy = leaderboard.toJson().getJSONObject(Leaderboard.Difficulty.EASY.jsonName());
+        JSONObject completion = easy.getJSONArray(Leaderboard.JSON_FEWEST_MOVES).getJSONObject(0);
+        assertEquals("7", completion.getString(ServerHandler.JSON_ID));
+        assertEquals(1, completion.getLong(Leaderboard.JSON_MOVES));
+        this.logTestEnd(testName);
+    }
+
+    // Convenience method to check the ids of the completions in the list.
+    private static void assertIds(JSONArray completions, String... ids) {
+        assertEquals(ids.length, completions.length());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], completions.getJSONObject(i).getString(ServerHandler.JSON_ID));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for LoadGenerator class.
+ *
+ * @author julius
+ */
+public class LoadGeneratorTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(LoadGenerator.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(LoadGenerator.class);
+    }
+
+    /**
+     * Test of setMix method, of class LoadGenerator: the mix is validated, when
+     * it is set, not when the load is run.
+     */
+    @Test
+    public void testSetMix() {
+        String testName = "setMix/1";
+        this.logTestStart(testName);
+        LoadGenerator generator = new LoadGenerator();
+        generator.setMix("get:1,move:0");
+        generator.setOption("mix", LoadGenerator.DEFAULT_MIX);
+        assertThrows(IllegalArgumentException.class, () -> generator.setMix("move:0"));
+        assertThrows(IllegalArgumentException.class, () -> generator.setMix("get:0,move:0"));
+        assertThrows(IllegalArgumentException.class, () -> generator.setOption("mix", "move:0"));
+        assertThrows(IllegalArgumentException.class, () -> generator.setMix("move:-1,get:2"));
+        assertThrows(IllegalArgumentException.class, () -> generator.setMix("move"));
+        assertThrows(IllegalArgumentException.class, () -> generator.setMix("jump:1"));
+        this.logTestEnd(testName);
+    }
+}
@@ -4,6 +4,7 @@
 package lt.andrikonis.penkiolika;
 
 import java.util.Arrays;
+import java.util.Random;
 import java.util.function.Function;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -171,6 +172,110 @@ public class PenkiolikaTest extends BaseTest {
         this.logTestEnd(testName);
     }
 
+    /**
+     * Test of getVersion method, of class Penkiolika.
+     */
+    @Test
+    public void testGetVersion() {
+        String testName = "getVersion/0";
+        this.logTestStart(testName);
+        long version = p00.getVersion();
+        assertFalse(p00.moveTop());
+        assertEquals(version, p00.getVersion());
+        assertTrue(p00.moveBottom());
+        assertEquals(version + 1, p00.getVersion());
+        assertTrue(p00.moveTop());
+        assertEquals(version + 2, p00.getVersion());   // the same state as before, but another version
+        Penkiolika p = new Penkiolika();
+        p.shuffle(10);
+        assertEquals(10, p.getVersion());
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of getMoveCount, getCompletedMillis and getManhattanDistance methods,
+     * of class Penkiolika.
+     */
+    @Test
+    public void testMoveCountAndCompletion() {
+        String testName = "getMoveCount/0, getCompletedMillis/0 and getManhattanDistance/0";
+        this.logTestStart(testName);
+        Penkiolika p = new Penkiolika(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15});
+        assertEquals(1, p.getManhattanDistance());
+        assertEquals(0, p.getCompletedMillis());
+        assertTrue(p.moveRight());
+        assertEquals(0, p.getManhattanDistance());
+        assertEquals(1, p.getMoveCount());
+        long completed = p.getCompletedMillis();
+        assertTrue(completed >= p.getCreatedMillis());
+        assertTrue(p.moveLeft());
+        assertTrue(p.moveRight());
+        assertEquals(3, p.getMoveCount());
+        assertEquals(completed, p.getCompletedMillis());     // only the first completion counts
+        p.shuffle(10);
+        assertEquals(0, p.getMoveCount());
+        assertEquals(0, p.getCompletedMillis());
+        assertEquals(Heuristics.manhattanDistance(p.getBoard()), p.getManhattanDistance());
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of isSolvable and isPermutation methods, of class Penkiolika.
+     */
+    @Test
+    public void testIsSolvable() {
+        String testName = "isSolvable/1 and isPermutation/1";
+        this.logTestStart(testName);
+        assertTrue(Penkiolika.isSolvable(Penkiolika.FINAL_BOARD));
+        assertTrue(Penkiolika.isSolvable(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15}));
+        assertTrue(Penkiolika.isSolvable(new int[]{1,2,3,4,5,6,7,8,9,10,11,0,13,14,15,12}));
+        assertFalse(Penkiolika.isSolvable(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,15,14,0}));  // Loyd's 14-15 puzzle
+        assertFalse(Penkiolika.isSolvable(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,1}));
+        assertFalse(Penkiolika.isSolvable(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,16,0}));
+        assertFalse(Penkiolika.isSolvable(new int[]{1,2,3}));
+        for (int i = 0; i < 100; i++) {
+            Penkiolika p = new Penkiolika();
+            p.shuffle(i);
+            assertTrue(Penkiolika.isSolvable(p.getBoard()));
+        }
+        assertTrue(Penkiolika.isPermutation(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,15,14,0}));
+        assertFalse(Penkiolika.isPermutation(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,15}));
+        assertFalse(Penkiolika.isPermutation(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,-1}));
+        assertThrows(IllegalArgumentException.class, () -> new Penkiolika(new int[]{1,1,3,4,5,6,7,8,9,10,11,12,13,14,15,0}));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of getDistance, getManhattanDistance, getMisplacedTiles and getEstimate
+     * methods, of class Penkiolika.
+     */
+    @Test
+    public void testEstimates() {
+        String testName = "getDistance/1";
+        this.logTestStart(testName);
+        Penkiolika p = new Penkiolika();
+        assertEquals(0, p.getDistance());
+        assertEquals(0, p.getMisplacedTiles());
+        p = new Penkiolika(new int[]{2,1,3,4,5,6,7,8,9,10,11,12,13,14,15,0});
+        assertEquals(4, p.getDistance());
+        assertEquals(2, p.getMisplacedTiles());
+        // Every move updates the estimates as if they were calculated from scratch
+        Random random = new Random(41);
+        for (int i = 0; i < 1000; i++) {
+            p.move(Direction.values()[random.nextInt(4)]);
+            int[] board = p.getBoard();
+            assertEquals(Heuristics.manhattanDistance(board), p.getManhattanDistance());
+            assertEquals(Heuristics.manhattanDistance(board) + Heuristics.linearConflict(board), p.getDistance());
+            assertEquals(Heuristics.misplacedTiles(board), p.getMisplacedTiles());
+            Heuristics.Estimate estimate = p.getEstimate();
+            assertEquals(p.getDistance(), estimate.getDistance());
+            assertEquals(Heuristics.linearConflict(board), estimate.getLinearConflict());
+        }
+        p.shuffle(50);
+        assertEquals(Heuristics.Estimate.of(p.getBoard()).getDistance(), p.getDistance());
+        this.logTestEnd(testName);
+    }
+
     // Convenience method to ensure that the move was performed correctly.
     private static void assertMoved(Penkiolika p, Function<Penkiolika, Boolean> move, int[] finalBoard) {
         assertTrue(move.apply(p));
@@ -0,0 +1,152 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for RaceRoom class.
+ *
+ * @author julius
+ */
+public class RaceRoomTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(RaceRoom.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(RaceRoom.class);
+    }
+
+    /**
+     * Test of join and move methods and of the standings, of class RaceRoom.
+     */
+    @Test
+    public void testJoinAndMove() {
+        String testName = "joinAndMove/1";
+        this.logTestStart(testName);
+        int[] board = new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15};
+        RaceRoom room = new RaceRoom("7", board);
+        board[0] = 2;   // the room keeps its own copy
+        assertEquals(1, room.getStartBoard()[0]);
+        RaceRoom.Player first = room.join();
+        RaceRoom.Player second = room.join();
+        RaceRoom.Player third = room.join();
+        assertEquals(3, room.getPlayerCount());
+        assertNotEquals(first.getId(), second.getId());
+        assertSame(second, room.getPlayer(second.getId()));
+        assertNull(room.getPlayer("none"));
+        assertArrayEquals(room.getStartBoard(), third.getProgress().getBoard());
+        // Moves of the first player do not change the boards of the others
+        assertNull(first.move(Direction.BOTTOM));
+        RaceRoom.Progress firstProgress = first.move(Direction.LEFT);
+        assertArrayEquals(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,0,14,15}, firstProgress.getBoard());
+        assertEquals(Heuristics.manhattanDistance(firstProgress.getBoard()), firstProgress.getDistance());
+        assertEquals(1, firstProgress.getMoveCount());
+        assertSame(firstProgress, first.getProgress());
+        assertArrayEquals(room.getStartBoard(), second.getProgress().getBoard());
+        // The completed player cannot move any more
+        RaceRoom.Progress secondProgress = second.move(Direction.RIGHT);
+        assertTrue(secondProgress.isFinal());
+        assertEquals(0, secondProgress.getDistance());
+        assertTrue(secondProgress.getCompletedMillis() != 0);
+        assertNull(second.move(Direction.LEFT));
+        // Completed first, then by the distance
+        List<RaceRoom.Progress> standings = room.getStandings(RaceRoom.MAX_STANDINGS_LIMIT);
+        assertEquals(3, standings.size());
+        assertSame(second, standings.get(0).getPlayer());
+        assertSame(third, standings.get(1).getPlayer());
+        assertSame(first, standings.get(2).getPlayer());
+        assertEquals(3, room.getStandingsSize());
+        JSONObject json = room.toJson(2);
+        assertEquals("7", json.getString(ServerHandler.JSON_ID));
+        assertEquals(3, json.getInt(RaceRoom.JSON_PLAYERS));
+        JSONArray standingsJson = json.getJSONArray(RaceRoom.JSON_STANDINGS);
+        assertEquals(2, standingsJson.length());
+        assertEquals(second.getId(), standingsJson.getJSONObject(0).getString(ServerHandler.JSON_ID));
+        assertTrue(standingsJson.getJSONObject(0).getBoolean(ServerHandler.JSON_FINAL));
+        assertTrue(standingsJson.getJSONObject(0).has(RaceRoom.JSON_MILLIS));
+        assertFalse(standingsJson.getJSONObject(0).has(ServerHandler.JSON_BOARD));
+        JSONObject playerJson = first.getProgress().toJson();
+        assertEquals("7", playerJson.getString(RaceRoom.JSON_ROOM));
+        assertEquals(1, playerJson.getLong(RaceRoom.JSON_MOVES));
+        assertEquals(14, playerJson.getJSONArray(ServerHandler.JSON_BOARD).getInt(14));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of concurrent moves of the same players, of class RaceRoom.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testConcurrentMoves() throws InterruptedException {
+        String testName = "concurrentMoves/1";
+        this.logTestStart(testName);
+        Penkiolika shuffled = new Penkiolika();
+        shuffled.shuffle();
+        RaceRoom room = new RaceRoom("1", shuffled.getBoard());
+        List<RaceRoom.Player> players = new ArrayList<RaceRoom.Player>();
+        for (int i = 0; i < 20; i++) {
+            players.add(room.join());
+        }
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            long seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 20000; i++) {
+                    RaceRoom.Player player = players.get(random.nextInt(players.size()));
+                    player.move(Direction.values()[random.nextInt(4)]);
+                    if (i % 100 == 0) {
+                        room.getStandings(5);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Every player is ranked once, by the current progress, and nothing else is left
+        assertEquals(players.size(), room.getStandingsSize());
+        List<RaceRoom.Progress> standings = room.getStandings(RaceRoom.MAX_STANDINGS_LIMIT);
+        assertEquals(players.size(), standings.size());
+        Set<String> ids = new HashSet<String>();
+        int lastDistance = -1;
+        for (RaceRoom.Progress progress : standings) {
+            assertTrue(ids.add(progress.getPlayer().getId()));
+            assertSame(progress, progress.getPlayer().getProgress());
+            int[] board = progress.getBoard();
+            assertTrue(Penkiolika.isPermutation(board));
+            assertEquals(Heuristics.manhattanDistance(board), progress.getDistance());
+            if (!progress.isFinal()) {
+                assertTrue(progress.getDistance() >= lastDistance);
+                lastDistance = progress.getDistance();
+            }
+        }
+        this.logTestEnd(testName);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for ReplicationPrimary and ReplicationFollower classes.
+ *
+ * @author julius
+ */
+public class ReplicationTest extends BaseTest {
+
+    /**
+     * Port of the primary test server: {@value #TEST_PORT_PRIMARY}.
+     */
+    public static final int TEST_PORT_PRIMARY = 8094;
+
+    /**
+     * Port of the follower test server: {@value #TEST_PORT_FOLLOWER}.
+     */
+    public static final int TEST_PORT_FOLLOWER = 8095;
+
+    // How long the replication of a change may take in the tests.
+    private static final long WAIT_MILLIS = 5000;
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(ReplicationFollower.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(ReplicationFollower.class);
+    }
+
+    /**
+     * Test of the replication of the snapshot and of the changes, and of the
+     * promotion of the follower.
+     *
+     * @throws Exception if the requests fail.
+     */
+    @Test
+    public void testReplicate() throws Exception {
+        String testName = "replicate/1";
+        this.logTestStart(testName);
+        ServerHandler primaryHandler = new ServerHandler();
+        ServerHandler followerHandler = new ServerHandler();
+        ReplicationPrimary primary = new ReplicationPrimary(primaryHandler, 0);
+        ReplicationFollower follower = new ReplicationFollower(followerHandler, "localhost", primary.getPort());
+        HttpServer primaryServer = Server.start(TEST_PORT_PRIMARY, ServerHandler.BASE_PATH, primaryHandler);
+        HttpServer followerServer = Server.start(TEST_PORT_FOLLOWER, ServerHandler.BASE_PATH, followerHandler);
+        try (HttpClientConnection toPrimary = new HttpClientConnection("localhost", TEST_PORT_PRIMARY);
+                HttpClientConnection toFollower = new HttpClientConnection("localhost", TEST_PORT_FOLLOWER)) {
+            // The games created before the follower are sent in the snapshot
+            String id1 = this.createGame(toPrimary, "[1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15]");
+            String id2 = this.createGame(toPrimary, "[1,2,3,4,5,6,7,8,9,10,11,12,13,0,14,15]");
+            follower.start();
+            assertTrue(followerHandler.isReadOnly());
+            this.waitFor(() -> follower.isConnected() && primary.getFollowerCount() == 1);
+            this.waitFor(() -> this.getStatus(toFollower, id2) == 200);
+            assertEquals(toPrimary.request("GET", gamePath(id1), null, null).getBodyString(),
+                    toFollower.request("GET", gamePath(id1), null, null).getBodyString());
+            // The changes
+            String id3 = this.createGame(toPrimary, null);
+            assertEquals(200, toPrimary.request("PATCH", gamePath(id1), null, "{\"move\":\"right\"}".getBytes()).getStatusCode());
+            assertEquals(200, toPrimary.request("DELETE", gamePath(id2), null, null).getStatusCode());
+            this.waitFor(() -> this.getStatus(toFollower, id2) == 404 && this.getStatus(toFollower, id3) == 200);
+            HttpClientConnection.Response moved = toFollower.request("GET", gamePath(id1), null, null);
+            assertEquals("\"1\"", moved.getHeader("ETag"));
+            assertTrue(new JSONObject(moved.getBodyString()).getBoolean(ServerHandler.JSON_FINAL));
+            assertEquals(toPrimary.request("GET", gamePath(id3), null, null).getBodyString(),
+                    toFollower.request("GET", gamePath(id3), null, null).getBodyString());
+            // The follower is read only and reports its lag
+            assertEquals(503, toFollower.request("POST", gamePath(""), null, null).getStatusCode());
+            assertEquals(503, toFollower.request("PATCH", gamePath(id3), null, "{\"move\":\"left\"}".getBytes()).getStatusCode());
+            this.waitFor(() -> follower.getAppliedSequence() == 5);
+            JSONObject stats = new JSONObject(toFollower.request("GET", ServerHandler.BASE_PATH + "/" +
+                    ServerHandler.STATS_PATH + "/" + ServerHandler.REPLICATION_PATH, null, null).getBodyString());
+            assertTrue(stats.getBoolean(ServerHandler.JSON_READ_ONLY));
+            JSONObject followerJson = stats.getJSONObject(ServerHandler.JSON_REPLICATION_FOLLOWER);
+            assertTrue(followerJson.getBoolean(ReplicationFollower.JSON_CONNECTED));
+            assertEquals(5, followerJson.getLong(ReplicationFollower.JSON_PRIMARY_SEQUENCE));
+            assertEquals(0, followerJson.getLong(ReplicationFollower.JSON_LAG_CHANGES));
+            assertTrue(followerJson.getLong(ReplicationFollower.JSON_LAG_MILLIS) >= 0);
+            JSONObject primaryJson = new JSONObject(toPrimary.request("GET", ServerHandler.BASE_PATH + "/" +
+                    ServerHandler.STATS_PATH + "/" + ServerHandler.REPLICATION_PATH, null, null).getBodyString())
+                    .getJSONObject(ServerHandler.JSON_REPLICATION_PRIMARY);
+            assertEquals(1, primaryJson.getInt(ReplicationPrimary.JSON_FOLLOWERS));
+            assertEquals(5, primaryJson.getLong(ReplicationPrimary.JSON_SEQUENCE));
+            // The promotion
+            String promotePath = ServerHandler.BASE_PATH + "/" + ServerHandler.REPLICATION_PATH + "/" +
+                    ServerHandler.PROMOTE_PATH;
+            assertEquals(409, toPrimary.request("POST", promotePath, null, null).getStatusCode());
+            assertEquals(200, toFollower.request("POST", promotePath, null, null).getStatusCode());
+            assertEquals(409, toFollower.request("POST", promotePath, null, null).getStatusCode());
+            assertFalse(followerHandler.isReadOnly());
+            assertFalse(follower.isConnected());
+            assertNotEquals(503, toFollower.request("PATCH", gamePath(id3), null, "{\"move\":\"left\"}".getBytes()).getStatusCode());
+            String id4 = this.createGame(toFollower, null);
+            assertTrue(Integer.parseInt(id4) > Integer.parseInt(id3));
+            this.waitFor(() -> primary.getFollowerCount() == 0);
+        } finally {
+            follower.close();
+            primary.close();
+            primaryServer.stop(0);
+            followerServer.stop(0);
+        }
+        this.logTestEnd(testName);
+    }
+
+    // Creates the game and returns its id.
+    // board - the JSON of the board or null, if the game should be shuffled.
+    private String createGame(HttpClientConnection connection, String board) throws Exception {
+        HttpClientConnection.Response response = connection.request("POST", gamePath(""), null,
+                board == null ? null : ("{\"board\":" + board + "}").getBytes());
+        assertEquals(201, response.getStatusCode());
+        return new JSONObject(response.getBodyString()).getString(ServerHandler.JSON_ID);
+    }
+
+    // Returns the status of the request of the game.
+    private int getStatus(HttpClientConnection connection, String id) {
+        try {
+            return connection.request("GET", gamePath(id), null, null).getStatusCode();
+        } catch (IOException ioe) {
+            return -1;
+        }
+    }
+
+    // Waits until the condition holds.
+    private void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not reached in " + WAIT_MILLIS + " ms");
+            Thread.sleep(10);
+        }
+    }
+
+    private static String gamePath(String id) {
+        return ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/" + id;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for ResponseCache class.
+ *
+ * @author julius
+ */
+public class ResponseCacheTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(ResponseCache.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(ResponseCache.class);
+    }
+
+    /**
+     * Test of get, put and invalidate methods, of class ResponseCache.
+     */
+    @Test
+    public void testGetPut() {
+        String testName = "get/2, put/3 and invalidate/1";
+        this.logTestStart(testName);
+        ResponseCache cache = new ResponseCache();
+        byte[] v1 = new byte[]{1};
+        byte[] v2 = new byte[]{2};
+        assertNull(cache.get("1", 1));
+        cache.put("1", 1, v1);
+        assertSame(v1, cache.get("1", 1));
+        assertNull(cache.get("1", 2));      // stale version is never returned
+        cache.put("1", 2, v2);
+        cache.put("1", 1, v1);              // older version doesn't replace the newer one
+        assertSame(v2, cache.get("1", 2));
+        assertNull(cache.get("1", 1));
+        cache.invalidate("1");
+        assertNull(cache.get("1", 2));
+        assertEquals(0, cache.getUsedBytes());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of eviction, of class ResponseCache.
+     */
+    @Test
+    public void testEviction() {
+        String testName = "eviction";
+        this.logTestStart(testName);
+        long maxBytes = 100000;
+        ResponseCache cache = new ResponseCache(maxBytes);
+        cache.put("hot", 1, new byte[1000]);
+        for (int i = 0; i < 1000; i++) {
+            assertNotNull(cache.get("hot", 1));
+            cache.put("" + i, 1, new byte[1000]);
+            assertTrue(cache.getUsedBytes() <= maxBytes);
+        }
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.size() < 1000);
+        this.logTestEnd(testName);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Router and MoveBodyParser classes.
+ *
+ * @author julius
+ */
+public class RouterTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(Router.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(Router.class);
+    }
+
+    /**
+     * Test of match method, of class Router.
+     */
+    @Test
+    public void testMatch() {
+        String testName = "match/4";
+        this.logTestStart(testName);
+        Router<String> router = new Router<String>()
+                .add("POST", new String[]{"game"}, "create")
+                .add("GET", new String[]{"game", null}, "get")
+                .add("GET", new String[]{"game", null, "jobs", null}, "job");
+        Router.Match match = new Router.Match();
+        assertEquals("create", router.match("POST", "/base/game", 5, match));
+        assertEquals("create", router.match("POST", "/base/game/", 5, match));
+        assertNull(router.match("GET", "/base/game", 5, match));
+        assertNull(router.match("GET", "/base/game/", 5, match));
+        assertEquals("get", router.match("GET", "/base/game/12", 5, match));
+        assertEquals("12", match.parameter(0));
+        assertEquals("job", router.match("GET", "/base/game/12/jobs/7//", 5, match));
+        assertEquals("12", match.parameter(0));
+        assertEquals("7", match.parameter(1));
+        assertNull(router.match("GET", "/base/games/12", 5, match));
+        assertNull(router.match("GET", "/base/game/12/job/7", 5, match));
+        assertNull(router.match("GET", "/base/game//jobs/7", 5, match));
+        assertNull(router.match("GET", "/baseX/game/12", 5, match));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of parse method, of class MoveBodyParser.
+     */
+    @Test
+    public void testParseMove() {
+        String testName = "MoveBodyParser.parse/2";
+        this.logTestStart(testName);
+        assertEquals(Direction.LEFT, parse("{\"move\":\"left\"}"));
+        assertEquals(Direction.BOTTOM, parse("\r\n{ \"move\" : \"bottom\" }\n"));
+        assertNull(parse("{\"move\":\"up\"}"));
+        assertNull(parse("{\"move\":\"lef\\u0074\"}"));
+        assertNull(parse("{\"move\":\"left\",\"player\":1}"));
+        assertNull(parse("{\"move\":\"left\"}}"));
+        assertNull(parse("{\"move\":\"left\""));
+        assertNull(parse(""));
+        this.logTestEnd(testName);
+    }
+
+    // Convenience method to parse the move from the string.
+    private static Direction parse(String body) {
+        byte[] bytes = body.getBytes();
+        return MoveBodyParser.parse(bytes, bytes.length);
+    }
+}
@@ -9,11 +9,15 @@ import java.io.InputStreamReader;
 import java.io.BufferedReader;
 import java.io.OutputStreamWriter;
 import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.LinkedHashSet;
 import java.util.stream.Collectors;
+import java.net.URI;
 import java.net.URL;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -78,6 +82,7 @@ public class ServerHandlerTest extends BaseTest {
     public void setUp() throws IOException {
         HashMap<String, Penkiolika> games = new HashMap<String, Penkiolika>();
         gameMock = Mockito.mock(Penkiolika.class);
+        Mockito.when(gameMock.move(Mockito.any(Direction.class))).thenCallRealMethod();   // calls the mocked moves
         games.put(INDEX, gameMock);
         server = Server.start(TEST_SERVER_PORT, ServerHandler.BASE_PATH, new ServerHandler(games));
     }
@@ -119,6 +124,40 @@ public class ServerHandlerTest extends BaseTest {
         this.logTestEnd(testName);
     }
 
+    /**
+     * Test create new game with provided board request.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Test
+    public void testPostNewGameWithBoard() throws MalformedURLException, ProtocolException, IOException {
+        String testName = "testPostNewGameWithBoard";
+        this.logTestStart(testName);
+        int[] board = new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15};
+        // Test
+        HttpResponse response1 = this.doRequest("POST", ServerHandler.GAME_PATH + "/",
+                new JSONObject().put(ServerHandler.JSON_BOARD, board));
+        HttpResponse response2 = this.doRequest("POST", ServerHandler.GAME_PATH + "/",
+                new JSONObject().put(ServerHandler.JSON_BOARD, new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,15,14,0}));
+        HttpResponse response3 = this.doRequest("POST", ServerHandler.GAME_PATH + "/",
+                new JSONObject().put(ServerHandler.JSON_BOARD, new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,14,0}));
+        HttpResponse response4 = this.doRequest("POST", ServerHandler.GAME_PATH + "/",
+                new JSONObject().put(ServerHandler.JSON_BOARD, "1,2,3"));
+        // Result validation
+        JSONObject json1 = new JSONObject(response1.getBody());
+        assertEquals(201, response1.getStatusCode());
+        assertArrayEquals(board, this.getIntArray(json1.getJSONArray(ServerHandler.JSON_BOARD)));
+        assertFalse(json1.getBoolean(ServerHandler.JSON_FINAL));
+        assertEquals(1, json1.getInt(ServerHandler.JSON_DISTANCE));
+        assertEquals(1, json1.getInt(ServerHandler.JSON_MANHATTAN_DISTANCE));
+        assertEquals(1, json1.getInt(ServerHandler.JSON_MISPLACED_TILES));
+        assertEquals(422, response2.getStatusCode());
+        assertEquals(422, response3.getStatusCode());
+        assertEquals(422, response4.getStatusCode());
+        this.logTestEnd(testName);
+    }
+
     /**
      * Test retrieve game request.
      * @throws MalformedURLException
@@ -251,6 +290,73 @@ public class ServerHandlerTest extends BaseTest {
         assertFalse(json.getBoolean(ServerHandler.JSON_FINAL));
     }
 
+    /**
+     * Test make move request with the contents, which is not the usual one.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Test
+    public void testPatchDoMoveContents() throws MalformedURLException, ProtocolException, IOException {
+        String testName = "testPatchDoMoveContents";
+        this.logTestStart(testName);
+        // Mocks
+        Mockito.when(gameMock.getBoard()).thenReturn(new int[]{3,5,7,2,1,10,4,11,15,6,0,13,12,9,8,14});
+        Mockito.when(gameMock.moveTop()).thenReturn(true);
+        String path = ServerHandler.GAME_PATH + "/" + INDEX;
+        // Test
+        HttpResponse response1 = this.doRawRequest("PATCH", path, " { \"move\" :\t\"top\" }\n", null);
+        HttpResponse response2 = this.doRawRequest("PATCH", path, "{\"player\":\"a\",\"move\":\"top\"}", null);
+        HttpResponse response3 = this.doRawRequest("PATCH", path, "{\"move\":\"up\"}", null);
+        HttpResponse response4 = this.doRawRequest("PATCH", path, "{\"moves\":\"top\"}", null);
+        HttpResponse response5 = this.doRawRequest("PATCH", path, "move top", null);
+        HttpResponse response6 = this.doRawRequest("PATCH", path, "{\"move\":7}", null);
+        HttpResponse response7 = this.doRawRequest("PATCH", ServerHandler.GAME_PATH + "/" + INDEX + "//", "{\"move\":\"top\"}", null);
+        // Result validation
+        assertEquals(200, response1.getStatusCode());
+        assertEquals(200, response2.getStatusCode());
+        assertEquals(400, response3.getStatusCode());
+        assertEquals(400, response4.getStatusCode());
+        assertEquals(415, response5.getStatusCode());
+        assertEquals(415, response6.getStatusCode());
+        assertEquals(200, response7.getStatusCode());
+        Mockito.verify(gameMock, Mockito.times(3)).moveTop();
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test make move request with the contents longer than the move buffer:
+     * the contents is decoded as a whole and reported as it was sent.
+     * @throws IOException
+     */
+    @Test
+    public void testPatchDoMoveLongContents() throws IOException {
+        String testName = "testPatchDoMoveLongContents";
+        this.logTestStart(testName);
+        ServerHandler handler = new ServerHandler();
+        MemoryExchange create = new MemoryExchange("POST",
+                URI.create(ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/"), new byte[0]);
+        handler.handle(create);
+        String path = ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/" + create.getJson().getString(ServerHandler.JSON_ID);
+        char[] padding = new char[502];
+        Arrays.fill(padding, 'a');
+        // The two bytes of the last character are 511th and 512th bytes of the contents
+        String move = new String(padding) + "\u017e";
+        String unknownMove = "{\"" + ServerHandler.JSON_MOVE + "\":\"" + move + "\"}";
+        String notJson = move + "\r\n\r\n" + move;
+        // Test
+        MemoryExchange response1 = new MemoryExchange("PATCH", URI.create(path), unknownMove.getBytes(StandardCharsets.UTF_8));
+        handler.handle(response1);
+        MemoryExchange response2 = new MemoryExchange("PATCH", URI.create(path), notJson.getBytes(StandardCharsets.UTF_8));
+        handler.handle(response2);
+        // Result validation
+        assertEquals(400, response1.getResponseCode());
+        assertEquals(this.asSent("Unknown move " + move), response1.getJson().getString(ServerHandler.JSON_ERROR_REASON));
+        assertEquals(415, response2.getResponseCode());
+        assertTrue(response2.getJson().getString(ServerHandler.JSON_ERROR_REASON).contains(this.asSent("received: " + notJson + ". ")));
+        this.logTestEnd(testName);
+    }
+
     /**
      * Test delete game request.
      * @throws MalformedURLException
@@ -278,6 +384,358 @@ public class ServerHandlerTest extends BaseTest {
         this.logTestEnd(testName);
     }
 
+    /**
+     * Test retrieve game request with matching If-None-Match header.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Test
+    public void testGetGameNotModified() throws MalformedURLException, ProtocolException, IOException {
+        String testName = "testGetGameNotModified";
+        this.logTestStart(testName);
+        // Mocks
+        int[] board = new int[]{3,5,7,2,1,10,4,11,15,6,0,13,12,9,8,14};
+        Mockito.when(gameMock.getBoard()).thenReturn(board);
+        Mockito.when(gameMock.isFinal()).thenReturn(false);
+        Mockito.when(gameMock.getVersion()).thenReturn(7L);
+        // Test
+        HttpResponse response1 = this.doRequest("GET", ServerHandler.GAME_PATH + "/" + INDEX);
+        HttpResponse response2 = this.doRequest("GET", ServerHandler.GAME_PATH + "/" + INDEX, null,
+                this.header("If-None-Match", response1.getHeader("ETag")));
+        HttpResponse response3 = this.doRequest("GET", ServerHandler.GAME_PATH + "/" + INDEX, null,
+                this.header("If-None-Match", "\"6\""));
+        HttpResponse response4 = this.doRequest("GET", ServerHandler.GAME_PATH + "/" + INDEX, null,
+                this.header("If-None-Match", "W/\"7\""));
+        // Result validation
+        assertEquals(200, response1.getStatusCode());
+        assertEquals("\"7\"", response1.getHeader("ETag"));
+        assertEquals(7, new JSONObject(response1.getBody()).getLong(ServerHandler.JSON_VERSION));
+        assertEquals(304, response2.getStatusCode());
+        assertEquals("", response2.getBody());
+        assertEquals("\"7\"", response2.getHeader("ETag"));
+        assertEquals(200, response3.getStatusCode());
+        assertEquals(304, response4.getStatusCode());     // weak comparison
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test make move request with If-Match header.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Test
+    public void testPatchDoMoveIfMatch() throws MalformedURLException, ProtocolException, IOException {
+        String testName = "testPatchDoMoveIfMatch";
+        this.logTestStart(testName);
+        // Mocks
+        int[] board = new int[]{3,5,7,2,1,10,4,11,15,6,0,13,12,9,8,14};
+        Mockito.when(gameMock.getBoard()).thenReturn(board);
+        Mockito.when(gameMock.isFinal()).thenReturn(false);
+        Mockito.when(gameMock.getVersion()).thenReturn(3L);
+        Mockito.when(gameMock.moveLeft()).thenReturn(true);
+        // Test
+        JSONObject jsonIn = new JSONObject();
+        jsonIn.put(ServerHandler.JSON_MOVE, ServerHandler.JSON_MOVE_LEFT);
+        HttpResponse response1 = this.doRequest("PATCH", ServerHandler.GAME_PATH + "/" + INDEX, jsonIn,
+                this.header("If-Match", "\"2\""));
+        HttpResponse response3 = this.doRequest("PATCH", ServerHandler.GAME_PATH + "/" + INDEX, jsonIn,
+                this.header("If-Match", "W/\"3\""));
+        Mockito.verify(gameMock, Mockito.never()).moveLeft();
+        HttpResponse response2 = this.doRequest("PATCH", ServerHandler.GAME_PATH + "/" + INDEX, jsonIn,
+                this.header("If-Match", "\"3\""));
+        // Result validation
+        assertEquals(412, response1.getStatusCode());
+        assertTrue(new JSONObject(response1.getBody()).has(ServerHandler.JSON_ERROR_REASON));
+        assertEquals(412, response3.getStatusCode());     // strong comparison: a weak tag never matches
+        assertEquals(200, response2.getStatusCode());
+        Mockito.verify(gameMock).moveLeft();
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test list games request.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Test
+    public void testGetGames() throws MalformedURLException, ProtocolException, IOException {
+        String testName = "testGetGames";
+        this.logTestStart(testName);
+        // Mocks
+        int[] board = new int[]{3,5,7,2,1,10,4,11,15,6,0,13,12,9,8,14};
+        Mockito.when(gameMock.getBoard()).thenReturn(board);
+        Mockito.when(gameMock.isFinal()).thenReturn(false);
+        // Test
+        this.doRequest("POST", ServerHandler.GAME_PATH + "/");
+        String deletedId = new JSONObject(this.doRequest("POST", ServerHandler.GAME_PATH + "/").getBody()).getString(ServerHandler.JSON_ID);
+        this.doRequest("POST", ServerHandler.GAME_PATH + "/");
+        this.doRequest("DELETE", ServerHandler.GAME_PATH + "/" + deletedId);
+        HttpResponse response1 = this.doRequest("GET", ServerHandler.GAMES_PATH + "?limit=2");
+        JSONObject json1 = new JSONObject(response1.getBody());
+        HttpResponse response2 = this.doRequest("GET", ServerHandler.GAMES_PATH + "?limit=2&cursor=" +
+                json1.getString(ServerHandler.JSON_NEXT_CURSOR));
+        JSONObject json2 = new JSONObject(response2.getBody());
+        HttpResponse response3 = this.doRequest("GET", ServerHandler.GAMES_PATH + "?final=true");
+        HttpResponse response4 = this.doRequest("GET", ServerHandler.GAMES_PATH + "?limit=0");
+        // Result validation
+        assertEquals(200, response1.getStatusCode());
+        assertEquals(200, response2.getStatusCode());
+        JSONArray games1 = json1.getJSONArray(ServerHandler.JSON_GAMES);
+        JSONArray games2 = json2.getJSONArray(ServerHandler.JSON_GAMES);
+        assertEquals(2, games1.length());
+        assertEquals(INDEX, games1.getJSONObject(0).getString(ServerHandler.JSON_ID));
+        assertArrayEquals(board, this.getIntArray(games1.getJSONObject(0).getJSONArray(ServerHandler.JSON_BOARD)));
+        assertEquals(1, games2.length());
+        assertTrue(json2.isNull(ServerHandler.JSON_NEXT_CURSOR));
+        Set<String> ids = new LinkedHashSet<String>();
+        ids.add(games1.getJSONObject(0).getString(ServerHandler.JSON_ID));
+        ids.add(games1.getJSONObject(1).getString(ServerHandler.JSON_ID));
+        ids.add(games2.getJSONObject(0).getString(ServerHandler.JSON_ID));
+        assertEquals(3, ids.size());
+        assertFalse(ids.contains(deletedId));
+        assertEquals(0, new JSONObject(response3.getBody()).getJSONArray(ServerHandler.JSON_GAMES).length());
+        assertEquals(400, response4.getStatusCode());
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test game statistics request.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Test
+    public void testGetStats() throws MalformedURLException, ProtocolException, IOException {
+        String testName = "testGetStats";
+        this.logTestStart(testName);
+        // Test
+        String id = new JSONObject(this.doRequest("POST", ServerHandler.GAME_PATH + "/").getBody()).getString(ServerHandler.JSON_ID);
+        this.doRequest("POST", ServerHandler.GAME_PATH + "/");
+        this.doRequest("DELETE", ServerHandler.GAME_PATH + "/" + id);
+        HttpResponse response = this.doRequest("GET", ServerHandler.STATS_PATH);
+        // Result validation
+        JSONObject json = new JSONObject(response.getBody());
+        assertEquals(200, response.getStatusCode());
+        assertEquals(2, json.getLong(GameStatistics.JSON_LIVE_GAMES));    // including the precreated game
+        assertEquals(3, json.getLong(GameStatistics.JSON_GAMES_CREATED));
+        assertEquals(1, json.getLong(GameStatistics.JSON_GAMES_DELETED));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test shard statistics request.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Test
+    public void testGetShardStats() throws MalformedURLException, ProtocolException, IOException {
+        String testName = "testGetShardStats";
+        this.logTestStart(testName);
+        String id = new JSONObject(this.doRequest("POST", ServerHandler.GAME_PATH + "/").getBody()).getString(ServerHandler.JSON_ID);
+        this.doRequest("GET", ServerHandler.GAME_PATH + "/" + id);
+        // Test
+        HttpResponse response = this.doRequest("GET", ServerHandler.STATS_PATH + "/" + ServerHandler.SHARDS_PATH);
+        // Result validation
+        assertEquals(200, response.getStatusCode());
+        JSONArray shards = new JSONObject(response.getBody()).getJSONArray(GameStore.JSON_SHARDS);
+        assertEquals(GameStore.DEFAULT_SHARDS, shards.length());
+        int games = 0;
+        long reads = 0;
+        for (int i = 0; i < shards.length(); i++) {
+            games += shards.getJSONObject(i).getInt(GameStore.JSON_GAMES);
+            reads += shards.getJSONObject(i).getLong(GameStore.JSON_READS);
+        }
+        assertEquals(2, games);     // including the precreated game
+        assertTrue(reads >= 1);
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test solve job requests.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testSolveJob() throws MalformedURLException, ProtocolException, IOException, InterruptedException {
+        String testName = "testSolveJob";
+        this.logTestStart(testName);
+        String id = new JSONObject(this.doRequest("POST", ServerHandler.GAME_PATH + "/",
+                new JSONObject().put(ServerHandler.JSON_BOARD, new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15})).getBody())
+                .getString(ServerHandler.JSON_ID);
+        String jobsPath = ServerHandler.GAME_PATH + "/" + id + "/" + ServerHandler.SOLVE_JOBS_PATH;
+        // Test
+        HttpResponse response1 = this.doRequest("POST", jobsPath);
+        JSONObject json1 = new JSONObject(response1.getBody());
+        String jobId = json1.getString(SolveJobManager.JSON_JOB_ID);
+        String jobPath = jobsPath + "/" + jobId;
+        JSONObject json2;
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            Thread.sleep(5);
+            json2 = new JSONObject(this.doRequest("GET", jobPath).getBody());
+        } while (!json2.getString(SolveJobManager.JSON_STATUS).equals("solved") && System.currentTimeMillis() < deadline);
+        HttpResponse response3 = this.doRequest("DELETE", jobPath);
+        HttpResponse response4 = this.doRequest("GET", ServerHandler.GAME_PATH + "/" + INDEX + "/" +
+                ServerHandler.SOLVE_JOBS_PATH + "/" + jobId);
+        HttpResponse response5 = this.doRequest("POST", jobsPath,
+                new JSONObject().put(ServerHandler.JSON_TIMEOUT_MILLIS, "soon"));
+        HttpResponse response6 = this.doRequest("POST", ServerHandler.GAME_PATH + "/no-such-game/" + ServerHandler.SOLVE_JOBS_PATH);
+        // Result validation
+        assertEquals(202, response1.getStatusCode());
+        assertEquals(ServerHandler.BASE_PATH + "/" + jobPath, response1.getHeader("Location"));
+        assertEquals(id, json1.getString(SolveJobManager.JSON_GAME_ID));
+        assertEquals("solved", json2.getString(SolveJobManager.JSON_STATUS));
+        assertEquals(1, json2.getJSONArray(SolveJobManager.JSON_MOVES).length());
+        assertEquals(ServerHandler.JSON_MOVE_RIGHT, json2.getJSONArray(SolveJobManager.JSON_MOVES).getString(0));
+        assertEquals(200, response3.getStatusCode());
+        assertEquals("solved", new JSONObject(response3.getBody()).getString(SolveJobManager.JSON_STATUS));
+        assertEquals(404, response4.getStatusCode());
+        assertEquals(400, response5.getStatusCode());
+        assertEquals(404, response6.getStatusCode());
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test solve batch request.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Test
+    public void testSolveBatch() throws MalformedURLException, ProtocolException, IOException {
+        String testName = "testSolveBatch";
+        this.logTestStart(testName);
+        String body = "[1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15]\n" +
+                "1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 0\n" +
+                "\n" +
+                "1,2,3\n";
+        // Test
+        HttpResponse response1 = this.doRawRequest("POST", ServerHandler.SOLVE_BATCH_PATH, body, null);
+        HttpResponse response2 = this.doRawRequest("POST", ServerHandler.SOLVE_BATCH_PATH + "?" +
+                ServerHandler.JSON_TIMEOUT_MILLIS + "=0", body, null);
+        // Result validation
+        assertEquals(200, response1.getStatusCode());
+        assertEquals("application/x-ndjson", response1.getHeader("content-type"));
+        String[] lines = response1.getBody().split("\n");
+        assertEquals(3, lines.length);
+        Map<Integer, JSONObject> results = new HashMap<Integer, JSONObject>();
+        for (String line : lines) {
+            JSONObject json = new JSONObject(line);
+            results.put(json.getInt(BatchSolver.JSON_INDEX), json);
+        }
+        assertEquals(1, results.get(0).getInt(BatchSolver.JSON_DISTANCE));
+        assertEquals(0, results.get(1).getInt(BatchSolver.JSON_DISTANCE));
+        assertEquals(BatchSolver.STATUS_INVALID, results.get(3).getString(BatchSolver.JSON_STATUS));
+        assertEquals(400, response2.getStatusCode());
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test race room requests.
+     * @throws MalformedURLException
+     * @throws ProtocolException
+     * @throws IOException
+     */
+    @Test
+    public void testRaceRoom() throws MalformedURLException, ProtocolException, IOException {
+        String testName = "testRaceRoom";
+        this.logTestStart(testName);
+        int[] board = new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15};
+        // Test
+        HttpResponse created = this.doRequest("POST", ServerHandler.ROOM_PATH + "/",
+                new JSONObject().put(ServerHandler.JSON_BOARD, board));
+        HttpResponse shuffled = this.doRequest("POST", ServerHandler.ROOM_PATH + "/");
+        HttpResponse unsolvable = this.doRequest("POST", ServerHandler.ROOM_PATH + "/",
+                new JSONObject().put(ServerHandler.JSON_BOARD, new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,15,14,0}));
+        String room = ServerHandler.ROOM_PATH + "/" + new JSONObject(created.getBody()).getString(ServerHandler.JSON_ID);
+        String players = room + "/" + ServerHandler.PLAYERS_PATH;
+        HttpResponse joined1 = this.doRequest("POST", players);
+        HttpResponse joined2 = this.doRequest("POST", players);
+        String player1 = players + "/" + new JSONObject(joined1.getBody()).getString(ServerHandler.JSON_ID);
+        String player2 = players + "/" + new JSONObject(joined2.getBody()).getString(ServerHandler.JSON_ID);
+        HttpResponse moved = this.doRequest("PATCH", player1,
+                new JSONObject().put(ServerHandler.JSON_MOVE, ServerHandler.JSON_MOVE_RIGHT));
+        HttpResponse completed = this.doRequest("PATCH", player1,
+                new JSONObject().put(ServerHandler.JSON_MOVE, ServerHandler.JSON_MOVE_LEFT));
+        HttpResponse illegal = this.doRequest("PATCH", player2,
+                new JSONObject().put(ServerHandler.JSON_MOVE, ServerHandler.JSON_MOVE_BOTTOM));
+        HttpResponse player = this.doRequest("GET", player2);
+        HttpResponse standings = this.doRequest("GET", room + "?limit=1");
+        HttpResponse invalidLimit = this.doRequest("GET", room + "?limit=0");
+        HttpResponse missingPlayer = this.doRequest("GET", players + "/none");
+        HttpResponse deleted = this.doRequest("DELETE", room);
+        HttpResponse missingRoom = this.doRequest("POST", players);
+        // Result validation
+        assertEquals(201, created.getStatusCode());
+        assertArrayEquals(board, this.getIntArray(new JSONObject(created.getBody()).getJSONArray(ServerHandler.JSON_BOARD)));
+        assertEquals(201, shuffled.getStatusCode());
+        assertEquals(422, unsolvable.getStatusCode());
+        assertEquals(201, joined1.getStatusCode());
+        assertArrayEquals(board, this.getIntArray(new JSONObject(joined1.getBody()).getJSONArray(ServerHandler.JSON_BOARD)));
+        assertEquals(200, moved.getStatusCode());
+        JSONObject movedJson = new JSONObject(moved.getBody());
+        assertTrue(movedJson.getBoolean(ServerHandler.JSON_FINAL));
+        assertEquals(1, movedJson.getLong(RaceRoom.JSON_MOVES));
+        assertEquals(409, completed.getStatusCode());
+        assertEquals(409, illegal.getStatusCode());
+        assertEquals(200, player.getStatusCode());
+        assertArrayEquals(board, this.getIntArray(new JSONObject(player.getBody()).getJSONArray(ServerHandler.JSON_BOARD)));
+        assertEquals(200, standings.getStatusCode());
+        JSONObject roomJson = new JSONObject(standings.getBody());
+        assertEquals(2, roomJson.getInt(RaceRoom.JSON_PLAYERS));
+        JSONArray standingsJson = roomJson.getJSONArray(RaceRoom.JSON_STANDINGS);
+        assertEquals(1, standingsJson.length());
+        assertEquals(new JSONObject(joined1.getBody()).getString(ServerHandler.JSON_ID),
+                standingsJson.getJSONObject(0).getString(ServerHandler.JSON_ID));
+        assertEquals(400, invalidLimit.getStatusCode());
+        assertEquals(404, missingPlayer.getStatusCode());
+        assertEquals(200, deleted.getStatusCode());
+        assertEquals(404, missingRoom.getStatusCode());
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test removing the race rooms, which are not used.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testExpireIdleRooms() throws IOException, InterruptedException {
+        String testName = "testExpireIdleRooms";
+        this.logTestStart(testName);
+        ServerHandler handler = new ServerHandler();
+        String[] rooms = new String[2];
+        for (int i = 0; i < rooms.length; i++) {
+            MemoryExchange created = new MemoryExchange("POST",
+                    URI.create(ServerHandler.BASE_PATH + "/" + ServerHandler.ROOM_PATH + "/"), new byte[0]);
+            handler.handle(created);
+            assertEquals(201, created.getResponseCode());
+            rooms[i] = ServerHandler.BASE_PATH + "/" + ServerHandler.ROOM_PATH + "/" + created.getJson().getString(ServerHandler.JSON_ID);
+        }
+        // Test
+        assertEquals(0, handler.expireIdleRooms(60000));
+        Thread.sleep(50);
+        MemoryExchange joined = new MemoryExchange("POST", URI.create(rooms[1] + "/" + ServerHandler.PLAYERS_PATH), new byte[0]);
+        handler.handle(joined);
+        assertEquals(1, handler.expireIdleRooms(25));
+        MemoryExchange expired = new MemoryExchange("GET", URI.create(rooms[0]), new byte[0]);
+        handler.handle(expired);
+        MemoryExchange used = new MemoryExchange("GET", URI.create(rooms[1]), new byte[0]);
+        handler.handle(used);
+        // Result validation
+        assertEquals(201, joined.getResponseCode());
+        assertEquals(404, expired.getResponseCode());
+        assertEquals(200, used.getResponseCode());
+        assertEquals(1, used.getJson().getInt(RaceRoom.JSON_PLAYERS));
+        this.logTestEnd(testName);
+    }
+
     // Convenience method to make a request.
     // method - a method of the request.
     // path - full path of the request.
@@ -290,13 +748,36 @@ public class ServerHandlerTest extends BaseTest {
     // path - full path of the request.
     // jsonIn - contents of the request. If null, then request has no contents.
     private HttpResponse doRequest(String method, String path, JSONObject jsonIn) throws MalformedURLException, ProtocolException, IOException  {
+        return this.doRequest(method, path, jsonIn, null);
+    }
+
+    // Convenience method to make a request.
+    // method - a method of the request.
+    // path - full path of the request.
+    // jsonIn - contents of the request. If null, then request has no contents.
+    // headers - headers of the request. If null, then no additional headers are sent.
+    private HttpResponse doRequest(String method, String path, JSONObject jsonIn, Map<String, String> headers) throws MalformedURLException, ProtocolException, IOException  {
+        return this.doRawRequest(method, path, jsonIn == null ? null : jsonIn.toString(), headers);
+    }
+
+    // Convenience method to make a request with contents, which is not necessarily JSON.
+    // method - a method of the request.
+    // path - full path of the request.
+    // body - contents of the request. If null, then request has no contents.
+    // headers - headers of the request. If null, then no additional headers are sent.
+    private HttpResponse doRawRequest(String method, String path, String body, Map<String, String> headers) throws MalformedURLException, ProtocolException, IOException  {
         URL url = new URL("http://localhost:" + TEST_SERVER_PORT + ServerHandler.BASE_PATH + "/" + path);
         HttpURLConnection con = (HttpURLConnection)(url.openConnection());
         con.setRequestMethod(method);
-        if (jsonIn != null) {
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                con.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        if (body != null) {
             con.setDoOutput(true);
             try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(con.getOutputStream()))) {
-                bw.write(jsonIn.toString());
+                bw.write(body);
                 bw.flush();
             }
         }
@@ -308,10 +789,33 @@ public class ServerHandlerTest extends BaseTest {
         } else {
             is = con.getInputStream();
         }
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
-            response = br.lines().collect(Collectors.joining("\n"));
+        if (is == null) {
+            response = "";
+        } else {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
+                response = br.lines().collect(Collectors.joining("\n"));
+            }
+        }
+        HashMap<String, String> responseHeaders = new HashMap<String, String>();
+        for (Map.Entry<String, List<String>> header : con.getHeaderFields().entrySet()) {
+            if (header.getKey() != null && !header.getValue().isEmpty()) {
+                responseHeaders.put(header.getKey().toLowerCase(), header.getValue().get(0));
+            }
         }
-        return new HttpResponse(status, response);
+        return new HttpResponse(status, response, responseHeaders);
+    }
+
+    // Convenience method to convert the text the way the handler sends it in
+    // the response: encoded by the default charset of the platform.
+    private String asSent(String text) {
+        return new String(text.getBytes(), StandardCharsets.UTF_8);
+    }
+
+    // Convenience method to form a map of single request header.
+    private Map<String, String> header(String name, String value) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        result.put(name, value);
+        return result;
     }
 
     // Convenience method to convert JSON array of ints to int array.
@@ -350,10 +854,12 @@ public class ServerHandlerTest extends BaseTest {
 class HttpResponse {
     private final int statusCode;
     private final String body;
+    private final Map<String, String> headers;
 
-    public HttpResponse(int statusCode, String body) {
+    public HttpResponse(int statusCode, String body, Map<String, String> headers) {
         this.statusCode = statusCode;
         this.body = body;
+        this.headers = headers;
     }
 
     public int getStatusCode(){
@@ -363,4 +869,8 @@ class HttpResponse {
     public String getBody(){
         return body;
     }
+
+    public String getHeader(String name){
+        return headers.get(name.toLowerCase());
+    }
 }
@@ -0,0 +1,226 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Tests for ServerLifecycle class.
+ *
+ * @author julius
+ */
+public class ServerLifecycleTest extends BaseTest {
+
+    /**
+     * Port of the test server: {@value #TEST_PORT}.
+     */
+    public static final int TEST_PORT = 8097;
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(ServerLifecycle.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(ServerLifecycle.class);
+    }
+
+    /**
+     * Test of shutdown and restoreSnapshot methods, of class ServerLifecycle.
+     *
+     * @param directory the temporary directory for the snapshot.
+     * @throws Exception if the requests fail.
+     */
+    @Test
+    public void testShutdown(@TempDir Path directory) throws Exception {
+        String testName = "shutdown/1";
+        this.logTestStart(testName);
+        ServerHandler serverHandler = new ServerHandler();
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        // The moves are slow, so that one is in progress, when the shutdown starts
+        HttpHandler handler = he -> {
+            if ("PATCH".equals(he.getRequestMethod())) {
+                slowStarted.countDown();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            serverHandler.handle(he);
+        };
+        ThreadPoolExecutor executor = Server.newBoundedExecutor(4, 16);
+        Path snapshot = directory.resolve("games.p15");
+        ServerLifecycle lifecycle = new ServerLifecycle(serverHandler, new AsyncLogger(AsyncLogger.Level.WARN), 5000);
+        lifecycle.setSnapshotFile(snapshot);
+        lifecycle.setHttpServer(Server.start(TEST_PORT, ServerHandler.BASE_PATH, lifecycle.track(handler), executor), executor);
+        boolean[] closed = new boolean[1];
+        lifecycle.addResource(() -> closed[0] = true);
+        String gamePath = ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/";
+        String id;
+        try (HttpClientConnection connection = new HttpClientConnection("localhost", TEST_PORT)) {
+            HttpClientConnection.Response created = connection.request("POST", gamePath, null,
+                    "{\"board\":[1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15]}".getBytes());
+            id = new JSONObject(created.getBodyString()).getString(ServerHandler.JSON_ID);
+            connection.request("POST", gamePath, null, null);
+        }
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> move = client.submit(() -> {
+                try (HttpClientConnection connection = new HttpClientConnection("localhost", TEST_PORT)) {
+                    return connection.request("PATCH", gamePath + id, null, "{\"move\":\"right\"}".getBytes()).getStatusCode();
+                }
+            });
+            slowStarted.await();
+            long start = System.nanoTime();
+            assertTrue(lifecycle.shutdown());
+            // It waits only for the move, not for the whole drain time
+            assertTrue(System.nanoTime() - start < 4000000000L);
+            // The move in progress is completed and is in the snapshot
+            assertEquals(200, (int)move.get());
+        } finally {
+            client.shutdownNow();
+        }
+        assertFalse(lifecycle.shutdown());
+        assertFalse(serverHandler.isReady());
+        assertTrue(closed[0]);
+        assertTrue(executor.isTerminated());
+        assertTrue(Files.exists(snapshot));
+        assertFalse(Files.exists(directory.resolve("games.p15.tmp")));
+        assertThrows(IOException.class, () -> {
+            try (HttpClientConnection connection = new HttpClientConnection("localhost", TEST_PORT)) {
+                connection.request("GET", gamePath + id, null, null);
+            }
+        });
+        // The restart restores the games
+        ServerHandler restarted = new ServerHandler();
+        ServerLifecycle restartedLifecycle = new ServerLifecycle(restarted, new AsyncLogger(AsyncLogger.Level.WARN), 5000);
+        assertEquals(0, restartedLifecycle.restoreSnapshot(2));
+        restartedLifecycle.setSnapshotFile(snapshot);
+        assertEquals(2, restartedLifecycle.restoreSnapshot(2));
+        Map<String, Penkiolika> games = restarted.snapshotGames();
+        assertEquals(serverHandler.snapshotGames(), games);
+        assertTrue(games.get(id).isFinal());
+        assertEquals(1, games.get(id).getVersion());
+        restarted.shutdown();
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of shutdown method, of class ServerLifecycle, when the request is
+     * processed by the dispatcher thread, because the queue of the executor
+     * is full.
+     *
+     * @param directory the temporary directory for the snapshot.
+     * @throws Exception if the requests fail.
+     */
+    @Test
+    public void testShutdownDispatcher(@TempDir Path directory) throws Exception {
+        String testName = "shutdown/0 (dispatcher)";
+        this.logTestStart(testName);
+        ServerHandler serverHandler = new ServerHandler();
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch readsReleased = new CountDownLatch(1);
+        CountDownLatch moveStarted = new CountDownLatch(1);
+        String[] moveThread = new String[1];
+        // The reads wait for the move, which then takes long, so that the
+        // worker is idle long before the move completes
+        HttpHandler handler = he -> {
+            if ("GET".equals(he.getRequestMethod())) {
+                readStarted.countDown();
+                try {
+                    readsReleased.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            } else if ("PATCH".equals(he.getRequestMethod())) {
+                moveThread[0] = Thread.currentThread().getName();
+                moveStarted.countDown();
+                readsReleased.countDown();
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            serverHandler.handle(he);
+        };
+        ThreadPoolExecutor executor = Server.newBoundedExecutor(1, 1);
+        Path snapshot = directory.resolve("games.p15");
+        ServerLifecycle lifecycle = new ServerLifecycle(serverHandler, new AsyncLogger(AsyncLogger.Level.WARN), 5000);
+        lifecycle.setSnapshotFile(snapshot);
+        lifecycle.setHttpServer(Server.start(TEST_PORT, ServerHandler.BASE_PATH, lifecycle.track(handler), executor), executor);
+        String gamePath = ServerHandler.BASE_PATH + "/" + ServerHandler.GAME_PATH + "/";
+        // Added directly, because the executor handles every closed connection
+        // as well, which would disturb the queue
+        String id = "1";
+        serverHandler.applyGame(id, new Penkiolika(new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 0, 15}));
+        ExecutorService client = Executors.newFixedThreadPool(3);
+        try {
+            // The first read keeps the only worker busy, the second one fills
+            // the queue, so the move is processed by the dispatcher
+            client.submit(() -> ServerLifecycleTest.request("GET", gamePath + id, null));
+            readStarted.await();
+            client.submit(() -> ServerLifecycleTest.request("GET", gamePath + id, null));
+            ServerLifecycleTest.awaitExecutor(executor, 1, 1);
+            Future<Integer> move = client.submit(() -> ServerLifecycleTest.request("PATCH", gamePath + id,
+                    "{\"move\":\"right\"}".getBytes()));
+            assertTrue(moveStarted.await(5, TimeUnit.SECONDS));
+            assertFalse(moveThread[0].startsWith("penkiolika-worker"));
+            assertTrue(lifecycle.shutdown());
+            assertEquals(0, lifecycle.getInFlight());
+            assertEquals(200, (int)move.get());
+        } finally {
+            client.shutdownNow();
+        }
+        // The move completed after the workers is in the snapshot
+        ServerHandler restarted = new ServerHandler();
+        ServerLifecycle restartedLifecycle = new ServerLifecycle(restarted, new AsyncLogger(AsyncLogger.Level.WARN), 5000);
+        restartedLifecycle.setSnapshotFile(snapshot);
+        assertEquals(1, restartedLifecycle.restoreSnapshot(1));
+        assertEquals(1, restarted.snapshotGames().get(id).getVersion());
+        restarted.shutdown();
+        this.logTestEnd(testName);
+    }
+
+    // Sends the request on a new connection and returns the status code of the response.
+    private static int request(String method, String path, byte[] body) throws IOException {
+        try (HttpClientConnection connection = new HttpClientConnection("localhost", TEST_PORT)) {
+            return connection.request(method, path, null, body).getStatusCode();
+        }
+    }
+
+    // Waits (at most 5 seconds) until the executor has the provided numbers
+    // of active threads and of waiting requests.
+    private static void awaitExecutor(ThreadPoolExecutor executor, int active, int waiting) throws InterruptedException {
+        long deadline = System.nanoTime() + 5000000000L;
+        while ((executor.getActiveCount() != active || executor.getQueue().size() != waiting) &&
+                System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for SolveJobManager class.
+ *
+ * @author julius
+ */
+public class SolveJobManagerTest extends BaseTest {
+
+    // The board, which is solved by a single move to the right.
+    private static final int[] ONE_MOVE_BOARD = new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15};
+    // The time to live of the results in the tests of the removal of the results.
+    private static final long RESULT_TTL_MILLIS = 500;
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(SolveJobManager.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(SolveJobManager.class);
+    }
+
+    /**
+     * Test of submit and get methods, of class SolveJobManager.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testSubmit() throws InterruptedException {
+        String testName = "submit/4 and get/1";
+        this.logTestStart(testName);
+        // The result is kept long enough to be found, but not longer than the test
+        SolveJobManager manager = new SolveJobManager(new Solver(), 1, 1, RESULT_TTL_MILLIS);
+        SolveJobManager.Job job = manager.submit("7", 3, ONE_MOVE_BOARD, 1000);
+        assertSame(job, manager.get(job.getId()));
+        assertFinished(job);
+        assertEquals(SolveJobManager.Status.SOLVED, job.getStatus());
+        assertEquals(Direction.RIGHT, job.getSolution().getMoves().get(0));
+        JSONObject json = job.toJson();
+        assertEquals("7", json.getString(SolveJobManager.JSON_GAME_ID));
+        assertEquals(3, json.getLong(SolveJobManager.JSON_VERSION));
+        assertEquals("solved", json.getString(SolveJobManager.JSON_STATUS));
+        assertEquals("right", json.getJSONArray(SolveJobManager.JSON_MOVES).getString(0));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (manager.get(job.getId()) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(manager.get(job.getId()));      // removed after the time to live of the result
+        manager.shutdown();
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of cancel method and of the bounded queue, of class SolveJobManager.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testCancel() throws InterruptedException {
+        String testName = "cancel/1";
+        this.logTestStart(testName);
+        CountDownLatch started = new CountDownLatch(1);
+        SolveJobManager manager = new SolveJobManager(new BlockingSolver(started), 1, 1, 60000);
+        SolveJobManager.Job running = manager.submit("1", 0, ONE_MOVE_BOARD, 10000);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        SolveJobManager.Job queued = manager.submit("1", 0, ONE_MOVE_BOARD, 10000);
+        assertThrows(RejectedExecutionException.class, () -> manager.submit("1", 0, ONE_MOVE_BOARD, 10000));
+        assertEquals(2, manager.size());
+        assertEquals(SolveJobManager.Status.RUNNING, running.getStatus());
+        assertEquals(SolveJobManager.Status.QUEUED, queued.getStatus());
+        manager.cancel(queued.getId());
+        assertEquals(SolveJobManager.Status.CANCELLED, queued.getStatus());
+        manager.cancel(running.getId());
+        assertFinished(running);
+        assertEquals(SolveJobManager.Status.CANCELLED, running.getStatus());
+        assertNull(running.getSolution());
+        assertNull(manager.cancel("no such job"));
+        manager.shutdown();
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of the deadline of the job, of class SolveJobManager.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testDeadline() throws InterruptedException {
+        String testName = "deadline";
+        this.logTestStart(testName);
+        SolveJobManager manager = new SolveJobManager(new BlockingSolver(new CountDownLatch(1)), 1, 1, 60000);
+        SolveJobManager.Job job = manager.submit("1", 0, ONE_MOVE_BOARD, 50);
+        assertFinished(job);
+        assertEquals(SolveJobManager.Status.EXPIRED, job.getStatus());
+        assertEquals("expired", job.toJson().getString(SolveJobManager.JSON_STATUS));
+        manager.shutdown();
+        this.logTestEnd(testName);
+    }
+
+    // Convenience method to wait until the job is finished.
+    private static void assertFinished(SolveJobManager.Job job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!job.getStatus().isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(job.getStatus().isFinished(), "Job is not finished: " + job.getStatus());
+    }
+
+    // Solver, which never finds a solution, but waits until it is stopped.
+    private static class BlockingSolver extends Solver {
+        private final CountDownLatch started;
+
+        BlockingSolver(CountDownLatch started) {
+            this.started = started;
+        }
+
+        @Override
+        public Solution solve(int[] board, Heuristics.Estimate estimate, BooleanSupplier stop) {
+            started.countDown();
+            while (!stop.getAsBoolean()) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ie) {
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+}
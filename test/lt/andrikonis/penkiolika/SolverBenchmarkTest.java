@@ -0,0 +1,112 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for SolverBenchmark class.
+ *
+ * @author julius
+ */
+public class SolverBenchmarkTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(SolverBenchmark.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(SolverBenchmark.class);
+    }
+
+    /**
+     * Test of loadCorpus and loadBaseline methods, of class SolverBenchmark.
+     *
+     * @throws Exception if the resources cannot be read.
+     */
+    @Test
+    public void testLoad() throws Exception {
+        String testName = "load/1";
+        this.logTestStart(testName);
+        List<SolverBenchmark.Instance> instances = SolverBenchmark.loadCorpus();
+        assertEquals(30, instances.size());
+        for (SolverBenchmark.Instance instance : instances) {
+            int[] board = instance.getBoard();
+            assertTrue(Penkiolika.isSolvable(board));
+            assertTrue(instance.getOptimalLength() >=
+                    Heuristics.manhattanDistance(board) + Heuristics.linearConflict(board));
+        }
+        List<SolverBenchmark.Result> baseline = SolverBenchmark.loadBaseline();
+        assertFalse(baseline.isEmpty());
+        assertThrows(java.io.IOException.class, () -> SolverBenchmark.readCorpus(new StringReader("1 2 3 4")));
+        assertThrows(java.io.IOException.class,
+                () -> SolverBenchmark.readCorpus(new StringReader("2 1 3 4 5 6 7 8 9 10 11 12 13 14 15 0 6")));
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of run and compare methods, of class SolverBenchmark.
+     *
+     * @throws Exception if the corpus cannot be read.
+     */
+    @Test
+    public void testRunAndCompare() throws Exception {
+        String testName = "runAndCompare/1";
+        this.logTestStart(testName);
+        // The instance of the corpus with the shortest search.
+        SolverBenchmark.Instance instance = SolverBenchmark.loadCorpus().get(28);
+        assertEquals(32, instance.getOptimalLength());
+        List<SolverBenchmark.Configuration> configurations = SolverBenchmark.getConfigurations(2);
+        assertEquals(2 * Solver.Heuristic.values().length, configurations.size());
+        for (SolverBenchmark.Configuration configuration : configurations) {
+            List<SolverBenchmark.Result> results =
+                    SolverBenchmark.run(configuration, Arrays.asList(instance, instance, instance));
+            assertEquals(3, results.size());
+            for (SolverBenchmark.Result result : results) {
+                assertEquals(configuration.getName(), result.getConfiguration());
+                assertTrue(result.isOptimal());
+                assertTrue(result.getNodes() > 0);
+                assertEquals(results.get(0).getNodes(), result.getNodes());
+            }
+        }
+        String name = configurations.get(0).getName();
+        List<SolverBenchmark.Result> results =
+                Collections.singletonList(new SolverBenchmark.Result(name, 0, 1000, 100, true));
+        // The baseline round trip
+        StringWriter writer = new StringWriter();
+        SolverBenchmark.writeBaseline(results, writer);
+        List<SolverBenchmark.Result> baseline = SolverBenchmark.readBaseline(new StringReader(writer.toString()));
+        assertEquals(1, baseline.size());
+        assertEquals(1000, baseline.get(0).getNodes());
+        assertEquals(10000, baseline.get(0).getNodesPerSecond());
+        assertTrue(SolverBenchmark.compare(results, baseline, 0.25).isEmpty());
+        // More nodes, too slow and not optimal
+        assertEquals(1, SolverBenchmark.compare(Collections.singletonList(
+                new SolverBenchmark.Result(name, 0, 1001, 100, true)), baseline, 0.25).size());
+        assertEquals(1, SolverBenchmark.compare(Collections.singletonList(
+                new SolverBenchmark.Result(name, 0, 1000, 126, true)), baseline, 0.25).size());
+        assertEquals(1, SolverBenchmark.compare(Collections.singletonList(
+                new SolverBenchmark.Result(name, 0, 900, 50, false)), baseline, 0.25).size());
+        // The results missing from the baseline
+        assertEquals(1, SolverBenchmark.compare(Collections.singletonList(
+                new SolverBenchmark.Result(name, 1, 5000, 500, true)), baseline, 0.25).size());
+        this.logTestEnd(testName);
+    }
+}
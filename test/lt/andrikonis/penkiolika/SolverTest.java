@@ -0,0 +1,123 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Solver class.
+ *
+ * @author julius
+ */
+public class SolverTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(Solver.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(Solver.class);
+    }
+
+    /**
+     * Test of solve method, of class Solver.
+     */
+    @Test
+    public void testSolve() {
+        String testName = "solve/1";
+        this.logTestStart(testName);
+        Solver solver = new Solver();
+        assertEquals(0, solver.solve(Penkiolika.FINAL_BOARD).getMoves().size());
+        int[] oneMove = new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15};
+        assertEquals(1, solver.solve(oneMove).getMoves().size());
+        assertEquals(Direction.RIGHT, solver.solve(oneMove).getMoves().get(0));
+        // The empty cell in the top left corner and all the tiles one step away
+        assertEquals(6, solver.solve(new int[]{0,1,2,3,5,6,7,4,9,10,11,8,13,14,15,12}).getMoves().size());
+        // Two tiles in a linear conflict: the Manhattan distance is 2, but 6 moves are needed
+        int[] conflict = new int[]{2,1,3,4,5,6,7,8,9,10,11,12,13,14,15,0};
+        assertFalse(Penkiolika.isSolvable(conflict));
+        assertThrows(IllegalArgumentException.class, () -> solver.solve(conflict));
+        for (int i = 0; i < 20; i++) {
+            Penkiolika game = new Penkiolika();
+            game.shuffle(30);
+            int[] board = game.getBoard();
+            List<Direction> moves = solver.solve(board).getMoves();
+            assertTrue(moves.size() <= 30);
+            assertTrue(moves.size() >= Heuristics.manhattanDistance(board) + Heuristics.linearConflict(board));
+            for (Direction move : moves) {
+                assertTrue(game.move(move));
+            }
+            assertTrue(game.isFinal());
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of solve method with different heuristics, of class Solver.
+     */
+    @Test
+    public void testSolveHeuristics() {
+        String testName = "solve/3";
+        this.logTestStart(testName);
+        int[] board = new int[]{1,2,7,6,15,3,4,8,5,9,12,11,13,0,10,14};
+        // The walking distance is never less than the other heuristics, so it expands the fewest nodes
+        Solver.Solution best = new Solver(Solver.Heuristic.WALKING_DISTANCE).solve(board);
+        assertEquals(Solver.Heuristic.LINEAR_CONFLICT, new Solver().getHeuristic());
+        assertTrue(new Solver().solve(board).getNodes() > best.getNodes());
+        for (Solver.Heuristic heuristic : Solver.Heuristic.values()) {
+            Solver.Solution solution = new Solver(heuristic).solve(board);
+            assertEquals(32, solution.getMoves().size());
+            assertTrue(solution.getNodes() >= best.getNodes());
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of solve method with the estimates of the game, of class Solver.
+     */
+    @Test
+    public void testSolveEstimated() {
+        String testName = "solve/4";
+        this.logTestStart(testName);
+        Solver solver = new Solver();
+        for (int i = 0; i < 10; i++) {
+            Penkiolika game = new Penkiolika();
+            game.shuffle(30);
+            Solver.Solution solution = solver.solve(game.getBoard(), game.getEstimate(), () -> false);
+            Solver.Solution expected = solver.solve(game.getBoard());
+            assertEquals(expected.getMoves(), solution.getMoves());
+            assertEquals(expected.getNodes(), solution.getNodes());
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of solve method with the stop condition, of class Solver.
+     */
+    @Test
+    public void testSolveStopped() {
+        String testName = "solve/2";
+        this.logTestStart(testName);
+        Solver solver = new Solver();
+        AtomicInteger checks = new AtomicInteger(0);
+        // Almost reversed board: it takes far more nodes than the first checks
+        int[] board = new int[]{15,14,13,12,11,10,9,8,7,6,5,4,3,1,2,0};
+        assertNull(solver.solve(board, () -> checks.incrementAndGet() > 2));
+        assertEquals(3, checks.get());
+        this.logTestEnd(testName);
+    }
+}
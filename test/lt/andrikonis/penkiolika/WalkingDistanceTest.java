@@ -0,0 +1,89 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import java.util.Random;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for WalkingDistance class.
+ *
+ * @author julius
+ */
+public class WalkingDistanceTest extends BaseTest {
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(WalkingDistance.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(WalkingDistance.class);
+    }
+
+    /**
+     * Test of walkingDistance method, of class WalkingDistance.
+     *
+     * @throws Exception if the corpus cannot be read.
+     */
+    @Test
+    public void testWalkingDistance() throws Exception {
+        String testName = "walkingDistance/1";
+        this.logTestStart(testName);
+        assertEquals(0, WalkingDistance.walkingDistance(Penkiolika.FINAL_BOARD));
+        assertEquals(1, WalkingDistance.walkingDistance(new int[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,0,15}));
+        assertEquals(1, WalkingDistance.walkingDistance(new int[]{1,2,3,4,5,6,7,8,9,10,11,0,13,14,15,12}));
+        // It is never less than the Manhattan distance and never more than the optimal solution
+        for (SolverBenchmark.Instance instance : SolverBenchmark.loadCorpus()) {
+            int[] board = instance.getBoard();
+            int walkingDistance = WalkingDistance.walkingDistance(board);
+            assertTrue(walkingDistance >= Heuristics.manhattanDistance(board), "Instance " + instance.getIndex());
+            assertTrue(walkingDistance <= instance.getOptimalLength(), "Instance " + instance.getIndex());
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of next method, of class WalkingDistance.
+     */
+    @Test
+    public void testNext() {
+        String testName = "next/1";
+        this.logTestStart(testName);
+        Random random = new Random(15);
+        int[] board = Penkiolika.FINAL_BOARD.clone();
+        int empty = Heuristics.CELLS - 1;
+        int rowState = WalkingDistance.rowState(board);
+        int columnState = WalkingDistance.columnState(board);
+        for (int i = 0; i < 10000; i++) {
+            Direction direction = Direction.values()[random.nextInt(4)];
+            if (!direction.canMove(empty)) {
+                continue;
+            }
+            int to = direction.target(empty);
+            int tile = board[to];
+            if (direction.isVertical()) {
+                rowState = WalkingDistance.next(rowState, to > empty, (tile - 1) / Heuristics.SIDE);
+            } else {
+                columnState = WalkingDistance.next(columnState, to > empty, (tile - 1) % Heuristics.SIDE);
+            }
+            board[empty] = tile;
+            board[to] = Penkiolika.EMPTY_CELL;
+            empty = to;
+            assertEquals(WalkingDistance.rowState(board), rowState);
+            assertEquals(WalkingDistance.columnState(board), columnState);
+        }
+        this.logTestEnd(testName);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Technical task for Danske bankas
+ */
+package lt.andrikonis.penkiolika;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for WarmUp class.
+ *
+ * @author julius
+ */
+public class WarmUpTest extends BaseTest {
+
+    /**
+     * Port of the test server: {@value #TEST_PORT}.
+     */
+    public static final int TEST_PORT = 8096;
+
+    /**
+     * Before starting all the tests of this class.
+     */
+    @BeforeAll
+    public static void setUpClass() {
+        BaseTest.logClassStart(WarmUp.class);
+    }
+
+    /**
+     * After completing all the tests of this class.
+     */
+    @AfterAll
+    public static void tearDownClass() {
+        BaseTest.logClassEnd(WarmUp.class);
+    }
+
+    /**
+     * Test of run method, of class WarmUp.
+     *
+     * @throws Exception if a warm-up request fails.
+     */
+    @Test
+    public void testRun() throws Exception {
+        String testName = "run/1";
+        this.logTestStart(testName);
+        WarmUp.Result result = new WarmUp(2000).run();
+        assertTrue(result.getRounds() >= 1, result.toString());
+        assertTrue(result.getRequests() >= result.getRounds() * WarmUp.ROUND_GAMES * 20L, result.toString());
+        // The round in progress is completed after the time limit
+        assertTrue(result.getMillis() < 2000 + 5000, result.toString());
+        if (result.isSettled()) {
+            assertTrue(result.getRounds() >= WarmUp.MIN_ROUNDS, result.toString());
+        }
+        this.logTestEnd(testName);
+    }
+
+    /**
+     * Test of the readiness and liveness requests of the server, which warms up.
+     *
+     * @throws Exception if the requests fail.
+     */
+    @Test
+    public void testReady() throws Exception {
+        String testName = "ready/1";
+        this.logTestStart(testName);
+        ServerHandler handler = new ServerHandler();
+        handler.setReady(false);
+        HttpServer server = Server.start(TEST_PORT, ServerHandler.BASE_PATH, handler);
+        try (HttpClientConnection connection = new HttpClientConnection("localhost", TEST_PORT)) {
+            String readyPath = ServerHandler.BASE_PATH + "/" + ServerHandler.READY_PATH;
+            String livePath = ServerHandler.BASE_PATH + "/" + ServerHandler.LIVE_PATH;
+            HttpClientConnection.Response ready = connection.request("GET", readyPath, null, null);
+            assertEquals(503, ready.getStatusCode());
+            assertFalse(new JSONObject(ready.getBodyString()).getBoolean(ServerHandler.JSON_READY));
+            HttpClientConnection.Response live = connection.request("GET", livePath, null, null);
+            assertEquals(200, live.getStatusCode());
+            assertTrue(new JSONObject(live.getBodyString()).getBoolean(ServerHandler.JSON_LIVE));
+            new WarmUp(500).run();
+            handler.setReady(true);
+            ready = connection.request("GET", readyPath, null, null);
+            assertEquals(200, ready.getStatusCode());
+            assertTrue(new JSONObject(ready.getBodyString()).getBoolean(ServerHandler.JSON_READY));
+            // The warm-up leaves nothing in the served handler
+            JSONObject stats = new JSONObject(connection.request("GET", ServerHandler.BASE_PATH + "/" +
+                    ServerHandler.STATS_PATH, null, null).getBodyString());
+            assertEquals(0, stats.getLong(GameStatistics.JSON_GAMES_CREATED));
+        } finally {
+            server.stop(0);
+        }
+        this.logTestEnd(testName);
+    }
+}